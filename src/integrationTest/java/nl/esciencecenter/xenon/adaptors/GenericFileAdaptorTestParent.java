@@ -2898,14 +2898,25 @@ public abstract class GenericFileAdaptorTestParent {
     }
 
     @Test
-    public void test23_copy_resumeAndVerifyAndSourceNotAhead_throw() throws Exception {
+    public void test23_copy_resumeAndVerifyAndSourceNotAhead_repairedOrThrow() throws Exception {
         byte[] data1 = "Hello World!".getBytes();
         byte[] data2 = "Goodbye World!".getBytes();
         prepareTestDir("test23_copy");
         Path fileWithData1 = createTestFile(testDir, data1);
         Path fileWithData2 = createTestFile(testDir, data2);
 
-        test23_copy(fileWithData2, fileWithData1, new CopyOption[] { CopyOption.RESUME, CopyOption.VERIFY }, null, true);
+        // Adaptors that can truncate the target resume from the first mismatching block, others must fail. 
+        try {
+            files.copy(fileWithData2, fileWithData1, CopyOption.RESUME, CopyOption.VERIFY);
+
+            byte[] tmp = Utils.readAllBytes(files, fileWithData1);
+
+            if (!Arrays.equals(data2, tmp)) {
+                throwWrong("test23_copy", Arrays.toString(data2), Arrays.toString(tmp));
+            }
+        } catch (XenonException e) {
+            // expected if the target cannot be repaired
+        }
 
         // cleanup
         deleteTestFile(fileWithData2);
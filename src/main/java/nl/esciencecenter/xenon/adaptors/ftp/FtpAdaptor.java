@@ -64,6 +64,30 @@ public class FtpAdaptor extends Adaptor {
     /** Add gateway to access machine. */
     public static final String GATEWAY = PREFIX + "gateway";
 
+    /** All connection pool properties start with this prefix. */
+    public static final String CONNECTIONS = PREFIX + "connections.";
+
+    /** The maximum number of connections per file system. */
+    public static final String MAX_CONNECTIONS = CONNECTIONS + "maximum";
+
+    /** The time after which an idle connection is closed. */
+    public static final String CONNECTION_IDLE_TIMEOUT = CONNECTIONS + "idleTimeout";
+
+    /** The time after which a NOOP is sent over an idle connection. */
+    public static final String CONNECTION_KEEP_ALIVE = CONNECTIONS + "keepAliveInterval";
+
+    /** The maximum time to wait for a connection if all connections are in use. */
+    public static final String CONNECTION_MAX_WAIT = CONNECTIONS + "maxWait";
+
+    /** All our own metadata cache properties start with this prefix. */
+    public static final String CACHE = PREFIX + "cache.";
+
+    /** The time after which cached attributes and directory listings expire. */
+    public static final String CACHE_TIME_TO_LIVE = CACHE + "timeToLive";
+
+    /** The maximum number of cached attributes and directory listings per file system. */
+    public static final String CACHE_MAX_ENTRIES = CACHE + "maxEntries";
+
     /** All our own queue properties start with this prefix. */
     public static final String QUEUE = PREFIX + "queue.";
 
@@ -88,6 +112,18 @@ public class FtpAdaptor extends Adaptor {
     /** How many jobs have been submitted using this adaptor. */
     public static final String SUBMITTED = JOBS + "submitted";
 
+    /** Metadata cache information start with this prefix. */
+    public static final String CACHE_INFO = INFO + "cache.";
+
+    /** How many requests were answered by the metadata caches of all open file systems. */
+    public static final String CACHE_HITS = CACHE_INFO + "hits";
+
+    /** How many requests were not answered by the metadata caches of all open file systems. */
+    public static final String CACHE_MISSES = CACHE_INFO + "misses";
+
+    /** How many entries were evicted from the metadata caches of all open file systems. */
+    public static final String CACHE_EVICTIONS = CACHE_INFO + "evictions";
+
     /** List of properties supported by this FTP adaptor */
     private static final ImmutableArray<XenonPropertyDescription> VALID_PROPERTIES = new ImmutableArray<XenonPropertyDescription>(
             new XenonPropertyDescriptionImplementation(AUTOMATICALLY_ADD_HOST_KEY, Type.BOOLEAN,
@@ -101,7 +137,19 @@ public class FtpAdaptor extends Adaptor {
             new XenonPropertyDescriptionImplementation(MULTIQ_MAX_CONCURRENT, Type.INTEGER, EnumSet.of(Component.SCHEDULER), "4",
                                                     "The maximum number of concurrent jobs in the multiq.."), new XenonPropertyDescriptionImplementation(GATEWAY,
                                                             Type.STRING, EnumSet.of(Component.SCHEDULER, Component.FILESYSTEM), null,
-                                                            "The gateway machine used to create an SSH tunnel to the target."));
+                                                            "The gateway machine used to create an SSH tunnel to the target."),
+            new XenonPropertyDescriptionImplementation(MAX_CONNECTIONS, Type.INTEGER, EnumSet.of(Component.FILESYSTEM), "8",
+                    "The maximum number of connections to the server per file system."),
+            new XenonPropertyDescriptionImplementation(CONNECTION_IDLE_TIMEOUT, Type.LONG, EnumSet.of(Component.FILESYSTEM),
+                    "60000", "The time after which an idle connection is closed (in milliseconds)."),
+            new XenonPropertyDescriptionImplementation(CONNECTION_KEEP_ALIVE, Type.LONG, EnumSet.of(Component.FILESYSTEM),
+                    "15000", "The time after which a NOOP is sent over an idle connection (in milliseconds)."),
+            new XenonPropertyDescriptionImplementation(CONNECTION_MAX_WAIT, Type.LONG, EnumSet.of(Component.FILESYSTEM),
+                    "60000", "The maximum time to wait for a connection if all connections are in use (in milliseconds)."),
+            new XenonPropertyDescriptionImplementation(CACHE_TIME_TO_LIVE, Type.LONG, EnumSet.of(Component.FILESYSTEM), "0",
+                    "The time after which cached file attributes and directory listings expire (in milliseconds, 0 to disable)."),
+            new XenonPropertyDescriptionImplementation(CACHE_MAX_ENTRIES, Type.INTEGER, EnumSet.of(Component.FILESYSTEM),
+                    "10000", "The maximum number of cached file attributes and directory listings per file system."));
 
     private final FtpFiles filesAdaptor;
     private final FtpCredentials credentialsAdaptor;
@@ -141,6 +189,8 @@ public class FtpAdaptor extends Adaptor {
 
     @Override
     public Map<String, String> getAdaptorSpecificInformation() {
-        return new HashMap<>();
+        Map<String, String> result = new HashMap<>(3);
+        filesAdaptor.getAdaptorSpecificInformation(result);
+        return result;
     }
 }
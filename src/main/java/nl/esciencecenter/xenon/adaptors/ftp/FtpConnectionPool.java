@@ -0,0 +1,433 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.ftp;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.credentials.Credential;
+import nl.esciencecenter.xenon.engine.credentials.PasswordCredentialImplementation;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded pool of logged in FTP connections to a single server.
+ * 
+ * An FTP control connection can only perform a single operation at a time, so each operation and each open stream uses a 
+ * connection of its own. Connections are returned to the pool when the operation finishes or the stream is closed. 
+ * 
+ * A housekeeping thread sends a NOOP over connections that have been idle for a while to keep them alive, and disconnects 
+ * connections that have been idle for too long. The most recently used connection is always kept. Idle connections that 
+ * are found to be broken when they are acquired are replaced by a new connection. 
+ * 
+ * @version 1.0
+ * @since 1.0
+ */
+public class FtpConnectionPool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FtpConnectionPool.class);
+
+    /** A connection that is not in use. */
+    private static class IdleConnection {
+
+        private final FTPClient client;
+
+        /** The time at which the connection was last used (in ms. since the epoch). */
+        private final long lastUsed;
+
+        /** The time at which the connection was last known to be alive (in ms. since the epoch). */
+        private long lastChecked;
+
+        IdleConnection(FTPClient client, long lastUsed, long lastChecked) {
+            this.client = client;
+            this.lastUsed = lastUsed;
+            this.lastChecked = lastChecked;
+        }
+    }
+
+    /** Periodically keeps idle connections alive and disconnects the ones that are no longer needed. */
+    private class Housekeeper extends Thread {
+
+        Housekeeper(String name) {
+            super("FtpConnectionPool-" + name);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (waitForHousekeeping()) {
+                housekeeping();
+            }
+        }
+    }
+
+    private final FtpLocation location;
+    private final Credential credential;
+
+    private final int maxConnections;
+    private final long idleTimeout;
+    private final long keepAliveInterval;
+    private final long maxWait;
+
+    /** The idle connections, most recently used first. */
+    private final LinkedList<IdleConnection> idle = new LinkedList<>();
+
+    /** The number of connections that are idle, in use, or being created. */
+    private int connections = 0;
+
+    private boolean closed = false;
+
+    private final Housekeeper housekeeper;
+
+    /**
+     * Create a new pool. No connections are created until the first connection is acquired.
+     * 
+     * @param name
+     *          the name of the pool, used for the housekeeping thread.
+     * @param location
+     *          the location of the server.
+     * @param credential
+     *          the credential used to log in.
+     * @param maxConnections
+     *          the maximum number of connections to the server.
+     * @param idleTimeout
+     *          the time after which an idle connection is disconnected (in ms.)
+     * @param keepAliveInterval
+     *          the time after which a NOOP is sent over an idle connection (in ms.)
+     * @param maxWait
+     *          the maximum time to wait for a connection if all connections are in use (in ms.)
+     */
+    FtpConnectionPool(String name, FtpLocation location, Credential credential, int maxConnections, long idleTimeout,
+            long keepAliveInterval, long maxWait) {
+        this.location = location;
+        this.credential = credential;
+        this.maxConnections = maxConnections;
+        this.idleTimeout = idleTimeout;
+        this.keepAliveInterval = keepAliveInterval;
+        this.maxWait = maxWait;
+
+        housekeeper = new Housekeeper(name);
+        housekeeper.start();
+    }
+
+    /**
+     * Acquire a connection. The connection must be returned using {@link #release(FTPClient)}.
+     * 
+     * @return a connected and logged in client.
+     * @throws XenonException
+     *          if the pool is closed, if no connection became available in time, or if a new connection could not be created.
+     */
+    FTPClient acquire() throws XenonException {
+
+        long deadline = System.currentTimeMillis() + maxWait;
+
+        while (true) {
+
+            IdleConnection connection = null;
+
+            synchronized (this) {
+                while (!closed && idle.isEmpty() && connections >= maxConnections) {
+
+                    long timeout = deadline - System.currentTimeMillis();
+
+                    if (timeout <= 0) {
+                        throw new XenonException(FtpAdaptor.ADAPTOR_NAME, "Timeout while waiting for an ftp connection to "
+                                + location + ", all " + maxConnections + " connections are in use");
+                    }
+
+                    try {
+                        wait(timeout);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new XenonException(FtpAdaptor.ADAPTOR_NAME, "Interrupted while waiting for an ftp connection", e);
+                    }
+                }
+
+                if (closed) {
+                    throw new XenonException(FtpAdaptor.ADAPTOR_NAME, "File system is already closed");
+                }
+
+                if (idle.isEmpty()) {
+                    connections++;
+                } else {
+                    connection = idle.removeFirst();
+                }
+            }
+
+            if (connection == null) {
+                return connect();
+            }
+
+            if (isAlive(connection)) {
+                return connection.client;
+            }
+
+            LOGGER.debug("Replacing broken ftp connection to {}", location);
+            disconnect(connection.client);
+        }
+    }
+
+    /**
+     * Return a connection to the pool. Connections that are no longer connected are discarded.
+     * 
+     * @param client
+     *          the connection to return.
+     */
+    void release(FTPClient client) {
+        synchronized (this) {
+            if (!closed && client.isConnected()) {
+                long now = System.currentTimeMillis();
+                idle.addFirst(new IdleConnection(client, now, now));
+                notifyAll();
+                return;
+            }
+        }
+
+        disconnect(client);
+    }
+
+    /**
+     * Disconnect a connection that is in an unknown state, instead of returning it to the pool.
+     * 
+     * @param client
+     *          the connection to discard.
+     */
+    void discard(FTPClient client) {
+        disconnect(client);
+    }
+
+    synchronized boolean isOpen() {
+        return !closed;
+    }
+
+    /**
+     * Close the pool, and disconnect all idle connections. Connections that are in use are disconnected when they are
+     * released.
+     * 
+     * @throws XenonException
+     *          if an error occurred while disconnecting.
+     */
+    void close() throws XenonException {
+
+        List<FTPClient> clients = new ArrayList<>();
+
+        synchronized (this) {
+            closed = true;
+
+            for (IdleConnection connection : idle) {
+                clients.add(connection.client);
+            }
+
+            idle.clear();
+            notifyAll();
+        }
+
+        IOException exception = null;
+
+        for (FTPClient client : clients) {
+            try {
+                client.disconnect();
+            } catch (IOException e) {
+                exception = e;
+            }
+            connectionClosed();
+        }
+
+        if (exception != null) {
+            throw new XenonException(FtpAdaptor.ADAPTOR_NAME, "Exception while disconnecting ftp file system.", exception);
+        }
+    }
+
+    // Create a new connection. Package private, so it can be replaced in tests.
+    FTPClient connect() throws XenonException {
+
+        FTPClient client = new FTPClient();
+        client.setListHiddenFiles(true);
+
+        try {
+            try {
+                client.connect(location.getHost(), location.getPort());
+            } catch (IOException e) {
+                throw new XenonException(FtpAdaptor.ADAPTOR_NAME, "Failed to connect", e);
+            }
+
+            login(client);
+        } catch (XenonException e) {
+            disconnect(client);
+            throw e;
+        }
+
+        LOGGER.debug("Created ftp connection to {}", location);
+
+        return client;
+    }
+
+    private void login(FTPClient client) throws XenonException {
+        try {
+            String password = "";
+            String user = "anonymous";
+
+            if (credential instanceof PasswordCredentialImplementation) {
+                PasswordCredentialImplementation passwordCredential = (PasswordCredentialImplementation) credential;
+                password = new String(passwordCredential.getPassword());
+                user = passwordCredential.getUsername();
+            }
+
+            client.login(user, password);
+
+            int replyCode = client.getReplyCode();
+
+            if (replyCode < 200 || replyCode >= 300) {
+                String message = MessageFormat.format("Server status not succesfull after login (status code {0}).", replyCode);
+                throw new XenonException(FtpAdaptor.ADAPTOR_NAME, message);
+            }
+        } catch (XenonException | IOException e) {
+            throw new XenonException(FtpAdaptor.ADAPTOR_NAME, "Failed to login", e);
+        }
+    }
+
+    private boolean isAlive(IdleConnection connection) {
+
+        if (!connection.client.isConnected()) {
+            return false;
+        }
+
+        if (System.currentTimeMillis() - connection.lastChecked < keepAliveInterval) {
+            return true;
+        }
+
+        try {
+            return connection.client.sendNoOp();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void disconnect(FTPClient client) {
+        try {
+            if (client.isConnected()) {
+                client.disconnect();
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Failed to disconnect ftp connection to {}", location, e);
+        }
+
+        connectionClosed();
+    }
+
+    private synchronized void connectionClosed() {
+        connections--;
+        notifyAll();
+    }
+
+    private synchronized boolean waitForHousekeeping() {
+
+        long deadline = System.currentTimeMillis() + Math.min(keepAliveInterval, idleTimeout);
+
+        long timeout = deadline - System.currentTimeMillis();
+
+        while (!closed && timeout > 0) {
+            try {
+                wait(timeout);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            timeout = deadline - System.currentTimeMillis();
+        }
+
+        return !closed;
+    }
+
+    private void housekeeping() {
+
+        List<IdleConnection> expired = new ArrayList<>();
+        List<IdleConnection> check = new ArrayList<>();
+
+        long now = System.currentTimeMillis();
+
+        synchronized (this) {
+            Iterator<IdleConnection> itt = idle.iterator();
+
+            // Always keep the most recently used connection, so the file system stays connected.
+            if (itt.hasNext()) {
+                itt.next();
+            }
+
+            while (itt.hasNext()) {
+                IdleConnection connection = itt.next();
+
+                if (now - connection.lastUsed >= idleTimeout) {
+                    itt.remove();
+                    expired.add(connection);
+                }
+            }
+
+            itt = idle.iterator();
+
+            while (itt.hasNext()) {
+                IdleConnection connection = itt.next();
+
+                if (now - connection.lastChecked >= keepAliveInterval) {
+                    itt.remove();
+                    check.add(connection);
+                }
+            }
+        }
+
+        for (IdleConnection connection : expired) {
+            LOGGER.debug("Disconnecting idle ftp connection to {}", location);
+            disconnect(connection.client);
+        }
+
+        for (IdleConnection connection : check) {
+            if (isAlive(connection)) {
+                connection.lastChecked = System.currentTimeMillis();
+                returnChecked(connection);
+            } else {
+                LOGGER.debug("Disconnecting broken ftp connection to {}", location);
+                disconnect(connection.client);
+            }
+        }
+    }
+
+    // Return a connection that was checked by the housekeeper to the pool, keeping the most recently used connection first.
+    private void returnChecked(IdleConnection connection) {
+        synchronized (this) {
+            if (!closed) {
+                Iterator<IdleConnection> itt = idle.iterator();
+                int index = 0;
+
+                while (itt.hasNext() && itt.next().lastUsed > connection.lastUsed) {
+                    index++;
+                }
+
+                idle.add(index, connection);
+                notifyAll();
+                return;
+            }
+        }
+
+        disconnect(connection.client);
+    }
+}
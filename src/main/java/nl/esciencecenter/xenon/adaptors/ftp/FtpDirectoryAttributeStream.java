@@ -15,7 +15,7 @@
  */
 package nl.esciencecenter.xenon.adaptors.ftp;
 
-import java.util.List;
+import java.util.Iterator;
 
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.adaptors.generic.DirectoryStreamBase;
@@ -27,7 +27,7 @@ import org.apache.commons.net.ftp.FTPFile;
 
 public class FtpDirectoryAttributeStream extends DirectoryStreamBase<FTPFile, PathAttributesPair> {
 
-    FtpDirectoryAttributeStream(Path dir, nl.esciencecenter.xenon.files.DirectoryStream.Filter filter, List<FTPFile> listing)
+    FtpDirectoryAttributeStream(Path dir, nl.esciencecenter.xenon.files.DirectoryStream.Filter filter, Iterator<FTPFile> listing)
             throws XenonException {
         super(dir, filter, listing);
     }
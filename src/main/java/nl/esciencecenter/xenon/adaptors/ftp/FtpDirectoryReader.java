@@ -0,0 +1,72 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.ftp;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.net.ftp.FTPFile;
+import org.apache.commons.net.ftp.FTPListParseEngine;
+
+/**
+ * FtpDirectoryReader iterates over the entries of a directory listing, parsing them in small batches while the iteration
+ * progresses.
+ * 
+ * The raw listing is transferred in full when the listing is started, so the connection can be released immediately. Parsing the
+ * entries (which includes their timestamps) only happens when the iteration reaches them, so no attributes are created up front
+ * for entries that are never used. Lines that cannot be parsed are skipped.
+ */
+class FtpDirectoryReader implements Iterator<FTPFile> {
+
+    private static final int BATCH_SIZE = 64;
+
+    private final FTPListParseEngine engine;
+
+    private final Deque<FTPFile> batch = new ArrayDeque<>(BATCH_SIZE);
+
+    FtpDirectoryReader(FTPListParseEngine engine) {
+        this.engine = engine;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (batch.isEmpty() && engine.hasNext()) {
+            for (FTPFile entry : engine.getNext(BATCH_SIZE)) {
+                if (entry != null) {
+                    batch.addLast(entry);
+                }
+            }
+        }
+
+        return !batch.isEmpty();
+    }
+
+    @Override
+    public FTPFile next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more files in directory");
+        }
+
+        return batch.removeFirst();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("FtpDirectoryReader does not support remove");
+    }
+}
@@ -15,7 +15,7 @@
  */
 package nl.esciencecenter.xenon.adaptors.ftp;
 
-import java.util.List;
+import java.util.Iterator;
 
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.adaptors.generic.DirectoryStreamBase;
@@ -25,7 +25,7 @@ import org.apache.commons.net.ftp.FTPFile;
 
 public class FtpDirectoryStream extends DirectoryStreamBase<FTPFile, Path> {
 
-    public FtpDirectoryStream(Path dir, nl.esciencecenter.xenon.files.DirectoryStream.Filter filter, List<FTPFile> listing)
+    public FtpDirectoryStream(Path dir, nl.esciencecenter.xenon.files.DirectoryStream.Filter filter, Iterator<FTPFile> listing)
             throws XenonException {
         super(dir, filter, listing);
     }
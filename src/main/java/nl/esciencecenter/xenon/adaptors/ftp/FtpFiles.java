@@ -21,10 +21,10 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.text.MessageFormat;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -35,13 +35,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import nl.esciencecenter.xenon.InvalidCredentialException;
+import nl.esciencecenter.xenon.InvalidPropertyException;
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.XenonPropertyDescription.Component;
-import nl.esciencecenter.xenon.adaptors.ssh.SshAdaptor;
+import nl.esciencecenter.xenon.adaptors.generic.MetadataCache;
 import nl.esciencecenter.xenon.credentials.Credential;
 import nl.esciencecenter.xenon.engine.XenonEngine;
 import nl.esciencecenter.xenon.engine.XenonProperties;
-import nl.esciencecenter.xenon.engine.credentials.PasswordCredentialImplementation;
 import nl.esciencecenter.xenon.engine.files.FileSystemImplementation;
 import nl.esciencecenter.xenon.engine.files.FilesEngine;
 import nl.esciencecenter.xenon.engine.files.PathImplementation;
@@ -83,27 +83,39 @@ public class FtpFiles implements Files {
     static class FileSystemInfo {
 
         private final FileSystemImplementation impl;
-        private final FTPClient ftpClient;
+        private final FtpConnectionPool pool;
         private final Credential credential;
+        private final FtpStat stat = new FtpStat();
+        private final MetadataCache<FTPFile, List<FTPFile>> cache;
 
-        public FileSystemInfo(FileSystemImplementation impl, FTPClient ftpClient, Credential credential) {
+        public FileSystemInfo(FileSystemImplementation impl, FtpConnectionPool pool, Credential credential,
+                MetadataCache<FTPFile, List<FTPFile>> cache) {
             super();
             this.impl = impl;
-            this.ftpClient = ftpClient;
+            this.pool = pool;
             this.credential = credential;
+            this.cache = cache;
         }
 
         public FileSystemImplementation getImpl() {
             return impl;
         }
 
-        public FTPClient getFtpClient() {
-            return ftpClient;
+        public FtpConnectionPool getPool() {
+            return pool;
         }
 
         public Credential getCredential() {
             return credential;
         }
+
+        public FtpStat getStat() {
+            return stat;
+        }
+
+        public MetadataCache<FTPFile, List<FTPFile>> getCache() {
+            return cache;
+        }
     }
 
     private final XenonEngine xenonEngine;
@@ -129,25 +141,92 @@ public class FtpFiles implements Files {
         XenonProperties xenonProperties = new XenonProperties(adaptor.getSupportedProperties(Component.FILESYSTEM), properties);
 
         FtpLocation ftpLocation = FtpLocation.parse(location);
-        FTPClient ftpClient = new FTPClient();
-        ftpClient.setListHiddenFiles(true);
-        connectToServer(ftpLocation, ftpClient);
-        login(credential, ftpClient);
-        return createAndRegisterFileSystem(scheme, location, credential, xenonProperties, ftpClient);
+        String uniqueID = getNewUniqueID();
+        MetadataCache<FTPFile, List<FTPFile>> cache = createCache(uniqueID, xenonProperties);
+        FtpConnectionPool pool = createConnectionPool(uniqueID, ftpLocation, credential, xenonProperties);
+
+        String cwd;
+
+        try {
+            // Also verifies that we can connect and login.
+            FTPClient ftpClient = pool.acquire();
+
+            try {
+                cwd = getCurrentWorkingDirectory(ftpClient);
+            } finally {
+                pool.release(ftpClient);
+            }
+        } catch (XenonException e) {
+            closeQuietly(pool);
+            throw e;
+        }
+
+        return registerFileSystem(uniqueID, scheme, location, credential, xenonProperties, pool, cache, cwd);
     }
 
-    private FileSystemImplementation createAndRegisterFileSystem(String scheme, String location, Credential credential,
-            XenonProperties xenonProperties, FTPClient ftpClient) throws XenonException {
-        String cwd = getCurrentWorkingDirectory(ftpClient);
+    private MetadataCache<FTPFile, List<FTPFile>> createCache(String uniqueID, XenonProperties xenonProperties)
+            throws XenonException {
+
+        long timeToLive = xenonProperties.getLongProperty(FtpAdaptor.CACHE_TIME_TO_LIVE);
+        int maxEntries = xenonProperties.getIntegerProperty(FtpAdaptor.CACHE_MAX_ENTRIES);
+
+        if (timeToLive < 0) {
+            throw new InvalidPropertyException(adaptor.getName(), "Invalid cache time to live: " + timeToLive);
+        }
+
+        if (maxEntries < 0) {
+            throw new InvalidPropertyException(adaptor.getName(), "Invalid maximum number of cache entries: " + maxEntries);
+        }
+
+        return new MetadataCache<>(uniqueID, maxEntries, timeToLive);
+    }
+
+    private FtpConnectionPool createConnectionPool(String uniqueID, FtpLocation ftpLocation, Credential credential,
+            XenonProperties xenonProperties) throws XenonException {
+
+        int maxConnections = xenonProperties.getIntegerProperty(FtpAdaptor.MAX_CONNECTIONS);
+        long idleTimeout = xenonProperties.getLongProperty(FtpAdaptor.CONNECTION_IDLE_TIMEOUT);
+        long keepAlive = xenonProperties.getLongProperty(FtpAdaptor.CONNECTION_KEEP_ALIVE);
+        long maxWait = xenonProperties.getLongProperty(FtpAdaptor.CONNECTION_MAX_WAIT);
+
+        if (maxConnections < 1) {
+            throw new InvalidPropertyException(adaptor.getName(), "Invalid maximum number of connections: " + maxConnections);
+        }
+
+        if (idleTimeout <= 0) {
+            throw new InvalidPropertyException(adaptor.getName(), "Invalid connection idle timeout: " + idleTimeout);
+        }
+
+        if (keepAlive <= 0) {
+            throw new InvalidPropertyException(adaptor.getName(), "Invalid connection keep alive interval: " + keepAlive);
+        }
+
+        if (maxWait < 0) {
+            throw new InvalidPropertyException(adaptor.getName(), "Invalid maximum connection wait time: " + maxWait);
+        }
+
+        return new FtpConnectionPool(uniqueID, ftpLocation, credential, maxConnections, idleTimeout, keepAlive, maxWait);
+    }
+
+    private FileSystemImplementation registerFileSystem(String uniqueID, String scheme, String location, 
+            Credential credential, XenonProperties xenonProperties, FtpConnectionPool pool,
+            MetadataCache<FTPFile, List<FTPFile>> cache, String cwd) {
         RelativePath entryPath = new RelativePath(cwd);
-        String uniqueID = getNewUniqueID();
         FileSystemImplementation fileSystem = new FileSystemImplementation(adaptor.getName(), uniqueID, scheme, location,
                 entryPath, credential, xenonProperties);
-        fileSystems.put(uniqueID, new FileSystemInfo(fileSystem, ftpClient, credential));
+        fileSystems.put(uniqueID, new FileSystemInfo(fileSystem, pool, credential, cache));
         LOGGER.debug("* newFileSystem OK remote cwd = {} entryPath = {} uniqueID = {}", cwd, entryPath, uniqueID);
         return fileSystem;
     }
 
+    private void closeQuietly(FtpConnectionPool pool) {
+        try {
+            pool.close();
+        } catch (XenonException e) {
+            LOGGER.debug("Failed to close connection pool", e);
+        }
+    }
+
     private String getCurrentWorkingDirectory(FTPClient ftpClient) throws XenonException {
         String wd;
         try {
@@ -158,47 +237,6 @@ public class FtpFiles implements Files {
         return wd;
     }
 
-    private void connectToServer(FtpLocation ftpLocation, FTPClient ftp) throws XenonException {
-        try {
-            ftp.connect(ftpLocation.getHost(), ftpLocation.getPort());
-        } catch (IOException e) {
-            throw new XenonException(adaptor.getName(), "Failed to connect", e);
-        }
-    }
-
-    private void login(Credential credential, FTPClient ftp) throws XenonException {
-        try {
-            loginWithCredentialOrDefault(ftp, credential);
-            int replyCode = ftp.getReplyCode();
-            verifyLoginSuccess(replyCode);
-        } catch (XenonException | IOException e) {
-            throw new XenonException(adaptor.getName(), "Failed to login", e);
-        }
-    }
-
-    /*
-     * Returns true if code is in interval [200,300). See http://en.wikipedia.org/wiki/List_of_FTP_server_return_codes.
-     *
-     * @param replyCode
-     */
-    private void verifyLoginSuccess(int replyCode) throws XenonException {
-        if (replyCode < 200 || replyCode >= 300) {
-            String message = MessageFormat.format("Server status not succesfull after login (status code {0}).", replyCode);
-            throw new XenonException(adaptor.getName(), message);
-        }
-    }
-
-    private void loginWithCredentialOrDefault(FTPClient ftp, Credential credential) throws IOException {
-        String password = "";
-        String user = "anonymous";
-        if (credential instanceof PasswordCredentialImplementation) {
-            PasswordCredentialImplementation passwordCredential = (PasswordCredentialImplementation) credential;
-            password = new String(passwordCredential.getPassword());
-            user = passwordCredential.getUsername();
-        }
-        ftp.login(user, password);
-    }
-
     @Override
     public Path newPath(FileSystem filesystem, RelativePath location) throws XenonException {
         return new PathImplementation(filesystem, location);
@@ -214,12 +252,8 @@ public class FtpFiles implements Files {
         FileSystemImplementation fs = (FileSystemImplementation) fileSystem;
         FileSystemInfo info = fileSystems.remove(fs.getUniqueID());
 
-        try {
-            info.getFtpClient().disconnect();
-        } catch (IOException e) {
-            throw new XenonException(adaptor.getName(), "Exception while disconnecting ftp file system.", e);
-        }
-        LOGGER.debug("close OK");
+        info.getPool().close();
+        LOGGER.debug("close OK cache = {}", info.getCache());
     }
 
     @Override
@@ -227,7 +261,7 @@ public class FtpFiles implements Files {
         LOGGER.debug("isOpen fileSystem = {}", fileSystem);
         FileSystemImplementation fs = (FileSystemImplementation) fileSystem;
         FileSystemInfo fileSystemInfo = fileSystems.get(fs.getUniqueID());
-        boolean result = (fileSystemInfo != null) && fileSystemInfo.getFtpClient().isConnected();
+        boolean result = (fileSystemInfo != null) && fileSystemInfo.getPool().isOpen();
         LOGGER.debug("isOpen OK result = {}", result);
         return result;
     }
@@ -292,14 +326,18 @@ public class FtpFiles implements Files {
         assertValidArgumentsForMove(source, target);
 
         final String absoluteSourcePath = source.getRelativePath().getAbsolutePath();
-        FTPClient ftpClient = getFtpClientByPath(target);
         FtpCommand ftpCommand = new FtpCommand() {
             @Override
             public void doWork(FTPClient ftpClient, String absoluteTargetPath) throws IOException {
                 ftpClient.rename(absoluteSourcePath, absoluteTargetPath);
             }
         };
-        ftpCommand.execute(ftpClient, target, "Failed to move to path");
+        try {
+            execute(ftpCommand, target, "Failed to move to path");
+        } finally {
+            invalidateTree(source);
+            invalidateTree(target);
+        }
         LOGGER.debug("move OK");
     }
 
@@ -326,6 +364,14 @@ public class FtpFiles implements Files {
         return sourceName.equals(targetName);
     }
 
+    @Override
+    public Copy copyTree(Path source, Path target, CopyOption... options) throws XenonException {
+        LOGGER.debug("copyTree source = {} target = {} options = {}", source, target, options);
+        Copy result = xenonEngine.getCopyEngine().copyTree(adaptor.getName(), source, target, options);
+        LOGGER.debug("copyTree OK result = {}", result);
+        return result;
+    }
+
     @Override
     public CopyStatus getCopyStatus(Copy copy) throws XenonException {
         LOGGER.debug("getCopyStatus copy = {}", copy);
@@ -368,7 +414,7 @@ public class FtpFiles implements Files {
             }
         };
         String messageInCaseOfError = "Failed to create directory";
-        ftpCommand.execute(getFtpClientByPath(path), path, messageInCaseOfError);
+        execute(ftpCommand, path, messageInCaseOfError);
         LOGGER.debug("createDirectory OK");
     }
 
@@ -384,7 +430,7 @@ public class FtpFiles implements Files {
             }
         };
         String messageInCaseOfError = "Failed to create file";
-        ftpCommand.execute(getFtpClientByPath(path), path, messageInCaseOfError);
+        execute(ftpCommand, path, messageInCaseOfError);
         LOGGER.debug("createFile OK");
     }
 
@@ -408,7 +454,7 @@ public class FtpFiles implements Files {
         };
         String messageInCaseOfError = "Failed to delete file or directory";
 
-        ftpCommand.execute(getFtpClientByPath(path), path, messageInCaseOfError);
+        execute(ftpCommand, path, messageInCaseOfError);
     }
 
     private void deleteFile(Path path) throws XenonException {
@@ -420,44 +466,114 @@ public class FtpFiles implements Files {
         };
         String messageInCaseOfError = "Failed to delete file or directory";
 
-        ftpCommand.execute(getFtpClientByPath(path), path, messageInCaseOfError);
+        execute(ftpCommand, path, messageInCaseOfError);
+    }
+
+    @Override
+    public boolean supportsRecursiveDelete(Path path) {
+        return true;
+    }
+
+    @Override
+    public void recursiveDelete(Path path) throws XenonException {
+        LOGGER.debug("recursiveDelete path = {}", path);
+        if (getAttributes(path).isDirectory()) {
+            FtpCommand ftpCommand = new FtpCommand() {
+                @Override
+                public void doWork(FTPClient ftpClient, String absolutePath) throws IOException {
+                    deleteTree(ftpClient, absolutePath);
+                    setHasSucceeded(true);
+                }
+            };
+            try {
+                execute(ftpCommand, path, "Failed to delete directory tree");
+            } finally {
+                invalidateTree(path);
+            }
+        } else {
+            deleteFile(path);
+        }
+        LOGGER.debug("recursiveDelete OK");
+    }
+
+    /*
+     * Deletes a directory tree using a single listing per directory. The listing already tells which entries are directories,
+     * so no attributes need to be retrieved for the individual entries.
+     */
+    private void deleteTree(FTPClient ftpClient, String dir) throws IOException {
+        for (FTPFile entry : ftpClient.listFiles(dir)) {
+            String name = entry.getName();
+
+            if (".".equals(name) || "..".equals(name)) {
+                continue;
+            }
+
+            String entryPath = dir.endsWith("/") ? dir + name : dir + "/" + name;
+
+            if (entry.isDirectory()) {
+                deleteTree(ftpClient, entryPath);
+            } else if (!ftpClient.deleteFile(entryPath)) {
+                throw new IOException(ftpClient.getReplyString());
+            }
+        }
+
+        if (!ftpClient.removeDirectory(dir)) {
+            throw new IOException(ftpClient.getReplyString());
+        }
     }
 
     @Override
     public boolean exists(Path path) throws XenonException {
         LOGGER.debug("exists path = {}", path);
-        boolean result = fileExists(path) || directoryExists(path);
+        boolean result = stat(path) != null;
         LOGGER.debug("exists OK result = {}", result);
         return result;
     }
 
-    private boolean directoryExists(Path path) throws XenonException {
-        FTPClient ftpClient = getFtpClientByPath(path);
-        FtpQuery<Boolean> ftpQuery = new FtpQuery<Boolean>() {
+    /*
+     * Retrieves the attributes of a path using a connection from the pool of its file system. Returns null if the path does not
+     * exist.
+     */
+    private FTPFile stat(final Path path) throws XenonException {
+        return getFileSystemInfo(path).getCache().getAttributes(path, new MetadataCache.Loader<FTPFile>() {
             @Override
-            public void doWork(FTPClient ftpClient, String path) throws IOException {
-                String originalWorkingDirectory = ftpClient.printWorkingDirectory();
-                boolean pathExists = ftpClient.changeWorkingDirectory(path);
-                ftpClient.changeWorkingDirectory(originalWorkingDirectory);
-                setResult(pathExists);
+            public FTPFile load() throws XenonException {
+                FtpConnectionPool pool = getConnectionPool(path);
+                FTPClient ftpClient = pool.acquire();
+
+                try {
+                    return statUncached(ftpClient, path);
+                } finally {
+                    pool.release(ftpClient);
+                }
             }
-        };
-        ftpQuery.execute(ftpClient, path, "Could not inspect directory");
-        return ftpQuery.getResult();
+        });
     }
 
-    private boolean fileExists(Path path) throws XenonException {
-        FTPClient ftpClient = getFtpClientByPath(path);
-        FtpQuery<Boolean> ftpQuery = new FtpQuery<Boolean>() {
+    /*
+     * Retrieves the attributes of a path using the given connection if they are not cached. Returns null if the path does not
+     * exist.
+     */
+    private FTPFile stat(final FTPClient ftpClient, final Path path) throws XenonException {
+        return getFileSystemInfo(path).getCache().getAttributes(path, new MetadataCache.Loader<FTPFile>() {
             @Override
-            public void doWork(FTPClient ftpClient, String path) throws IOException {
-                FTPFile[] listFiles = ftpClient.listFiles(path);
-                int length = listFiles.length;
-                setResult(length == 1);
+            public FTPFile load() throws XenonException {
+                return statUncached(ftpClient, path);
             }
-        };
-        ftpQuery.execute(ftpClient, path, "Could not inspect file");
-        return ftpQuery.getResult();
+        });
+    }
+
+    /*
+     * Retrieves the attributes of a path using the given connection, in a single round trip if the server allows.
+     */
+    private FTPFile statUncached(FTPClient ftpClient, Path path) throws XenonException {
+        String absolutePath = path.getRelativePath().getAbsolutePath();
+
+        try {
+            return getFileSystemInfo(path).getStat().stat(ftpClient, absolutePath);
+        } catch (IOException e) {
+            throw new XenonException(adaptor.getName(), "Failed to retrieve attributes of path " + absolutePath, e);
+        }
     }
 
     @Override
@@ -472,27 +588,58 @@ public class FtpFiles implements Files {
         return new FtpDirectoryStream(path, filter, listDirectory(path, filter));
     }
 
-    private List<FTPFile> listDirectory(Path path, Filter filter) throws XenonException {
+    /*
+     * Lists a directory. If listings are cached, the complete listing is parsed (or taken from the cache). Otherwise, the entries
+     * are parsed while the caller iterates over them.
+     */
+    private Iterator<FTPFile> listDirectory(final Path path, Filter filter) throws XenonException {
+        if (filter == null) {
+            throw new XenonException(adaptor.getName(), "Filter is null.");
+        }
+
+        assertDirectoryExists(path);
+
+        MetadataCache<FTPFile, List<FTPFile>> cache = getFileSystemInfo(path).getCache();
+
+        if (!cache.isEnabled()) {
+            return listFiles(path);
+        }
+
+        return cache.getListing(path, new MetadataCache.Loader<List<FTPFile>>() {
+            @Override
+            public List<FTPFile> load() throws XenonException {
+                List<FTPFile> result = new ArrayList<>();
+                Iterator<FTPFile> entries = listFiles(path);
+
+                while (entries.hasNext()) {
+                    result.add(entries.next());
+                }
+
+                return result;
+            }
+        }).iterator();
+    }
+
+    private FtpDirectoryReader listFiles(Path path) throws XenonException {
         String absolutePath = path.getRelativePath().getAbsolutePath();
-        FTPClient ftpClient = getFtpClientByPath(path);
 
-        FTPFile[] listFiles;
+        FtpConnectionPool pool = getConnectionPool(path);
+        FTPClient ftpClient = pool.acquire();
+
         try {
-            if (filter == null) {
-                throw new XenonException(adaptor.getName(), "Filter is null.");
-            }
-            assertDirectoryExists(path);
-            listFiles = ftpClient.listFiles(absolutePath);
+            return new FtpDirectoryReader(ftpClient.initiateListParsing(absolutePath));
         } catch (IOException e) {
             String message = MessageFormat.format("Failed to retrieve directory listing of {0}", absolutePath);
-            throw new XenonException(adaptor.getName(), message);
+            throw new XenonException(adaptor.getName(), message, e);
+        } finally {
+            pool.release(ftpClient);
         }
-
-        return new LinkedList<>(Arrays.asList(listFiles));
     }
 
     private void assertDirectoryExists(Path path) throws XenonException {
-        if (!directoryExists(path)) {
+        FTPFile ftpFile = stat(path);
+
+        if (ftpFile == null || !ftpFile.isDirectory()) {
             String absolutePath = path.getRelativePath().getAbsolutePath();
             String message = MessageFormat.format("Directory does not exist at path {0}", absolutePath);
             throw new XenonException(adaptor.getName(), message);
@@ -517,11 +664,22 @@ public class FtpFiles implements Files {
     @Override
     public InputStream newInputStream(Path path) throws XenonException {
         LOGGER.debug("newInputStream path = {}", path);
-        assertValidArgumentsForNewInputStream(path);
-        Path pathOnNewFileSystem = getPathOnNewFileSystem(path);
-        FTPClient ftpClient = getFtpClientByPath(pathOnNewFileSystem);
-        InputStream inputStream = getInputStreamFromFtpClient(ftpClient, pathOnNewFileSystem);
-        FtpInputStream ftpInputStream = new FtpInputStream(inputStream, ftpClient, pathOnNewFileSystem, this);
+
+        // The stream keeps its connection until it is closed, as ftp can only do one thing at a time over a connection.
+        FtpConnectionPool pool = getConnectionPool(path);
+        FTPClient ftpClient = pool.acquire();
+
+        InputStream inputStream;
+
+        try {
+            assertValidArgumentsForNewInputStream(ftpClient, path);
+            inputStream = getInputStreamFromFtpClient(ftpClient, path);
+        } catch (XenonException e) {
+            pool.release(ftpClient);
+            throw e;
+        }
+
+        FtpInputStream ftpInputStream = new FtpInputStream(inputStream, ftpClient, pool);
         LOGGER.debug("newInputStream OK");
         return ftpInputStream;
     }
@@ -537,11 +695,13 @@ public class FtpFiles implements Files {
         return ftpQuery.getResult();
     }
 
-    private void assertValidArgumentsForNewInputStream(Path path) throws XenonException {
-        assertPathExists(path);
-        FileAttributes att = getAttributes(path);
-        if (att.isDirectory()) {
-            throw new XenonException(SshAdaptor.ADAPTOR_NAME, "Path " + path + " is a directory!");
+    private void assertValidArgumentsForNewInputStream(FTPClient ftpClient, Path path) throws XenonException {
+        FTPFile ftpFile = stat(ftpClient, path);
+        if (ftpFile == null) {
+            throw new NoSuchPathException(adaptor.getName(), "File does not exist: " + path);
+        }
+        if (ftpFile.isDirectory()) {
+            throw new XenonException(adaptor.getName(), "Path " + path + " is a directory!");
         }
     }
 
@@ -549,32 +709,27 @@ public class FtpFiles implements Files {
     public OutputStream newOutputStream(Path path, OpenOption... options) throws XenonException {
         LOGGER.debug("newOutputStream path = {} option = {}", path, options);
         OpenOptions processedOptions = OpenOptions.processOptions(adaptor.getName(), options);
-        assertValidArgumentsForNewOutputStream(path, processedOptions);
-        Path pathOnNewFileSystem = getPathOnNewFileSystem(path);
-        FTPClient ftpClient = getFtpClientByPath(pathOnNewFileSystem);
-        OutputStream outputStream = getOutputStreamFromFtpClient(ftpClient, pathOnNewFileSystem, processedOptions);
-        FtpOutputStream ftpOutputStream = new FtpOutputStream(outputStream, ftpClient, pathOnNewFileSystem, this);
-        LOGGER.debug("newOutputStream OK");
-        return ftpOutputStream;
-    }
+        assertValidArgumentsForNewOutputStream(processedOptions);
 
-    /*
-     * Creates a copy of the file system of the path and returns a copy of the path that refers to the new file system. This way
-     * structures like streams can have their own dedicated ftp client. This is necessary because ftp can't do two things over the
-     * same connection like uploading to a stream and reading from another stream for example.
-     *
-     * @param path
-     * @return copy of the path referring to a new file system
-     * @throws XenonException
-     */
-    private Path getPathOnNewFileSystem(Path path) throws XenonException {
-        FileSystem fileSystem = path.getFileSystem();
-        FileSystemImplementation fs = (FileSystemImplementation) fileSystem;
-        FileSystemInfo fileSystemInfo = fileSystems.get(fs.getUniqueID());
-        Credential credential = fileSystemInfo.getCredential();
-        FileSystem newFileSystem = newFileSystem(fileSystem.getScheme(), fileSystem.getLocation(), credential,
-                fileSystem.getProperties());
-        return newPath(newFileSystem, path.getRelativePath());
+        // The stream keeps its connection until it is closed, as ftp can only do one thing at a time over a connection.
+        FtpConnectionPool pool = getConnectionPool(path);
+        FTPClient ftpClient = pool.acquire();
+
+        OutputStream outputStream;
+
+        try {
+            assertValidOpenModeForNewOutputStream(ftpClient, path, processedOptions);
+            outputStream = getOutputStreamFromFtpClient(ftpClient, path, processedOptions);
+        } catch (XenonException e) {
+            pool.release(ftpClient);
+            throw e;
+        }
+
+        invalidate(path);
+
+        FtpOutputStream ftpOutputStream = new FtpOutputStream(outputStream, ftpClient, pool);
+        LOGGER.debug("newOutputStream OK");
+        return getFileSystemInfo(path).getCache().invalidateOnClose(path, ftpOutputStream);
     }
 
     private OutputStream getOutputStreamFromFtpClient(FTPClient ftpClient, Path path, OpenOptions options) throws XenonException {
@@ -606,7 +761,7 @@ public class FtpFiles implements Files {
         return ftpQuery;
     }
 
-    private void assertValidArgumentsForNewOutputStream(Path path, OpenOptions processedOptions) throws XenonException {
+    private void assertValidArgumentsForNewOutputStream(OpenOptions processedOptions) throws XenonException {
         if (processedOptions.getReadMode() != null) {
             throw new InvalidOpenOptionsException(adaptor.getName(), "Disallowed open option: READ");
         }
@@ -618,59 +773,31 @@ public class FtpFiles implements Files {
         if (processedOptions.getWriteMode() == null) {
             processedOptions.setWriteMode(OpenOption.WRITE);
         }
+    }
 
+    private void assertValidOpenModeForNewOutputStream(FTPClient ftpClient, Path path, OpenOptions processedOptions)
+            throws XenonException {
         if (processedOptions.getOpenMode() == OpenOption.CREATE) {
-            assertPathNotExists(path);
+            if (stat(ftpClient, path) != null) {
+                throw new PathAlreadyExistsException(adaptor.getName(), "File already exists: " + path);
+            }
         } else if (processedOptions.getOpenMode() == OpenOption.OPEN) {
-            assertPathExists(path);
+            if (stat(ftpClient, path) == null) {
+                throw new NoSuchPathException(adaptor.getName(), "File does not exist: " + path);
+            }
         }
     }
 
     @Override
     public FileAttributes getAttributes(Path path) throws XenonException {
         LOGGER.debug("getAttributes path = {}", path);
-        assertPathExists(path);
-        FTPFile listFile = getFtpFile(path);
-        FileAttributes fileAttributes = new FtpFileAttributes(listFile);
-        LOGGER.debug("getAttributes OK result = {}", fileAttributes);
-        return fileAttributes;
-    }
-
-    private FTPFile getFtpFile(Path path) throws XenonException {
-        FTPFile ftpFile = getRegularFtpFile(path);
+        FTPFile ftpFile = stat(path);
         if (ftpFile == null) {
-            ftpFile = getDirectoryFtpFile(path);
+            throw new NoSuchPathException(adaptor.getName(), "File does not exist: " + path);
         }
-        return ftpFile;
-    }
-
-    private FTPFile getRegularFtpFile(Path pathToRegularFile) throws XenonException {
-        FtpQuery<FTPFile> ftpQuery = new FtpQuery<FTPFile>() {
-            @Override
-            public void doWork(FTPClient ftpClient, String path) throws IOException {
-                setResult(ftpClient.listFiles(path)[0]);
-            }
-        };
-        ftpQuery.execute(getFtpClientByPath(pathToRegularFile), pathToRegularFile, "Failed to retrieve attributes of path");
-        return ftpQuery.getResult();
-    }
-
-    private FTPFile getDirectoryFtpFile(Path path) throws XenonException {
-        FtpQuery<FTPFile> ftpQuery = new FtpQuery<FTPFile>() {
-            @Override
-            public void doWork(FTPClient ftpClient, String path) throws IOException {
-                String targetName = ".";
-                FTPFile[] listFiles = ftpClient.listDirectories(path);
-                for (FTPFile listFile : listFiles) {
-                    if (listFile.getName().equals(targetName)) {
-                        setResult(listFile);
-                        break;
-                    }
-                }
-            }
-        };
-        ftpQuery.execute(getFtpClientByPath(path), path, "Failed to retrieve attributes of directory");
-        return ftpQuery.getResult();
+        FileAttributes fileAttributes = new FtpFileAttributes(ftpFile);
+        LOGGER.debug("getAttributes OK result = {}", fileAttributes);
+        return fileAttributes;
     }
 
     @Override
@@ -701,9 +828,76 @@ public class FtpFiles implements Files {
         LOGGER.debug("end OK");
     }
 
-    private FTPClient getFtpClientByPath(Path path) {
+    private FileSystemInfo getFileSystemInfo(Path path) throws XenonException {
         FileSystemImplementation fileSystem = (FileSystemImplementation) path.getFileSystem();
-        return fileSystems.get(fileSystem.getUniqueID()).getFtpClient();
+        FileSystemInfo info = fileSystems.get(fileSystem.getUniqueID());
+
+        if (info == null) {
+            throw new XenonException(adaptor.getName(), "File system is already closed");
+        }
+
+        return info;
+    }
+
+    private FtpConnectionPool getConnectionPool(Path path) throws XenonException {
+        return getFileSystemInfo(path).getPool();
+    }
+
+    /*
+     * Executes a command that changes the path, using a connection from the pool of the file system of the path. The cached
+     * metadata of the path is invalidated afterwards.
+     */
+    private void execute(FtpCommand ftpCommand, Path path, String messageInCaseOfError) throws XenonException {
+        FtpConnectionPool pool = getConnectionPool(path);
+        FTPClient ftpClient = pool.acquire();
+
+        try {
+            ftpCommand.execute(ftpClient, path, messageInCaseOfError);
+        } finally {
+            pool.release(ftpClient);
+            invalidate(path);
+        }
+    }
+
+    // Invalidates the cached metadata of a changed path. Does nothing if the file system has already been closed.
+    private void invalidate(Path path) {
+        FileSystemInfo info = fileSystems.get(((FileSystemImplementation) path.getFileSystem()).getUniqueID());
+
+        if (info != null) {
+            info.getCache().invalidate(path);
+        }
+    }
+
+    private void invalidateTree(Path path) {
+        FileSystemInfo info = fileSystems.get(((FileSystemImplementation) path.getFileSystem()).getUniqueID());
+
+        if (info != null) {
+            info.getCache().invalidateTree(path);
+        }
+    }
+
+    /**
+     * Add information about the ftp files adaptor to the map.
+     *
+     * @param result
+     *          the map to add information to.
+     */
+    public void getAdaptorSpecificInformation(Map<String, String> result) {
+        long hits = 0;
+        long misses = 0;
+        long evictions = 0;
+
+        synchronized (fileSystems) {
+            for (FileSystemInfo info : fileSystems.values()) {
+                hits += info.getCache().getHits();
+                misses += info.getCache().getMisses();
+                evictions += info.getCache().getEvictions();
+            }
+        }
+
+        result.put(FtpAdaptor.CACHE_HITS, Long.toString(hits));
+        result.put(FtpAdaptor.CACHE_MISSES, Long.toString(misses));
+        result.put(FtpAdaptor.CACHE_EVICTIONS, Long.toString(evictions));
     }
 
     private void assertPathNotExists(Path path) throws XenonException {
@@ -18,14 +18,11 @@ package nl.esciencecenter.xenon.adaptors.ftp;
 import java.io.IOException;
 import java.io.InputStream;
 
-import nl.esciencecenter.xenon.XenonException;
-import nl.esciencecenter.xenon.files.Path;
-
 import org.apache.commons.net.ftp.FTPClient;
 
 /**
  * Wraps an InputStream instance. Only functionality added is sending a pending command completed signal after closing the input
- * stream.
+ * stream, and returning the connection to the connection pool.
  *
  *
  */
@@ -34,14 +31,12 @@ public class FtpInputStream extends InputStream {
     private final InputStream inputStream;
     private final FTPClient ftpClient;
     private boolean completedPendingFtpCommand = false;
-    private final Path path;
-    private final FtpFiles ftpFiles;
+    private final FtpConnectionPool pool;
 
-    public FtpInputStream(InputStream inputStream, FTPClient ftpClient, Path path, FtpFiles ftpFiles) {
+    public FtpInputStream(InputStream inputStream, FTPClient ftpClient, FtpConnectionPool pool) {
         this.inputStream = inputStream;
         this.ftpClient = ftpClient;
-        this.path = path;
-        this.ftpFiles = ftpFiles;
+        this.pool = pool;
     }
 
     @Override
@@ -51,16 +46,25 @@ public class FtpInputStream extends InputStream {
 
     @Override
     public void close() throws IOException {
-        inputStream.close();
-
         // Added functionality:
-        if (!completedPendingFtpCommand) {
-            ftpClient.completePendingCommand();
-            completedPendingFtpCommand = true;
-            try {
-                ftpFiles.close(path.getFileSystem());
-            } catch (XenonException e) {
-                throw new IOException("Could not close file system for ftp input stream", e);
+        if (completedPendingFtpCommand) {
+            inputStream.close();
+            return;
+        }
+
+        completedPendingFtpCommand = true;
+
+        boolean completed = false;
+
+        try {
+            inputStream.close();
+            completed = ftpClient.completePendingCommand();
+        } finally {
+            // Return the connection to the pool, unless the state of the transfer is unknown.
+            if (completed) {
+                pool.release(ftpClient);
+            } else {
+                pool.discard(ftpClient);
             }
         }
     }
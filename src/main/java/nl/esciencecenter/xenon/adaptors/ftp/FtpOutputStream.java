@@ -18,14 +18,11 @@ package nl.esciencecenter.xenon.adaptors.ftp;
 import java.io.IOException;
 import java.io.OutputStream;
 
-import nl.esciencecenter.xenon.XenonException;
-import nl.esciencecenter.xenon.files.Path;
-
 import org.apache.commons.net.ftp.FTPClient;
 
 /**
  * Wraps an OutputStream instance. Only functionality added is sending a pending command completed signal after closing the output
- * stream.
+ * stream, and returning the connection to the connection pool.
  *
  *
  */
@@ -34,14 +31,12 @@ public class FtpOutputStream extends OutputStream {
     private final OutputStream outputStream;
     private final FTPClient ftpClient;
     private boolean completedPendingFtpCommand = false;
-    private final Path path;
-    private final FtpFiles ftpFiles;
+    private final FtpConnectionPool pool;
 
-    public FtpOutputStream(OutputStream outputStream, FTPClient ftpClient, Path path, FtpFiles ftpFiles) {
+    public FtpOutputStream(OutputStream outputStream, FTPClient ftpClient, FtpConnectionPool pool) {
         this.outputStream = outputStream;
-        this.path = path;
         this.ftpClient = ftpClient;
-        this.ftpFiles = ftpFiles;
+        this.pool = pool;
     }
 
     @Override
@@ -61,16 +56,25 @@ public class FtpOutputStream extends OutputStream {
 
     @Override
     public void close() throws IOException {
-        outputStream.close();
-
         // Added functionality:
-        if (!completedPendingFtpCommand) {
-            ftpClient.completePendingCommand();
-            completedPendingFtpCommand = true;
-            try {
-                ftpFiles.close(path.getFileSystem());
-            } catch (XenonException e) {
-                throw new IOException("Could not close file system for ftp output stream", e);
+        if (completedPendingFtpCommand) {
+            outputStream.close();
+            return;
+        }
+
+        completedPendingFtpCommand = true;
+
+        boolean completed = false;
+
+        try {
+            outputStream.close();
+            completed = ftpClient.completePendingCommand();
+        } finally {
+            // Return the connection to the pool, unless the state of the transfer is unknown.
+            if (completed) {
+                pool.release(ftpClient);
+            } else {
+                pool.discard(ftpClient);
             }
         }
     }
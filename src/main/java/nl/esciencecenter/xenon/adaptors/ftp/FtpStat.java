@@ -0,0 +1,146 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.ftp;
+
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPFile;
+import org.apache.commons.net.ftp.FTPReply;
+
+/**
+ * Retrieves the attributes of a single path, using one round trip to the server whenever possible.
+ * 
+ * The MLST command (RFC 3659) is used as long as the server supports it. Otherwise, the path itself is listed. As hidden files 
+ * are included in listings, a directory lists its own "." entry, while a file lists as a single entry with its own name. Only 
+ * if neither is found, the path is looked up in a listing of its parent directory.
+ * 
+ * One instance is used per file system, so the outcome of the first MLST command is remembered for all connections.
+ */
+class FtpStat {
+
+    private volatile boolean mlstSupported = true;
+
+    boolean isMlstSupported() {
+        return mlstSupported;
+    }
+
+    /**
+     * Retrieve the attributes of a path.
+     * 
+     * @param ftpClient
+     *            the connection to use.
+     * @param path
+     *            the absolute path to retrieve the attributes of.
+     * @return the attributes of the path, or <code>null</code> if the path does not exist.
+     * @throws IOException
+     *             if the communication with the server failed.
+     */
+    FTPFile stat(FTPClient ftpClient, String path) throws IOException {
+
+        if (mlstSupported) {
+            FTPFile result = ftpClient.mlistFile(path);
+
+            if (result != null) {
+                return result;
+            }
+
+            if (!isUnsupported(ftpClient.getReplyCode())) {
+                return null;
+            }
+
+            mlstSupported = false;
+        }
+
+        String name = getName(path);
+
+        FTPFile[] entries = ftpClient.listFiles(path);
+
+        for (FTPFile entry : entries) {
+            if (".".equals(entry.getName())) {
+                return entry;
+            }
+        }
+
+        if (entries.length == 1 && !entries[0].isDirectory() && isNamed(entries[0], path, name)) {
+            return entries[0];
+        }
+
+        String parent = getParent(path);
+
+        if (parent == null) {
+            return rootDirectory(path);
+        }
+
+        for (FTPFile entry : ftpClient.listFiles(parent)) {
+            if (isNamed(entry, path, name)) {
+                return entry;
+            }
+        }
+
+        return null;
+    }
+
+    private static boolean isUnsupported(int replyCode) {
+        return replyCode == FTPReply.UNRECOGNIZED_COMMAND || replyCode == FTPReply.SYNTAX_ERROR_IN_ARGUMENTS
+                || replyCode == FTPReply.COMMAND_NOT_IMPLEMENTED || replyCode == FTPReply.COMMAND_NOT_IMPLEMENTED_FOR_PARAMETER;
+    }
+
+    private static boolean isNamed(FTPFile entry, String path, String name) {
+        return name.equals(entry.getName()) || path.equals(entry.getName());
+    }
+
+    private static String trimSeparators(String path) {
+        int end = path.length();
+
+        while (end > 1 && path.charAt(end - 1) == '/') {
+            end--;
+        }
+
+        return path.substring(0, end);
+    }
+
+    private static String getName(String path) {
+        String tmp = trimSeparators(path);
+        return tmp.substring(tmp.lastIndexOf('/') + 1);
+    }
+
+    private static String getParent(String path) {
+        String tmp = trimSeparators(path);
+        int index = tmp.lastIndexOf('/');
+
+        if (index < 0 || tmp.length() == 1) {
+            return null;
+        }
+
+        return index == 0 ? "/" : tmp.substring(0, index);
+    }
+
+    // The root directory always exists, but may not list itself.
+    private static FTPFile rootDirectory(String path) {
+        FTPFile result = new FTPFile();
+        result.setName(path);
+        result.setType(FTPFile.DIRECTORY_TYPE);
+
+        Calendar timestamp = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        timestamp.setTimeInMillis(0);
+        result.setTimestamp(timestamp);
+
+        return result;
+    }
+}
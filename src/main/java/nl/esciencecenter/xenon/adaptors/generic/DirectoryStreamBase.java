@@ -15,37 +15,51 @@
  */
 package nl.esciencecenter.xenon.adaptors.generic;
 
+import java.io.Closeable;
 import java.io.IOException;
-import java.util.Deque;
+import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.NoSuchElementException;
 
 import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.XenonRuntimeException;
+import nl.esciencecenter.xenon.engine.files.FilesEngine;
 import nl.esciencecenter.xenon.engine.files.PathImplementation;
 import nl.esciencecenter.xenon.files.DirectoryStream;
 import nl.esciencecenter.xenon.files.Path;
 
+/**
+ * Base class for directory streams that convert the entries of a directory listing into stream elements.
+ * 
+ * The entries are converted lazily, one at a time, while the stream is iterated. The "." and ".." entries are dropped before a
+ * path is created for them, and no stream element (which may include the attributes of the entry) is created for entries that
+ * are rejected by the filter. If the source of the entries is {@link Closeable}, it is closed when the stream is closed.
+ * 
+ * @param <I>
+ *            Type of the entries in the listing.
+ * @param <O>
+ *            Type of the elements the stream returns.
+ */
 public abstract class DirectoryStreamBase<I, O> implements DirectoryStream<O>, Iterator<O> {
 
-    private final Deque<O> stream;
+    private final Path dir;
+
+    private final DirectoryStream.Filter filter;
+
+    private Iterator<I> entries;
+
+    /** The next element, if it has already been retrieved by hasNext. */
+    private O readAhead;
 
-    @SuppressWarnings("PMD.EmptyIfStmt")
     public DirectoryStreamBase(Path dir, DirectoryStream.Filter filter, List<I> listing) throws XenonException {
-        stream = new LinkedList<>();
-        for (I entry : listing) {
-            String filename = getFileNameFromEntry(entry, dir);
-            if (".".equals(filename) || "..".equals(filename)) {
-                // filter out the "." and ".."
-            } else {
-                Path entryPath = new PathImplementation(dir.getFileSystem(), dir.getRelativePath().resolve(filename));
-                if (filter.accept(entryPath)) {
-                    O streamElement = getStreamElementFromEntry(entry, entryPath);
-                    stream.add(streamElement);
-                }
-            }
-        }
+        this(dir, filter, listing.iterator());
+    }
+
+    public DirectoryStreamBase(Path dir, DirectoryStream.Filter filter, Iterator<I> entries) throws XenonException {
+        this.dir = dir;
+        this.filter = filter;
+        this.entries = entries;
     }
 
     protected abstract O getStreamElementFromEntry(I entry, Path entryPath) throws XenonException;
@@ -59,26 +73,63 @@ public abstract class DirectoryStreamBase<I, O> implements DirectoryStream<O>, I
 
     @Override
     public synchronized void close() throws IOException {
-        stream.clear();
+        Iterator<I> tmp = entries;
+
+        entries = Collections.<I> emptyIterator();
+        readAhead = null;
+
+        if (tmp instanceof Closeable) {
+            ((Closeable) tmp).close();
+        }
     }
 
     @Override
     public synchronized boolean hasNext() {
-        return !stream.isEmpty();
+
+        while (readAhead == null && entries.hasNext()) {
+            readAhead = convert(entries.next());
+        }
+
+        return readAhead != null;
     }
 
     @Override
     public synchronized O next() {
 
-        if (!stream.isEmpty()) {
-            return stream.removeFirst();
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more files in directory");
         }
 
-        throw new NoSuchElementException("No more files in directory");
+        O tmp = readAhead;
+        readAhead = null;
+        return tmp;
+    }
+
+    /*
+     * Converts an entry into a stream element, or returns null if the entry is skipped.
+     */
+    private O convert(I entry) {
+        String filename = getFileNameFromEntry(entry, dir);
+
+        if (".".equals(filename) || "..".equals(filename)) {
+            return null;
+        }
+
+        Path entryPath = new PathImplementation(dir.getFileSystem(), dir.getRelativePath().resolve(filename));
+
+        if (filter != FilesEngine.ACCEPT_ALL_FILTER && !filter.accept(entryPath)) {
+            return null;
+        }
+
+        try {
+            return getStreamElementFromEntry(entry, entryPath);
+        } catch (XenonException e) {
+            throw new XenonRuntimeException(dir.getFileSystem().getAdaptorName(), "Failed to get next element.", e);
+        }
     }
 
     @Override
     public synchronized void remove() {
         throw new UnsupportedOperationException("DirectoryStream iterator does not support remove");
     }
-}
\ No newline at end of file
+}
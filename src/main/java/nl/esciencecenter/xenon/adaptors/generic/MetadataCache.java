@@ -0,0 +1,312 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.generic;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.files.Path;
+import nl.esciencecenter.xenon.files.RelativePath;
+
+/**
+ * MetadataCache keeps the attributes and directory listings of recently inspected paths of a single file system, so repeated 
+ * inspections of the same remote paths do not each need a round trip to the server. The non-existence of a path is cached 
+ * as well.
+ * 
+ * Entries expire after a fixed time to live. When the cache is full, the least recently used entry is evicted. The adaptor 
+ * must invalidate the affected paths after each operation that changes the file system. Changes made in any other way are 
+ * only noticed once the entries have expired. A time to live of 0 disables caching.
+ * 
+ * @param <A>
+ *          the type of the attributes of a single path used by the adaptor.
+ * @param <L>
+ *          the type of a directory listing used by the adaptor.
+ * 
+ * @version 1.0
+ * @since 1.0
+ */
+public class MetadataCache<A, L> {
+
+    /**
+     * Loads a value from the file system when it is not found in the cache.
+     */
+    public interface Loader<V> {
+        V load() throws XenonException;
+    }
+
+    private static final class CachedValue {
+
+        private final Object value;
+        private final long expires;
+
+        CachedValue(Object value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+
+    private static final char ATTRIBUTES = 'a';
+    private static final char LISTING = 'l';
+
+    private final String name;
+
+    private final int maxEntries;
+
+    private final long timeToLive;
+
+    private final Map<String, CachedValue> entries;
+
+    /** Incremented on every invalidation, so values loaded during a concurrent change are not cached. */
+    private long generation = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * Create a new MetadataCache.
+     * 
+     * @param name
+     *          the name of the file system (used in {@link #toString()}).
+     * @param maxEntries
+     *          the maximum number of attributes and listings in the cache.
+     * @param timeToLive
+     *          the time after which an entry expires (in ms.), or 0 to disable caching.
+     */
+    public MetadataCache(String name, int maxEntries, long timeToLive) {
+        this.name = name;
+        this.maxEntries = maxEntries;
+        this.timeToLive = timeToLive;
+
+        entries = new LinkedHashMap<String, CachedValue>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedValue> eldest) {
+                if (size() > MetadataCache.this.maxEntries) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return timeToLive > 0 && maxEntries > 0;
+    }
+
+    private static String key(char type, RelativePath path) {
+        return type + path.normalize().getAbsolutePath();
+    }
+
+    /**
+     * Returns the attributes of a path, using the loader if they are not cached.
+     * 
+     * @param path
+     *          the path.
+     * @param loader
+     *          loads the attributes of the path, or returns <code>null</code> if the path does not exist.
+     * @return the attributes of the path, or <code>null</code> if the path does not exist.
+     * @throws XenonException
+     *          if the loader failed.
+     */
+    public A getAttributes(Path path, Loader<A> loader) throws XenonException {
+        return get(key(ATTRIBUTES, path.getRelativePath()), loader);
+    }
+
+    /**
+     * Returns the listing of a directory, using the loader if it is not cached. The listing must not be modified.
+     * 
+     * @param dir
+     *          the directory.
+     * @param loader
+     *          loads the listing of the directory.
+     * @return the listing of the directory.
+     * @throws XenonException
+     *          if the loader failed.
+     */
+    public L getListing(Path dir, Loader<L> loader) throws XenonException {
+        return get(key(LISTING, dir.getRelativePath()), loader);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <V> V get(String key, Loader<V> loader) throws XenonException {
+
+        if (!isEnabled()) {
+            return loader.load();
+        }
+
+        long loadGeneration;
+
+        synchronized (this) {
+            CachedValue entry = entries.get(key);
+
+            if (entry != null) {
+                if (entry.expires > currentTimeMillis()) {
+                    hits++;
+                    return (V) entry.value;
+                }
+
+                entries.remove(key);
+            }
+
+            misses++;
+            loadGeneration = generation;
+        }
+
+        V value = loader.load();
+
+        synchronized (this) {
+            if (loadGeneration == generation) {
+                entries.put(key, new CachedValue(value, currentTimeMillis() + timeToLive));
+            }
+        }
+
+        return value;
+    }
+
+    /**
+     * Invalidate the attributes and listing of a path, and the listing of its parent directory. Must be called after an 
+     * operation that creates, deletes or changes the path.
+     * 
+     * @param path
+     *          the path that was changed.
+     */
+    public void invalidate(Path path) {
+
+        if (!isEnabled()) {
+            return;
+        }
+
+        RelativePath tmp = path.getRelativePath();
+        RelativePath parent = tmp.getParent();
+
+        synchronized (this) {
+            generation++;
+            entries.remove(key(ATTRIBUTES, tmp));
+            entries.remove(key(LISTING, tmp));
+
+            if (parent != null) {
+                entries.remove(key(LISTING, parent));
+            }
+        }
+    }
+
+    /**
+     * Invalidate a path and everything below it. Must be called after an operation that moves or deletes a directory tree.
+     * 
+     * @param path
+     *          the root of the tree that was changed.
+     */
+    public void invalidateTree(Path path) {
+
+        if (!isEnabled()) {
+            return;
+        }
+
+        invalidate(path);
+
+        String prefix = path.getRelativePath().normalize().getAbsolutePath();
+
+        if (!prefix.endsWith("/")) {
+            prefix = prefix + "/";
+        }
+
+        synchronized (this) {
+            Iterator<String> it = entries.keySet().iterator();
+
+            while (it.hasNext()) {
+                if (it.next().startsWith(prefix, 1)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a stream that invalidates the path it writes to when it is closed, as the size and modification time of the 
+     * path change while writing.
+     * 
+     * @param path
+     *          the path the stream writes to.
+     * @param out
+     *          the stream.
+     * @return the wrapped stream, or <code>out</code> itself if caching is disabled.
+     */
+    public OutputStream invalidateOnClose(final Path path, OutputStream out) {
+
+        if (!isEnabled()) {
+            return out;
+        }
+
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    invalidate(path);
+                }
+            }
+        };
+    }
+
+    /**
+     * Remove all entries from the cache.
+     */
+    public synchronized void clear() {
+        generation++;
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    // Protected, so tests can control time.
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "MetadataCache [name=" + name + ", size=" + entries.size() + ", hits=" + hits + ", misses=" + misses 
+                + ", evictions=" + evictions + "]";
+    }
+}
@@ -59,6 +59,9 @@ public class GridEngineAdaptor extends ScriptingAdaptor {
     /** Polling delay for jobs started by this adaptor. */
     public static final String POLL_DELAY_PROPERTY = PREFIX + "poll.delay";
 
+    /** Maximum age of the cached status of all jobs. */
+    public static final String STATUS_CACHE_PROPERTY = PREFIX + "status.cache.interval";
+
     /** Human readable description of this adaptor */
     public static final String ADAPTOR_DESCRIPTION = "The SGE Adaptor submits jobs to a (Sun/Ocacle/Univa) Grid Engine scheduler."
             + " This adaptor uses either the local or the ssh adaptor to gain access to the scheduler machine.";
@@ -73,7 +76,11 @@ public class GridEngineAdaptor extends ScriptingAdaptor {
                 "60000", "Number of milliseconds a job is allowed to take going from the queue to the qacct output."),
 
         new XenonPropertyDescriptionImplementation(POLL_DELAY_PROPERTY, Type.LONG, EnumSet.of(Component.SCHEDULER), "1000",
-                "Number of milliseconds between polling the status of a job."));
+                "Number of milliseconds between polling the status of a job."),
+
+        new XenonPropertyDescriptionImplementation(STATUS_CACHE_PROPERTY, Type.LONG, EnumSet.of(Component.SCHEDULER), "1000",
+                "Number of milliseconds the status of all jobs is cached before it is fetched from the scheduler again "
+                + "(0 disables the cache)."));
 
     /**
      * Create a new GridEngineAdaptor.
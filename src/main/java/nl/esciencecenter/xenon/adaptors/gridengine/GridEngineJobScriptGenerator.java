@@ -96,11 +96,8 @@ final class GridEngineJobScriptGenerator {
     }
 
     @SuppressWarnings("PMD.NPathComplexity")
-    protected static String generate(JobDescription description, RelativePath fsEntryPath, GridEngineSetup setup)
-            throws XenonException {
-        
-        StringBuilder stringBuilder = new StringBuilder();
-        Formatter script = new Formatter(stringBuilder, Locale.US);
+    private static void generateHeader(Formatter script, JobDescription description, RelativePath fsEntryPath,
+            GridEngineSetup setup) throws XenonException {
 
         script.format("#!/bin/sh\n");
 
@@ -155,18 +152,33 @@ final class GridEngineJobScriptGenerator {
         } else {
             script.format("#$ -e '%s'\n", description.getStderr());
         }
+    }
 
+    private static void generateEnvironment(Formatter script, JobDescription description) {
         for (Map.Entry<String, String> entry : description.getEnvironment().entrySet()) {
             script.format("export %s=\"%s\"\n", entry.getKey(), entry.getValue());
         }
 
         script.format("\n");
+    }
 
+    private static void generateContent(Formatter script, JobDescription description) {
         if (description.getNodeCount() == 1 && description.getProcessesPerNode() == 1) {
             generateSerialScriptContent(description, script);
         } else {
             generateParallelScriptContent(description, script);
         }
+    }
+
+    protected static String generate(JobDescription description, RelativePath fsEntryPath, GridEngineSetup setup)
+            throws XenonException {
+        
+        StringBuilder stringBuilder = new StringBuilder();
+        Formatter script = new Formatter(stringBuilder, Locale.US);
+
+        generateHeader(script, description, fsEntryPath, setup);
+        generateEnvironment(script, description);
+        generateContent(script, description);
 
         script.close();
 
@@ -174,4 +186,69 @@ final class GridEngineJobScriptGenerator {
 
         return stringBuilder.toString();
     }
+
+    /**
+     * Generate a script that runs the given descriptions as the tasks of a single job array. The descriptions are assumed to
+     * only differ in executable and arguments. Each task selects its command using its (1-based) index in the array.
+     * 
+     * @param descriptions
+     *          the descriptions of the tasks in the array.
+     * @param fsEntryPath
+     *          the entry path of the scheduler file system, used to resolve relative working directories.
+     * @param setup
+     *          the setup of the GridEngine scheduler, used to determine the number of slots of parallel jobs.
+     * @return the job script.
+     * @throws XenonException
+     *          if the parallel environment specification is invalid.
+     */
+    protected static String generateArray(JobDescription[] descriptions, RelativePath fsEntryPath, GridEngineSetup setup)
+            throws XenonException {
+
+        StringBuilder stringBuilder = new StringBuilder();
+        Formatter script = new Formatter(stringBuilder, Locale.US);
+
+        generateHeader(script, descriptions[0], fsEntryPath, setup);
+
+        script.format("#$ -t 1-%d\n", descriptions.length);
+
+        generateEnvironment(script, descriptions[0]);
+
+        String[] commands = new String[descriptions.length];
+        boolean identical = true;
+
+        for (int i = 0; i < descriptions.length; i++) {
+            StringBuilder command = new StringBuilder();
+            Formatter formatter = new Formatter(command, Locale.US);
+            generateContent(formatter, descriptions[i]);
+            formatter.close();
+
+            commands[i] = command.toString();
+            identical = identical && commands[i].equals(commands[0]);
+        }
+
+        if (identical) {
+            script.format("%s", commands[0]);
+        } else {
+            //select the command using the index of this task in the array, which starts at 1 
+            script.format("case \"$SGE_TASK_ID\" in\n");
+
+            for (int i = 0; i < commands.length; i++) {
+                script.format("%d)\n", i + 1);
+
+                for (String line : commands[i].split("\n")) {
+                    script.format("    %s\n", line);
+                }
+
+                script.format("    ;;\n");
+            }
+
+            script.format("esac\n");
+        }
+
+        script.close();
+
+        LOGGER.debug("Created job array script:\n{} for {} tasks", stringBuilder, descriptions.length);
+
+        return stringBuilder.toString();
+    }
 }
@@ -19,17 +19,17 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 
 import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.adaptors.scripting.JobStateTable;
 import nl.esciencecenter.xenon.adaptors.scripting.RemoteCommandRunner;
 import nl.esciencecenter.xenon.adaptors.scripting.SchedulerConnection;
 import nl.esciencecenter.xenon.adaptors.scripting.ScriptingAdaptor;
 import nl.esciencecenter.xenon.adaptors.scripting.ScriptingParser;
+import nl.esciencecenter.xenon.adaptors.scripting.StatusCache;
 import nl.esciencecenter.xenon.adaptors.slurm.SlurmAdaptor;
 import nl.esciencecenter.xenon.credentials.Credential;
 import nl.esciencecenter.xenon.engine.XenonEngine;
@@ -61,8 +61,6 @@ public class GridEngineSchedulerConnection extends SchedulerConnection {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(GridEngineSchedulerConnection.class);
 
-    public static final String JOB_OPTION_JOB_SCRIPT = "job.script";
-
     public static final String JOB_OPTION_PARALLEL_ENVIRONMENT = "parallel.environment";
 
     public static final String JOB_OPTION_PARALLEL_SLOTS = "parallel.slots";
@@ -74,6 +72,42 @@ public class GridEngineSchedulerConnection extends SchedulerConnection {
 
     private static final String QACCT_HEADER = "==============================================================";
 
+    //default maximum number of tasks in a job array (the max_aj_tasks setting of GridEngine)
+    private static final int MAX_ARRAY_SIZE = 75000;
+
+    /**
+     * Returns the job number of the given job identifier. The identifier of a task of a job array consists of the job number
+     * and the task number separated by a dot, for example "123.4". Other identifiers only consist of the job number.
+     * 
+     * @param identifier
+     *          the identifier of the job.
+     * @return the job number of the job.
+     */
+    protected static String getJobNumber(String identifier) {
+        int dot = identifier.indexOf('.');
+
+        if (dot < 0) {
+            return identifier;
+        }
+        return identifier.substring(0, dot);
+    }
+
+    /**
+     * Returns the task number of the given job identifier, or <code>null</code> if the job is not a task of a job array.
+     * 
+     * @param identifier
+     *          the identifier of the job.
+     * @return the task number of the job, or <code>null</code> if the job is not a task of a job array.
+     */
+    protected static String getTaskNumber(String identifier) {
+        int dot = identifier.indexOf('.');
+
+        if (dot < 0) {
+            return null;
+        }
+        return identifier.substring(dot + 1);
+    }
+
     protected static void verifyJobDescription(JobDescription description) throws XenonException {
         SchedulerConnection.verifyJobOptions(description.getJobOptions(), VALID_JOB_OPTIONS, GridEngineAdaptor.ADAPTOR_NAME);
 
@@ -168,17 +202,19 @@ public class GridEngineSchedulerConnection extends SchedulerConnection {
     private final long accountingGraceTime;
 
     /**
-     * Map with the last seen time of jobs. There is a delay between jobs disappearing from the qstat queue output, and
-     * information about this job appearing in the qacct output. Instead of throwing an exception, we allow for a certain grace
-     * time. Jobs will report the status "pending" during this time. Typical delays are in the order of seconds.
+     * Jobs seen recently, expiring after the grace time. There is a delay between jobs disappearing from the qstat queue 
+     * output, and information about this job appearing in the qacct output. Instead of throwing an exception, we allow for a 
+     * certain grace time. Jobs will report the status "pending" during this time. Typical delays are in the order of seconds.
      */
-    private final Map<String, Long> lastSeenMap;
+    private final JobStateTable<Boolean> seenJobs;
 
-    //list of jobs we have killed before they even started. These will not end up in qacct, so we keep them here.
-    private final Set<Long> deletedJobs;
+    //jobs we have killed before they even started. These will not end up in qacct, so we keep them here (for a while).
+    private final JobStateTable<Boolean> deletedJobs;
 
     private final Scheduler scheduler;
 
+    private final StatusCache statusCache;
+
     private final GridEngineXmlParser parser;
 
     private final GridEngineSetup setupInfo;
@@ -194,8 +230,18 @@ public class GridEngineSchedulerConnection extends SchedulerConnection {
 
         parser = new GridEngineXmlParser(ignoreVersion);
 
-        lastSeenMap = new HashMap<>();
-        deletedJobs = new HashSet<>();
+        seenJobs = new JobStateTable<>(GridEngineAdaptor.ADAPTOR_NAME + " seen jobs", JobStateTable.DEFAULT_MAX_SIZE,
+                accountingGraceTime);
+        deletedJobs = new JobStateTable<>(GridEngineAdaptor.ADAPTOR_NAME + " deleted jobs", JobStateTable.DEFAULT_MAX_SIZE,
+                JobStateTable.DEFAULT_LIFETIME);
+
+        //status of all jobs in the queue, shared by all status requests
+        statusCache = new StatusCache(GridEngineAdaptor.ADAPTOR_NAME, new StatusCache.Fetcher() {
+            @Override
+            public Map<String, Map<String, String>> fetch() throws XenonException {
+                return getQstatInfo(null);
+            }
+        }, properties.getLongProperty(GridEngineAdaptor.STATUS_CACHE_PROPERTY));
 
         //will run a few commands to fetch info
         setupInfo = new GridEngineSetup(this);
@@ -219,48 +265,23 @@ public class GridEngineSchedulerConnection extends SchedulerConnection {
         return null;
     }
 
-    private synchronized void updateJobsSeenMap(Set<String> identifiers) {
-        long currentTime = System.currentTimeMillis();
-
-        for (String identifier : identifiers) {
-            lastSeenMap.put(identifier, currentTime);
-        }
-
-        long expiredTime = currentTime + accountingGraceTime;
-
-        Iterator<Entry<String, Long>> iterator = lastSeenMap.entrySet().iterator();
-
-        while (iterator.hasNext()) {
-            Entry<String, Long> entry = iterator.next();
-
-            if (entry.getValue() > expiredTime) {
-                iterator.remove();
-            }
-        }
-
+    private void updateJobsSeenMap(Set<String> identifiers) {
+        seenJobs.putAll(identifiers, Boolean.TRUE);
     }
 
-    private synchronized boolean haveRecentlySeen(String identifier) {
-        if (!lastSeenMap.containsKey(identifier)) {
-            return false;
-        }
-
-        return (lastSeenMap.get(identifier) + accountingGraceTime) > System.currentTimeMillis();
+    private boolean haveRecentlySeen(String identifier) {
+        return seenJobs.contains(identifier);
     }
 
-    private synchronized void addDeletedJob(Job job) {
-        deletedJobs.add(Long.parseLong(job.getIdentifier()));
+    private void addDeletedJob(Job job) {
+        deletedJobs.put(job.getIdentifier(), Boolean.TRUE);
     }
 
     /*
      * Note: Works exactly once per job.
      */
-    private synchronized boolean jobWasDeleted(Job job) {
-        //optimization of common case
-        if (deletedJobs.isEmpty()) {
-            return false;
-        }
-        return deletedJobs.remove(Long.parseLong(job.getIdentifier()));
+    private boolean jobWasDeleted(Job job) {
+        return deletedJobs.remove(job.getIdentifier()) != null;
     }
 
     private void jobsFromStatus(String statusOutput, Scheduler scheduler, List<Job> result) throws XenonException {
@@ -356,46 +377,165 @@ public class GridEngineSchedulerConnection extends SchedulerConnection {
 
     }
 
+    private Job createJob(JobDescription description, String qsubOutput) throws XenonException {
+        String identifier = ScriptingParser.parseJobIDFromLine(qsubOutput, GridEngineAdaptor.ADAPTOR_NAME, "Your job");
+
+        updateJobsSeenMap(Collections.singleton(identifier));
+
+        return new JobImplementation(getScheduler(), identifier, description, false, false);
+    }
+
     @Override
     public Job submitJob(JobDescription description) throws XenonException {
         String output;
-        RelativePath fsEntryPath = getFsEntryPath().getRelativePath();
         
         verifyJobDescription(description);
 
         //check for option that overrides job script completely.
-        String customScriptFile = description.getJobOptions().get(JOB_OPTION_JOB_SCRIPT);
+        String customScriptFile = getCustomScriptFile(description);
 
         if (customScriptFile == null) {
-            String jobScript = GridEngineJobScriptGenerator.generate(description, fsEntryPath, setupInfo);
+            String jobScript = GridEngineJobScriptGenerator.generate(description, getFsEntryPath().getRelativePath(), 
+                    setupInfo);
 
             output = runCheckedCommand(jobScript, "qsub");
         } else {
             //the user gave us a job script. Pass it to qsub as-is
+            output = runCheckedCommand(null, "qsub", customScriptFile);
+        }
+
+        Job result = createJob(description, output);
 
-            //convert to absolute path if needed
-            if (!customScriptFile.startsWith("/")) {
-                RelativePath scriptFile = fsEntryPath.resolve(customScriptFile);
-                customScriptFile = scriptFile.getAbsolutePath();
+        statusCache.invalidate();
+
+        return result;
+    }
+
+    @Override
+    public Job[] submitJobs(JobDescription... descriptions) throws XenonException {
+        for (JobDescription description : descriptions) {
+            verifyJobDescription(description);
+        }
+
+        try {
+            if (descriptions.length > 1 && isJobArray(descriptions)) {
+                return submitJobArrays(descriptions);
+            } else {
+                return submitBatchJobs(descriptions);
             }
+        } finally {
+            statusCache.invalidate();
+        }
+    }
 
-            output = runCheckedCommand(null, "qsub", customScriptFile);
+    // A job array may contain at most MAX_ARRAY_SIZE tasks, so a large batch is submitted as several job arrays.
+    private Job[] submitJobArrays(JobDescription[] descriptions) throws XenonException {
+        Job[] result = new Job[descriptions.length];
+        int index = 0;
+
+        try {
+            for (JobDescription[] part : splitJobArray(descriptions, MAX_ARRAY_SIZE)) {
+                Job[] jobs = submitJobArray(part);
+                System.arraycopy(jobs, 0, result, index, jobs.length);
+                index += jobs.length;
+            }
+        } catch (XenonException e) {
+            cancelJobs(result);
+            throw e;
         }
 
-        String identifier = ScriptingParser.parseJobIDFromLine(output, GridEngineAdaptor.ADAPTOR_NAME, "Your job");
+        return result;
+    }
 
-        updateJobsSeenMap(Collections.singleton(identifier));
+    private Job[] submitJobArray(JobDescription[] descriptions) throws XenonException {
+        String jobScript = GridEngineJobScriptGenerator.generateArray(descriptions, getFsEntryPath().getRelativePath(), 
+                setupInfo);
 
-        return new JobImplementation(getScheduler(), identifier, description, false, false);
+        String output = runCheckedCommand(jobScript, "qsub");
+
+        //the output contains the range of tasks after the job number, e.g. "123.1-4:1"
+        String jobNumber = getJobNumber(ScriptingParser.parseJobIDFromLine(output, GridEngineAdaptor.ADAPTOR_NAME,
+                "Your job-array"));
+
+        //each task of the array has its own identifier. Task numbers start at 1
+        Job[] result = new Job[descriptions.length];
+        Set<String> identifiers = new HashSet<>();
+
+        for (int i = 0; i < descriptions.length; i++) {
+            result[i] = new JobImplementation(getScheduler(), jobNumber + "." + (i + 1), descriptions[i], false, false);
+            identifiers.add(result[i].getIdentifier());
+        }
+
+        updateJobsSeenMap(identifiers);
+
+        return result;
+    }
+
+    private Job[] submitBatchJobs(JobDescription[] descriptions) throws XenonException {
+        String[] jobScripts = new String[descriptions.length];
+        String[][] arguments = new String[descriptions.length][];
+
+        for (int i = 0; i < descriptions.length; i++) {
+            String customScriptFile = getCustomScriptFile(descriptions[i]);
+
+            if (customScriptFile == null) {
+                jobScripts[i] = GridEngineJobScriptGenerator.generate(descriptions[i], getFsEntryPath().getRelativePath(), 
+                        setupInfo);
+                arguments[i] = new String[0];
+            } else {
+                arguments[i] = new String[] { customScriptFile };
+            }
+        }
+
+        //run all qsub commands at once
+        RemoteCommandRunner[] runners = runCommands(jobScripts, "qsub", arguments);
+
+        Job[] result = new Job[descriptions.length];
+        XenonException error = null;
+
+        for (int i = 0; i < descriptions.length; i++) {
+            try {
+                if (!runners[i].success()) {
+                    throw new XenonException(GridEngineAdaptor.ADAPTOR_NAME, "could not submit job: " + runners[i]);
+                }
+
+                result[i] = createJob(descriptions[i], runners[i].getStdout());
+            } catch (XenonException e) {
+                //remember the first failure
+                if (error == null) {
+                    error = e;
+                }
+            }
+        }
+
+        if (error != null) {
+            cancelJobs(result);
+            throw error;
+        }
+
+        return result;
     }
 
     @Override
     public JobStatus cancelJob(Job job) throws XenonException {
         String identifier = job.getIdentifier();
-        String qdelOutput = runCheckedCommand(null, "qdel", identifier);
+        String taskNumber = getTaskNumber(identifier);
+        String qdelOutput;
+        String killedOutput;
+        String deletedOutput;
+
+        if (taskNumber == null) {
+            qdelOutput = runCheckedCommand(null, "qdel", identifier);
+            killedOutput = "has registered the job " + identifier + " for deletion";
+            deletedOutput = "has deleted job " + identifier;
+        } else {
+            //only delete this task, not the entire job array
+            qdelOutput = runCheckedCommand(null, "qdel", getJobNumber(identifier), "-t", taskNumber);
+            killedOutput = "has registered the job-array task " + identifier + " for deletion";
+            deletedOutput = "has deleted job-array task " + identifier;
+        }
 
-        String killedOutput = "has registered the job " + identifier + " for deletion";
-        String deletedOutput = "has deleted job " + identifier;
+        statusCache.invalidate();
 
         int matched = ScriptingParser.checkIfContains(qdelOutput, GridEngineAdaptor.ADAPTOR_NAME, killedOutput, deletedOutput);
 
@@ -410,7 +550,18 @@ public class GridEngineSchedulerConnection extends SchedulerConnection {
         return getJobStatus(job);
     }
 
-    private Map<String, Map<String, String>> getQstatInfo() throws XenonException {
+    /*
+     * Returns the status of the given jobs from the shared snapshot. Without a snapshot to share, only the given jobs are
+     * parsed from the qstat output.
+     */
+    private Map<String, Map<String, String>> getStatusInfo(Job... jobs) throws XenonException {
+        if (statusCache.isEnabled()) {
+            return statusCache.get();
+        }
+        return getQstatInfo(identifiersAsSet(jobs));
+    }
+
+    private Map<String, Map<String, String>> getQstatInfo(Set<String> jobIDs) throws XenonException {
         RemoteCommandRunner runner = runCommand(null, "qstat", "-xml");
 
         if (!runner.success()) {
@@ -418,7 +569,7 @@ public class GridEngineSchedulerConnection extends SchedulerConnection {
             return new HashMap<>(0);
         }
 
-        Map<String, Map<String, String>> result = parser.parseJobInfos(runner.getStdout());
+        Map<String, Map<String, String>> result = parser.parseJobInfos(runner.getStdout(), jobIDs);
 
         //mark jobs we found as seen, in case they disappear from the queue
         updateJobsSeenMap(result.keySet());
@@ -427,15 +578,30 @@ public class GridEngineSchedulerConnection extends SchedulerConnection {
     }
 
     private Map<String, String> getQacctInfo(Job job) throws XenonException {
-        RemoteCommandRunner runner = runCommand(null, "qacct", "-j", job.getIdentifier());
+        String identifier = job.getIdentifier();
+        String taskNumber = getTaskNumber(identifier);
+        RemoteCommandRunner runner;
+
+        if (taskNumber == null) {
+            runner = runCommand(null, "qacct", "-j", identifier);
+        } else {
+            runner = runCommand(null, "qacct", "-j", getJobNumber(identifier), "-t", taskNumber);
+        }
 
         if (!runner.success()) {
             LOGGER.debug("failed to get job status {}", runner);
             return null;
         }
 
-        return ScriptingParser.parseKeyValueLines(runner.getStdout(), ScriptingParser.WHITESPACE_REGEX,
+        Map<String, String> result = ScriptingParser.parseKeyValueLines(runner.getStdout(), ScriptingParser.WHITESPACE_REGEX,
                 GridEngineAdaptor.ADAPTOR_NAME, QACCT_HEADER);
+
+        //qacct reports the job number and task number of a task separately
+        if (taskNumber != null && taskNumber.equals(result.get("taskid"))) {
+            result.put("jobnumber", result.get("jobnumber") + "." + taskNumber);
+        }
+
+        return result;
     }
 
     /**
@@ -492,7 +658,7 @@ public class GridEngineSchedulerConnection extends SchedulerConnection {
             throw new NoSuchJobException(GridEngineAdaptor.ADAPTOR_NAME, "Job <null> not found on server");
         }
         
-        Map<String, Map<String, String>> info = getQstatInfo();
+        Map<String, Map<String, String>> info = getStatusInfo(job);
 
         JobStatus result = getJobStatus(info, job);
 
@@ -506,7 +672,7 @@ public class GridEngineSchedulerConnection extends SchedulerConnection {
 
     @Override
     public JobStatus[] getJobStatuses(Job... jobs) throws XenonException {
-        Map<String, Map<String, String>> info = getQstatInfo();
+        Map<String, Map<String, String>> info = getStatusInfo(jobs);
 
         JobStatus[] result = new JobStatus[jobs.length];
 
@@ -532,4 +698,9 @@ public class GridEngineSchedulerConnection extends SchedulerConnection {
         throw new XenonException(GridEngineAdaptor.ADAPTOR_NAME, "does not support interactive jobs");
     }
 
+    @Override
+    public void close() throws XenonException {
+        statusCache.close();
+        super.close();
+    }
 }
@@ -17,16 +17,24 @@ package nl.esciencecenter.xenon.adaptors.gridengine;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import nl.esciencecenter.xenon.IncompatibleVersionException;
 import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.adaptors.scripting.CompactRecord;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -48,10 +56,14 @@ public class GridEngineXmlParser {
     //Tag containing version of xml schema used in qstat -xml output
     private static final String SGE62_SCHEMA_ATTRIBUTE = "xmlns:xsd";
 
+    private static final String SGE62_SCHEMA_PREFIX = "xsd";
+
     private static final String SGE62_SCHEMA_VALUE = "http://gridengine.sunsource.net/source/browse/*checkout*/gridengine/source/dist/util/resources/schemas/qstat/qstat.xsd?revision=1.11";
 
     private final DocumentBuilder documentBuilder;
 
+    private final XMLInputFactory inputFactory;
+
     private final boolean ignoreVersion;
 
     GridEngineXmlParser(boolean ignoreVersion) throws XenonException {
@@ -63,26 +75,40 @@ public class GridEngineXmlParser {
         } catch (ParserConfigurationException e) {
             throw new XenonException(GridEngineAdaptor.ADAPTOR_NAME, "could not create parser for xml files", e);
         }
+
+        inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
     }
 
     private void checkVersion(Document document) throws IncompatibleVersionException {
-        Element documentElement = document.getDocumentElement();
+        checkVersion(document.getDocumentElement().getAttribute(SGE62_SCHEMA_ATTRIBUTE));
+    }
 
-        if (!documentElement.getAttribute(SGE62_SCHEMA_ATTRIBUTE).equals(SGE62_SCHEMA_VALUE)) {
+    private void checkVersion(String schema) throws IncompatibleVersionException {
+        if (!schema.equals(SGE62_SCHEMA_VALUE)) {
             if (ignoreVersion) {
-                LOGGER.warn("cannot determine version, version attribute found: \""
-                        + documentElement.getAttribute(SGE62_SCHEMA_ATTRIBUTE) + "\". Ignoring as requested by "
+                LOGGER.warn("cannot determine version, version attribute found: \"" + schema + "\". Ignoring as requested by "
                         + GridEngineAdaptor.IGNORE_VERSION_PROPERTY);
             } else {
                 throw new IncompatibleVersionException(GridEngineAdaptor.ADAPTOR_NAME,
-                        "cannot determine version, version attribute found: \""
-                                + documentElement.getAttribute(SGE62_SCHEMA_ATTRIBUTE) + "\". Use the "
+                        "cannot determine version, version attribute found: \"" + schema + "\". Use the "
                                 + GridEngineAdaptor.IGNORE_VERSION_PROPERTY + " property to ignore this error");
             }
 
         }
     }
 
+    //returns the schema declared on the current element, or an empty string if it declares none
+    private static String getSchema(XMLStreamReader reader) {
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            if (SGE62_SCHEMA_PREFIX.equals(reader.getNamespacePrefix(i))) {
+                return reader.getNamespaceURI(i);
+            }
+        }
+        return "";
+    }
+
     protected Document parseDocument(String data) throws XenonException {
         try {
             ByteArrayInputStream in = new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8));
@@ -175,38 +201,215 @@ public class GridEngineXmlParser {
      *             if the server version is not compatible with this adaptor
      */
     protected Map<String, Map<String, String>> parseJobInfos(String data) throws XenonException {
+        return parseJobInfos(data, null);
+    }
+
+    /**
+     * Parses job info from "qstat -xml", without building a document of the entire output. Only the jobs with the given
+     * identifiers are returned. Other jobs are skipped as soon as their job number is found.
+     * 
+     * The tasks of a job array are returned separately, using the job number and task number as identifier (for example
+     * "123.4"). This identifier is also used as the job number in the info of the task.
+     * 
+     * @param data
+     *            the stream to get the xml data from
+     * @param jobIDs
+     *            the identifiers of the jobs to return, or <code>null</code> to return all jobs.
+     * @return a map containing the info of the requested jobs found, indexed by job number (and task number for tasks of a
+     *         job array)
+     * @throws XenonException
+     *             if the file could not be parsed
+     * @throws XenonException
+     *             if the server version is not compatible with this adaptor
+     */
+    protected Map<String, Map<String, String>> parseJobInfos(String data, Set<String> jobIDs) throws XenonException {
         Map<String, Map<String, String>> result = new HashMap<>();
+        CompactRecord.Builder builder = new CompactRecord.Builder();
+        XMLStreamReader reader = null;
 
-        Document document = parseDocument(data);
+        //tasks of a job array are listed under the job number of the array
+        Set<String> jobNumbers = null;
 
-        LOGGER.debug("root node of xml file: " + document.getDocumentElement().getNodeName());
-        NodeList nodes = document.getElementsByTagName("job_list");
+        if (jobIDs != null) {
+            jobNumbers = new HashSet<>();
 
-        for (int i = 0; i < nodes.getLength(); i++) {
-            Node node = nodes.item(i);
+            for (String jobID : jobIDs) {
+                jobNumbers.add(GridEngineSchedulerConnection.getJobNumber(jobID));
+            }
+        }
 
-            if (node.getNodeType() == Node.ELEMENT_NODE) {
-                Element element = (Element) node;
+        try {
+            reader = inputFactory.createXMLStreamReader(new StringReader(data));
 
-                Map<String, String> jobInfo = mapFromElement(element);
+            reader.nextTag();
+            LOGGER.debug("root node of xml file: " + reader.getLocalName());
+            checkVersion(getSchema(reader));
 
-                String state = element.getAttribute("state");
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals("job_list")) {
+                    String jobID = parseJob(reader, builder, jobNumbers);
+                    String tasks = builder.get("tasks");
 
-                if (state != null && state.length() > 0) {
-                    jobInfo.put("long_state", state);
+                    if (jobID != null && tasks != null) {
+                        putTasks(result, builder, jobID, tasks, jobIDs);
+                    } else if (jobID != null) {
+                        result.put(jobID, builder.build());
+                    }
+                    builder.clear();
                 }
+            }
+        } catch (XMLStreamException e) {
+            throw new XenonException(GridEngineAdaptor.ADAPTOR_NAME, "could not parse qstat xml file", e);
+        } finally {
+            close(reader);
+        }
 
-                String jobID = jobInfo.get("JB_job_number");
+        return result;
+    }
 
-                if (jobID == null || jobID.length() == 0) {
-                    throw new XenonException(GridEngineAdaptor.ADAPTOR_NAME, "found job in queue with no job number");
+    /*
+     * Parses the tags of a single job_list element into the builder, and moves the reader to the end of the element. Returns the 
+     * job number, or null if the job number was not requested.
+     */
+    private String parseJob(XMLStreamReader reader, CompactRecord.Builder builder, Set<String> jobNumbers)
+            throws XMLStreamException, XenonException {
+        String state = reader.getAttributeValue(null, "state");
+        String jobID = null;
+
+        while (reader.next() != XMLStreamConstants.END_ELEMENT) {
+            if (reader.getEventType() == XMLStreamConstants.START_ELEMENT) {
+                String key = reader.getLocalName();
+                String value = parseValue(reader);
+
+                if (value != null) {
+                    builder.put(key, value);
                 }
 
-                result.put(jobID, jobInfo);
+                if (key.equals("JB_job_number")) {
+                    jobID = value;
+
+                    if (jobID != null && jobID.length() > 0 && jobNumbers != null && !jobNumbers.contains(jobID)) {
+                        skipElement(reader);
+                        return null;
+                    }
+                }
             }
         }
 
+        if (state != null && state.length() > 0) {
+            builder.put("long_state", state);
+        }
+
+        if (jobID == null || jobID.length() == 0) {
+            throw new XenonException(GridEngineAdaptor.ADAPTOR_NAME, "found job in queue with no job number");
+        }
+
+        return jobID;
+    }
+
+    /*
+     * Adds the info of each task of a job array to the result. The tasks are listed as a comma separated list of task
+     * numbers and ranges, such as "1,3-9:2".
+     */
+    private static void putTasks(Map<String, Map<String, String>> result, CompactRecord.Builder builder, String jobNumber,
+            String tasks, Set<String> jobIDs) throws XenonException {
+        CompactRecord info = builder.build();
+
+        for (String range : tasks.split(",")) {
+            int[] bounds = parseTaskRange(range);
+
+            for (int task = bounds[0]; task <= bounds[1]; task += bounds[2]) {
+                String taskID = jobNumber + "." + task;
+
+                if (jobIDs == null || jobIDs.contains(taskID)) {
+                    for (Map.Entry<String, String> entry : info.entrySet()) {
+                        builder.put(entry.getKey(), entry.getValue());
+                    }
+                    builder.put("JB_job_number", taskID);
+
+                    result.put(taskID, builder.build());
+                }
+            }
+        }
+    }
+
+    //returns the first task, last task and step of a range of tasks such as "3-9:2", or a single task such as "4"
+    private static int[] parseTaskRange(String range) throws XenonException {
+        try {
+            int dash = range.indexOf('-');
+
+            if (dash < 0) {
+                int task = Integer.parseInt(range.trim());
+                return new int[] { task, task, 1 };
+            }
+
+            int colon = range.indexOf(':', dash);
+            int step = 1;
+
+            if (colon < 0) {
+                colon = range.length();
+            } else {
+                step = Integer.parseInt(range.substring(colon + 1).trim());
+            }
+
+            int first = Integer.parseInt(range.substring(0, dash).trim());
+            int last = Integer.parseInt(range.substring(dash + 1, colon).trim());
+
+            if (step <= 0) {
+                throw new XenonException(GridEngineAdaptor.ADAPTOR_NAME, "invalid step in task range \"" + range + "\"");
+            }
+
+            return new int[] { first, last, step };
+        } catch (NumberFormatException e) {
+            throw new XenonException(GridEngineAdaptor.ADAPTOR_NAME, "could not parse task range \"" + range + "\"", e);
+        }
+    }
+
+    //returns the text directly inside the current element, if it starts with text, and moves to the end of the element
+    private static String parseValue(XMLStreamReader reader) throws XMLStreamException {
+        String result = null;
+        boolean first = true;
+        int depth = 1;
+
+        while (depth > 0) {
+            int event = reader.next();
+
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                first = false;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            } else if (first && reader.isCharacters()) {
+                result = reader.getText();
+                first = false;
+            }
+        }
         return result;
     }
 
+    //moves the reader to the end of the current element
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+
+        while (depth > 0) {
+            int event = reader.next();
+
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private static void close(XMLStreamReader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (XMLStreamException e) {
+                LOGGER.debug("could not close xml reader", e);
+            }
+        }
+    }
+
 }
@@ -68,6 +68,9 @@ public class LocalAdaptor extends Adaptor {
     /** Property for the maximum number of concurrent jobs in the multi queue. */
     public static final String MULTIQ_MAX_CONCURRENT = MULTIQ + "maxConcurrentJobs";
 
+    /** Property for the file in which batch jobs are recorded, so they can be recovered after a restart. */
+    public static final String JOURNAL = QUEUE + "journal";
+
     /** Local queue information start with this prefix. */
     public static final String INFO = PREFIX + "info.";
 
@@ -89,7 +92,9 @@ public class LocalAdaptor extends Adaptor {
                     new XenonPropertyDescriptionImplementation(POLLING_DELAY, Type.INTEGER, EnumSet.of(Component.XENON), 
                             "1000", "The polling delay for monitoring running jobs (in milliseconds)."),
                     new XenonPropertyDescriptionImplementation(MULTIQ_MAX_CONCURRENT, Type.INTEGER, EnumSet.of(Component.XENON), 
-                            "4", "The maximum number of concurrent jobs in the multiq.."));
+                            "4", "The maximum number of concurrent jobs in the multiq.."),
+                    new XenonPropertyDescriptionImplementation(JOURNAL, Type.STRING, EnumSet.of(Component.XENON), 
+                            null, "The file in which batch jobs are recorded, so they can be recovered after a restart."));
 
     /** Local implementation for Files */
     private final LocalFiles localFiles;
@@ -0,0 +1,168 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.local;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ProcessBuilder.Redirect;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.engine.jobs.JobImplementation;
+import nl.esciencecenter.xenon.engine.util.CommandLineUtils;
+import nl.esciencecenter.xenon.engine.util.ProcessIdentity;
+import nl.esciencecenter.xenon.engine.util.RecoverableProcess;
+import nl.esciencecenter.xenon.files.Path;
+import nl.esciencecenter.xenon.jobs.JobDescription;
+import nl.esciencecenter.xenon.util.Utils;
+
+/**
+ * LocalBatchProcess implements a {@link nl.esciencecenter.xenon.engine.util.Process} for local batch processes. The standard 
+ * streams of the process are redirected to files by the operating system.
+ * 
+ * If an exit file is given, the process is started by a shell that writes the exit code of the process to the exit file when 
+ * it finishes. This allows the process to be recovered by a {@link LocalRecoveredProcess} after a restart of the JVM.
+ * 
+ * @version 1.0
+ * @since 1.0
+ */
+class LocalBatchProcess implements RecoverableProcess {
+
+    private static final File NULL_FILE = new File(Utils.isWindows() ? "NUL" : "/dev/null");
+
+    private final Process process;
+
+    private final boolean recoverable;
+
+    private final String handle;
+
+    private int exitCode;
+    private boolean done;
+
+    LocalBatchProcess(JobImplementation job, Path workdir, Path stdin, Path stdout, Path stderr) throws XenonException {
+        this(job, workdir, stdin, stdout, stderr, null);
+    }
+
+    LocalBatchProcess(JobImplementation job, Path workdir, Path stdin, Path stdout, Path stderr, Path exitFile) 
+            throws XenonException {
+        JobDescription description = job.getJobDescription();
+
+        ProcessBuilder builder = new ProcessBuilder();
+
+        recoverable = (exitFile != null);
+
+        if (recoverable) {
+            if (Utils.isWindows()) {
+                throw new XenonException(LocalAdaptor.ADAPTOR_NAME, "Recoverable processes are not supported on Windows!");
+            }
+
+            builder.command().add("/bin/sh");
+            builder.command().add("-c");
+            builder.command().add(exitFileScript(LocalUtils.javaPath(exitFile).toString()));
+        }
+
+        builder.command().add(description.getExecutable());
+        builder.command().addAll(description.getArguments());
+        builder.environment().putAll(description.getEnvironment());
+        builder.directory(LocalUtils.javaPath(workdir).toFile());
+
+        if (stdin != null) {
+            builder.redirectInput(LocalUtils.javaPath(stdin).toFile());
+        }
+
+        builder.redirectOutput(toRedirect(stdout));
+        builder.redirectError(toRedirect(stderr));
+
+        try {
+            process = builder.start();
+        } catch (IOException e) {
+            throw new XenonException(LocalAdaptor.ADAPTOR_NAME, "Failed to start local process!", e);
+        }
+
+        if (stdin == null) {
+            try {
+                process.getOutputStream().close();
+            } catch (IOException e) {
+                // ignored, the process may already be gone.
+            }
+        }
+
+        if (recoverable) {
+            int pid = LocalUtils.getPid(process);
+            handle = new ProcessIdentity(pid, LocalRecoveredProcess.startTime(pid)).toString();
+        } else {
+            handle = null;
+        }
+    }
+
+    /**
+     * Create a shell script that runs the command given as its arguments, and then writes the exit code to the exit file. The 
+     * exit file is moved into place, so it is never seen half written.
+     */
+    static String exitFileScript(String exitFile) {
+        String file = CommandLineUtils.protectAgainstShellMetas(exitFile);
+        String tmp = CommandLineUtils.protectAgainstShellMetas(exitFile + ".tmp");
+
+        return "\"$0\" \"$@\"; e=$?; echo $e > " + tmp + " && mv " + tmp + " " + file + "; exit $e";
+    }
+
+    @Override
+    public String getHandle() {
+        return handle;
+    }
+
+    private static Redirect toRedirect(Path file) throws XenonException {
+        if (file == null) {
+            return Redirect.to(NULL_FILE);
+        }
+
+        return Redirect.to(LocalUtils.javaPath(file).toFile());
+    }
+
+    public synchronized boolean isDone() {
+        if (done) {
+            return true;
+        }
+
+        try {
+            exitCode = process.exitValue();
+            done = true;
+            return true;
+        } catch (IllegalThreadStateException e) {
+            // exit code cannot be found: indicates the process has not yet finished
+            return false;
+        }
+    }
+
+    public synchronized int getExitStatus() {
+        return exitCode;
+    }
+
+    /**
+     * Destroy (stop) process. Does nothing if the process has already finished.
+     */
+    public void destroy() {
+        if (isDone()) {
+            return;
+        }
+
+        if (recoverable) {
+            // Also kill the process started by the shell.
+            LocalRecoveredProcess.killChildren(LocalUtils.getPid(process));
+        }
+
+        LocalUtils.unixDestroy(process);
+    }
+}
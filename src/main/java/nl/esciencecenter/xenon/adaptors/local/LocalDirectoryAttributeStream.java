@@ -66,7 +66,7 @@ class LocalDirectoryAttributeStream implements DirectoryStream<PathAttributesPai
         Path path = stream.next();
 
         try {
-            FileAttributes attributes = localFiles.getAttributes(path);
+            FileAttributes attributes = localFiles.getAttributes(stream.getCurrentJavaPath());
             return new PathAttributesPairImplementation(path, attributes);
         } catch (XenonException e) {
             throw new XenonRuntimeException(LocalAdaptor.ADAPTOR_NAME, "Failed to get next element.", e);
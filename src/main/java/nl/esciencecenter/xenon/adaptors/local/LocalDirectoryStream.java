@@ -48,6 +48,12 @@ class LocalDirectoryStream implements DirectoryStream<Path>, Iterator<Path> {
     /** A buffer to read ahead. */
     private Path readAhead;
 
+    /** The java.nio path of the entry in the read ahead buffer. */
+    private java.nio.file.Path readAheadJavaPath;
+
+    /** The java.nio path of the entry last returned by next. */
+    private java.nio.file.Path current;
+
     LocalDirectoryStream(Path dir, DirectoryStream.Filter filter) throws XenonException {
         try {
             this.dir = dir;
@@ -87,9 +93,11 @@ class LocalDirectoryStream implements DirectoryStream<Path>, Iterator<Path> {
         }
 
         while (iterator.hasNext()) {
-            Path next = getPath(iterator.next());
+            java.nio.file.Path javaPath = iterator.next();
+            Path next = getPath(javaPath);
             if (filter.accept(next)) {
                 readAhead = next;
+                readAheadJavaPath = javaPath;
                 return true;
             }
         }
@@ -102,14 +110,18 @@ class LocalDirectoryStream implements DirectoryStream<Path>, Iterator<Path> {
 
         if (readAhead != null) {
             Path tmp = readAhead;
+            current = readAheadJavaPath;
             readAhead = null;
+            readAheadJavaPath = null;
             return tmp;
         }
 
         while (iterator.hasNext()) {
-            Path next = getPath(iterator.next());
+            java.nio.file.Path javaPath = iterator.next();
+            Path next = getPath(javaPath);
 
             if (filter.accept(next)) {
+                current = javaPath;
                 return next;
             }
         }
@@ -117,6 +129,16 @@ class LocalDirectoryStream implements DirectoryStream<Path>, Iterator<Path> {
         throw new NoSuchElementException("No more files in directory");
     }
 
+    /**
+     * Returns the java.nio path of the entry last returned by {@link #next()}. This is the path produced by the underlying
+     * directory stream, which may already carry the attributes the file system returned with the entry.
+     * 
+     * @return the java.nio path of the current entry, or <code>null</code> if next has not been called yet.
+     */
+    synchronized java.nio.file.Path getCurrentJavaPath() {
+        return current;
+    }
+
     @Override
     public void remove() {
         throw new UnsupportedOperationException("DirectoryStream iterator does not support remove");
@@ -19,7 +19,9 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.nio.file.attribute.PosixFileAttributes;
+import java.util.Map;
 import java.util.Set;
 
 import nl.esciencecenter.xenon.XenonException;
@@ -32,11 +34,34 @@ import nl.esciencecenter.xenon.util.Utils;
 /**
  * LocalFileAttributes implements a {@link FileAttributes} for local files.
  * 
+ * On Unix systems, the attributes are read with a single <code>lstat</code>. Whether the file is readable or executable is
+ * derived from its mode bits and the identity of the current process, instead of checking each of these separately. Note that
+ * this does not take access control lists into account. Whether the file is writable also depends on the file system (which may
+ * be mounted read-only), so it is always checked by the file system, when it is first requested. The same holds for symbolic
+ * links, and when the mode bits or identity are not available. The owner and group names are looked up when they are first
+ * requested.
+ * 
  * @version 1.0
  * @since 1.0
  */
 public class LocalFileAttributes implements FileAttributes {
-          
+
+    /** The attributes to read on Unix systems. */
+    private static final String UNIX_ATTRIBUTES = "unix:mode,uid,gid,size,creationTime,lastAccessTime,lastModifiedTime,"
+            + "isDirectory,isRegularFile,isSymbolicLink,isOther";
+
+    /** The JDK class that provides the identity of the current process on Unix systems. */
+    private static final String UNIX_SYSTEM_CLASS = "com.sun.security.auth.module.UnixSystem";
+
+    private static final int READ = 0400;
+    private static final int EXECUTE = 0100;
+
+    /** The identity of the current process, or null if it is not available. */
+    private static final long[] IDENTITY = getIdentity();
+
+    /** The path these attributes belong to, used to retrieve attributes that are loaded lazily. */
+    private final java.nio.file.Path javaPath;
+
     /** Is this a directory ? */
     private final boolean isDirectory;
 
@@ -49,14 +74,14 @@ public class LocalFileAttributes implements FileAttributes {
     /** Is this an other type of file ? */
     private final boolean isOther;
     
-    /** Is the file executable ? */
-    private final boolean executable;
+    /** Is the file executable ? Loaded lazily if it cannot be derived from the mode. */
+    private Boolean executable;
 
-    /** Is the file readable ? */
-    private final boolean readable;
+    /** Is the file readable ? Loaded lazily if it cannot be derived from the mode. */
+    private Boolean readable;
 
-    /** Is the file writable ? */
-    private final boolean writable;
+    /** Is the file writable ? Loaded lazily, as a read-only file system may deny writing regardless of the mode. */
+    private Boolean writable;
 
     /** Is the file hidden ? */
     private final boolean hidden;
@@ -73,77 +98,203 @@ public class LocalFileAttributes implements FileAttributes {
     /** The size of this file */
     private final long size;
     
-    /** The owner of this file */
-    private final String owner;
+    /** The mode bits of this file, or -1 if unknown. */
+    private final int mode;
+
+    /** The numeric owner of this file, or -1 if unknown. */
+    private final long uid;
+
+    /** The numeric group of this file, or -1 if unknown. */
+    private final long gid;
+
+    /** The owner of this file. Loaded lazily if the numeric owner is known. */
+    private String owner;
     
-    /** The group of this file */
-    private final String group;
+    /** The group of this file. Loaded lazily if the numeric group is known. */
+    private String group;
     
-    /** The permissions of this file (POSIX only) */
-    private final Set<PosixFilePermission> permissions;
+    /** The permissions of this file (POSIX only). Derived lazily if the mode is known. */
+    private Set<PosixFilePermission> permissions;
     
     /** Is this a windows file ? */
     private final boolean isWindows;
     
-    
     public LocalFileAttributes(Path path) throws XenonException {
-        try {
-            java.nio.file.Path javaPath = LocalUtils.javaPath(path);
+        this(LocalUtils.javaPath(path));
+    }
 
-            executable = Files.isExecutable(javaPath);
-            readable = Files.isReadable(javaPath);
-            writable = Files.isWritable(javaPath);
-            
+    /**
+     * Reads the attributes of a local path. If the path was produced by a directory stream, the file system may already have the
+     * attributes available (as Windows does), so no additional system call is needed.
+     * 
+     * @param javaPath
+     *          the path to read the attributes of.
+     * @return the attributes of the path.
+     * @throws XenonException
+     *          if the attributes could not be read.
+     */
+    static LocalFileAttributes read(java.nio.file.Path javaPath) throws XenonException {
+        return new LocalFileAttributes(javaPath);
+    }
+
+    private LocalFileAttributes(java.nio.file.Path javaPath) throws XenonException {
+        this.javaPath = javaPath;
+
+        try {
             isWindows = Utils.isWindows(); 
 
-            BasicFileAttributes basicAttributes;
-            
+            BasicFileAttributes basicAttributes = null;
+            Map<String, Object> unixAttributes = null;
+
             if (isWindows) {                
                 // TODO: Seems to fail in Windows ?
                 hidden = false;
                 
                 // These should always work.
                 basicAttributes = Files.readAttributes(javaPath, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
-                
-//               // These are windows only.
-//                AclFileAttributeView aclAttributes = Files.getFileAttributeView(javaPath, AclFileAttributeView.class, 
-//                        LinkOption.NOFOLLOW_LINKS);
-                
-                group = null;
-                permissions = null;
-                owner = null;
             } else {
                 hidden = Files.isHidden(javaPath);
-                
-                // Note: when in a posix environment, basicAttributes point to posixAttributes.
-                PosixFileAttributes posixAttributes = Files.readAttributes(javaPath, PosixFileAttributes.class, 
-                        LinkOption.NOFOLLOW_LINKS);
-                
-                basicAttributes = posixAttributes;
-    
-                owner = posixAttributes.owner().getName();
-                group = posixAttributes.group().getName();
-                permissions = LocalUtils.xenonPermissions(posixAttributes.permissions());
+                unixAttributes = readUnixAttributes(javaPath);
+
+                if (unixAttributes == null) {
+                    // Note: when in a posix environment, basicAttributes point to posixAttributes.
+                    PosixFileAttributes posixAttributes = Files.readAttributes(javaPath, PosixFileAttributes.class, 
+                            LinkOption.NOFOLLOW_LINKS);
+
+                    basicAttributes = posixAttributes;
+
+                    owner = posixAttributes.owner().getName();
+                    group = posixAttributes.group().getName();
+                    permissions = LocalUtils.xenonPermissions(posixAttributes.permissions());
+                }
             }
-            
-            creationTime = basicAttributes.creationTime().toMillis();
-            lastAccessTime = basicAttributes.lastAccessTime().toMillis();
-            lastModifiedTime = basicAttributes.lastModifiedTime().toMillis();
-            
-            isDirectory = basicAttributes.isDirectory();
-            isRegular = basicAttributes.isRegularFile();
-            isSymbolicLink = basicAttributes.isSymbolicLink();
-            isOther = basicAttributes.isOther();
-            
-            if (isRegular) { 
-                size = basicAttributes.size();
-            } else { 
-                size = 0;
+
+            if (unixAttributes != null) {
+                mode = (Integer) unixAttributes.get("mode");
+                uid = (Integer) unixAttributes.get("uid");
+                gid = (Integer) unixAttributes.get("gid");
+
+                creationTime = ((FileTime) unixAttributes.get("creationTime")).toMillis();
+                lastAccessTime = ((FileTime) unixAttributes.get("lastAccessTime")).toMillis();
+                lastModifiedTime = ((FileTime) unixAttributes.get("lastModifiedTime")).toMillis();
+
+                isDirectory = (Boolean) unixAttributes.get("isDirectory");
+                isRegular = (Boolean) unixAttributes.get("isRegularFile");
+                isSymbolicLink = (Boolean) unixAttributes.get("isSymbolicLink");
+                isOther = (Boolean) unixAttributes.get("isOther");
+
+                size = isRegular ? (Long) unixAttributes.get("size") : 0;
+            } else {
+                mode = -1;
+                uid = -1;
+                gid = -1;
+
+                creationTime = basicAttributes.creationTime().toMillis();
+                lastAccessTime = basicAttributes.lastAccessTime().toMillis();
+                lastModifiedTime = basicAttributes.lastModifiedTime().toMillis();
+
+                isDirectory = basicAttributes.isDirectory();
+                isRegular = basicAttributes.isRegularFile();
+                isSymbolicLink = basicAttributes.isSymbolicLink();
+                isOther = basicAttributes.isOther();
+
+                size = isRegular ? basicAttributes.size() : 0;
             }
-            
         } catch (IOException e) {
             throw new XenonException(LocalAdaptor.ADAPTOR_NAME, "Cannot read attributes.", e);
         }
+
+        if (mode >= 0 && IDENTITY != null && !isSymbolicLink) {
+            readable = hasAccess(READ);
+            executable = hasAccess(EXECUTE);
+        }
+    }
+
+    /*
+     * Reads the attributes using the "unix" view, which returns all attributes needed (including the numeric owner and group)
+     * with a single system call. Returns null if the view is not supported.
+     */
+    private static Map<String, Object> readUnixAttributes(java.nio.file.Path javaPath) throws IOException {
+        try {
+            return Files.readAttributes(javaPath, UNIX_ATTRIBUTES, LinkOption.NOFOLLOW_LINKS);
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /*
+     * Returns the uid, gid and supplementary groups of the current process, or null if these are not available. The JDK class
+     * providing them is platform specific, so it is loaded by reflection.
+     */
+    private static long[] getIdentity() {
+        try {
+            Class<?> unixSystem = Class.forName(UNIX_SYSTEM_CLASS);
+            Object system = unixSystem.newInstance();
+
+            long[] groups = (long[]) unixSystem.getMethod("getGroups").invoke(system);
+            long[] result = new long[groups == null ? 2 : groups.length + 2];
+
+            result[0] = (Long) unixSystem.getMethod("getUid").invoke(system);
+            result[1] = (Long) unixSystem.getMethod("getGid").invoke(system);
+
+            if (groups != null) {
+                System.arraycopy(groups, 0, result, 2, groups.length);
+            }
+
+            return result;
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static boolean inGroup(long gid) {
+        for (int i = 1; i < IDENTITY.length; i++) {
+            if (IDENTITY[i] == gid) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /*
+     * Derives access from the mode bits, using the owner bits if the current process owns the file, the group bits if it is a
+     * member of the group of the file, or the other bits otherwise. The superuser may read anything, and execute
+     * anything that has at least one execute bit set (or is a directory).
+     */
+    private boolean hasAccess(int ownerBit) {
+        if (IDENTITY[0] == 0) {
+            return ownerBit != EXECUTE || isDirectory || (mode & 0111) != 0;
+        }
+
+        if (uid == IDENTITY[0]) {
+            return (mode & ownerBit) != 0;
+        }
+
+        if (inGroup(gid)) {
+            return (mode & (ownerBit >> 3)) != 0;
+        }
+
+        return (mode & (ownerBit >> 6)) != 0;
+    }
+
+    /*
+     * Loads the owner and group names.
+     */
+    private synchronized void loadNames() throws AttributeNotSupportedException {
+        if (owner != null || uid < 0) {
+            return;
+        }
+
+        try {
+            PosixFileAttributes posixAttributes = Files.readAttributes(javaPath, PosixFileAttributes.class, 
+                    LinkOption.NOFOLLOW_LINKS);
+
+            owner = posixAttributes.owner().getName();
+            group = posixAttributes.group().getName();
+        } catch (IOException e) {
+            throw new AttributeNotSupportedException(LocalAdaptor.ADAPTOR_NAME, "Cannot read owner and group of " + javaPath, e);
+        }
     }
 
     @Override
@@ -193,7 +344,11 @@ public class LocalFileAttributes implements FileAttributes {
             throw new AttributeNotSupportedException(LocalAdaptor.ADAPTOR_NAME, "Attribute not supported: group");
         }
 
-        return group;
+        loadNames();
+
+        synchronized (this) {
+            return group;
+        }
     }
  
     @Override
@@ -203,7 +358,11 @@ public class LocalFileAttributes implements FileAttributes {
             throw new AttributeNotSupportedException(LocalAdaptor.ADAPTOR_NAME, "Attribute not supported: owner");
         }
 
-        return owner;
+        loadNames();
+
+        synchronized (this) {
+            return owner;
+        }
     }
 
     @Override
@@ -212,12 +371,24 @@ public class LocalFileAttributes implements FileAttributes {
         if (isWindows) { 
             throw new AttributeNotSupportedException(LocalAdaptor.ADAPTOR_NAME, "Attribute not supported: permissions");            
         } else { 
-            return permissions;
+            return getPermissions();
+        }
+    }
+
+    private synchronized Set<PosixFilePermission> getPermissions() {
+        if (permissions == null && mode >= 0) {
+            permissions = LocalUtils.xenonPermissions(mode);
         }
+
+        return permissions;
     }
 
     @Override
-    public boolean isExecutable() {
+    public synchronized boolean isExecutable() {
+        if (executable == null) {
+            executable = Files.isExecutable(javaPath);
+        }
+
         return executable;
     }
 
@@ -227,23 +398,47 @@ public class LocalFileAttributes implements FileAttributes {
     }
 
     @Override
-    public boolean isReadable() {
+    public synchronized boolean isReadable() {
+        if (readable == null) {
+            readable = Files.isReadable(javaPath);
+        }
+
         return readable;
     }
 
     @Override
-    public boolean isWritable() {
+    public synchronized boolean isWritable() {
+        if (writable == null) {
+            writable = Files.isWritable(javaPath);
+        }
+
         return writable;
     }
-    
+
+    /*
+     * The owner and group names are only compared if the numeric owner and group are not known. Otherwise, comparing the numeric
+     * values is sufficient, and avoids looking up the names.
+     */
+    private synchronized String knownOwner() {
+        return uid < 0 ? owner : null;
+    }
+
+    private synchronized String knownGroup() {
+        return gid < 0 ? group : null;
+    }
+
     @Override
     @SuppressWarnings("PMD.NPathComplexity")
     public int hashCode() {
         final int prime = 31;
         int result = 1;
+        String knownOwner = knownOwner();
+        String knownGroup = knownGroup();
+        Set<PosixFilePermission> perms = getPermissions();
         result = prime * result + (int) (creationTime ^ (creationTime >>> 32));
-        result = prime * result + (executable ? 1231 : 1237);
-        result = prime * result + ((group == null) ? 0 : group.hashCode());
+        result = prime * result + (isExecutable() ? 1231 : 1237);
+        result = prime * result + ((knownGroup == null) ? 0 : knownGroup.hashCode());
+        result = prime * result + (int) (gid ^ (gid >>> 32));
         result = prime * result + (hidden ? 1231 : 1237);
         result = prime * result + (isDirectory ? 1231 : 1237);
         result = prime * result + (isOther ? 1231 : 1237);
@@ -252,21 +447,27 @@ public class LocalFileAttributes implements FileAttributes {
         result = prime * result + (isWindows ? 1231 : 1237);
         result = prime * result + (int) (lastAccessTime ^ (lastAccessTime >>> 32));
         result = prime * result + (int) (lastModifiedTime ^ (lastModifiedTime >>> 32));
-        result = prime * result + ((owner == null) ? 0 : owner.hashCode());
-        result = prime * result + ((permissions == null) ? 0 : permissions.hashCode());
-        result = prime * result + (readable ? 1231 : 1237);
+        result = prime * result + ((knownOwner == null) ? 0 : knownOwner.hashCode());
+        result = prime * result + (int) (uid ^ (uid >>> 32));
+        result = prime * result + ((perms == null) ? 0 : perms.hashCode());
+        result = prime * result + (isReadable() ? 1231 : 1237);
         result = prime * result + (int) (size ^ (size >>> 32));
-        result = prime * result + (writable ? 1231 : 1237);
+        result = prime * result + (isWritable() ? 1231 : 1237);
         return result;
     }
 
     @Override
     public String toString() {
         return "LocalFileAttributes [isDirectory=" + isDirectory + ", isRegular=" + isRegular + ", isSymbolicLink="
-                + isSymbolicLink + ", isOther=" + isOther + ", executable=" + executable + ", readable=" + readable
-                + ", writable=" + writable + ", hidden=" + hidden + ", creationTime=" + creationTime + ", lastAccessTime="
-                + lastAccessTime + ", lastModifiedTime=" + lastModifiedTime + ", size=" + size + ", owner=" + owner + ", group="
-                + group + ", permissions=" + permissions + ", isWindows=" + isWindows + "]";
+                + isSymbolicLink + ", isOther=" + isOther + ", executable=" + isExecutable() + ", readable=" + isReadable()
+                + ", writable=" + isWritable() + ", hidden=" + hidden + ", creationTime=" + creationTime + ", lastAccessTime="
+                + lastAccessTime + ", lastModifiedTime=" + lastModifiedTime + ", size=" + size + ", uid=" + uid + ", gid=" + gid
+                + ", owner=" + knownOwner() + ", group=" + knownGroup() + ", permissions=" + getPermissions() + ", isWindows="
+                + isWindows + "]";
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
     }
 
     @Override
@@ -284,34 +485,22 @@ public class LocalFileAttributes implements FileAttributes {
         
         LocalFileAttributes other = (LocalFileAttributes) obj;
         
-        if (group == null) {
-            if (other.group != null) { 
-                return false;
-            }
-        } else if (!group.equals(other.group)) { 
+        if (uid != other.uid || gid != other.gid) {
             return false;
         }
-                
-        if (owner == null) {
-            if (other.owner != null) { 
-                return false;
-            }
-        } else if (!owner.equals(other.owner)) { 
+
+        if (!equal(knownGroup(), other.knownGroup()) || !equal(knownOwner(), other.knownOwner())) {
             return false;
         }
-        
-        if (permissions == null) { 
-            if (other.permissions != null) { 
-                return false;
-            }
-        } else if (!permissions.equals(other.permissions)) { 
+
+        if (!equal(getPermissions(), other.getPermissions())) {
             return false;
         }
 
         return (hidden == other.hidden && isDirectory == other.isDirectory && isOther == other.isOther && 
                 isRegular == other.isRegular && isSymbolicLink == other.isSymbolicLink && isWindows == other.isWindows &&
                 lastAccessTime == other.lastAccessTime && lastModifiedTime == other.lastModifiedTime && 
-                readable == other.readable && size == other.size && writable == other.writable && 
-                creationTime == other.creationTime && executable == other.executable); 
+                isReadable() == other.isReadable() && size == other.size && isWritable() == other.isWritable() && 
+                creationTime == other.creationTime && isExecutable() == other.isExecutable()); 
     }
 }
@@ -29,6 +29,8 @@ import nl.esciencecenter.xenon.engine.XenonProperties;
 import nl.esciencecenter.xenon.engine.files.FileSystemImplementation;
 import nl.esciencecenter.xenon.engine.files.FilesEngine;
 import nl.esciencecenter.xenon.engine.files.PathImplementation;
+import nl.esciencecenter.xenon.engine.files.RangeSupport;
+import nl.esciencecenter.xenon.engine.files.ResumeSupport;
 import nl.esciencecenter.xenon.engine.util.CopyEngine;
 import nl.esciencecenter.xenon.engine.util.CopyInfo;
 import nl.esciencecenter.xenon.engine.util.OpenOptions;
@@ -43,7 +45,7 @@ import nl.esciencecenter.xenon.util.Utils;
  * @version 1.0
  * @since 1.0
  */
-public class LocalFiles implements Files {
+public class LocalFiles implements Files, ResumeSupport, RangeSupport {
 
     /** The parent adaptor */
     private final LocalAdaptor localAdaptor;
@@ -235,11 +237,7 @@ public class LocalFiles implements Files {
             throw new NoSuchPathException(LocalAdaptor.ADAPTOR_NAME, "File does not exist: " + path);
         }
 
-        try {
-            return java.nio.file.Files.newOutputStream(LocalUtils.javaPath(path), LocalUtils.javaOpenOptions(options));
-        } catch (IOException e) {
-            throw new XenonException(LocalAdaptor.ADAPTOR_NAME, "Failed to create OutputStream.", e);
-        }
+        return LocalUtils.newOutputStream(path, tmp);
     }
 
     @Override
@@ -247,6 +245,14 @@ public class LocalFiles implements Files {
         return new LocalFileAttributes(path);
     }
 
+    /*
+     * Retrieves the attributes of a path produced by a java.nio directory stream, so any attributes the file system returned
+     * with the directory entry can be used.
+     */
+    FileAttributes getAttributes(java.nio.file.Path javaPath) throws XenonException {
+        return LocalFileAttributes.read(javaPath);
+    }
+
     @Override
     public boolean exists(Path path) throws XenonException {
         return java.nio.file.Files.exists(LocalUtils.javaPath(path));
@@ -377,6 +383,11 @@ public class LocalFiles implements Files {
         }
     }
 
+    @Override
+    public Copy copyTree(Path source, Path target, CopyOption... options) throws XenonException {
+        return copyEngine.copyTree(LocalAdaptor.ADAPTOR_NAME, source, target, options);
+    }
+
     @Override
     public CopyStatus getCopyStatus(Copy copy) throws XenonException {
         return copyEngine.getStatus(copy);
@@ -387,5 +398,40 @@ public class LocalFiles implements Files {
         return copyEngine.cancel(copy);
     }
 
-   
+    @Override
+    public String checksum(Path path, long offset, long length) throws XenonException {
+        return LocalUtils.checksum(path, offset, length);
+    }
+
+    @Override
+    public boolean truncate(Path path, long size) throws XenonException {
+        LocalUtils.truncate(path, size);
+        return true;
+    }
+
+    @Override
+    public int getMaxStripes(Path path) throws XenonException {
+        // Local files support offsets, but do not benefit from parallel transfers. 
+        return 1;
+    }
+
+    @Override
+    public InputStream newInputStream(Path path, long offset) throws XenonException {
+        return LocalUtils.newInputStream(path, offset);
+    }
+
+    @Override
+    public OutputStream newOutputStream(Path path, long offset) throws XenonException {
+        return LocalUtils.newOutputStream(path, offset);
+    }
+
+    @Override
+    public boolean supportsRecursiveDelete(Path path) throws XenonException {
+        return true;
+    }
+
+    @Override
+    public void recursiveDelete(Path path) throws XenonException {
+        LocalUtils.recursiveDelete(path);
+    }
 }
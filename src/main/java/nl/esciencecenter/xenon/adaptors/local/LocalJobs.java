@@ -15,7 +15,9 @@
  */
 package nl.esciencecenter.xenon.adaptors.local;
 
+import java.io.File;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.InvalidLocationException;
@@ -27,11 +29,17 @@ import nl.esciencecenter.xenon.engine.jobs.JobImplementation;
 import nl.esciencecenter.xenon.engine.jobs.SchedulerImplementation;
 import nl.esciencecenter.xenon.engine.util.InteractiveProcess;
 import nl.esciencecenter.xenon.engine.util.InteractiveProcessFactory;
+import nl.esciencecenter.xenon.engine.util.JobJournal;
 import nl.esciencecenter.xenon.engine.util.JobQueues;
+import nl.esciencecenter.xenon.engine.util.JobStatusMonitor;
+import nl.esciencecenter.xenon.engine.util.ProcessIdentity;
+import nl.esciencecenter.xenon.engine.util.RecoverableProcess;
+import nl.esciencecenter.xenon.engine.util.RecoverableProcessFactory;
 import nl.esciencecenter.xenon.files.Path;
 import nl.esciencecenter.xenon.jobs.Job;
 import nl.esciencecenter.xenon.jobs.JobDescription;
 import nl.esciencecenter.xenon.jobs.JobStatus;
+import nl.esciencecenter.xenon.jobs.JobStatusListener;
 import nl.esciencecenter.xenon.jobs.Jobs;
 import nl.esciencecenter.xenon.jobs.QueueStatus;
 import nl.esciencecenter.xenon.jobs.Scheduler;
@@ -45,7 +53,7 @@ import nl.esciencecenter.xenon.jobs.Streams;
  * @version 1.0
  * @since 1.0
  */
-public class LocalJobs implements Jobs, InteractiveProcessFactory {
+public class LocalJobs implements Jobs, InteractiveProcessFactory, RecoverableProcessFactory {
     
     /** The parent adaptor */
     private final LocalAdaptor localAdaptor;
@@ -53,6 +61,8 @@ public class LocalJobs implements Jobs, InteractiveProcessFactory {
     private final Scheduler localScheduler;
     private final JobQueues jobQueues;
 
+    private final JobStatusMonitor monitor;
+
     public LocalJobs(LocalAdaptor localAdaptor, XenonProperties properties, Path cwd, XenonEngine engine)
             throws XenonException {
         
@@ -65,8 +75,18 @@ public class LocalJobs implements Jobs, InteractiveProcessFactory {
         int multiQThreads = properties.getIntegerProperty(LocalAdaptor.MULTIQ_MAX_CONCURRENT, processors);
         int pollingDelay = properties.getIntegerProperty(LocalAdaptor.POLLING_DELAY);
 
+        String journalFile = properties.getStringProperty(LocalAdaptor.JOURNAL);
+
+        JobJournal journal = null;
+
+        if (journalFile != null) {
+            journal = new JobJournal(LocalAdaptor.ADAPTOR_NAME, new File(journalFile));
+        }
+
         jobQueues = new JobQueues(LocalAdaptor.ADAPTOR_NAME, engine.files(), localScheduler, cwd, this, multiQThreads,
-                pollingDelay);
+                pollingDelay, journal);
+
+        monitor = new JobStatusMonitor(LocalAdaptor.ADAPTOR_NAME, this);
     }
 
     @Override
@@ -74,6 +94,27 @@ public class LocalJobs implements Jobs, InteractiveProcessFactory {
         return new LocalInteractiveProcess(job);
     }
 
+    @Override
+    public nl.esciencecenter.xenon.engine.util.Process createBatchProcess(JobImplementation job, Path workdir, Path stdin,
+            Path stdout, Path stderr) throws XenonException {
+        return new LocalBatchProcess(job, workdir, stdin, stdout, stderr);
+    }
+
+    @Override
+    public RecoverableProcess createRecoverableProcess(JobImplementation job, Path workdir, Path stdin, Path stdout, 
+            Path stderr, Path exitFile) throws XenonException {
+        return new LocalBatchProcess(job, workdir, stdin, stdout, stderr, exitFile);
+    }
+
+    @Override
+    public nl.esciencecenter.xenon.engine.util.Process recoverProcess(String handle, Path exitFile) throws XenonException {
+        try {
+            return new LocalRecoveredProcess(ProcessIdentity.parse(handle), LocalUtils.javaPath(exitFile));
+        } catch (IllegalArgumentException e) {
+            throw new XenonException(LocalAdaptor.ADAPTOR_NAME, "Invalid process handle: " + handle, e);
+        }
+    }
+
     @Override
     public Scheduler newScheduler(String scheme, String location, Credential credential, Map<String, String> properties) 
             throws XenonException {
@@ -102,6 +143,11 @@ public class LocalJobs implements Jobs, InteractiveProcessFactory {
         return jobQueues.submitJob(description);
     }
 
+    @Override
+    public Job[] submitJobs(Scheduler scheduler, JobDescription... descriptions) throws XenonException {
+        return jobQueues.submitJobs(descriptions);
+    }
+
     @Override
     public JobStatus getJobStatus(Job job) throws XenonException {
         return jobQueues.getJobStatus(job);
@@ -117,6 +163,26 @@ public class LocalJobs implements Jobs, InteractiveProcessFactory {
         return jobQueues.waitUntilRunning(job, timeout);
     }
 
+    @Override
+    public void addJobStatusListener(Job job, JobStatusListener listener) throws XenonException {
+        monitor.addListener(job, listener, jobQueues.getPollingDelay());
+    }
+
+    @Override
+    public void removeJobStatusListener(Job job, JobStatusListener listener) {
+        monitor.removeListener(job, listener);
+    }
+
+    @Override
+    public Future<JobStatus> waitUntilDoneAsync(Job job) throws XenonException {
+        return monitor.waitUntilDone(job, jobQueues.getPollingDelay());
+    }
+
+    @Override
+    public Future<JobStatus> waitUntilRunningAsync(Job job) throws XenonException {
+        return monitor.waitUntilRunning(job, jobQueues.getPollingDelay());
+    }
+
     @Override
     public JobStatus[] getJobStatuses(Job... jobs) {
         return jobQueues.getJobStatuses(jobs);
@@ -128,6 +194,7 @@ public class LocalJobs implements Jobs, InteractiveProcessFactory {
     }
 
     public void end() {
+        monitor.end();
         jobQueues.end();
     }
 
@@ -0,0 +1,144 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.local;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.engine.util.CommandRunner;
+import nl.esciencecenter.xenon.engine.util.Process;
+import nl.esciencecenter.xenon.engine.util.ProcessIdentity;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * LocalRecoveredProcess implements a {@link Process} for a local batch process that was started by a {@link LocalBatchProcess}
+ * before the JVM was restarted. As the process is no longer a child of this JVM, its state is determined from its process ID and
+ * start time, and its exit code is read from its exit file. A process ID that now belongs to a process with a different start 
+ * time is never reported as running or killed.
+ * 
+ * @version 1.0
+ * @since 1.0
+ */
+class LocalRecoveredProcess implements Process {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LocalRecoveredProcess.class);
+
+    private final ProcessIdentity identity;
+
+    private final Path exitFile;
+
+    private int exitCode = -1;
+    private boolean done = false;
+
+    LocalRecoveredProcess(ProcessIdentity identity, Path exitFile) {
+        this.identity = identity;
+        this.exitFile = exitFile;
+    }
+
+    private static boolean run(String... command) {
+        try {
+            return new CommandRunner(command).getExitCode() == 0;
+        } catch (XenonException e) {
+            LOGGER.warn("Failed to run {}", command[0], e);
+            return false;
+        }
+    }
+
+    static void killChildren(int pid) {
+        if (pid > 0) {
+            run("pkill", "-9", "-P", Integer.toString(pid));
+        }
+    }
+
+    /**
+     * Returns the start time of a process, as printed by <code>ps -o lstart=</code>.
+     * 
+     * @param pid
+     *          the process ID.
+     * @return the start time, or <code>null</code> if there is no process with this ID.
+     */
+    static String startTime(int pid) {
+        try {
+            CommandRunner runner = new CommandRunner("ps", "-o", "lstart=", "-p", Integer.toString(pid));
+
+            if (runner.getExitCode() == 0) {
+                return ProcessIdentity.normalize(runner.getStdout());
+            }
+        } catch (XenonException e) {
+            LOGGER.warn("Failed to run ps", e);
+        }
+
+        return null;
+    }
+
+    // Only true if the process ID still belongs to the same process, and not to a process started later.
+    private boolean isRunning() {
+        return identity.getStartTime() != null && identity.matches(startTime(identity.getPid()));
+    }
+
+    private void readExitFile() {
+        try {
+            if (Files.exists(exitFile)) {
+                exitCode = Integer.parseInt(new String(Files.readAllBytes(exitFile), StandardCharsets.UTF_8).trim());
+                Files.delete(exitFile);
+            }
+        } catch (IOException | NumberFormatException e) {
+            LOGGER.warn("Failed to read exit file {}", exitFile, e);
+        }
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        if (done) {
+            return true;
+        }
+
+        // The exit file must be read after the process is gone, or we may miss it.
+        if (isRunning()) {
+            return false;
+        }
+
+        readExitFile();
+        done = true;
+        return true;
+    }
+
+    @Override
+    public synchronized int getExitStatus() {
+        return exitCode;
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (isDone()) {
+            return;
+        }
+
+        // Verify the identity again just before killing, as the process may have finished in the mean time.
+        if (isRunning()) {
+            killChildren(identity.getPid());
+            run("kill", "-9", Integer.toString(identity.getPid()));
+        }
+
+        readExitFile();
+        done = true;
+    }
+}
@@ -15,26 +15,44 @@
  */
 package nl.esciencecenter.xenon.adaptors.local;
 
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.PosixFileAttributeView;
 import java.security.AccessController;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.PrivilegedAction;
-import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.Set;
 
 import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.engine.files.ResumeSupport;
 import nl.esciencecenter.xenon.engine.util.CommandRunner;
+import nl.esciencecenter.xenon.engine.util.OpenOptions;
 import nl.esciencecenter.xenon.files.DirectoryNotEmptyException;
 import nl.esciencecenter.xenon.files.FileSystem;
 import nl.esciencecenter.xenon.files.NoSuchPathException;
 import nl.esciencecenter.xenon.files.OpenOption;
 import nl.esciencecenter.xenon.files.Path;
+import nl.esciencecenter.xenon.files.PathAlreadyExistsException;
 import nl.esciencecenter.xenon.files.PosixFilePermission;
 import nl.esciencecenter.xenon.files.RelativePath;
 import nl.esciencecenter.xenon.util.Utils;
@@ -47,6 +65,57 @@ import nl.esciencecenter.xenon.util.Utils;
  */
 final class LocalUtils {
 
+    /** The size of the buffer used to compute checksums. */
+    private static final int CHECKSUM_BUFFER_SIZE = 64 * 1024;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** The number of threads used to delete a directory tree. */
+    private static final int DELETE_THREADS = 4;
+
+    /** The permissions in the order of their bits in a Unix mode, starting with the most significant bit. */
+    private static final PosixFilePermission[] MODE_PERMISSIONS = new PosixFilePermission[] { PosixFilePermission.OWNER_READ,
+            PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_EXECUTE, PosixFilePermission.GROUP_READ,
+            PosixFilePermission.GROUP_WRITE, PosixFilePermission.GROUP_EXECUTE, PosixFilePermission.OTHERS_READ,
+            PosixFilePermission.OTHERS_WRITE, PosixFilePermission.OTHERS_EXECUTE };
+
+    /**
+     * Deletes the subtrees in a shared queue, one subtree at a time. 
+     */
+    private static class TreeDeleter extends Thread {
+
+        private final LinkedList<java.nio.file.Path> queue;
+
+        private IOException exception;
+
+        TreeDeleter(LinkedList<java.nio.file.Path> queue) {
+            super("LocalTreeDeleter");
+            setDaemon(true);
+            this.queue = queue;
+        }
+
+        private java.nio.file.Path next() {
+            synchronized (queue) {
+                return queue.poll();
+            }
+        }
+
+        @Override
+        public void run() {
+            java.nio.file.Path subtree = next();
+
+            while (subtree != null) {
+                try {
+                    deleteTree(subtree);
+                } catch (IOException e) {
+                    exception = e;
+                    return;
+                }
+                subtree = next();
+            }
+        }
+    }
+
     private LocalUtils() {
         // DO NOT USE
     }
@@ -114,36 +183,23 @@ final class LocalUtils {
         return result;
     }
 
-    public static java.nio.file.OpenOption[] javaOpenOptions(OpenOption[] options) {
-        ArrayList<java.nio.file.OpenOption> result = new ArrayList<>(options.length);
-
-        for (OpenOption opt : options) {
-            switch (opt) {
-            case CREATE:
-                result.add(StandardOpenOption.CREATE_NEW);
-                break;
-            case OPEN:
-            case OPEN_OR_CREATE:
-                result.add(StandardOpenOption.CREATE);
-                break;
-            case APPEND:
-                result.add(StandardOpenOption.APPEND);
-                break;
-            case TRUNCATE:
-                result.add(StandardOpenOption.TRUNCATE_EXISTING);
-                break;
-            case WRITE:
-                result.add(StandardOpenOption.WRITE);
-                break;
-            case READ:
-                result.add(StandardOpenOption.READ);
-                break;
-            default:
-                // No other options left         
+    /**
+     * Convert the permission bits of a Unix mode to a set of Xenon permissions.
+     *
+     * @param mode
+     *          the Unix mode, of which only the lowest 9 bits are used.
+     * @return the permissions that are set in the mode.
+     */
+    public static Set<PosixFilePermission> xenonPermissions(int mode) {
+        Set<PosixFilePermission> result = new HashSet<>(MODE_PERMISSIONS.length * 4 / 3 + 1);
+
+        for (int i = 0; i < MODE_PERMISSIONS.length; i++) {
+            if ((mode & (0400 >> i)) != 0) {
+                result.add(MODE_PERMISSIONS[i]);
             }
         }
 
-        return result.toArray(new java.nio.file.OpenOption[result.size()]);
+        return result;
     }
 
     /*
@@ -152,12 +208,74 @@ final class LocalUtils {
      */
     public static InputStream newInputStream(Path path) throws XenonException {
         try {
-            return Files.newInputStream(javaPath(path));
+            // A FileInputStream exposes its FileChannel, which allows the copy engine to use a zero-copy transfer.
+            return new FileInputStream(javaPath(path).toFile());
         } catch (IOException e) {
             throw new XenonException(LocalAdaptor.ADAPTOR_NAME, "Failed to create InputStream.", e);
         }
     }
 
+    /*
+     * @param path
+     * @param options
+     * @throws XenonException
+     */
+    public static OutputStream newOutputStream(Path path, OpenOptions options) throws XenonException {
+        try {
+            java.nio.file.Path target = javaPath(path);
+
+            if (options.getOpenMode() == OpenOption.CREATE) {
+                // Fails if the file already exists.
+                Files.createFile(target);
+            }
+
+            // A FileOutputStream exposes its FileChannel, which allows the copy engine to use a zero-copy transfer.
+            return new FileOutputStream(target.toFile(), options.getAppendMode() == OpenOption.APPEND);
+        } catch (FileAlreadyExistsException e) {
+            throw new PathAlreadyExistsException(LocalAdaptor.ADAPTOR_NAME, "File already exists: " + path, e);
+        } catch (IOException e) {
+            throw new XenonException(LocalAdaptor.ADAPTOR_NAME, "Failed to create OutputStream.", e);
+        }
+    }
+
+    /*
+     * @param path
+     * @param offset
+     * @throws XenonException
+     */
+    public static InputStream newInputStream(Path path, long offset) throws XenonException {
+        FileInputStream in = (FileInputStream) newInputStream(path);
+
+        try {
+            in.getChannel().position(offset);
+        } catch (IOException e) {
+            try {
+                in.close();
+            } catch (IOException e2) {
+                // ignored
+            }
+            throw new XenonException(LocalAdaptor.ADAPTOR_NAME, "Failed to seek to " + offset + " in " + path, e);
+        }
+
+        return in;
+    }
+
+    /*
+     * @param path
+     * @param offset
+     * @throws XenonException
+     */
+    public static OutputStream newOutputStream(Path path, long offset) throws XenonException {
+        try {
+            // Positioning a new channel does not fail for non-negative offsets, so the channel cannot leak here.
+            return Channels.newOutputStream(FileChannel.open(javaPath(path), StandardOpenOption.WRITE).position(offset));
+        } catch (java.nio.file.NoSuchFileException e) {
+            throw new NoSuchPathException(LocalAdaptor.ADAPTOR_NAME, "File " + path + " does not exist!", e);
+        } catch (IOException e) {
+            throw new XenonException(LocalAdaptor.ADAPTOR_NAME, "Failed to create OutputStream.", e);
+        }
+    }
+
     /*
      * @param path
      * @param permissions
@@ -204,6 +322,169 @@ final class LocalUtils {
         }
     }
 
+    /*
+     * Compute the checksum of a range of bytes in a local file.
+     * 
+     * @param path
+     * @param offset
+     * @param length
+     * @throws XenonException
+     */
+    public static String checksum(Path path, long offset, long length) throws XenonException {
+
+        MessageDigest digest;
+
+        try {
+            digest = MessageDigest.getInstance(ResumeSupport.CHECKSUM_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // Not supported by this JVM, so let the caller fall back to comparing the data.
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(javaPath(path), StandardOpenOption.READ)) {
+
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(CHECKSUM_BUFFER_SIZE, Math.max(length, 1)));
+
+            long position = offset;
+            long end = offset + length;
+
+            while (position < end) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), end - position));
+
+                int read = channel.read(buffer, position);
+
+                if (read < 0) {
+                    throw new XenonException(LocalAdaptor.ADAPTOR_NAME, "Unexpected end of file " + path);
+                }
+
+                digest.update(buffer.array(), 0, read);
+                position += read;
+            }
+        } catch (IOException e) {
+            throw new XenonException(LocalAdaptor.ADAPTOR_NAME, "Failed to compute checksum of " + path, e);
+        }
+
+        return toHex(digest.digest());
+    }
+
+    private static String toHex(byte[] data) {
+        char[] result = new char[data.length * 2];
+
+        for (int i = 0; i < data.length; i++) {
+            result[2 * i] = HEX_DIGITS[(data[i] >> 4) & 0xF];
+            result[2 * i + 1] = HEX_DIGITS[data[i] & 0xF];
+        }
+
+        return new String(result);
+    }
+
+    /*
+     * Truncate a local file.
+     * 
+     * @param path
+     * @param size
+     * @throws XenonException
+     */
+    public static void truncate(Path path, long size) throws XenonException {
+        try (FileChannel channel = FileChannel.open(javaPath(path), StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+        } catch (IOException e) {
+            throw new XenonException(LocalAdaptor.ADAPTOR_NAME, "Failed to truncate " + path, e);
+        }
+    }
+
+    /*
+     * Delete a local file tree. The entries of a directory are deleted in parallel.
+     * 
+     * @param path
+     * @throws XenonException
+     */
+    public static void recursiveDelete(Path path) throws XenonException {
+
+        java.nio.file.Path root = javaPath(path);
+
+        if (!Files.exists(root, LinkOption.NOFOLLOW_LINKS)) {
+            throw new NoSuchPathException(LocalAdaptor.ADAPTOR_NAME, "File " + path + " does not exist!");
+        }
+
+        try {
+            if (Files.isDirectory(root, LinkOption.NOFOLLOW_LINKS)) {
+                deleteEntries(root);
+            }
+
+            Files.delete(root);
+        } catch (IOException e) {
+            throw new XenonException(LocalAdaptor.ADAPTOR_NAME, "Failed to delete " + path, e);
+        }
+    }
+
+    private static void deleteEntries(java.nio.file.Path dir) throws IOException {
+
+        LinkedList<java.nio.file.Path> queue = new LinkedList<>();
+
+        try (java.nio.file.DirectoryStream<java.nio.file.Path> stream = Files.newDirectoryStream(dir)) {
+            for (java.nio.file.Path entry : stream) {
+                queue.add(entry);
+            }
+        }
+
+        TreeDeleter[] deleters = new TreeDeleter[Math.min(DELETE_THREADS, queue.size())];
+
+        for (int i = 0; i < deleters.length; i++) {
+            deleters[i] = new TreeDeleter(queue);
+            deleters[i].start();
+        }
+
+        IOException exception = null;
+
+        for (TreeDeleter deleter : deleters) {
+            try {
+                deleter.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while deleting " + dir);
+            }
+
+            if (exception == null) {
+                exception = deleter.exception;
+            }
+        }
+
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    private static void deleteTree(java.nio.file.Path start) throws IOException {
+        // Links are not followed by walkFileTree, so they are deleted like regular files. Entries that are removed by
+        // someone else while we walk the tree are skipped.
+        Files.walkFileTree(start, new SimpleFileVisitor<java.nio.file.Path>() {
+            @Override
+            public FileVisitResult visitFile(java.nio.file.Path file, BasicFileAttributes attrs) throws IOException {
+                Files.deleteIfExists(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(java.nio.file.Path file, IOException e) throws IOException {
+                if (e instanceof NoSuchFileException) {
+                    return FileVisitResult.CONTINUE;
+                }
+                throw e;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(java.nio.file.Path dir, IOException e) throws IOException {
+                if (e != null && !(e instanceof NoSuchFileException)) {
+                    throw e;
+                }
+                Files.deleteIfExists(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
     public static void move(Path source, Path target) throws XenonException {
 
         try {
@@ -213,27 +494,45 @@ final class LocalUtils {
         }
     }
 
-    public static void unixDestroy(Process process) {
-        boolean success = false;
-
-        if (!Utils.isWindows()) { 
-            try {
-                final Field pidField = process.getClass().getDeclaredField("pid");
+    /**
+     * Returns the process ID of a process, or -1 if it cannot be determined (for example on Windows).
+     * 
+     * @param process
+     *          the process.
+     * @return the process ID.
+     */
+    public static int getPid(Process process) {
 
-                AccessController.doPrivileged(new PrivilegedAction<Object>() {
-                    public Object run() {
-                        pidField.setAccessible(true);
-                        return null;
-                    }
-                });
+        if (Utils.isWindows()) {
+            return -1;
+        }
 
-                int pid = pidField.getInt(process);
+        try {
+            final Field pidField = process.getClass().getDeclaredField("pid");
 
-                if (pid > 0) {
-                    CommandRunner killRunner = new CommandRunner("kill", "-9", "" + pid);
-                    success = (killRunner.getExitCode() == 0);
+            AccessController.doPrivileged(new PrivilegedAction<Object>() {
+                public Object run() {
+                    pidField.setAccessible(true);
+                    return null;
                 }
-            } catch (IllegalAccessException | IllegalArgumentException | NoSuchFieldException | SecurityException | XenonException e) {
+            });
+
+            return pidField.getInt(process);
+        } catch (IllegalAccessException | IllegalArgumentException | NoSuchFieldException | SecurityException e) {
+            return -1;
+        }
+    }
+
+    public static void unixDestroy(Process process) {
+        boolean success = false;
+
+        int pid = getPid(process);
+
+        if (pid > 0) {
+            try {
+                CommandRunner killRunner = new CommandRunner("kill", "-9", "" + pid);
+                success = (killRunner.getExitCode() == 0);
+            } catch (XenonException e) {
                 // Failed, so use the regular Java destroy.
             }
         }
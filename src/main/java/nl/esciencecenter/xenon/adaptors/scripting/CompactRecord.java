@@ -0,0 +1,227 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.scripting;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A read-only map of field names to values, stored in two arrays. Records parsed from the same table share a single array
+ * of field names, so a record costs little more than its values. Lookups scan the field names, which is fast for the dozen or
+ * so fields in the output of a scheduler command.
+ * 
+ * If a field name occurs more than once, the last value is used.
+ * 
+ * @version 1.0
+ * @since 1.0
+ */
+public final class CompactRecord extends AbstractMap<String, String> {
+
+    /**
+     * Builds records one field at a time, for parsers which do not know the fields up front. Consecutive records with the same
+     * fields share a single array of field names.
+     */
+    public static final class Builder {
+
+        private final List<String> fields = new ArrayList<>();
+
+        private final List<String> values = new ArrayList<>();
+
+        private String[] lastFields = new String[0];
+
+        /**
+         * Add a field to the record being built.
+         * 
+         * @param field
+         *            the name of the field.
+         * @param value
+         *            the value of the field.
+         */
+        public void put(String field, String value) {
+            fields.add(field);
+            values.add(value);
+        }
+
+        /**
+         * Returns the last value added for a field of the record being built.
+         * 
+         * @param field
+         *            the name of the field.
+         * @return the value of the field, or <code>null</code> if the field was not added.
+         */
+        public String get(String field) {
+            int index = fields.lastIndexOf(field);
+
+            if (index < 0) {
+                return null;
+            }
+            return values.get(index);
+        }
+
+        /**
+         * Discard all fields of the record being built.
+         */
+        public void clear() {
+            fields.clear();
+            values.clear();
+        }
+
+        /**
+         * Returns a new record containing all fields added since the last call to {@link #clear()}, and clears the builder.
+         * 
+         * @return a new record.
+         */
+        public CompactRecord build() {
+            if (!fields.equals(Arrays.asList(lastFields))) {
+                lastFields = fields.toArray(new String[fields.size()]);
+            }
+
+            CompactRecord result = new CompactRecord(lastFields, values.toArray(new String[values.size()]));
+            clear();
+            return result;
+        }
+    }
+
+    private final String[] fields;
+
+    private final String[] values;
+
+    //number of distinct fields, computed when first needed. -1 if not computed yet
+    private int size = -1;
+
+    /**
+     * Create a new record. The arrays are not copied.
+     * 
+     * @param fields
+     *            the names of the fields, possibly shared with other records.
+     * @param values
+     *            the values of the fields, in the same order as the names.
+     */
+    public CompactRecord(String[] fields, String[] values) {
+        if (fields.length != values.length) {
+            throw new IllegalArgumentException("Got " + fields.length + " fields but " + values.length + " values");
+        }
+
+        this.fields = fields;
+        this.values = values;
+    }
+
+    //a field is hidden if the same field occurs later on
+    private boolean isHidden(int index) {
+        for (int i = index + 1; i < fields.length; i++) {
+            if (fields[i].equals(fields[index])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int indexOf(Object field) {
+        for (int i = fields.length - 1; i >= 0; i--) {
+            if (fields[i].equals(field)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String get(Object field) {
+        int index = indexOf(field);
+
+        if (index < 0) {
+            return null;
+        }
+
+        return values[index];
+    }
+
+    @Override
+    public boolean containsKey(Object field) {
+        return indexOf(field) >= 0;
+    }
+
+    @Override
+    public int size() {
+        if (size < 0) {
+            int count = 0;
+
+            for (int i = 0; i < fields.length; i++) {
+                if (!isHidden(i)) {
+                    count++;
+                }
+            }
+            size = count;
+        }
+        return size;
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return new AbstractSet<Entry<String, String>>() {
+            @Override
+            public Iterator<Entry<String, String>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return CompactRecord.this.size();
+            }
+        };
+    }
+
+    private class EntryIterator implements Iterator<Entry<String, String>> {
+
+        private int next = advance(0);
+
+        private int advance(int from) {
+            int index = from;
+
+            while (index < fields.length && isHidden(index)) {
+                index++;
+            }
+            return index;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < fields.length;
+        }
+
+        @Override
+        public Entry<String, String> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            Entry<String, String> result = new SimpleImmutableEntry<>(fields[next], values[next]);
+            next = advance(next + 1);
+            return result;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("CompactRecord is read-only");
+        }
+    }
+}
@@ -0,0 +1,476 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.scripting;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * JobStateTable keeps a small piece of state per job, such as the time a job was last seen in the queue, for a limited amount
+ * of time. Scheduler connections may be open for a very long time, so the state they keep about jobs must not grow without
+ * bounds.
+ * 
+ * Entries expire once they are older than the lifetime of the table, and are removed when found expired, or by a periodic
+ * sweep. If the table grows beyond its maximum size the oldest entries are evicted, even if they have not expired yet. Putting
+ * a value for a job again renews its entry.
+ * 
+ * Most schedulers use numeric job identifiers. These are stored in an open addressing table with primitive keys, so no key
+ * object is kept per job. Other identifiers are stored in a regular map.
+ * 
+ * @param <V>
+ *            the type of state kept per job.
+ * 
+ * @version 1.0
+ * @since 1.0
+ */
+public class JobStateTable<V> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JobStateTable.class);
+
+    /** Default maximum number of jobs in a table. */
+    public static final int DEFAULT_MAX_SIZE = 100000;
+
+    /** Default lifetime of an entry, one day. */
+    public static final long DEFAULT_LIFETIME = 24L * 60L * 60L * 1000L;
+
+    private static final int MIN_CAPACITY = 16;
+
+    /** Numeric identifiers of at most this many digits always fit in a long. */
+    private static final int MAX_NUMERIC_DIGITS = 18;
+
+    private static class Entry<V> {
+        private final long time;
+        private final V value;
+
+        Entry(long time, V value) {
+            this.time = time;
+            this.value = value;
+        }
+    }
+
+    private final String name;
+
+    private final int maxSize;
+
+    private final long lifetime;
+
+    //numeric identifiers, linear probing. A slot is in use if its value is not null
+    private long[] keys;
+    private long[] times;
+    private Object[] values;
+    private int numericSize;
+
+    //all other identifiers
+    private final Map<String, Entry<V>> others = new HashMap<>();
+
+    private long lastSweep;
+
+    private long evictions;
+
+    private long expirations;
+
+    /**
+     * Create a new table.
+     * 
+     * @param name
+     *            the name of the table, used in log messages.
+     * @param maxSize
+     *            the maximum number of jobs in the table.
+     * @param lifetime
+     *            the number of milliseconds after which an entry expires.
+     */
+    public JobStateTable(String name, int maxSize, long lifetime) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Maximum size must be positive, not " + maxSize);
+        }
+
+        this.name = name;
+        this.maxSize = maxSize;
+        this.lifetime = lifetime;
+
+        allocate(MIN_CAPACITY);
+        lastSweep = currentTimeMillis();
+    }
+
+    /**
+     * Returns the current time. Can be overridden for testing.
+     * 
+     * @return the current time in milliseconds.
+     */
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    //returns the identifier as a number, or -1 if it cannot be converted back to the exact same string
+    private static long toNumber(String identifier) {
+        int length = identifier.length();
+
+        if (length == 0 || length > MAX_NUMERIC_DIGITS || (length > 1 && identifier.charAt(0) == '0')) {
+            return -1;
+        }
+
+        long result = 0;
+
+        for (int i = 0; i < length; i++) {
+            char c = identifier.charAt(i);
+
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        times = new long[capacity];
+        values = new Object[capacity];
+        numericSize = 0;
+    }
+
+    private int home(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> (64 - Integer.numberOfTrailingZeros(keys.length)));
+    }
+
+    private int find(long key) {
+        int mask = keys.length - 1;
+
+        for (int i = home(key); values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void insert(long key, long time, Object value) {
+        int mask = keys.length - 1;
+        int i = home(key);
+
+        while (values[i] != null && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+
+        if (values[i] == null) {
+            numericSize++;
+        }
+
+        keys[i] = key;
+        times[i] = time;
+        values[i] = value;
+    }
+
+    //removes the entry in the given slot, and shifts back later entries of the same cluster
+    private void removeSlot(int slot) {
+        int mask = keys.length - 1;
+        int gap = slot;
+
+        values[gap] = null;
+        numericSize--;
+
+        for (int i = (gap + 1) & mask; values[i] != null; i = (i + 1) & mask) {
+            int home = home(keys[i]);
+
+            //move the entry if its home is not cyclically in (gap, i]
+            boolean move = gap < i ? (home <= gap || home > i) : (home <= gap && home > i);
+
+            if (move) {
+                keys[gap] = keys[i];
+                times[gap] = times[i];
+                values[gap] = values[i];
+                values[i] = null;
+                gap = i;
+            }
+        }
+    }
+
+    /*
+     * Removes all entries older than the given time, and keeps at most the given number of entries of exactly the given time. 
+     * Also resizes the numeric table to fit the remaining entries. Returns the number of entries removed.
+     */
+    private int retain(long oldest, int keepOldest) {
+        long[] oldKeys = keys;
+        long[] oldTimes = times;
+        Object[] oldValues = values;
+
+        int removed = 0;
+        int kept = 0;
+        int remaining = keepOldest;
+
+        //first decide which entries to keep, marking the others as removed
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                if (oldTimes[i] > oldest || (oldTimes[i] == oldest && remaining-- > 0)) {
+                    kept++;
+                } else {
+                    oldValues[i] = null;
+                    removed++;
+                }
+            }
+        }
+
+        int capacity = MIN_CAPACITY;
+
+        while (capacity < kept * 2) {
+            capacity *= 2;
+        }
+
+        allocate(capacity);
+
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                insert(oldKeys[i], oldTimes[i], oldValues[i]);
+            }
+        }
+
+        Iterator<Entry<V>> iterator = others.values().iterator();
+
+        while (iterator.hasNext()) {
+            Entry<V> entry = iterator.next();
+
+            if (entry.time < oldest || (entry.time == oldest && remaining-- <= 0)) {
+                iterator.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    //removes the oldest entries, until only the given number of entries is left
+    private int evict(int size) {
+        long[] all = new long[size()];
+        int index = 0;
+
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                all[index++] = times[i];
+            }
+        }
+
+        for (Entry<V> entry : others.values()) {
+            all[index++] = entry.time;
+        }
+
+        Arrays.sort(all);
+
+        long oldest = all[all.length - size];
+
+        int newer = 0;
+
+        while (all[all.length - 1 - newer] > oldest) {
+            newer++;
+        }
+
+        return retain(oldest, size - newer);
+    }
+
+    private void sweep(long now) {
+        lastSweep = now;
+
+        expirations += retain(now - lifetime, Integer.MAX_VALUE);
+
+        if (size() > maxSize) {
+            //make some room, so the next eviction is not needed immediately
+            evictions += evict(maxSize - maxSize / 4);
+        }
+
+        LOGGER.debug("Swept {}", this);
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldTimes = times;
+        Object[] oldValues = values;
+
+        allocate(oldKeys.length * 2);
+
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                insert(oldKeys[i], oldTimes[i], oldValues[i]);
+            }
+        }
+    }
+
+    /**
+     * Put the state of a job in the table, replacing any previous state.
+     * 
+     * @param identifier
+     *            the identifier of the job.
+     * @param value
+     *            the state of the job.
+     */
+    public synchronized void put(String identifier, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Value may not be null");
+        }
+
+        long now = currentTimeMillis();
+        long key = toNumber(identifier);
+
+        if (key >= 0) {
+            if (numericSize * 2 >= keys.length) {
+                grow();
+            }
+            insert(key, now, value);
+        } else {
+            others.put(identifier, new Entry<>(now, value));
+        }
+
+        if (size() > maxSize || now - lastSweep > lifetime) {
+            sweep(now);
+        }
+    }
+
+    /**
+     * Put the same state of a number of jobs in the table.
+     * 
+     * @param identifiers
+     *            the identifiers of the jobs.
+     * @param value
+     *            the state of the jobs.
+     */
+    public synchronized void putAll(Iterable<String> identifiers, V value) {
+        for (String identifier : identifiers) {
+            put(identifier, value);
+        }
+    }
+
+    /**
+     * Put the state of a number of jobs in the table.
+     * 
+     * @param states
+     *            the state of each job, indexed by job identifier.
+     */
+    public synchronized void putAll(Map<String, ? extends V> states) {
+        for (Map.Entry<String, ? extends V> state : states.entrySet()) {
+            put(state.getKey(), state.getValue());
+        }
+    }
+
+    /**
+     * Returns the state of a job, if the table contains an entry for the job that has not expired yet.
+     * 
+     * @param identifier
+     *            the identifier of the job.
+     * @return the state of the job, or <code>null</code> if the job is not in the table.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized V get(String identifier) {
+        long oldest = currentTimeMillis() - lifetime;
+        long key = toNumber(identifier);
+
+        if (key >= 0) {
+            int slot = find(key);
+
+            if (slot < 0) {
+                return null;
+            }
+
+            if (times[slot] < oldest) {
+                removeSlot(slot);
+                expirations++;
+                return null;
+            }
+            return (V) values[slot];
+        }
+
+        Entry<V> entry = others.get(identifier);
+
+        if (entry == null) {
+            return null;
+        }
+
+        if (entry.time < oldest) {
+            others.remove(identifier);
+            expirations++;
+            return null;
+        }
+        return entry.value;
+    }
+
+    /**
+     * Returns if the table contains an entry for a job that has not expired yet.
+     * 
+     * @param identifier
+     *            the identifier of the job.
+     * @return if the job is in the table.
+     */
+    public synchronized boolean contains(String identifier) {
+        return get(identifier) != null;
+    }
+
+    /**
+     * Remove the entry of a job.
+     * 
+     * @param identifier
+     *            the identifier of the job.
+     * @return the state of the job, or <code>null</code> if the job was not in the table or its entry expired.
+     */
+    public synchronized V remove(String identifier) {
+        V result = get(identifier);
+
+        if (result != null) {
+            long key = toNumber(identifier);
+
+            if (key >= 0) {
+                removeSlot(find(key));
+            } else {
+                others.remove(identifier);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of entries in the table, including expired entries that have not been removed yet.
+     * 
+     * @return the number of entries in the table.
+     */
+    public synchronized int size() {
+        return numericSize + others.size();
+    }
+
+    /**
+     * Returns the number of entries removed because the table grew beyond its maximum size.
+     * 
+     * @return the number of evicted entries.
+     */
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * Returns the number of entries removed because they expired.
+     * 
+     * @return the number of expired entries.
+     */
+    public synchronized long getExpirationCount() {
+        return expirations;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "JobStateTable [name=" + name + ", size=" + size() + ", maxSize=" + maxSize + ", lifetime=" + lifetime 
+                + ", evictions=" + evictions + ", expirations=" + expirations + "]";
+    }
+}
@@ -104,6 +104,22 @@ public class RemoteCommandRunner {
                 runtime, executable, arguments, exitCode, output, error);
     }
 
+    /**
+     * Create a RemoteCommandRunner for a command that has already been run, for example by a {@link RemoteShell}.
+     * 
+     * @param exitCode
+     *            the exit code of the command
+     * @param output
+     *            the text produced by the command on stdout
+     * @param error
+     *            the text produced by the command on stderr
+     */
+    RemoteCommandRunner(int exitCode, String output, String error) {
+        this.exitCode = exitCode;
+        this.output = output;
+        this.error = error;
+    }
+
     public String getStdout() {
         return output;
     }
@@ -0,0 +1,395 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.scripting;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import nl.esciencecenter.xenon.Xenon;
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.engine.util.CommandLineUtils;
+import nl.esciencecenter.xenon.jobs.Job;
+import nl.esciencecenter.xenon.jobs.JobDescription;
+import nl.esciencecenter.xenon.jobs.Scheduler;
+import nl.esciencecenter.xenon.jobs.Streams;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * RemoteShell runs commands in a single long-lived shell on the remote scheduler machine, instead of starting a new 
+ * interactive job for each command. 
+ * 
+ * Each command is written to the input of the shell, followed by a command that prints a unique marker and the exit code of 
+ * the command on stdout, and the marker on stderr. The output of the command is everything that precedes the markers. Any 
+ * stdin for the command is passed as a here-document, so it does not mix with the commands read by the shell.
+ * 
+ * Commands are run one at a time. If a command does not finish within the timeout, the shell is assumed to be hung. Once the 
+ * shell has failed or timed out, it is closed and all further commands fail.
+ * 
+ * @version 1.0
+ * @since 1.0
+ */
+public class RemoteShell {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RemoteShell.class);
+
+    /** The shell to start on the remote machine. */
+    private static final String SHELL = "/bin/sh";
+
+    private static final int BUFFER_SIZE = 4096;
+
+    private static final byte[] NEWLINE = { '\n' };
+
+    /** Default time to wait for a command to finish before the shell is considered hung (in milliseconds). */
+    public static final long DEFAULT_TIMEOUT = 5 * 60 * 1000L;
+
+    /**
+     * A ByteArrayOutputStream that allows its content to be scanned and consumed in place, without copying it.
+     */
+    private static class ScanBuffer extends ByteArrayOutputStream {
+
+        /**
+         * Returns the index of the first occurrence of the marker that starts at or after from, or -1 if there is none.
+         */
+        int indexOf(byte[] marker, int from) {
+            return RemoteShell.indexOf(buf, count, marker, from);
+        }
+
+        int length() {
+            return count;
+        }
+
+        /**
+         * Removes the content up to and including the marker at index, and returns the content preceding it.
+         */
+        String consume(int index, int markerLength) {
+            String result = new String(buf, 0, index, StandardCharsets.UTF_8);
+            int end = index + markerLength;
+            System.arraycopy(buf, end, buf, 0, count - end);
+            count -= end;
+            return result;
+        }
+    }
+
+    /**
+     * Buffers the output of one of the streams of the shell, until the end of the command currently running is reached.
+     */
+    private class StreamBuffer extends Thread {
+
+        private final InputStream in;
+
+        /** Guarded by this */
+        private final ScanBuffer buffer = new ScanBuffer();
+
+        /** Guarded by this */
+        private boolean eof = false;
+
+        StreamBuffer(String name, InputStream in) {
+            super("RemoteShell " + name + " reader");
+            this.in = in;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            byte[] tmp = new byte[BUFFER_SIZE];
+
+            try {
+                while (true) {
+                    int read = in.read(tmp);
+
+                    if (read < 0) {
+                        break;
+                    }
+
+                    synchronized (this) {
+                        buffer.write(tmp, 0, read);
+                        notifyAll();
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.debug("Failed to read {}", getName(), e);
+            }
+
+            synchronized (this) {
+                eof = true;
+                notifyAll();
+            }
+        }
+
+        /**
+         * Wait until the marker appears in the buffered output, and remove everything up to and including the marker.
+         * 
+         * @param marker
+         *            the marker to wait for.
+         * @param deadline
+         *            the time (in milliseconds since the epoch) after which to give up.
+         * @return the output preceding the marker.
+         * @throws IOException
+         *             if the shell was closed or terminated, or the deadline passed.
+         */
+        synchronized String readUntil(byte[] marker, long deadline) throws IOException {
+            int from = 0;
+
+            while (true) {
+                int index = buffer.indexOf(marker, from);
+
+                if (index >= 0) {
+                    return buffer.consume(index, marker.length);
+                }
+
+                // Only the bytes that arrive next can complete a marker that starts in the tail of the current data.
+                from = Math.max(0, buffer.length() - marker.length + 1);
+
+                if (closed.get()) {
+                    throw new IOException("Remote shell was closed");
+                }
+
+                if (eof) {
+                    throw new IOException("Remote shell terminated unexpectedly");
+                }
+
+                long remaining = deadline - System.currentTimeMillis();
+
+                if (remaining <= 0) {
+                    throw new IOException("Remote shell did not respond within " + timeout + " ms");
+                }
+
+                try {
+                    wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for remote shell", e);
+                }
+            }
+        }
+
+        synchronized void wakeup() {
+            notifyAll();
+        }
+    }
+
+    private final Xenon xenon;
+
+    private final String adaptorName;
+
+    private final long timeout;
+
+    private final Job job;
+
+    private final OutputStream shellIn;
+
+    private final StreamBuffer shellOut;
+
+    private final StreamBuffer shellErr;
+
+    /** Not guarded by the monitor used by run, so a hung command never prevents the shell from being closed. */
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    /**
+     * Start a shell on the remote machine.
+     * 
+     * @param xenon
+     *            the Xenon to use
+     * @param scheduler
+     *            the scheduler to submit the shell to
+     * @param adaptorName
+     *            the name of the adaptor using this shell (used in exception if thrown)
+     * @throws XenonException
+     *             if the shell could not be started.
+     */
+    public RemoteShell(Xenon xenon, Scheduler scheduler, String adaptorName) throws XenonException {
+        this(xenon, scheduler, adaptorName, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Start a shell on the remote machine.
+     * 
+     * @param xenon
+     *            the Xenon to use
+     * @param scheduler
+     *            the scheduler to submit the shell to
+     * @param adaptorName
+     *            the name of the adaptor using this shell (used in exception if thrown)
+     * @param timeout
+     *            the time to wait for a command to finish before the shell is closed (in milliseconds).
+     * @throws XenonException
+     *             if the shell could not be started.
+     */
+    public RemoteShell(Xenon xenon, Scheduler scheduler, String adaptorName, long timeout) throws XenonException {
+        this.xenon = xenon;
+        this.adaptorName = adaptorName;
+        this.timeout = timeout;
+
+        JobDescription description = new JobDescription();
+        description.setInteractive(true);
+        description.setExecutable(SHELL);
+        description.setQueueName("unlimited");
+
+        job = xenon.jobs().submitJob(scheduler, description);
+
+        Streams streams = xenon.jobs().getStreams(job);
+
+        shellIn = streams.getStdin();
+        shellOut = new StreamBuffer("stdout", streams.getStdout());
+        shellErr = new StreamBuffer("stderr", streams.getStderr());
+
+        shellOut.start();
+        shellErr.start();
+    }
+
+    /**
+     * Create the text written to the shell to run a command.
+     * 
+     * @param marker
+     *            the marker that signals the end of the command.
+     * @param stdin
+     *            input to feed to the command, or <code>null</code>.
+     * @param executable
+     *            command to run
+     * @param arguments
+     *            arguments for the command
+     * @return the text to write to the shell.
+     */
+    static String buildScript(String marker, String stdin, String executable, String... arguments) {
+        StringBuilder script = new StringBuilder(200);
+
+        script.append(executable);
+
+        for (String s : arguments) {
+            script.append(' ');
+            script.append(CommandLineUtils.protectAgainstShellMetas(s));
+        }
+
+        if (stdin == null) {
+            // Make sure the command does not consume the input of the shell.
+            script.append(" < /dev/null");
+        } else {
+            script.append(" <<'").append(marker).append('\'');
+        }
+
+        script.append("; printf '%s %d\\n' ").append(marker).append(" $?");
+        script.append("; printf '%s\\n' ").append(marker).append(" >&2\n");
+
+        if (stdin != null) {
+            script.append(stdin);
+
+            if (!stdin.endsWith("\n")) {
+                script.append('\n');
+            }
+
+            script.append(marker).append('\n');
+        }
+
+        return script.toString();
+    }
+
+    /**
+     * Run a command in the shell, and wait for it to finish.
+     * 
+     * @param stdin
+     *            input to feed to the command, or <code>null</code>.
+     * @param executable
+     *            command to run
+     * @param arguments
+     *            arguments for the command
+     * @return a {@link RemoteCommandRunner} containing the stdout, stderr, and exit code of the command.
+     * @throws XenonException
+     *             if the shell failed.
+     */
+    public synchronized RemoteCommandRunner run(String stdin, String executable, String... arguments) throws XenonException {
+
+        if (closed.get()) {
+            throw new XenonException(adaptorName, "Remote shell is closed");
+        }
+
+        long start = System.currentTimeMillis();
+        long deadline = start + timeout;
+
+        String marker = "XENON_" + UUID.randomUUID().toString().replace("-", "");
+
+        try {
+            shellIn.write(buildScript(marker, stdin, executable, arguments).getBytes(StandardCharsets.UTF_8));
+            shellIn.flush();
+
+            String output = shellOut.readUntil((marker + " ").getBytes(StandardCharsets.UTF_8), deadline);
+            int exitCode = Integer.parseInt(shellOut.readUntil(NEWLINE, deadline).trim());
+            String error = shellErr.readUntil((marker + "\n").getBytes(StandardCharsets.UTF_8), deadline);
+
+            LOGGER.debug("RemoteShell took {} ms, executable = {}, arguments = {}, exitcode = {}, stdout:\n{}\nstderr:\n{}",
+                    System.currentTimeMillis() - start, executable, arguments, exitCode, output, error);
+
+            return new RemoteCommandRunner(exitCode, output, error);
+        } catch (IOException | NumberFormatException e) {
+            close();
+            throw new XenonException(adaptorName, "Remote shell failed", e);
+        }
+    }
+
+    private static int indexOf(byte[] data, int length, byte[] marker, int from) {
+        for (int i = from; i <= length - marker.length; i++) {
+            int j = 0;
+
+            while (j < marker.length && data[i + j] == marker[j]) {
+                j++;
+            }
+
+            if (j == marker.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns if the shell has been closed, either explicitly or because it failed.
+     * 
+     * @return if the shell has been closed.
+     */
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    /**
+     * Close the shell. This does not wait for a command that is currently running, which will fail instead.
+     */
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+
+        shellOut.wakeup();
+        shellErr.wakeup();
+
+        try {
+            shellIn.close();
+        } catch (IOException e) {
+            LOGGER.debug("Failed to close input of remote shell", e);
+        }
+
+        try {
+            xenon.jobs().cancelJob(job);
+        } catch (XenonException e) {
+            LOGGER.debug("Failed to cancel remote shell", e);
+        }
+    }
+}
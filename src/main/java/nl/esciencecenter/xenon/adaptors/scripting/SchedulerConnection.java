@@ -15,10 +15,14 @@
  */
 package nl.esciencecenter.xenon.adaptors.scripting;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 
 import nl.esciencecenter.xenon.InvalidLocationException;
 import nl.esciencecenter.xenon.XenonException;
@@ -58,6 +62,9 @@ public abstract class SchedulerConnection {
         return schedulerID++;
     }
 
+    /** Job option to submit a job script given by the user, instead of a generated one. */
+    public static final String JOB_OPTION_JOB_SCRIPT = "job.script";
+
     private final ScriptingAdaptor adaptor;
     private final String id;
     protected final XenonEngine engine;
@@ -68,6 +75,23 @@ public abstract class SchedulerConnection {
 
     private final long pollDelay;
 
+    /** Time to wait before starting a new shell after the first failure (in milliseconds). Doubled after each failure. */
+    private static final long SHELL_RETRY_DELAY = 1000L;
+
+    /** Maximum time to wait before starting a new shell after a failure (in milliseconds). */
+    private static final long SHELL_MAX_RETRY_DELAY = 5 * 60 * 1000L;
+
+    /** Run commands in a single long-lived shell, instead of starting a new job for each command? */
+    private boolean useShell;
+
+    private RemoteShell shell;
+
+    /** Number of shell failures since a command last succeeded in a shell. */
+    private int shellFailures = 0;
+
+    /** Time before which no new shell is started after a failure. */
+    private long shellRetryTime = 0;
+
     protected static boolean supportsScheme(String scheme, String[] supportedSchemes) {
         for (String validScheme : supportedSchemes) {
             if (validScheme.equalsIgnoreCase(scheme)) {
@@ -188,6 +212,16 @@ public abstract class SchedulerConnection {
         return result;
     }
 
+    protected static Set<String> identifiersAsSet(Job... jobs) {
+        Set<String> result = new HashSet<>(jobs.length * 4 / 3 + 1);
+        for (Job job : jobs) {
+            if (job != null) {
+                result.add(job.getIdentifier());
+            }
+        }
+        return result;
+    }
+
     protected SchedulerConnection(ScriptingAdaptor adaptor, String scheme, String location, Credential credential,
             XenonProperties properties, XenonEngine engine, long pollDelay) throws XenonException {
 
@@ -225,6 +259,9 @@ public abstract class SchedulerConnection {
         }
         subScheduler = engine.jobs().newScheduler(subJobScheme, subLocation, credential, subSchedulerProperties);
 
+        //starting a new job for each command is expensive over ssh, so we use a long-lived shell instead
+        useShell = subJobScheme.equals("ssh");
+
         LOGGER.debug("creating file system for {} adaptor at {}://{}", adaptor.getName(), subFileScheme, subLocation);
         subFileSystem = engine.files().newFileSystem(subFileScheme, subLocation, credential, null);
     }
@@ -233,6 +270,30 @@ public abstract class SchedulerConnection {
         return subFileSystem.getEntryPath();
     }
 
+    /**
+     * Returns the job script given by the user in the job options, or <code>null</code> if a job script should be generated.
+     * A relative path is resolved against the entry path of the file system.
+     * 
+     * @param description
+     *          the description of the job.
+     * @return the absolute path of the job script, or <code>null</code>.
+     */
+    protected String getCustomScriptFile(JobDescription description) {
+        String customScriptFile = description.getJobOptions().get(JOB_OPTION_JOB_SCRIPT);
+
+        //convert to absolute path if needed
+        if (customScriptFile != null && !customScriptFile.startsWith("/")) {
+            RelativePath scriptFile = getFsEntryPath().getRelativePath().resolve(customScriptFile);
+            customScriptFile = scriptFile.getAbsolutePath();
+        }
+
+        return customScriptFile;
+    }
+
+    public long getPollDelay() {
+        return pollDelay;
+    }
+
     public XenonProperties getProperties() {
         return properties;
     }
@@ -256,9 +317,77 @@ public abstract class SchedulerConnection {
      *          if an error occurs
      */
     public RemoteCommandRunner runCommand(String stdin, String executable, String... arguments) throws XenonException {
+        RemoteShell remoteShell = getShell();
+
+        if (remoteShell != null) {
+            RemoteCommandRunner runner = remoteShell.run(stdin, executable, arguments);
+            shellSucceeded();
+            return runner;
+        }
+
         return new RemoteCommandRunner(engine, subScheduler, adaptor.getName(), stdin, executable, arguments);
     }
 
+    /**
+     * Returns the shell used to run commands, starting a new one if needed. If the shell failed or timed out, a new shell is 
+     * started for a later command. Until then, each command is run as a separate job, so a hung remote shell does not block all 
+     * commands. The delay before a new shell is started doubles with each consecutive failure.
+     * 
+     * @return the shell, or <code>null</code> if commands should each be run as a separate job.
+     */
+    private synchronized RemoteShell getShell() {
+        if (!useShell) {
+            return null;
+        }
+
+        if (shell != null && shell.isClosed()) {
+            shell = null;
+            shellFailed();
+        }
+
+        if (shell == null && System.currentTimeMillis() >= shellRetryTime) {
+            try {
+                shell = new RemoteShell(engine, subScheduler, adaptor.getName());
+            } catch (XenonException e) {
+                LOGGER.debug("Failed to start remote shell at {}", subScheduler, e);
+                shellFailed();
+            }
+        }
+
+        return shell;
+    }
+
+    /**
+     * Returns the time to wait before starting a new shell, after the given number of consecutive failures.
+     * 
+     * @param failures
+     *          the number of consecutive failures, at least 1.
+     * @return the delay in milliseconds.
+     */
+    protected static long getShellRetryDelay(int failures) {
+        if (failures > 20) {
+            return SHELL_MAX_RETRY_DELAY;
+        }
+
+        return Math.min(SHELL_RETRY_DELAY << (failures - 1), SHELL_MAX_RETRY_DELAY);
+    }
+
+    /** Must be called while holding the lock. */
+    private void shellFailed() {
+        shellFailures++;
+
+        long delay = getShellRetryDelay(shellFailures);
+
+        shellRetryTime = System.currentTimeMillis() + delay;
+
+        LOGGER.warn("Remote shell at {} failed {} time(s), running each command separately for {} ms", subScheduler, 
+                shellFailures, delay);
+    }
+
+    private synchronized void shellSucceeded() {
+        shellFailures = 0;
+    }
+
     /**
      * Run a command until completion. Throw an exception if the command returns a non-zero exit code, or prints to stderr.
       * 
@@ -274,8 +403,7 @@ public abstract class SchedulerConnection {
      *          if an error occurred
      */
     public String runCheckedCommand(String stdin, String executable, String... arguments) throws XenonException {
-        RemoteCommandRunner runner = new RemoteCommandRunner(engine, subScheduler, adaptor.getName(), stdin, executable,
-                arguments);
+        RemoteCommandRunner runner = runCommand(stdin, executable, arguments);
 
         if (!runner.success()) {
             throw new XenonException(adaptor.getName(), "could not run command \"" + executable + "\" with stdin \"" + stdin
@@ -286,6 +414,84 @@ public abstract class SchedulerConnection {
         return runner.getStdout();
     }
 
+    /**
+     * Run a number of commands on the remote scheduler machine, using a single remote command. Each command is run, even if 
+     * a previous command failed.
+     * 
+     * @param stdin
+     *          for each command, the text to write to the input of the executable, or <code>null</code>.
+     * @param executable
+     *          the executable to run
+     * @param arguments
+     *          for each command, the arguments to the executable
+     * @return
+     *          for each command, a {@link RemoteCommandRunner} containing its output and exit code.
+     * @throws XenonException
+     *          if an error occurs
+     */
+    public RemoteCommandRunner[] runCommands(String[] stdin, String executable, String[][] arguments) throws XenonException {
+        String marker = "XENON_" + UUID.randomUUID().toString().replace("-", "");
+
+        StringBuilder script = new StringBuilder();
+
+        for (int i = 0; i < stdin.length; i++) {
+            script.append(RemoteShell.buildScript(marker, stdin[i], executable, arguments[i]));
+        }
+
+        RemoteCommandRunner runner = runCommand(script.toString(), "/bin/sh");
+
+        try {
+            return splitOutput(marker, stdin.length, runner);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new XenonException(adaptor.getName(), "could not parse output of commands \"" + executable + "\" at \"" 
+                    + subScheduler + "\". " + runner, e);
+        }
+    }
+
+    /**
+     * Split the output of a number of commands, each followed by the given marker, into the output of each command.
+     * 
+     * @param marker
+     *          the marker that follows each command.
+     * @param count
+     *          the number of commands.
+     * @param runner
+     *          the output of all commands together.
+     * @return
+     *          the output of each command.
+     * @throws IllegalArgumentException
+     *          if the output does not contain the output of <code>count</code> commands.
+     */
+    static RemoteCommandRunner[] splitOutput(String marker, int count, RemoteCommandRunner runner) {
+        String output = runner.getStdout();
+        String error = runner.getStderr();
+
+        RemoteCommandRunner[] result = new RemoteCommandRunner[count];
+
+        int outputStart = 0;
+        int errorStart = 0;
+
+        for (int i = 0; i < count; i++) {
+            int outputEnd = output.indexOf(marker + " ", outputStart);
+            int errorEnd = error.indexOf(marker + "\n", errorStart);
+
+            if (outputEnd < 0 || errorEnd < 0) {
+                throw new IllegalArgumentException("Output of command " + i + " not found");
+            }
+
+            int endOfLine = output.indexOf('\n', outputEnd);
+            int exitCode = Integer.parseInt(output.substring(outputEnd + marker.length() + 1, endOfLine));
+
+            result[i] = new RemoteCommandRunner(exitCode, output.substring(outputStart, outputEnd), 
+                    error.substring(errorStart, errorEnd));
+
+            outputStart = endOfLine + 1;
+            errorStart = errorEnd + marker.length() + 1;
+        }
+
+        return result;
+    }
+
     /**
      * Start an interactive command on the remote machine (usually via ssh).
      * 
@@ -432,6 +638,19 @@ public abstract class SchedulerConnection {
     }
 
     public void close() throws XenonException {
+        RemoteShell remoteShell;
+
+        synchronized (this) {
+            useShell = false;
+            remoteShell = shell;
+            shell = null;
+        }
+
+        // Close outside the lock, which getShell holds while starting a new shell.
+        if (remoteShell != null) {
+            remoteShell.close();
+        }
+
         engine.jobs().close(subScheduler);
     }
 
@@ -453,6 +672,98 @@ public abstract class SchedulerConnection {
 
     public abstract JobStatus cancelJob(Job job) throws XenonException;
 
+    /**
+     * Submit a number of jobs. If submitting one of the jobs fails, the jobs that were already submitted are cancelled. 
+     * 
+     * This implementation submits the jobs one by one. Subclasses may override this to submit the jobs in a single operation.
+     * 
+     * @param descriptions
+     *          the descriptions of the jobs to submit.
+     * @return
+     *          the submitted jobs, in the same order as the descriptions.
+     * @throws XenonException
+     *          if submitting one of the jobs failed.
+     */
+    public Job[] submitJobs(JobDescription... descriptions) throws XenonException {
+        Job[] result = new Job[descriptions.length];
+
+        try {
+            for (int i = 0; i < descriptions.length; i++) {
+                result[i] = submitJob(descriptions[i]);
+            }
+        } catch (XenonException e) {
+            cancelJobs(result);
+            throw e;
+        }
+
+        return result;
+    }
+
+    /**
+     * Cancel the given jobs, ignoring any errors. Used to clean up after a failed submission of a number of jobs.  
+     * 
+     * @param jobs
+     *          the jobs to cancel. May contain <code>null</code> elements.
+     */
+    protected void cancelJobs(Job... jobs) {
+        for (Job job : jobs) {
+            if (job != null) {
+                try {
+                    cancelJob(job);
+                } catch (XenonException e) {
+                    LOGGER.warn("Failed to cancel job {}", job, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Check if the given descriptions can be submitted as a single job array. This is the case if they only differ in 
+     * executable and arguments, and do not use a custom job script.
+     * 
+     * @param descriptions
+     *          the descriptions to check.
+     * @return if the descriptions can be submitted as a single job array.
+     */
+    protected static boolean isJobArray(JobDescription... descriptions) {
+        JobDescription first = withoutCommand(descriptions[0]);
+
+        for (JobDescription description : descriptions) {
+            if (description.isInteractive() || description.getJobOptions().containsKey(JOB_OPTION_JOB_SCRIPT)
+                    || !first.equals(withoutCommand(description))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static JobDescription withoutCommand(JobDescription description) {
+        JobDescription result = new JobDescription(description);
+        result.setExecutable(null);
+        result.setArguments();
+        return result;
+    }
+
+    /**
+     * Split the given descriptions into parts that each fit in a single job array.
+     * 
+     * @param descriptions
+     *          the descriptions to split.
+     * @param maxArraySize
+     *          the maximum number of tasks in a job array.
+     * @return the descriptions of each job array.
+     */
+    protected static List<JobDescription[]> splitJobArray(JobDescription[] descriptions, int maxArraySize) {
+        List<JobDescription[]> result = new ArrayList<>();
+
+        for (int start = 0; start < descriptions.length; start += maxArraySize) {
+            result.add(Arrays.copyOfRange(descriptions, start, Math.min(descriptions.length, start + maxArraySize)));
+        }
+
+        return result;
+    }
+
     public abstract JobStatus getJobStatus(Job job) throws XenonException;
 
     public abstract JobStatus[] getJobStatuses(Job... jobs) throws XenonException;
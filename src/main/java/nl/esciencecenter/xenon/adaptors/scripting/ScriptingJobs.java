@@ -26,9 +26,11 @@ import nl.esciencecenter.xenon.engine.XenonEngine;
 import nl.esciencecenter.xenon.engine.XenonProperties;
 import nl.esciencecenter.xenon.engine.jobs.JobStatusImplementation;
 import nl.esciencecenter.xenon.engine.jobs.SchedulerImplementation;
+import nl.esciencecenter.xenon.engine.util.JobStatusMonitor;
 import nl.esciencecenter.xenon.jobs.Job;
 import nl.esciencecenter.xenon.jobs.JobDescription;
 import nl.esciencecenter.xenon.jobs.JobStatus;
+import nl.esciencecenter.xenon.jobs.JobStatusListener;
 import nl.esciencecenter.xenon.jobs.Jobs;
 import nl.esciencecenter.xenon.jobs.NoSuchSchedulerException;
 import nl.esciencecenter.xenon.jobs.QueueStatus;
@@ -39,6 +41,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.HashMap;
+import java.util.concurrent.Future;
 
 /**
  * Implementation of Xenon Jobs interface using ssh and scripts. What scripts to run and how to parse the results is implemented
@@ -56,6 +59,8 @@ public class ScriptingJobs implements Jobs {
 
     private final Map<String, SchedulerConnection> connections;
 
+    private final JobStatusMonitor monitor;
+
     public ScriptingJobs(ScriptingAdaptor adaptor, XenonEngine xenonEngine, SchedulerConnectionFactory connectionFactory) {
         this.adaptor = adaptor;
         this.xenonEngine = xenonEngine;
@@ -63,6 +68,8 @@ public class ScriptingJobs implements Jobs {
         this.connectionFactory = connectionFactory;
 
         connections = new HashMap<>();
+
+        monitor = new JobStatusMonitor(adaptorName, this);
     }
 
     private synchronized SchedulerConnection getConnection(Scheduler scheduler) throws NoSuchSchedulerException {
@@ -164,6 +171,18 @@ public class ScriptingJobs implements Jobs {
         return getConnection(scheduler).submitJob(new JobDescription(description));
     }
 
+    @Override
+    public Job[] submitJobs(Scheduler scheduler, JobDescription... descriptions) throws XenonException {
+        // Copy the JobDescriptions to ensure the user doesn't change them after we return.
+        JobDescription[] copies = new JobDescription[descriptions.length];
+
+        for (int i = 0; i < descriptions.length; i++) {
+            copies[i] = new JobDescription(descriptions[i]);
+        }
+
+        return getConnection(scheduler).submitJobs(copies);
+    }
+
     @Override
     public JobStatus getJobStatus(Job job) throws XenonException {
         SchedulerConnection connection = getConnection(job.getScheduler());
@@ -263,6 +282,8 @@ public class ScriptingJobs implements Jobs {
     public void end() {
         SchedulerConnection[] currentConnections;
 
+        monitor.end();
+
         synchronized (this) {
             Collection<SchedulerConnection> tmp = connections.values();
             currentConnections = tmp.toArray(new SchedulerConnection[tmp.size()]);
@@ -298,4 +319,24 @@ public class ScriptingJobs implements Jobs {
         return connection.waitUntilRunning(job, timeout);
     }
 
+    @Override
+    public void addJobStatusListener(Job job, JobStatusListener listener) throws XenonException {
+        monitor.addListener(job, listener, getConnection(job.getScheduler()).getPollDelay());
+    }
+
+    @Override
+    public void removeJobStatusListener(Job job, JobStatusListener listener) {
+        monitor.removeListener(job, listener);
+    }
+
+    @Override
+    public Future<JobStatus> waitUntilDoneAsync(Job job) throws XenonException {
+        return monitor.waitUntilDone(job, getConnection(job.getScheduler()).getPollDelay());
+    }
+
+    @Override
+    public Future<JobStatus> waitUntilRunningAsync(Job job) throws XenonException {
+        return monitor.waitUntilRunning(job, getConnection(job.getScheduler()).getPollDelay());
+    }
+
 }
@@ -18,7 +18,9 @@ package nl.esciencecenter.xenon.adaptors.scripting;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 import nl.esciencecenter.xenon.XenonException;
@@ -38,6 +40,12 @@ public final class ScriptingParser {
     public static final Pattern EQUALS_REGEX = Pattern.compile("\\s*=\\s*");
 
     public static final Pattern HORIZONTAL_LINE_REGEX = Pattern.compile("^\\s*([=_-]{3,}\\s*)+$");
+
+    /** Separator for {@link #parseTable(String, String, char, Set, String, String...)}: fields separated by whitespace. */
+    public static final char WHITESPACE_SEPARATOR = ' ';
+
+    /** Separator for {@link #parseTable(String, String, char, Set, String, String...)}: fields separated by a bar. */
+    public static final char BAR_SEPARATOR = '|';
     
     private ScriptingParser() {
         //DO NOT USE
@@ -275,6 +283,302 @@ public final class ScriptingParser {
         return result;
     }
 
+    /**
+     * Parses lines containing multiple values, like {@link #parseTable(String, String, Pattern, String, String...)}, but without
+     * splitting the input into lines and values up front. Only the records whose key is in the given set of keys are returned,
+     * and lines of other records are skipped as soon as their key is found. Each record is a read-only {@link CompactRecord}
+     * which shares the field names with all other records.
+     * 
+     * The result is equal to that of {@link #parseTable(String, String, Pattern, String, String...)} with
+     * {@link #WHITESPACE_REGEX} or {@link #BAR_REGEX}, restricted to the given keys.
+     * 
+     * @param input
+     *            the input to parse
+     * 
+     * @param keyField
+     *            the field to use as the key in the result map. This field is mandatory in the output.
+     * 
+     * @param separator
+     *            the separator between fields, either {@link #WHITESPACE_SEPARATOR} or {@link #BAR_SEPARATOR}.
+     * 
+     * @param keys
+     *            the keys of the records to return, or <code>null</code> to return all records.
+     * 
+     * @param adaptorName
+     *            the adaptor name to report in case parsing failed
+     * 
+     * @param valueSuffixes
+     *            suffixes to be removed from values in the table. Useful if the output contains special markers for defaults,
+     *            disabled queues, broken nodes, etc
+     * 
+     * @return a map containing key/value maps of the requested records.
+     * @throws XenonException when parsing fails
+     */
+    @SuppressWarnings("PMD.NPathComplexity")
+    public static Map<String, Map<String, String>> parseTable(String input, String keyField, char separator, Set<String> keys, 
+            String adaptorName, String... valueSuffixes) throws XenonException {
+        if (separator != WHITESPACE_SEPARATOR && separator != BAR_SEPARATOR) {
+            throw new IllegalArgumentException("Unsupported separator: " + separator);
+        }
+        
+        if (input.isEmpty()) {
+            throw new XenonException(adaptorName, "Cannot parse table, Got no input, expected at least a header");
+        }
+
+        //trailing empty lines are ignored
+        int end = input.length();
+        while (end > 0 && input.charAt(end - 1) == '\n') {
+            end--;
+            if (end > 0 && input.charAt(end - 1) == '\r') {
+                end--;
+            }
+        }
+
+        //the first line will contain the fields (unless it is a separator)
+        int start = 0;
+        int lineEnd = lineEnd(input, start, end);
+        
+        while (start < end && isHorizontalLine(input, start, lineEnd)) {
+            start = nextLine(input, lineEnd, end);
+            lineEnd = lineEnd(input, start, end);
+        }
+        if (start >= end) {
+            throw new XenonException(adaptorName, "No table header encountered");
+        }
+
+        List<String> tokens = new ArrayList<>();
+        split(input, start, lineEnd, separator, tokens, Integer.MAX_VALUE);
+
+        String[] fields = new String[tokens.size()];
+        int keyIndex = -1;
+        
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = tokens.get(i).trim();
+
+            if (fields[i].isEmpty()) {
+                throw new XenonException(adaptorName, "Output contains empty field name in line \""
+                        + input.substring(start, lineEnd) + "\"");
+            }
+            
+            if (fields[i].equals(keyField)) {
+                keyIndex = i;
+            }
+        }
+
+        Map<String, Map<String, String>> result = new HashMap<>(keys == null ? 16 : keys.size() * 4 / 3 + 1);
+
+        for (start = nextLine(input, lineEnd, end); start <= end; start = nextLine(input, lineEnd, end)) {
+            lineEnd = lineEnd(input, start, end);
+            
+            if (isHorizontalLine(input, start, lineEnd)) {
+                // do not parse separators
+                continue;
+            }
+            
+            if (keys != null && keyIndex >= 0 && skipLine(input, start, lineEnd, separator, tokens, keyIndex, keys, 
+                    valueSuffixes)) {
+                continue;
+            }
+
+            split(input, start, lineEnd, separator, tokens, Integer.MAX_VALUE);
+            
+            String[] values = tokens.toArray(new String[tokens.size()]);
+            
+            if (containsTuple(tokens, tokens.size())) {
+                values = mergeTuples(values);
+            }
+            
+            if (fields.length != values.length) {
+                throw new XenonException(adaptorName, "Expected " + fields.length + " fields in output " + Arrays.toString(fields) 
+                    + ", got line with " + values.length + " values: " + input.substring(start, lineEnd) + "parsed to: " 
+                    + Arrays.toString(values) + " original input\n\n" + input + "\n\n");
+            }
+
+            if (keyIndex < 0) {
+                throw new XenonException(adaptorName, "Output does not contain required field \"" + keyField + "\"");
+            }
+            
+            for (int j = 0; j < values.length; j++) {
+                values[j] = cleanValue(values[j], valueSuffixes);
+            }
+
+            if (keys == null || keys.contains(values[keyIndex])) {
+                result.put(values[keyIndex], new CompactRecord(fields, values));
+            }
+        }
+
+        return result;
+    }
+
+    //returns the end of the line starting at the given position, excluding the line terminator
+    private static int lineEnd(String input, int start, int end) {
+        int newline = input.indexOf('\n', start);
+
+        if (newline < 0 || newline >= end) {
+            return end;
+        }
+        
+        if (newline > start && input.charAt(newline - 1) == '\r') {
+            return newline - 1;
+        }
+        return newline;
+    }
+
+    //returns the start of the line after the line ending at the given position, or a position after the end of the input
+    private static int nextLine(String input, int lineEnd, int end) {
+        if (lineEnd >= end) {
+            return end + 1;
+        }
+        
+        if (input.charAt(lineEnd) == '\r') {
+            return lineEnd + 2;
+        }
+        return lineEnd + 1;
+    }
+
+    //same as Character.isWhitespace for the characters matched by \s in a regular expression
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+
+    private static boolean isLineCharacter(char c) {
+        return c == '=' || c == '_' || c == '-';
+    }
+
+    //equivalent of HORIZONTAL_LINE_REGEX: only runs of at least three '=', '_' or '-' characters, separated by whitespace
+    private static boolean isHorizontalLine(String input, int start, int end) {
+        int runs = 0;
+        int i = start;
+        
+        while (i < end) {
+            char c = input.charAt(i);
+            
+            if (isSpace(c)) {
+                i++;
+            } else if (isLineCharacter(c)) {
+                int runStart = i;
+                while (i < end && isLineCharacter(input.charAt(i))) {
+                    i++;
+                }
+                if (i - runStart < 3) {
+                    return false;
+                }
+                runs++;
+            } else {
+                return false;
+            }
+        }
+        return runs > 0;
+    }
+
+    /*
+     * Splits the given part of the input into at most max tokens, with the same result as splitting it with WHITESPACE_REGEX or 
+     * BAR_REGEX: an empty leading token if the line starts with a separator, and no trailing empty tokens (unless the number of
+     * tokens is limited, or the line contains no separator at all).
+     */
+    private static void split(String input, int start, int end, char separator, List<String> tokens, int max) {
+        tokens.clear();
+
+        boolean separated;
+        
+        if (separator == WHITESPACE_SEPARATOR) {
+            separated = splitWhitespace(input, start, end, tokens, max);
+        } else {
+            separated = splitBar(input, start, end, tokens, max);
+        }
+
+        if (separated && max == Integer.MAX_VALUE) {
+            while (!tokens.isEmpty() && tokens.get(tokens.size() - 1).isEmpty()) {
+                tokens.remove(tokens.size() - 1);
+            }
+        }
+    }
+
+    //returns if any separator was found
+    private static boolean splitWhitespace(String input, int start, int end, List<String> tokens, int max) {
+        boolean separated = false;
+        int i = start;
+
+        if (i < end && isSpace(input.charAt(i))) {
+            tokens.add("");
+        }
+
+        while (tokens.size() < max) {
+            while (i < end && isSpace(input.charAt(i))) {
+                separated = true;
+                i++;
+            }
+
+            if (i == end) {
+                if (tokens.isEmpty()) {
+                    tokens.add("");
+                }
+                return separated;
+            }
+
+            int tokenStart = i;
+            while (i < end && !isSpace(input.charAt(i))) {
+                i++;
+            }
+            tokens.add(input.substring(tokenStart, i));
+        }
+        return true;
+    }
+
+    //returns if any separator was found
+    private static boolean splitBar(String input, int start, int end, List<String> tokens, int max) {
+        boolean separated = false;
+        int i = start;
+
+        while (tokens.size() < max) {
+            int bar = input.indexOf('|', i);
+
+            if (bar < 0 || bar >= end) {
+                tokens.add(input.substring(i, end));
+                return separated;
+            }
+
+            separated = true;
+
+            //whitespace around the bar is part of the separator
+            int tokenEnd = bar;
+            while (tokenEnd > i && isSpace(input.charAt(tokenEnd - 1))) {
+                tokenEnd--;
+            }
+            tokens.add(input.substring(i, tokenEnd));
+
+            i = bar + 1;
+            while (i < end && isSpace(input.charAt(i))) {
+                i++;
+            }
+        }
+        return true;
+    }
+
+    private static boolean containsTuple(List<String> tokens, int count) {
+        for (int i = 0; i < count; i++) {
+            if (tokens.get(i).startsWith("(")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Checks if the line can be skipped, by only splitting the line up to the key field. Lines with tuples before the key field 
+     * are never skipped, as merging the tuples may change the position of the key.
+     */
+    private static boolean skipLine(String input, int start, int end, char separator, List<String> tokens, int keyIndex, 
+            Set<String> keys, String... valueSuffixes) {
+        split(input, start, end, separator, tokens, keyIndex + 1);
+
+        if (tokens.size() <= keyIndex || containsTuple(tokens, tokens.size())) {
+            return false;
+        }
+
+        return !keys.contains(cleanValue(tokens.get(keyIndex), valueSuffixes));
+    }
+
     /*
      * Attempt to support simple tuples in the output. The splitter will typically split these into two elements. For example:
      * 
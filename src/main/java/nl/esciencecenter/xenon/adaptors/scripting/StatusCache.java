@@ -0,0 +1,281 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.scripting;
+
+import java.util.Map;
+
+import nl.esciencecenter.xenon.XenonException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * StatusCache keeps a snapshot of the status of all jobs of a scheduler, so status requests for individual jobs do not each 
+ * need to run a command on the scheduler machine.
+ * 
+ * The snapshot is fetched at most once per interval. Concurrent requests for a new snapshot are coalesced into a single 
+ * fetch. While status requests keep coming in, a background thread refreshes the snapshot every interval, so requests are 
+ * normally answered without waiting. The background thread stops when no requests have been made for a while.
+ * 
+ * The cache should be invalidated after submitting or cancelling a job, so the change is visible in the next snapshot. An 
+ * interval of 0 disables caching, in which case every request fetches a new snapshot.
+ * 
+ * @version 1.0
+ * @since 1.0
+ */
+public class StatusCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StatusCache.class);
+
+    /** Number of intervals without requests after which the background refresher stops. */
+    private static final int IDLE_INTERVALS = 10;
+
+    /** Returned by {@link #waitForNextRefresh()} when the background refresher should stop. */
+    private static final long STOP = -1;
+
+    /**
+     * Fetches the status of all jobs, indexed by job identifier.
+     */
+    public interface Fetcher {
+        Map<String, Map<String, String>> fetch() throws XenonException;
+    }
+
+    /**
+     * Refreshes the snapshot every interval, until the cache is idle or closed.
+     */
+    private class Refresher extends Thread {
+
+        Refresher() {
+            super("StatusCache refresher for " + name);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            long fetchGeneration = waitForNextRefresh();
+
+            while (fetchGeneration != STOP) {
+                try {
+                    fetch(fetchGeneration);
+                } catch (XenonException e) {
+                    LOGGER.debug("Failed to refresh status of {}", name, e);
+                }
+
+                fetchGeneration = waitForNextRefresh();
+            }
+        }
+    }
+
+    private final String name;
+
+    private final Fetcher fetcher;
+
+    private final long interval;
+
+    private Map<String, Map<String, String>> snapshot;
+
+    /** The time at which the fetch of the current snapshot was started. */
+    private long snapshotTime;
+
+    /** The generation of the current snapshot. */
+    private long snapshotGeneration = -1;
+
+    /** Incremented each time the cache is invalidated. */
+    private long generation = 0;
+
+    private boolean fetching = false;
+
+    /** Number of completed fetches, used by waiting requests to detect that a fetch failed. */
+    private long fetches = 0;
+
+    private XenonException error;
+
+    private long lastRequest;
+
+    private Refresher refresher;
+
+    private boolean closed = false;
+
+    /**
+     * Create a new StatusCache.
+     * 
+     * @param name
+     *          the name of the scheduler (used for logging).
+     * @param fetcher
+     *          fetches the status of all jobs.
+     * @param interval
+     *          the maximum age of a snapshot (in ms.), or 0 to disable caching.
+     */
+    public StatusCache(String name, Fetcher fetcher, long interval) {
+        this.name = name;
+        this.fetcher = fetcher;
+        this.interval = interval;
+    }
+
+    /**
+     * Returns the status of all jobs. The result is at most one interval old, and was fetched after the last call to 
+     * {@link #invalidate()}. The result must not be modified.
+     * 
+     * @return the status of all jobs, indexed by job identifier.
+     * @throws XenonException
+     *          if the status could not be fetched.
+     */
+    public Map<String, Map<String, String>> get() throws XenonException {
+
+        if (interval <= 0) {
+            return fetcher.fetch();
+        }
+
+        long fetchGeneration;
+
+        synchronized (this) {
+            lastRequest = System.currentTimeMillis();
+
+            if (refresher == null && !closed) {
+                refresher = new Refresher();
+                refresher.start();
+            }
+
+            while (true) {
+                if (isValid()) {
+                    return snapshot;
+                }
+
+                if (!fetching) {
+                    fetchGeneration = startFetch();
+                    break;
+                }
+
+                // Another request is already fetching a snapshot, so wait for it.
+                long seen = fetches;
+
+                while (fetching) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new XenonException(name, "Interrupted while waiting for job status", e);
+                    }
+                }
+
+                if (fetches > seen && error != null && !isValid()) {
+                    throw error;
+                }
+            }
+        }
+
+        return fetch(fetchGeneration);
+    }
+
+    /**
+     * Returns if snapshots are cached, and shared between requests.
+     * 
+     * @return if the interval of this cache is larger than 0.
+     */
+    public boolean isEnabled() {
+        return interval > 0;
+    }
+
+    /**
+     * Ensure that the next snapshot is fetched after this call.
+     */
+    public synchronized void invalidate() {
+        generation++;
+    }
+
+    /**
+     * Stop the background refresher.
+     */
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    private boolean isValid() {
+        return snapshot != null && snapshotGeneration == generation 
+                && System.currentTimeMillis() - snapshotTime < interval;
+    }
+
+    /** Must be called while holding the lock, after checking that no fetch is in progress. */
+    private long startFetch() {
+        fetching = true;
+        return generation;
+    }
+
+    private Map<String, Map<String, String>> fetch(long fetchGeneration) throws XenonException {
+
+        long start = System.currentTimeMillis();
+
+        Map<String, Map<String, String>> result = null;
+        XenonException exception = null;
+
+        try {
+            result = fetcher.fetch();
+        } catch (XenonException e) {
+            exception = e;
+        } finally {
+            synchronized (this) {
+                if (result != null) {
+                    snapshot = result;
+                    snapshotTime = start;
+                    snapshotGeneration = fetchGeneration;
+                }
+
+                error = exception;
+                fetching = false;
+                fetches++;
+                notifyAll();
+            }
+        }
+
+        if (exception != null) {
+            throw exception;
+        }
+
+        return result;
+    }
+
+    /**
+     * Wait until the next refresh is due, and start it. Checking that no other fetch is in progress and starting the refresh is 
+     * done while holding the lock, so only a single fetch can run at a time.
+     * 
+     * @return the generation of the refresh to fetch, or {@link #STOP} if the refresher should stop.
+     */
+    private synchronized long waitForNextRefresh() {
+
+        long deadline = System.currentTimeMillis() + interval;
+
+        while (true) {
+            if (closed || System.currentTimeMillis() - lastRequest > IDLE_INTERVALS * interval) {
+                refresher = null;
+                return STOP;
+            }
+
+            long left = deadline - System.currentTimeMillis();
+
+            if (left <= 0 && !fetching) {
+                return startFetch();
+            }
+
+            try {
+                wait(left > 0 ? left : interval);
+            } catch (InterruptedException e) {
+                refresher = null;
+                return STOP;
+            }
+        }
+    }
+}
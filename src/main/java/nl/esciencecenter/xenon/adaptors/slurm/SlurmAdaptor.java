@@ -59,6 +59,12 @@ public class SlurmAdaptor extends ScriptingAdaptor {
     /** Polling delay for jobs started by this adaptor. */
     public static final String POLL_DELAY_PROPERTY = PREFIX + "poll.delay";
 
+    /** Maximum age of the cached status of all jobs. */
+    public static final String STATUS_CACHE_PROPERTY = PREFIX + "status.cache.interval";
+
+    /** Should the accounting info only be fetched for jobs that changed since the last poll? */
+    public static final String INCREMENTAL_ACCOUNTING_PROPERTY = PREFIX + "accounting.incremental";
+
     /** Human readable description of this adaptor */
     public static final String ADAPTOR_DESCRIPTION = "The Slurm Adaptor submits jobs to a Slurm scheduler. This adaptor uses either the local "
             + "or the ssh adaptor to gain access to the scheduler machine.";
@@ -74,7 +80,15 @@ public class SlurmAdaptor extends ScriptingAdaptor {
                 "false", "Do not use accounting info of slurm, even when available. Mostly for testing purposes"),
                 
         new XenonPropertyDescriptionImplementation(POLL_DELAY_PROPERTY, Type.LONG, EnumSet.of(Component.SCHEDULER), "1000",
-                "Number of milliseconds between polling the status of a job."));
+                "Number of milliseconds between polling the status of a job."),
+
+        new XenonPropertyDescriptionImplementation(STATUS_CACHE_PROPERTY, Type.LONG, EnumSet.of(Component.SCHEDULER), "1000",
+                "Number of milliseconds the status of all jobs is cached before it is fetched from the scheduler again "
+                + "(0 disables the cache)."),
+
+        new XenonPropertyDescriptionImplementation(INCREMENTAL_ACCOUNTING_PROPERTY, Type.BOOLEAN, EnumSet.of(Component.SCHEDULER),
+                "true", "Keep a local table of job states, updated by asking the accounting for jobs active since the last "
+                + "update, instead of asking for all requested jobs and running scontrol for each missing one."));
 
     /**
      * Create a new SlurmAdaptor.
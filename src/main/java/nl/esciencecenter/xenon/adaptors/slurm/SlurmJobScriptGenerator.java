@@ -87,10 +87,7 @@ public final class SlurmJobScriptGenerator {
     }
 
     @SuppressWarnings("PMD.NPathComplexity")
-    public static String generate(JobDescription description, RelativePath fsEntryPath) {
-        StringBuilder stringBuilder = new StringBuilder();
-        Formatter script = new Formatter(stringBuilder, Locale.US);
-
+    private static void generateHeader(Formatter script, JobDescription description, RelativePath fsEntryPath) {
         script.format("#!/bin/sh\n");
 
         //set name of job to xenon
@@ -130,24 +127,41 @@ public final class SlurmJobScriptGenerator {
         } else {
             script.format("#SBATCH --error='%s'\n", description.getStderr());
         }
+    }
 
+    private static void generateEnvironment(Formatter script, JobDescription description) {
         for (Map.Entry<String, String> entry : description.getEnvironment().entrySet()) {
             script.format("export %s=\"%s\"\n", entry.getKey(), entry.getValue());
         }
 
         script.format("\n");
+    }
+
+    private static String generateCommand(JobDescription description) {
+        StringBuilder command = new StringBuilder();
 
         if (!description.isStartSingleProcess()) {
             //run commands through srun
-            script.format("srun ");
+            command.append("srun ");
         }
 
-        script.format("%s", description.getExecutable());
+        command.append(description.getExecutable());
 
         for (String argument : description.getArguments()) {
-            script.format(" %s", CommandLineUtils.protectAgainstShellMetas(argument));
+            command.append(' ').append(CommandLineUtils.protectAgainstShellMetas(argument));
         }
-        script.format("\n");
+
+        return command.toString();
+    }
+
+    public static String generate(JobDescription description, RelativePath fsEntryPath) {
+        StringBuilder stringBuilder = new StringBuilder();
+        Formatter script = new Formatter(stringBuilder, Locale.US);
+
+        generateHeader(script, description, fsEntryPath);
+        generateEnvironment(script, description);
+
+        script.format("%s\n", generateCommand(description));
 
         script.close();
 
@@ -155,4 +169,53 @@ public final class SlurmJobScriptGenerator {
 
         return stringBuilder.toString();
     }
+
+    /**
+     * Generate a script for a job array, with one task for each of the descriptions. The descriptions may only differ in 
+     * executable and arguments. The header of the script is generated from the first description. Task <code>i</code> runs 
+     * the command of description <code>i</code>.
+     * 
+     * @param descriptions
+     *          the descriptions of the tasks of the job array.
+     * @param fsEntryPath
+     *          the entry path of the filesystem, used to resolve relative working directories.
+     * @return the job script.
+     */
+    public static String generateArray(JobDescription[] descriptions, RelativePath fsEntryPath) {
+        StringBuilder stringBuilder = new StringBuilder();
+        Formatter script = new Formatter(stringBuilder, Locale.US);
+
+        generateHeader(script, descriptions[0], fsEntryPath);
+
+        script.format("#SBATCH --array=0-%d\n", descriptions.length - 1);
+
+        generateEnvironment(script, descriptions[0]);
+
+        String[] commands = new String[descriptions.length];
+        boolean identical = true;
+
+        for (int i = 0; i < descriptions.length; i++) {
+            commands[i] = generateCommand(descriptions[i]);
+            identical = identical && commands[i].equals(commands[0]);
+        }
+
+        if (identical) {
+            script.format("%s\n", commands[0]);
+        } else {
+            //select the command using the index of this task in the array
+            script.format("case \"$SLURM_ARRAY_TASK_ID\" in\n");
+
+            for (int i = 0; i < commands.length; i++) {
+                script.format("%d)\n    %s\n    ;;\n", i, commands[i]);
+            }
+
+            script.format("esac\n");
+        }
+
+        script.close();
+
+        LOGGER.debug("Created job array script:\n{} for {} tasks", stringBuilder, descriptions.length);
+
+        return stringBuilder.toString();
+    }
 }
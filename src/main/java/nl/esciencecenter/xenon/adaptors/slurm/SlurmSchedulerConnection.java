@@ -15,16 +15,24 @@
  */
 package nl.esciencecenter.xenon.adaptors.slurm;
 
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
 
 import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.adaptors.scripting.JobStateTable;
 import nl.esciencecenter.xenon.adaptors.scripting.RemoteCommandRunner;
 import nl.esciencecenter.xenon.adaptors.scripting.SchedulerConnection;
 import nl.esciencecenter.xenon.adaptors.scripting.ScriptingAdaptor;
 import nl.esciencecenter.xenon.adaptors.scripting.ScriptingParser;
+import nl.esciencecenter.xenon.adaptors.scripting.StatusCache;
 import nl.esciencecenter.xenon.credentials.Credential;
 import nl.esciencecenter.xenon.engine.XenonEngine;
 import nl.esciencecenter.xenon.engine.XenonProperties;
@@ -62,8 +70,6 @@ public class SlurmSchedulerConnection extends SchedulerConnection {
     
     private static final long SLURM_UPDATE_SLEEP = 1000L; // 1 second update sleep
     
-    public static final String JOB_OPTION_JOB_SCRIPT = "job.script";
-
     private static final String[] VALID_JOB_OPTIONS = new String[] { JOB_OPTION_JOB_SCRIPT };
 
     /**
@@ -98,6 +104,36 @@ public class SlurmSchedulerConnection extends SchedulerConnection {
     
     /** In completed state, the job has terminated and all processes have returned exit code 0. */ 
     private static final String DONE_STATE = "COMPLETED";
+
+    private static final String SACCT_FORMAT = "--format=JobID,JobName,Partition,NTasks,"
+            + "Elapsed,State,ExitCode,AllocCPUS,DerivedExitCode,Submit,"
+            + "Suspended,Start,User,End,NNodes,Timelimit,Comment,Priority";
+
+    /** Time format accepted by the --starttime and --endtime options of sacct. */
+    private static final String SACCT_TIME_FORMAT = "yyyy-MM-dd'T'HH:mm:ss";
+
+    /** Overlap between successive accounting windows, to cope with jobs updated while sacct runs. */
+    private static final long ACCOUNTING_OVERLAP = 60L * 1000L;
+
+    /**
+     * Returns the start of the next accounting window, which is the given (remote) time minus the overlap.
+     *
+     * @param now
+     *            the current time on the remote machine, in sacct time format.
+     * @return the start of the next accounting window, in sacct time format.
+     * @throws XenonException
+     *             if the time cannot be parsed.
+     */
+    protected static String getAccountingWindowStart(String now) throws XenonException {
+        SimpleDateFormat format = new SimpleDateFormat(SACCT_TIME_FORMAT, Locale.US);
+
+        try {
+            Date date = format.parse(now.trim());
+            return format.format(new Date(date.getTime() - ACCOUNTING_OVERLAP));
+        } catch (ParseException e) {
+            throw new XenonException(SlurmAdaptor.ADAPTOR_NAME, "Cannot parse time \"" + now + "\"", e);
+        }
+    }
     
     // Retrieve an exit code from the "ExitCode" output field of scontrol
     protected static Integer exitcodeFromString(String value) throws XenonException {
@@ -327,7 +363,17 @@ public class SlurmSchedulerConnection extends SchedulerConnection {
 
     private final SlurmSetup config;
 
-    private final Map<String, Job> interactiveJobs;
+    private final JobStateTable<Job> interactiveJobs;
+
+    private final StatusCache statusCache;
+
+    //local table of job states, only updated with jobs that changed since the last update (if enabled)
+    private final JobStateTable<Map<String, String>> accountingTable;
+
+    private final StatusCache accountingCache;
+
+    //start of the next accounting window, in remote time
+    private String accountingSince;
 
     protected SlurmSchedulerConnection(ScriptingAdaptor adaptor, String location, Credential credential, XenonProperties properties,
             XenonEngine engine) throws XenonException {
@@ -336,13 +382,39 @@ public class SlurmSchedulerConnection extends SchedulerConnection {
                 .getLongProperty(SlurmAdaptor.POLL_DELAY_PROPERTY));
 
         //map containing references to interactive jobs (normally ssh jobs)
-        interactiveJobs = new HashMap<>();
+        interactiveJobs = new JobStateTable<>(SlurmAdaptor.ADAPTOR_NAME + " interactive jobs", JobStateTable.DEFAULT_MAX_SIZE,
+                JobStateTable.DEFAULT_LIFETIME);
 
         boolean ignoreVersion = getProperties().getBooleanProperty(SlurmAdaptor.IGNORE_VERSION_PROPERTY);
         boolean disableAccounting = getProperties().getBooleanProperty(SlurmAdaptor.DISABLE_ACCOUNTING_USAGE);
 
         this.config = getConfiguration(ignoreVersion, disableAccounting);
 
+        //status of all jobs in the queue, shared by all status requests
+        statusCache = new StatusCache(SlurmAdaptor.ADAPTOR_NAME, new StatusCache.Fetcher() {
+            @Override
+            public Map<String, Map<String, String>> fetch() throws XenonException {
+                return getSqueueInfo();
+            }
+        }, getProperties().getLongProperty(SlurmAdaptor.STATUS_CACHE_PROPERTY));
+
+        if (config.accountingAvailable() && getProperties().getBooleanProperty(SlurmAdaptor.INCREMENTAL_ACCOUNTING_PROPERTY)) {
+            //jobs submitted before this connection was made are not in the table, and are looked up separately
+            accountingSince = runCheckedCommand(null, "date", "+%Y-%m-%dT%H:%M:%S").trim();
+            accountingTable = new JobStateTable<>(SlurmAdaptor.ADAPTOR_NAME + " accounting", JobStateTable.DEFAULT_MAX_SIZE,
+                    JobStateTable.DEFAULT_LIFETIME);
+
+            accountingCache = new StatusCache(SlurmAdaptor.ADAPTOR_NAME, new StatusCache.Fetcher() {
+                @Override
+                public Map<String, Map<String, String>> fetch() throws XenonException {
+                    return updateAccountingTable();
+                }
+            }, getProperties().getLongProperty(SlurmAdaptor.STATUS_CACHE_PROPERTY));
+        } else {
+            accountingTable = null;
+            accountingCache = null;
+        }
+
         //Very wide partition format to compensate for bug in slurm 2.3.
         //If the size of the column is not specified the default partition does not get listed with a "*"
         String output = runCheckedCommand(null, "sinfo", "--noheader", "--format=%120P");
@@ -398,34 +470,38 @@ public class SlurmSchedulerConnection extends SchedulerConnection {
 
         verifyJobDescription(description);
 
-        if (description.isInteractive()) {
-            return submitInteractiveJob(description);
-        } else {
-            return submitBatchJob(description);
+        try {
+            if (description.isInteractive()) {
+                return submitInteractiveJob(description);
+            } else {
+                return submitBatchJob(description);
+            }
+        } finally {
+            invalidateCaches();
+        }
+    }
+
+    private void invalidateCaches() {
+        statusCache.invalidate();
+
+        if (accountingCache != null) {
+            accountingCache.invalidate();
         }
     }
 
     private Job submitBatchJob(JobDescription description) throws XenonException {
         String output;
-        RelativePath fsEntryPath = getFsEntryPath().getRelativePath();
 
         //check for option that overrides job script completely.
-        String customScriptFile = description.getJobOptions().get(JOB_OPTION_JOB_SCRIPT);
+        String customScriptFile = getCustomScriptFile(description);
 
         if (customScriptFile == null) {
             checkWorkingDirectory(description.getWorkingDirectory());
-            String jobScript = SlurmJobScriptGenerator.generate(description, fsEntryPath);
+            String jobScript = SlurmJobScriptGenerator.generate(description, getFsEntryPath().getRelativePath());
 
             output = runCheckedCommand(jobScript, "sbatch");
         } else {
             //the user gave us a job script. Pass it to sbatch as-is
-
-            //convert to absolute path if needed
-            if (!customScriptFile.startsWith("/")) {
-                RelativePath scriptFile = fsEntryPath.resolve(customScriptFile);
-                customScriptFile = scriptFile.getAbsolutePath();
-            }
-
             output = runCheckedCommand(null, "sbatch", customScriptFile);
         }
 
@@ -435,6 +511,115 @@ public class SlurmSchedulerConnection extends SchedulerConnection {
         return new JobImplementation(getScheduler(), jobID, description, false, false);
     }
 
+    @Override
+    public Job[] submitJobs(JobDescription... descriptions) throws XenonException {
+
+        for (JobDescription description : descriptions) {
+            verifyJobDescription(description);
+
+            //interactive jobs cannot be combined, so submit all jobs one by one
+            if (description.isInteractive()) {
+                return super.submitJobs(descriptions);
+            }
+        }
+
+        try {
+            if (descriptions.length > 1 && config.jobArraysAvailable() && isJobArray(descriptions)) {
+                return submitJobArrays(descriptions);
+            } else {
+                return submitBatchJobs(descriptions);
+            }
+        } finally {
+            invalidateCaches();
+        }
+    }
+
+    // A job array may contain at most MaxArraySize tasks, so a large batch is submitted as several job arrays.
+    private Job[] submitJobArrays(JobDescription[] descriptions) throws XenonException {
+        checkWorkingDirectory(descriptions[0].getWorkingDirectory());
+
+        Job[] result = new Job[descriptions.length];
+        int index = 0;
+
+        try {
+            for (JobDescription[] part : splitJobArray(descriptions, config.getMaxArraySize())) {
+                Job[] jobs = submitJobArray(part);
+                System.arraycopy(jobs, 0, result, index, jobs.length);
+                index += jobs.length;
+            }
+        } catch (XenonException e) {
+            cancelJobs(result);
+            throw e;
+        }
+
+        return result;
+    }
+
+    private Job[] submitJobArray(JobDescription[] descriptions) throws XenonException {
+
+        String jobScript = SlurmJobScriptGenerator.generateArray(descriptions, getFsEntryPath().getRelativePath());
+
+        String output = runCheckedCommand(jobScript, "sbatch");
+
+        String jobID = ScriptingParser.parseJobIDFromLine(output, SlurmAdaptor.ADAPTOR_NAME, "Submitted batch job");
+
+        //each task of the array has its own identifier
+        Job[] result = new Job[descriptions.length];
+
+        for (int i = 0; i < descriptions.length; i++) {
+            result[i] = new JobImplementation(getScheduler(), jobID + "_" + i, descriptions[i], false, false);
+        }
+
+        return result;
+    }
+
+    private Job[] submitBatchJobs(JobDescription[] descriptions) throws XenonException {
+        String[] jobScripts = new String[descriptions.length];
+        String[][] arguments = new String[descriptions.length][];
+
+        for (int i = 0; i < descriptions.length; i++) {
+            String customScriptFile = getCustomScriptFile(descriptions[i]);
+
+            if (customScriptFile == null) {
+                checkWorkingDirectory(descriptions[i].getWorkingDirectory());
+                jobScripts[i] = SlurmJobScriptGenerator.generate(descriptions[i], getFsEntryPath().getRelativePath());
+                arguments[i] = new String[0];
+            } else {
+                arguments[i] = new String[] { customScriptFile };
+            }
+        }
+
+        //run all sbatch commands at once
+        RemoteCommandRunner[] runners = runCommands(jobScripts, "sbatch", arguments);
+
+        Job[] result = new Job[descriptions.length];
+        XenonException error = null;
+
+        for (int i = 0; i < descriptions.length; i++) {
+            try {
+                if (!runners[i].success()) {
+                    throw new XenonException(SlurmAdaptor.ADAPTOR_NAME, "could not submit job: " + runners[i]);
+                }
+
+                String jobID = ScriptingParser.parseJobIDFromLine(runners[i].getStdout(), SlurmAdaptor.ADAPTOR_NAME, 
+                        "Submitted batch job");
+                result[i] = new JobImplementation(getScheduler(), jobID, descriptions[i], false, false);
+            } catch (XenonException e) {
+                //remember the first failure
+                if (error == null) {
+                    error = e;
+                }
+            }
+        }
+
+        if (error != null) {
+            cancelJobs(result);
+            throw error;
+        }
+
+        return result;
+    }
+
     private Job findInteractiveJobInMap(Map<String, Map<String, String>> queueInfo, String tag, JobDescription description, 
             Job interactiveJob) {
 
@@ -449,10 +634,8 @@ public class SlurmSchedulerConnection extends SchedulerConnection {
 
                 Job result = new JobImplementation(getScheduler(), jobID, description, true, true);
                 
-                synchronized (this) {
-                    //add to set of interactive jobs so we can find it
-                    interactiveJobs.put(result.getIdentifier(), interactiveJob);
-                }
+                //add to set of interactive jobs so we can find it
+                interactiveJobs.put(result.getIdentifier(), interactiveJob);
                 
                 return result;
             }
@@ -536,6 +719,8 @@ public class SlurmSchedulerConnection extends SchedulerConnection {
         String identifier = job.getIdentifier();
         String output = runCheckedCommand(null, "scancel", identifier);
 
+        invalidateCaches();
+
         if (!output.isEmpty()) {
             throw new XenonException(SlurmAdaptor.ADAPTOR_NAME, "Got unexpected output on cancelling job: " + output);
         }
@@ -586,22 +771,27 @@ public class SlurmSchedulerConnection extends SchedulerConnection {
         String squeueOutput;
         
         if (jobs == null || jobs.length == 0)  {
-            squeueOutput = runCheckedCommand(null, "squeue", "--format=%i %P %j %u %T %M %l %D %R %k");
+            if (config.jobArraysAvailable()) {
+                //list the tasks of job arrays separately, so their status can be found
+                squeueOutput = runCheckedCommand(null, "squeue", "--array", "--format=%i %P %j %u %T %M %l %D %R %k");
+            } else {
+                squeueOutput = runCheckedCommand(null, "squeue", "--format=%i %P %j %u %T %M %l %D %R %k");
+            }
         } else { 
             squeueOutput = runCheckedCommand(null, "squeue", "--format=%i %P %j %u %T %M %l %D %R %k", "--jobs="
                 + SchedulerConnection.identifiersAsCSList(jobs));
         }
 
-        return ScriptingParser.parseTable(squeueOutput, "JOBID", ScriptingParser.WHITESPACE_REGEX, SlurmAdaptor.ADAPTOR_NAME,
-                "*", "~");
+        return ScriptingParser.parseTable(squeueOutput, "JOBID", ScriptingParser.WHITESPACE_SEPARATOR, null,
+                SlurmAdaptor.ADAPTOR_NAME, "*", "~");
     }
 
     private Map<String, Map<String, String>> getSinfoInfo(String... partitions) throws XenonException {
         String output = runCheckedCommand(null, "sinfo", "--format=%P %a %l %F %N %C %D",
                 "--partition=" + CommandLineUtils.asCSList(partitions));
 
-        return ScriptingParser.parseTable(output, "PARTITION", ScriptingParser.WHITESPACE_REGEX, SlurmAdaptor.ADAPTOR_NAME, "*",
-                "~");
+        return ScriptingParser.parseTable(output, "PARTITION", ScriptingParser.WHITESPACE_SEPARATOR, null,
+                SlurmAdaptor.ADAPTOR_NAME, "*", "~");
     }
 
     private Map<String, Map<String, String>> getSacctInfo(Job... jobs) throws XenonException {
@@ -614,14 +804,9 @@ public class SlurmSchedulerConnection extends SchedulerConnection {
         // This command will not complain if the job given does not exist
         // but it may produce output on stderr when it finds non-standard lines in the accounting log        
         if (jobs == null || jobs.length == 0) { 
-            runner = runCommand(null, "sacct", "-X", "-p", "--format=JobID,JobName,Partition,NTasks,"
-                    + "Elapsed,State,ExitCode,AllocCPUS,DerivedExitCode,Submit,"
-                    + "Suspended,Start,User,End,NNodes,Timelimit,Comment,Priority");
+            runner = runCommand(null, "sacct", "-X", "-p", SACCT_FORMAT);
         } else { 
-            runner = runCommand(null, "sacct", "-X", "-p", "--format=JobID,JobName,Partition,NTasks,"
-                    + "Elapsed,State,ExitCode,AllocCPUS,DerivedExitCode,Submit,"
-                    + "Suspended,Start,User,End,NNodes,Timelimit,Comment,Priority",
-                    "--jobs=" + SchedulerConnection.identifiersAsCSList(jobs));
+            runner = runCommand(null, "sacct", "-X", "-p", SACCT_FORMAT, "--jobs=" + SchedulerConnection.identifiersAsCSList(jobs));
         }
 
         if (runner.getExitCode() != 0) {
@@ -632,17 +817,80 @@ public class SlurmSchedulerConnection extends SchedulerConnection {
             LOGGER.warn("Sacct produced error output: " + runner.getStderr());
         }
  
-        return ScriptingParser.parseTable(runner.getStdout(), "JobID", ScriptingParser.BAR_REGEX, SlurmAdaptor.ADAPTOR_NAME, "*",
-                "~");
+        return ScriptingParser.parseTable(runner.getStdout(), "JobID", ScriptingParser.BAR_SEPARATOR, null,
+                SlurmAdaptor.ADAPTOR_NAME, "*", "~");
+    }
+
+    /**
+     * Updates the accounting table with all jobs that were active since the previous update, using a single sacct command
+     * that also reports the current time on the remote machine. Returns the jobs updated.
+     */
+    private Map<String, Map<String, String>> updateAccountingTable() throws XenonException {
+        String since;
+
+        synchronized (this) {
+            since = accountingSince;
+        }
+
+        //script is passed on stdin, so the shell variable survives any quoting of arguments
+        RemoteCommandRunner runner = runCommand("now=$(date +%Y-%m-%dT%H:%M:%S) && echo $now && sacct -X -p " + SACCT_FORMAT
+                + " --starttime=" + since + " --endtime=$now\n", "/bin/sh");
+
+        if (runner.getExitCode() != 0) {
+            throw new XenonException(SlurmAdaptor.ADAPTOR_NAME, "Error in getting sacct job status: " + runner);
+        }
+
+        if (!runner.getStderr().isEmpty()) {
+            LOGGER.warn("Sacct produced error output: " + runner.getStderr());
+        }
+
+        String output = runner.getStdout();
+        int newline = output.indexOf('\n');
+
+        if (newline < 0) {
+            throw new XenonException(SlurmAdaptor.ADAPTOR_NAME, "Got unexpected output from sacct: " + output);
+        }
+
+        String next = getAccountingWindowStart(output.substring(0, newline));
+
+        Map<String, Map<String, String>> changed = ScriptingParser.parseTable(output.substring(newline + 1), "JobID",
+                ScriptingParser.BAR_SEPARATOR, null, SlurmAdaptor.ADAPTOR_NAME, "*", "~");
+
+        accountingTable.putAll(changed);
+
+        synchronized (this) {
+            accountingSince = next;
+        }
+
+        LOGGER.debug("{} jobs changed since {}, {}", changed.size(), since, accountingTable);
+
+        return changed;
+    }
+
+    //returns the status of the job according to the local accounting table
+    private JobStatus getJobStatusFromAccountingTable(Job job) throws XenonException {
+        Map<String, String> info = accountingTable.get(job.getIdentifier());
+
+        if (info == null) {
+            return null;
+        }
+
+        return getJobStatusFromSacctInfo(Collections.singletonMap(job.getIdentifier(), info), job);
     }
 
     @Override
     public JobStatus getJobStatus(Job job) throws XenonException {
 
         //try the queue first
-        Map<String, Map<String, String>> sQueueInfo = getSqueueInfo(job);
+        Map<String, Map<String, String>> sQueueInfo = statusCache.get();
         JobStatus result = getJobStatusFromSqueueInfo(sQueueInfo, job);
 
+        //try the local accounting table (if enabled)
+        if (result == null && accountingCache != null) {
+            accountingCache.get();
+            result = getJobStatusFromAccountingTable(job);
+        }
+
         //try the accounting (if available)
         if (result == null) {
             Map<String, Map<String, String>> sacctInfo = getSacctInfo(job);
@@ -665,10 +913,14 @@ public class SlurmSchedulerConnection extends SchedulerConnection {
 
     @Override
     public JobStatus[] getJobStatuses(Job... jobs) throws XenonException {
+        if (accountingCache != null) {
+            return getJobStatusesIncremental(jobs);
+        }
+
         JobStatus[] result = new JobStatus[jobs.length];
 
         //fetch queue info for all jobs in one go
-        Map<String, Map<String, String>> squeueInfo = getSqueueInfo(jobs);
+        Map<String, Map<String, String>> squeueInfo = statusCache.get();
 
         //fetch accounting info for all jobs in one go
         Map<String, Map<String, String>> sacctInfo = getSacctInfo(jobs);
@@ -704,6 +956,56 @@ public class SlurmSchedulerConnection extends SchedulerConnection {
         return result;
     }
 
+    /**
+     * Gets the status of all jobs from the queue and the local accounting table. Jobs missing from both are looked up in the
+     * accounting with a single command. No scontrol command is run per job.
+     */
+    private JobStatus[] getJobStatusesIncremental(Job... jobs) throws XenonException {
+        JobStatus[] result = new JobStatus[jobs.length];
+
+        Map<String, Map<String, String>> squeueInfo = statusCache.get();
+        accountingCache.get();
+
+        List<Job> missing = new ArrayList<>();
+
+        for (int i = 0; i < jobs.length; i++) {
+            if (jobs[i] != null) {
+                result[i] = getJobStatusFromSqueueInfo(squeueInfo, jobs[i]);
+
+                if (result[i] == null) {
+                    result[i] = getJobStatusFromAccountingTable(jobs[i]);
+                }
+
+                if (result[i] == null) {
+                    missing.add(jobs[i]);
+                }
+            }
+        }
+
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        //jobs not seen since this connection was made, ask the accounting for these jobs only
+        Map<String, Map<String, String>> missingInfo = getSacctInfo(missing.toArray(new Job[missing.size()]));
+        accountingTable.putAll(missingInfo);
+
+        for (int i = 0; i < jobs.length; i++) {
+            if (jobs[i] != null && result[i] == null) {
+                result[i] = getJobStatusFromSacctInfo(missingInfo, jobs[i]);
+
+                //job really does not seem to exist (anymore)
+                if (result[i] == null) {
+                    NoSuchJobException exception = new NoSuchJobException(SlurmAdaptor.ADAPTOR_NAME, "Unknown Job: "
+                            + jobs[i].getIdentifier());
+                    result[i] = new JobStatusImplementation(jobs[i], null, null, exception, false, false, null);
+                }
+            }
+        }
+
+        return result;
+    }
+
     @Override
     public QueueStatus getQueueStatus(String queueName) throws XenonException {
         Map<String, Map<String, String>> info = getSinfoInfo(queueName);
@@ -753,11 +1055,7 @@ public class SlurmSchedulerConnection extends SchedulerConnection {
 
     @Override
     public Streams getStreams(Job job) throws XenonException {
-        Job interactiveJob;
-        
-        synchronized (this) {
-            interactiveJob = interactiveJobs.get(job.getIdentifier());
-        }
+        Job interactiveJob = interactiveJobs.get(job.getIdentifier());
         
         if (interactiveJob == null) {
             throw new NoSuchJobException(SlurmAdaptor.ADAPTOR_NAME, "Unknown Job, or not an interactive job: " + job);
@@ -766,4 +1064,14 @@ public class SlurmSchedulerConnection extends SchedulerConnection {
         return engine.jobs().getStreams(interactiveJob);
     }
 
+    @Override
+    public void close() throws XenonException {
+        statusCache.close();
+
+        if (accountingCache != null) {
+            accountingCache.close();
+        }
+
+        super.close();
+    }
 }
@@ -33,7 +33,15 @@ public class SlurmSetup {
 
     private static final String[] SUPPORTED_VERSIONS = { "2.3.", "2.5.", "2.6.", "14.03.0", "14.11.9-Bull.1.0", "15.08.6"};
 
+    /** Job arrays were introduced in Slurm 2.6 */
+    private static final String[] VERSIONS_WITHOUT_JOB_ARRAYS = { "2.3.", "2.5." };
+
+    /** The maximum number of tasks in a job array if MaxArraySize is not configured. */
+    static final int DEFAULT_MAX_ARRAY_SIZE = 1001;
+
     private final boolean accountingAvailable;
+    private final boolean jobArraysAvailable;
+    private final int maxArraySize;
     private final String version;
 
     SlurmSetup(Map<String, String> info, boolean ignoreVersion, boolean disableAccounting) throws XenonException {
@@ -53,9 +61,35 @@ public class SlurmSetup {
 
         accountingAvailable = !(accountingType.equals("accounting_storage/none") || disableAccounting);
 
+        boolean arrays = true;
+
+        for (String oldVersion : VERSIONS_WITHOUT_JOB_ARRAYS) {
+            if (version.startsWith(oldVersion)) {
+                arrays = false;
+            }
+        }
+
+        maxArraySize = parseMaxArraySize(info.get("MaxArraySize"));
+
+        //a MaxArraySize of 0 disables job arrays
+        jobArraysAvailable = arrays && maxArraySize > 0;
+
         LOGGER.debug("Created new SlurmConfig. version = \"{}\", accounting available: {}", version, accountingAvailable);
     }
 
+    private static int parseMaxArraySize(String value) {
+        if (value == null) {
+            return DEFAULT_MAX_ARRAY_SIZE;
+        }
+
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            LOGGER.warn("Failed to parse MaxArraySize \"{}\" of Slurm config, using {}", value, DEFAULT_MAX_ARRAY_SIZE);
+            return DEFAULT_MAX_ARRAY_SIZE;
+        }
+    }
+
     private void checkVersion(boolean ignoreVersion) throws IncompatibleVersionException {
         for (String supportedVersion : SUPPORTED_VERSIONS) {
             if (version.startsWith(supportedVersion)) {
@@ -74,4 +108,17 @@ public class SlurmSetup {
     public boolean accountingAvailable() {
         return accountingAvailable;
     }
+
+    public boolean jobArraysAvailable() {
+        return jobArraysAvailable;
+    }
+
+    /**
+     * Returns the maximum number of tasks in a single job array, as configured by MaxArraySize.
+     * 
+     * @return the maximum number of tasks in a job array.
+     */
+    public int getMaxArraySize() {
+        return maxArraySize;
+    }
 }
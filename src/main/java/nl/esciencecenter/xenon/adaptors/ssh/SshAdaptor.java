@@ -95,6 +95,42 @@ public class SshAdaptor extends Adaptor {
     /** Add gateway to access machine. */
     public static final String GATEWAY = PREFIX + "gateway";
 
+    /** Maximum number of parallel sftp channels used to transfer a single file. */
+    public static final String STRIPES = PREFIX + "stripes";
+
+    /** All our own session pool properties start with this prefix. */
+    public static final String SESSIONS = PREFIX + "sessions.";
+
+    /** The maximum number of ssh sessions per file system or scheduler. */
+    public static final String MAX_SESSIONS = SESSIONS + "maximum";
+
+    /** The maximum number of channels per ssh session. */
+    public static final String MAX_CHANNELS = SESSIONS + "channels";
+
+    /** The number of idle sftp channels kept open per ssh session. */
+    public static final String CACHED_SFTP_CHANNELS = SESSIONS + "cachedSftpChannels";
+
+    /** The number of channels that are only used for sftp, so file access does not wait for long running commands. */
+    public static final String RESERVED_SFTP_CHANNELS = SESSIONS + "reservedSftpChannels";
+
+    /** The time after which an idle ssh session is closed. */
+    public static final String SESSION_IDLE_TIMEOUT = SESSIONS + "idleTimeout";
+
+    /** The interval at which keep alive messages are sent over an ssh session. */
+    public static final String SESSION_KEEP_ALIVE = SESSIONS + "keepAliveInterval";
+
+    /** The maximum time to wait for a channel if all channels are in use. */
+    public static final String SESSION_MAX_WAIT = SESSIONS + "maxWait";
+
+    /** All our own metadata cache properties start with this prefix. */
+    public static final String CACHE = PREFIX + "cache.";
+
+    /** The time after which cached attributes and directory listings expire. */
+    public static final String CACHE_TIME_TO_LIVE = CACHE + "timeToLive";
+
+    /** The maximum number of cached attributes and directory listings per file system. */
+    public static final String CACHE_MAX_ENTRIES = CACHE + "maxEntries";
+
     /** All our own queue properties start with this prefix. */
     public static final String QUEUE = PREFIX + "queue.";
 
@@ -110,6 +146,9 @@ public class SshAdaptor extends Adaptor {
     /** Property for the maximum number of concurrent jobs in the multi queue. */
     public static final String MULTIQ_MAX_CONCURRENT = MULTIQ + "maxConcurrentJobs";
 
+    /** Property for the (local) file in which batch jobs are recorded, so they can be recovered after a restart. */
+    public static final String JOURNAL = QUEUE + "journal";
+
     /** Ssh adaptor information start with this prefix. */
     public static final String INFO = PREFIX + "info.";
 
@@ -119,6 +158,18 @@ public class SshAdaptor extends Adaptor {
     /** How many jobs have been submitted using this adaptor. */
     public static final String SUBMITTED = JOBS + "submitted";
 
+    /** Metadata cache information start with this prefix. */
+    public static final String CACHE_INFO = INFO + "cache.";
+
+    /** How many requests were answered by the metadata caches of all open file systems. */
+    public static final String CACHE_HITS = CACHE_INFO + "hits";
+
+    /** How many requests were not answered by the metadata caches of all open file systems. */
+    public static final String CACHE_MISSES = CACHE_INFO + "misses";
+
+    /** How many entries were evicted from the metadata caches of all open file systems. */
+    public static final String CACHE_EVICTIONS = CACHE_INFO + "evictions";
+
     /** List of properties supported by this SSH adaptor */
     private static final ImmutableArray<XenonPropertyDescription> VALID_PROPERTIES = new ImmutableArray<XenonPropertyDescription>(
             new XenonPropertyDescriptionImplementation(AUTOMATICALLY_ADD_HOST_KEY, Type.BOOLEAN, EnumSet.of(Component.SCHEDULER,
@@ -139,8 +190,35 @@ public class SshAdaptor extends Adaptor {
                     "The polling delay for monitoring running jobs (in milliseconds)."),
             new XenonPropertyDescriptionImplementation(MULTIQ_MAX_CONCURRENT, Type.INTEGER, EnumSet.of(Component.SCHEDULER), "4",
                     "The maximum number of concurrent jobs in the multiq.."),
+            new XenonPropertyDescriptionImplementation(JOURNAL, Type.STRING, EnumSet.of(Component.SCHEDULER), null,
+                    "The local file in which batch jobs are recorded, so they can be recovered after a restart."),
             new XenonPropertyDescriptionImplementation(GATEWAY, Type.STRING, EnumSet.of(Component.SCHEDULER, 
-                    Component.FILESYSTEM), null, "The gateway machine used to create an SSH tunnel to the target."));
+                    Component.FILESYSTEM), null, "The gateway machine used to create an SSH tunnel to the target."),
+            new XenonPropertyDescriptionImplementation(STRIPES, Type.INTEGER, EnumSet.of(Component.SCHEDULER, 
+                    Component.FILESYSTEM), "4", "The maximum number of parallel sftp channels used to copy a single large file."),
+            new XenonPropertyDescriptionImplementation(CACHE_TIME_TO_LIVE, Type.LONG, EnumSet.of(Component.SCHEDULER, 
+                    Component.FILESYSTEM), "0", 
+                    "The time after which cached file attributes and directory listings expire (in milliseconds, 0 to disable)."),
+            new XenonPropertyDescriptionImplementation(CACHE_MAX_ENTRIES, Type.INTEGER, EnumSet.of(Component.SCHEDULER, 
+                    Component.FILESYSTEM), "10000", 
+                    "The maximum number of cached file attributes and directory listings per file system."),
+            new XenonPropertyDescriptionImplementation(MAX_SESSIONS, Type.INTEGER, EnumSet.of(Component.SCHEDULER, 
+                    Component.FILESYSTEM), "8", "The maximum number of ssh sessions per file system or scheduler."),
+            new XenonPropertyDescriptionImplementation(MAX_CHANNELS, Type.INTEGER, EnumSet.of(Component.SCHEDULER, 
+                    Component.FILESYSTEM), "7", "The maximum number of channels per ssh session."),
+            new XenonPropertyDescriptionImplementation(CACHED_SFTP_CHANNELS, Type.INTEGER, EnumSet.of(Component.SCHEDULER, 
+                    Component.FILESYSTEM), "2", "The number of idle sftp channels kept open per ssh session."),
+            new XenonPropertyDescriptionImplementation(RESERVED_SFTP_CHANNELS, Type.INTEGER, EnumSet.of(Component.SCHEDULER, 
+                    Component.FILESYSTEM), "2", "The number of channels that cannot be used to run commands, so they are " 
+                    + "always available for sftp."),
+            new XenonPropertyDescriptionImplementation(SESSION_IDLE_TIMEOUT, Type.LONG, EnumSet.of(Component.SCHEDULER, 
+                    Component.FILESYSTEM), "60000", "The time after which an idle ssh session is closed (in milliseconds)."),
+            new XenonPropertyDescriptionImplementation(SESSION_KEEP_ALIVE, Type.LONG, EnumSet.of(Component.SCHEDULER, 
+                    Component.FILESYSTEM), "15000", 
+                    "The interval at which keep alive messages are sent over an ssh session (in milliseconds, 0 to disable)."),
+            new XenonPropertyDescriptionImplementation(SESSION_MAX_WAIT, Type.LONG, EnumSet.of(Component.SCHEDULER, 
+                    Component.FILESYSTEM), "60000", 
+                    "The maximum time to wait for a channel if all channels are in use (in milliseconds)."));
 
     private final SshFiles filesAdaptor;
 
@@ -317,8 +395,9 @@ public class SshAdaptor extends Adaptor {
 
     @Override
     public Map<String, String> getAdaptorSpecificInformation() {
-        Map<String,String> result = new HashMap<>(2);
+        Map<String,String> result = new HashMap<>(4);
         jobsAdaptor.getAdaptorSpecificInformation(result);
+        filesAdaptor.getAdaptorSpecificInformation(result);
         return result;
     }
 }
@@ -0,0 +1,218 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.ssh;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.engine.util.CommandLineUtils;
+import nl.esciencecenter.xenon.engine.util.Process;
+import nl.esciencecenter.xenon.engine.util.ProcessIdentity;
+import nl.esciencecenter.xenon.engine.util.RecoverableProcess;
+import nl.esciencecenter.xenon.files.Path;
+import nl.esciencecenter.xenon.jobs.Job;
+import nl.esciencecenter.xenon.jobs.JobDescription;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.JSchException;
+
+/**
+ * SshBatchProcess implements a {@link Process} for remote batch processes. The standard streams of the process are 
+ * redirected to files by the remote shell, so no output is transferred over the exec channel.
+ * 
+ * If an exit file is given, the remote shell first prints its process ID and start time, and writes the exit code of the 
+ * process to the exit file when it finishes. This allows the process to be recovered by a {@link SshRecoveredProcess} after a 
+ * restart of the JVM.
+ * 
+ * @version 1.0
+ * @since 1.0
+ */
+class SshBatchProcess implements RecoverableProcess {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SshBatchProcess.class);
+
+    private static final String NULL_FILE = "/dev/null";
+
+    private final SshMultiplexedSession session;
+    private final ChannelExec channel;
+    private final ProcessIdentity identity;
+    private boolean done = false;
+
+    SshBatchProcess(SshMultiplexedSession session, Job job, Path workdir, Path stdin, Path stdout, Path stderr) 
+            throws XenonException {
+        this(session, job, workdir, stdin, stdout, stderr, null);
+    }
+
+    SshBatchProcess(SshMultiplexedSession session, Job job, Path workdir, Path stdin, Path stdout, Path stderr, 
+            Path exitFile) throws XenonException {
+        this.session = session;
+        this.channel = session.getExecChannel();
+
+        JobDescription description = job.getJobDescription();
+
+        String command = buildCommand(description, workdir, stdin, stdout, stderr);
+
+        if (exitFile != null) {
+            command = buildRecoverableCommand(command, exitFile.getRelativePath().getAbsolutePath());
+        }
+
+        channel.setCommand(command);
+
+        Map<String, String> environment = description.getEnvironment();
+        for (Entry<String, String> entry : environment.entrySet()) {
+            channel.setEnv(entry.getKey(), entry.getValue());
+        }
+
+        String line;
+
+        try {
+            InputStream in = channel.getInputStream();
+            channel.setAgentForwarding(session.useAgentForwarding());
+            channel.connect();
+            line = (exitFile == null) ? null : readLine(in);
+        } catch (JSchException | IOException e) {
+            session.failedExecChannel(channel);
+            throw new XenonException(SshAdaptor.ADAPTOR_NAME, e.getMessage(), e);
+        }
+
+        identity = parseIdentity(line);
+    }
+
+    private static ProcessIdentity parseIdentity(String line) {
+        if (line == null) {
+            return null;
+        }
+
+        try {
+            return ProcessIdentity.parse(line);
+        } catch (IllegalArgumentException e) {
+            // The process is still run, but cannot be recovered.
+            LOGGER.warn("SshBatchProcess failed to parse process ID of remote process: {}", line);
+            return null;
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+
+        int c = in.read();
+
+        while (c != -1 && c != '\n') {
+            line.append((char) c);
+            c = in.read();
+        }
+
+        return line.toString().trim();
+    }
+
+    static String buildRecoverableCommand(String command, String exitFile) {
+        String file = CommandLineUtils.protectAgainstShellMetas(exitFile);
+        String tmp = CommandLineUtils.protectAgainstShellMetas(exitFile + ".tmp");
+
+        return "echo $$ `ps -o lstart= -p $$`; " + command + "; e=$?; echo $e > " + tmp + " && mv " + tmp + " " + file 
+                + "; exit $e";
+    }
+
+    @Override
+    public String getHandle() {
+        return (identity == null) ? null : identity.toString();
+    }
+
+    private static String redirect(String operator, Path file) {
+        String target = NULL_FILE;
+
+        if (file != null) {
+            target = CommandLineUtils.protectAgainstShellMetas(file.getRelativePath().getAbsolutePath());
+        }
+
+        return " " + operator + " " + target;
+    }
+
+    static String buildCommand(JobDescription description, Path workdir, Path stdin, Path stdout, Path stderr) {
+        StringBuilder command = new StringBuilder(200);
+
+        command.append("cd ");
+        command.append(CommandLineUtils.protectAgainstShellMetas(workdir.getRelativePath().getAbsolutePath()));
+        command.append(" && ");
+
+        command.append(description.getExecutable());
+
+        for (String s : description.getArguments()) {
+            command.append(" ");
+            command.append(CommandLineUtils.protectAgainstShellMetas(s));
+        }
+
+        command.append(redirect("<", stdin));
+        command.append(redirect(">", stdout));
+        command.append(redirect("2>", stderr));
+
+        return command.toString();
+    }
+
+    private void cleanup() {
+        try {
+            session.releaseExecChannel(channel);
+        } catch (XenonException e) {
+            LOGGER.warn("SshBatchProcess failed to release exec channel!", e);
+        }
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        if (done) {
+            return true;
+        }
+
+        if (channel.isClosed()) {
+            done = true;
+            cleanup();
+        }
+
+        return done;
+    }
+
+    @Override
+    public int getExitStatus() {
+        return channel.getExitStatus();
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (isDone()) {
+            return;
+        }
+
+        if (identity != null) {
+            // Signals are not supported by all servers, so kill the shell and the process it started using a command.
+            SshRecoveredProcess.kill(session, identity);
+        } else {
+            try {
+                channel.sendSignal("KILL");
+            } catch (Exception e) {
+                LOGGER.warn("SshBatchProcess failed to kill remote process!", e);
+            }
+        }
+
+        done = true;
+        cleanup();
+    }
+}
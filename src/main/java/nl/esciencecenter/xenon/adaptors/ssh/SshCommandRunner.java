@@ -0,0 +1,102 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.ssh;
+
+import java.io.IOException;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.util.OutputReader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.JSchException;
+
+/**
+ * Runs a (short) command on the remote machine using an exec channel. Constructor waits for the command to finish.
+ * 
+ * Note that the output of the command is buffered in memory, so this class should not be used for commands that produce 
+ * large amounts of output. 
+ * 
+ * @version 1.0
+ * @since 1.0
+ */
+class SshCommandRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SshCommandRunner.class);
+
+    /** The time to wait between checks for the exit status of the command (in ms.) */
+    private static final long EXIT_POLL_DELAY = 10;
+
+    private final int exitCode;
+
+    private final OutputReader out;
+
+    private final OutputReader err;
+
+    SshCommandRunner(SshMultiplexedSession session, String command) throws XenonException {
+
+        LOGGER.debug("SshCommandRunner running {}", command);
+
+        ChannelExec channel = session.getExecChannel();
+
+        channel.setCommand(command);
+
+        // set the streams first, then connect the channel.
+        try {
+            out = new OutputReader(channel.getInputStream());
+            err = new OutputReader(channel.getErrStream());
+            channel.getOutputStream().close();
+            channel.connect();
+        } catch (JSchException | IOException e) {
+            session.failedExecChannel(channel);
+            throw new XenonException(SshAdaptor.ADAPTOR_NAME, "Failed to run command: " + command, e);
+        }
+
+        out.waitUntilFinished();
+        err.waitUntilFinished();
+
+        try {
+            // The exit status may arrive slightly after the output streams are closed.
+            while (!channel.isClosed()) {
+                Thread.sleep(EXIT_POLL_DELAY);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            session.failedExecChannel(channel);
+            throw new XenonException(SshAdaptor.ADAPTOR_NAME, "Interrupted while running command: " + command, e);
+        }
+
+        exitCode = channel.getExitStatus();
+
+        session.releaseExecChannel(channel);
+
+        LOGGER.debug("SshCommandRunner exit: {} out: {} err: {}", exitCode, out.getResult(), err.getResult());
+    }
+
+    public String getStdout() {
+        return out.getResult();
+    }
+
+    public String getStderr() {
+        return err.getResult();
+    }
+
+    public int getExitCode() {
+        return exitCode;
+    }
+}
@@ -15,7 +15,7 @@
  */
 package nl.esciencecenter.xenon.adaptors.ssh;
 
-import java.util.List;
+import java.util.Iterator;
 
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.adaptors.generic.DirectoryStreamBase;
@@ -28,7 +28,7 @@ import com.jcraft.jsch.ChannelSftp.LsEntry;
 class SshDirectoryAttributeStream extends DirectoryStreamBase<LsEntry, PathAttributesPair> {
 
     public SshDirectoryAttributeStream(Path dir, nl.esciencecenter.xenon.files.DirectoryStream.Filter filter,
-            List<LsEntry> listing) throws XenonException {
+            Iterator<LsEntry> listing) throws XenonException {
         super(dir, filter, listing);
     }
 
@@ -0,0 +1,271 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.ssh;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.XenonRuntimeException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.ChannelSftp.LsEntry;
+import com.jcraft.jsch.SftpException;
+
+/**
+ * SshDirectoryReader reads the entries of a remote directory in the background, and makes them available as an {@link Iterator}
+ * while the listing is still in progress.
+ * 
+ * The SFTP server returns the entries of a directory in batches. A daemon thread requests these batches and hands over each
+ * entry through a bounded queue, so the first entries can be used after a single batch, and at most {@link #QUEUE_SIZE} entries
+ * are buffered. When the consumer falls behind, the thread blocks until there is room in the queue. The SFTP channel is used
+ * until the listing is complete or the reader is closed, so readers should always be closed. Closing the reader stops the
+ * listing, waits for the thread to finish and returns the channel to the session.
+ * 
+ * A blocked listing keeps its channel, which other threads (or a nested listing by the same consumer) may need. If another
+ * thread is waiting for a channel, the rest of the listing is read into memory instead, and the channel is returned right away.
+ * 
+ * Errors that occur before the first entry is received (such as a missing directory or insufficient permissions) are thrown by
+ * the constructor. Errors that occur later are thrown as a {@link XenonRuntimeException} by the iterator.
+ */
+class SshDirectoryReader extends Thread implements Iterator<LsEntry>, Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SshDirectoryReader.class);
+
+    /** The maximum number of entries that have been received, but not yet returned. */
+    static final int QUEUE_SIZE = 256;
+
+    /** How often a blocked producer checks if the reader has been closed (in ms.). */
+    private static final long POLL_INTERVAL = 100;
+
+    /** How long close waits for the listing to stop (in ms.). */
+    private static final long CLOSE_TIMEOUT = 10000;
+
+    /** Marks the end of the listing in the queue. */
+    private static final Object END = new Object();
+
+    private final SshMultiplexedSession session;
+
+    private final ChannelSftp channel;
+
+    private final String path;
+
+    /** The entries that have been received, followed by END once the listing is complete. */
+    private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+
+    /** The next entry to return, or END if the listing is complete. Only used by the consumer. */
+    private Object next;
+
+    /** The entries read into memory to release the channel early, or null. Only used by the listing thread. */
+    private List<LsEntry> spilled;
+
+    private volatile boolean closed = false;
+
+    private volatile Exception exception;
+
+    SshDirectoryReader(SshMultiplexedSession session, String path) throws XenonException {
+        this.session = session;
+        this.path = path;
+
+        channel = session.getSftpChannel();
+
+        setDaemon(true);
+        setName("Directory reader " + path);
+        start();
+
+        try {
+            next = queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new XenonException(SshAdaptor.ADAPTOR_NAME, "Interrupted while listing directory " + path, e);
+        }
+
+        if (next == END && exception != null) {
+            throw convert(exception);
+        }
+    }
+
+    /*
+     * Hands over an entry to the consumer, blocking while the queue is full. Returns false if the reader has been closed, or if
+     * release is set and another thread is waiting for a channel while the queue is full.
+     */
+    private boolean add(Object entry, boolean release) {
+        try {
+            while (!closed) {
+                if (queue.offer(entry, POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+
+                if (release && session.hasChannelWaiters()) {
+                    return false;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        return false;
+    }
+
+    private XenonException convert(Exception e) {
+        if (e instanceof SftpException) {
+            return SshUtil.sftpExceptionToXenonException((SftpException) e);
+        }
+
+        return new XenonException(SshAdaptor.ADAPTOR_NAME, "Failed to list directory " + path, e);
+    }
+
+    /**
+     * Entry method for daemon thread.
+     */
+    @Override
+    public void run() {
+        Exception error = null;
+
+        try {
+            channel.ls(path, new ChannelSftp.LsEntrySelector() {
+                @Override
+                public int select(LsEntry entry) {
+                    return selectEntry(entry);
+                }
+            });
+        } catch (SftpException | RuntimeException e) {
+            error = e;
+        }
+
+        try {
+            if (error == null) {
+                session.releaseSftpChannel(channel);
+            } else {
+                session.failedSftpChannel(channel);
+            }
+        } catch (XenonException e) {
+            LOGGER.debug("Failed to return SFTP channel after listing {}", path, e);
+        }
+
+        if (spilled != null) {
+            for (LsEntry entry : spilled) {
+                if (!add(entry, false)) {
+                    break;
+                }
+            }
+
+            spilled = null;
+        }
+
+        exception = error;
+        add(END, false);
+    }
+
+    /*
+     * Hands over an entry of the listing to the consumer, or keeps it in memory once another thread needs a channel.
+     */
+    private int selectEntry(LsEntry entry) {
+        if (spilled == null && !add(entry, true)) {
+            if (closed || isInterrupted()) {
+                return ChannelSftp.LsEntrySelector.BREAK;
+            }
+
+            LOGGER.debug("Reading the rest of {} into memory, as another thread is waiting for an SFTP channel", path);
+            spilled = new ArrayList<>();
+        }
+
+        if (spilled != null) {
+            spilled.add(entry);
+        }
+
+        return ChannelSftp.LsEntrySelector.CONTINUE;
+    }
+
+    @Override
+    public synchronized boolean hasNext() {
+        if (closed) {
+            return false;
+        }
+
+        if (next == null) {
+            try {
+                next = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new XenonRuntimeException(SshAdaptor.ADAPTOR_NAME, "Interrupted while listing directory " + path, e);
+            }
+        }
+
+        if (closed) {
+            return false;
+        }
+
+        if (next != END) {
+            return true;
+        }
+
+        if (exception != null) {
+            throw new XenonRuntimeException(SshAdaptor.ADAPTOR_NAME, "Failed to list directory " + path, convert(exception));
+        }
+
+        return false;
+    }
+
+    @Override
+    public synchronized LsEntry next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more files in directory");
+        }
+
+        LsEntry result = (LsEntry) next;
+        next = null;
+        return result;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("SshDirectoryReader does not support remove");
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        queue.clear();
+
+        // Wakes up a consumer that is waiting for the next entry.
+        queue.offer(END);
+
+        if (Thread.currentThread() == this) {
+            return;
+        }
+
+        try {
+            join(CLOSE_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (isAlive()) {
+            LOGGER.warn("Listing of {} did not stop within {} ms. after the directory stream was closed", path, CLOSE_TIMEOUT);
+        }
+    }
+}
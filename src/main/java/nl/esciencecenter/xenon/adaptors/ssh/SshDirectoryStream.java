@@ -15,7 +15,7 @@
  */
 package nl.esciencecenter.xenon.adaptors.ssh;
 
-import java.util.List;
+import java.util.Iterator;
 
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.adaptors.generic.DirectoryStreamBase;
@@ -25,8 +25,8 @@ import com.jcraft.jsch.ChannelSftp.LsEntry;
 
 public class SshDirectoryStream extends DirectoryStreamBase<LsEntry, Path> {
 
-    public SshDirectoryStream(Path dir, nl.esciencecenter.xenon.files.DirectoryStream.Filter filter, List<LsEntry> listing)
-            throws XenonException {
+    public SshDirectoryStream(Path dir, nl.esciencecenter.xenon.files.DirectoryStream.Filter filter,
+            Iterator<LsEntry> listing) throws XenonException {
         super(dir, filter, listing);
     }
 
@@ -22,12 +22,15 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import nl.esciencecenter.xenon.InvalidPropertyException;
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.XenonPropertyDescription.Component;
+import nl.esciencecenter.xenon.adaptors.generic.MetadataCache;
 import nl.esciencecenter.xenon.adaptors.local.LocalAdaptor;
 import nl.esciencecenter.xenon.credentials.Credential;
 import nl.esciencecenter.xenon.engine.XenonEngine;
@@ -35,6 +38,9 @@ import nl.esciencecenter.xenon.engine.XenonProperties;
 import nl.esciencecenter.xenon.engine.files.FileSystemImplementation;
 import nl.esciencecenter.xenon.engine.files.FilesEngine;
 import nl.esciencecenter.xenon.engine.files.PathImplementation;
+import nl.esciencecenter.xenon.engine.files.RangeSupport;
+import nl.esciencecenter.xenon.engine.files.ResumeSupport;
+import nl.esciencecenter.xenon.engine.util.CommandLineUtils;
 import nl.esciencecenter.xenon.engine.util.CopyEngine;
 import nl.esciencecenter.xenon.engine.util.CopyInfo;
 import nl.esciencecenter.xenon.engine.util.OpenOptions;
@@ -50,10 +56,16 @@ import com.jcraft.jsch.ChannelSftp.LsEntry;
 import com.jcraft.jsch.SftpATTRS;
 import com.jcraft.jsch.SftpException;
 
-public class SshFiles implements Files {
+public class SshFiles implements Files, ResumeSupport, RangeSupport {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SshFiles.class);
 
+    /** The length of an MD5 checksum in hexadecimal notation. */
+    private static final int CHECKSUM_LENGTH = 32;
+
+    /** The MD5 checksum of no data, returned by md5sum if the commands feeding it fail. */
+    private static final String EMPTY_CHECKSUM = "d41d8cd98f00b204e9800998ecf8427e";
+
     private static int currentID = 1;
 
     private static synchronized String getNewUniqueID() {
@@ -68,11 +80,16 @@ public class SshFiles implements Files {
     static class FileSystemInfo {
         private final FileSystemImplementation impl;
         private final SshMultiplexedSession session;
+        private final int stripes;
+        private final MetadataCache<SftpATTRS, List<LsEntry>> cache;
 
-        public FileSystemInfo(FileSystemImplementation impl, SshMultiplexedSession session) {
+        public FileSystemInfo(FileSystemImplementation impl, SshMultiplexedSession session, int stripes, 
+                MetadataCache<SftpATTRS, List<LsEntry>> cache) {
             super();
             this.impl = impl;
             this.session = session;
+            this.stripes = stripes;
+            this.cache = cache;
         }
 
         public FileSystemImplementation getImpl() {
@@ -82,6 +99,14 @@ public class SshFiles implements Files {
         public SshMultiplexedSession getSession() {
             return session;
         }
+
+        public int getStripes() {
+            return stripes;
+        }
+
+        public MetadataCache<SftpATTRS, List<LsEntry>> getCache() {
+            return cache;
+        }
     }
 
     static void close(Closeable stream, SshMultiplexedSession session, ChannelSftp channel, String name) throws IOException {
@@ -141,6 +166,24 @@ public class SshFiles implements Files {
     protected FileSystem newFileSystem(SshMultiplexedSession session, String scheme, String location, Credential credential,
             XenonProperties properties) throws XenonException {       
         
+        int stripes = properties.getIntegerProperty(SshAdaptor.STRIPES);
+
+        if (stripes < 1) {
+            throw new InvalidPropertyException(SshAdaptor.ADAPTOR_NAME, "Invalid number of stripes: " + stripes);
+        }
+
+        long cacheTimeToLive = properties.getLongProperty(SshAdaptor.CACHE_TIME_TO_LIVE);
+        int cacheMaxEntries = properties.getIntegerProperty(SshAdaptor.CACHE_MAX_ENTRIES);
+
+        if (cacheTimeToLive < 0) {
+            throw new InvalidPropertyException(SshAdaptor.ADAPTOR_NAME, "Invalid cache time to live: " + cacheTimeToLive);
+        }
+
+        if (cacheMaxEntries < 0) {
+            throw new InvalidPropertyException(SshAdaptor.ADAPTOR_NAME, "Invalid maximum number of cache entries: " 
+                    + cacheMaxEntries);
+        }
+
         String uniqueID = getNewUniqueID();
 
         LOGGER.debug("* newFileSystem scheme = {} location = {} credential = {} properties = {}", scheme, location, credential, 
@@ -165,7 +208,8 @@ public class SshFiles implements Files {
         FileSystemImplementation result = new FileSystemImplementation(SshAdaptor.ADAPTOR_NAME, uniqueID, scheme, location, 
                 entryPath, credential, properties);
 
-        fileSystems.put(uniqueID, new FileSystemInfo(result, session));
+        fileSystems.put(uniqueID, new FileSystemInfo(result, session, stripes, 
+                new MetadataCache<SftpATTRS, List<LsEntry>>(uniqueID, cacheMaxEntries, cacheTimeToLive)));
 
         LOGGER.debug("* newFileSystem OK remote cwd = {} entryPath = {} uniqueID = {}", wd, entryPath, uniqueID);
         
@@ -189,7 +233,7 @@ public class SshFiles implements Files {
         return newFileSystem(session, scheme, location, credential, xenonProperties);
     }
 
-    private SshMultiplexedSession getSession(Path path) throws XenonException {
+    private FileSystemInfo getFileSystemInfo(Path path) throws XenonException {
 
         FileSystemImplementation fs = (FileSystemImplementation) path.getFileSystem();
         FileSystemInfo info = fileSystems.get(fs.getUniqueID());
@@ -198,7 +242,56 @@ public class SshFiles implements Files {
             throw new XenonException(SshAdaptor.ADAPTOR_NAME, "File system is already closed");
         }
 
-        return info.getSession();
+        return info;
+    }
+
+    private SshMultiplexedSession getSession(Path path) throws XenonException {
+        return getFileSystemInfo(path).getSession();
+    }
+
+    private MetadataCache<SftpATTRS, List<LsEntry>> getCache(Path path) throws XenonException {
+        return getFileSystemInfo(path).getCache();
+    }
+
+    // Invalidates the cached metadata of a changed path. Does nothing if the file system has already been closed.
+    private void invalidate(Path path) {
+        FileSystemInfo info = fileSystems.get(((FileSystemImplementation) path.getFileSystem()).getUniqueID());
+
+        if (info != null) {
+            info.getCache().invalidate(path);
+        }
+    }
+
+    private void invalidateTree(Path path) {
+        FileSystemInfo info = fileSystems.get(((FileSystemImplementation) path.getFileSystem()).getUniqueID());
+
+        if (info != null) {
+            info.getCache().invalidateTree(path);
+        }
+    }
+
+    /**
+     * Add information about the ssh files adaptor to the map.
+     * 
+     * @param result
+     *          the map to add information to.
+     */
+    public void getAdaptorSpecificInformation(Map<String, String> result) {
+        long hits = 0;
+        long misses = 0;
+        long evictions = 0;
+
+        synchronized (fileSystems) {
+            for (FileSystemInfo info : fileSystems.values()) {
+                hits += info.getCache().getHits();
+                misses += info.getCache().getMisses();
+                evictions += info.getCache().getEvictions();
+            }
+        }
+
+        result.put(SshAdaptor.CACHE_HITS, Long.toString(hits));
+        result.put(SshAdaptor.CACHE_MISSES, Long.toString(misses));
+        result.put(SshAdaptor.CACHE_EVICTIONS, Long.toString(evictions));
     }
 
     @Override
@@ -220,8 +313,8 @@ public class SshFiles implements Files {
         }
 
         info.getSession().disconnect();
-        
-        LOGGER.debug("close OK");        
+
+        LOGGER.debug("close OK cache = {}", info.getCache());        
     }
 
     @Override
@@ -256,6 +349,8 @@ public class SshFiles implements Files {
         } catch (SftpException e) {
             session.failedSftpChannel(channel);
             throw SshUtil.sftpExceptionToXenonException(e);
+        } finally {
+            invalidate(dir);
         }
 
         session.releaseSftpChannel(channel);
@@ -316,22 +411,21 @@ public class SshFiles implements Files {
 
         LOGGER.debug("delete path = {}", path);
         
-        if (!exists(path)) {
+        SftpATTRS att = statOrNull(path);
+
+        if (att == null) {
             throw new NoSuchPathException(getClass().getName(), "Cannot delete file, as it does not exist");
         }
 
+        if (att.isDir() && !isEmptyDirectory(path)) {
+            throw new DirectoryNotEmptyException(SshAdaptor.ADAPTOR_NAME, "cannot delete dir " + path + " as it is not empty");
+        }
+
         SshMultiplexedSession session = getSession(path);
         ChannelSftp channel = session.getSftpChannel();
 
-        FileAttributes att = getAttributes(path);
-
         try {
-            if (att.isDirectory()) {
-                if (newDirectoryStream(path, FilesEngine.ACCEPT_ALL_FILTER).iterator().hasNext()) {
-                    throw new DirectoryNotEmptyException(SshAdaptor.ADAPTOR_NAME, "cannot delete dir " + path
-                            + " as it is not empty");
-                }
-
+            if (att.isDir()) {
                 channel.rmdir(path.getRelativePath().getAbsolutePath());
             } else {
                 channel.rm(path.getRelativePath().getAbsolutePath());
@@ -339,6 +433,8 @@ public class SshFiles implements Files {
         } catch (SftpException e) {
             session.failedSftpChannel(channel);
             throw SshUtil.sftpExceptionToXenonException(e);
+        } finally {
+            invalidate(path);
         }
 
         session.releaseSftpChannel(channel);
@@ -346,6 +442,21 @@ public class SshFiles implements Files {
         LOGGER.debug("delete OK");
     }
 
+    // Only the first entries of the directory are listed, as the stream is closed once the outcome is known.
+    private boolean isEmptyDirectory(Path path) throws XenonException {
+        DirectoryStream<Path> stream = newDirectoryStream(path, FilesEngine.ACCEPT_ALL_FILTER);
+
+        try {
+            return !stream.iterator().hasNext();
+        } finally {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                // ignored, as the outcome is already known
+            }
+        }
+    }
+
     /**
      * Move or rename an existing source path to a non-existing target path.
      * 
@@ -406,6 +517,9 @@ public class SshFiles implements Files {
         } catch (SftpException e) {
             session.failedSftpChannel(channel);
             throw SshUtil.sftpExceptionToXenonException(e);
+        } finally {
+            invalidateTree(source);
+            invalidateTree(target);
         }
 
         session.releaseSftpChannel(channel);
@@ -413,8 +527,11 @@ public class SshFiles implements Files {
         LOGGER.debug("move OK");
     }
 
-    @SuppressWarnings("unchecked")
-    private List<LsEntry> listDirectory(Path path, Filter filter) throws XenonException {
+    /*
+     * Lists a directory. If listings are cached, the complete listing is retrieved (or taken from the cache). Otherwise, the
+     * entries are streamed from the server while the caller iterates over them.
+     */
+    private Iterator<LsEntry> listDirectory(final Path path, Filter filter) throws XenonException {
 
         FileAttributes att = getAttributes(path);
 
@@ -426,6 +543,23 @@ public class SshFiles implements Files {
             throw new XenonException(SshAdaptor.ADAPTOR_NAME, "Filter is null.");
         }
 
+        MetadataCache<SftpATTRS, List<LsEntry>> cache = getCache(path);
+
+        if (!cache.isEnabled()) {
+            return new SshDirectoryReader(getSession(path), path.getRelativePath().getAbsolutePath());
+        }
+
+        return cache.getListing(path, new MetadataCache.Loader<List<LsEntry>>() {
+            @Override
+            public List<LsEntry> load() throws XenonException {
+                return ls(path);
+            }
+        }).iterator();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<LsEntry> ls(Path path) throws XenonException {
+
         SshMultiplexedSession session = getSession(path);
         ChannelSftp channel = session.getSftpChannel();
 
@@ -470,20 +604,24 @@ public class SshFiles implements Files {
     public InputStream newInputStream(Path path) throws XenonException {
 
         LOGGER.debug("newInputStream path = {}", path);
-        
-        if (!exists(path)) {
+
+        SshMultiplexedSession session = getSession(path);
+        ChannelSftp channel = session.getSftpChannel();
+
+        // A single stat on the channel of the stream checks both existence and type of the path. Another client may have 
+        // created or removed the file since it was cached, so the cache is not used.
+        SftpATTRS att = statUncached(session, channel, path);
+
+        if (att == null) {
+            session.releaseSftpChannel(channel);
             throw new NoSuchPathException(SshAdaptor.ADAPTOR_NAME, "File " + path + " does not exist!");
         }
 
-        FileAttributes att = getAttributes(path);
-
-        if (att.isDirectory()) {
+        if (att.isDir()) {
+            session.releaseSftpChannel(channel);
             throw new XenonException(SshAdaptor.ADAPTOR_NAME, "Path " + path + " is a directory!");
         }
 
-        SshMultiplexedSession session = getSession(path);
-        ChannelSftp channel = session.getSftpChannel();
-
         InputStream in;
         
         try {
@@ -517,12 +655,6 @@ public class SshFiles implements Files {
             tmp.setWriteMode(OpenOption.WRITE);
         }
 
-        if (tmp.getOpenMode() == OpenOption.CREATE && exists(path)) {
-            throw new PathAlreadyExistsException(SshAdaptor.ADAPTOR_NAME, "File already exists: " + path);
-        } else if (tmp.getOpenMode() == OpenOption.OPEN && !exists(path)) {
-            throw new NoSuchPathException(SshAdaptor.ADAPTOR_NAME, "File does not exist: " + path);
-        }
-
         int mode = ChannelSftp.OVERWRITE;
 
         if (OpenOption.APPEND.occursIn(options)) {
@@ -532,6 +664,20 @@ public class SshFiles implements Files {
         SshMultiplexedSession session = getSession(path);
         ChannelSftp channel = session.getSftpChannel();
 
+        if (tmp.getOpenMode() == OpenOption.CREATE || tmp.getOpenMode() == OpenOption.OPEN) {
+
+            // The check must be current, so it is never taken from the metadata cache.
+            boolean exists = statUncached(session, channel, path) != null;
+
+            if (tmp.getOpenMode() == OpenOption.CREATE && exists) {
+                session.releaseSftpChannel(channel);
+                throw new PathAlreadyExistsException(SshAdaptor.ADAPTOR_NAME, "File already exists: " + path);
+            } else if (tmp.getOpenMode() == OpenOption.OPEN && !exists) {
+                session.releaseSftpChannel(channel);
+                throw new NoSuchPathException(SshAdaptor.ADAPTOR_NAME, "File does not exist: " + path);
+            }
+        }
+
         OutputStream out;
         
         try {
@@ -539,11 +685,81 @@ public class SshFiles implements Files {
         } catch (SftpException e) {
             session.failedSftpChannel(channel);
             throw SshUtil.sftpExceptionToXenonException(e);
+        } finally {
+            invalidate(path);
         }
         
         LOGGER.debug("newOutputStream OK");
         
-        return new SshOutputStream(out, session, channel);
+        return getCache(path).invalidateOnClose(path, new SshOutputStream(out, session, channel));
+    }
+
+    @Override
+    public int getMaxStripes(Path path) throws XenonException {
+        return getFileSystemInfo(path).getStripes();
+    }
+
+    @Override
+    public InputStream newInputStream(Path path, long offset) throws XenonException {
+
+        LOGGER.debug("newInputStream path = {} offset = {}", path, offset);
+
+        // Each stream uses its own channel, which may be created on any of the sessions to this location. 
+        SshMultiplexedSession session = getSession(path);
+        ChannelSftp channel = session.getSftpChannel();
+
+        InputStream in;
+
+        try {
+            in = channel.get(path.getRelativePath().getAbsolutePath(), null, offset);
+        } catch (SftpException e) {
+            session.failedSftpChannel(channel);
+            throw SshUtil.sftpExceptionToXenonException(e);
+        }
+
+        LOGGER.debug("newInputStream OK");
+
+        return new SshInputStream(in, session, channel);
+    }
+
+    /**
+     * Open an existing file and return an {@link OutputStream} to write to this file, starting at the given offset.
+     * 
+     * Sftp only supports writing at an offset relative to the current size of the file. Therefore, the size of the file must 
+     * not change while this stream is being created. The copy engine ensures this by extending the target to its final size 
+     * before writing the stripes.
+     */
+    @Override
+    public OutputStream newOutputStream(Path path, long offset) throws XenonException {
+
+        LOGGER.debug("newOutputStream path = {} offset = {}", path, offset);
+
+        SshMultiplexedSession session = getSession(path);
+        ChannelSftp channel = session.getSftpChannel();
+
+        OutputStream out;
+
+        try {
+            // The size must be current, so it is never taken from the metadata cache.
+            SftpATTRS att = lstat(channel, path.getRelativePath().getAbsolutePath());
+
+            if (att == null) {
+                session.releaseSftpChannel(channel);
+                throw new NoSuchPathException(SshAdaptor.ADAPTOR_NAME, "File does not exist: " + path);
+            }
+
+            long size = att.getSize();
+
+            // RESUME opens the file without truncating it, and writes at the given offset relative to the current size.
+            out = channel.put(path.getRelativePath().getAbsolutePath(), null, ChannelSftp.RESUME, offset - size);
+        } catch (SftpException e) {
+            session.failedSftpChannel(channel);
+            throw SshUtil.sftpExceptionToXenonException(e);
+        }
+
+        LOGGER.debug("newOutputStream OK");
+
+        return getCache(path).invalidateOnClose(path, new SshOutputStream(out, session, channel));
     }
 
     @Override
@@ -609,6 +825,8 @@ public class SshFiles implements Files {
         } catch (SftpException e) {
             session.failedSftpChannel(channel);
             throw SshUtil.sftpExceptionToXenonException(e);
+        } finally {
+            invalidate(path);
         }
 
         session.releaseSftpChannel(channel);
@@ -616,26 +834,85 @@ public class SshFiles implements Files {
         LOGGER.debug("setPosixFilePermissions OK");
     }
 
-    private SftpATTRS stat(Path path) throws XenonException {
+    /**
+     * Retrieve the attributes of a path using a single <code>lstat</code> round trip on the given channel.
+     * 
+     * A path that does not exist is not an error here, so the channel remains usable and callers can check existence and 
+     * type of a path with one request.
+     * 
+     * @param channel
+     *            the channel to use.
+     * @param path
+     *            the absolute path to retrieve the attributes of.
+     * @return the attributes of the path, or <code>null</code> if the path does not exist.
+     * @throws SftpException
+     *             if the attributes could not be retrieved for any other reason.
+     */
+    static SftpATTRS lstat(ChannelSftp channel, String path) throws SftpException {
+        try {
+            return channel.lstat(path);
+        } catch (SftpException e) {
+            if (e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    private SftpATTRS stat(final SshMultiplexedSession session, final ChannelSftp channel, final Path path) 
+            throws XenonException {
 
         LOGGER.debug("* stat path = {}", path);
-        
-        SshMultiplexedSession session = getSession(path);
-        ChannelSftp channel = session.getSftpChannel();
 
-        SftpATTRS result;
+        SftpATTRS result = getCache(path).getAttributes(path, new MetadataCache.Loader<SftpATTRS>() {
+            @Override
+            public SftpATTRS load() throws XenonException {
+                try {
+                    return lstat(channel, path.getRelativePath().getAbsolutePath());
+                } catch (SftpException e) {
+                    session.failedSftpChannel(channel);
+                    throw SshUtil.sftpExceptionToXenonException(e);
+                }
+            }
+        });
+
+        LOGGER.debug("* stat OK result = {}", result);
+
+        return result;
+    }
+
+    private SftpATTRS statUncached(SshMultiplexedSession session, ChannelSftp channel, Path path) throws XenonException {
+
+        LOGGER.debug("* stat (uncached) path = {}", path);
 
         try {
-            result = channel.lstat(path.getRelativePath().getAbsolutePath());
+            return lstat(channel, path.getRelativePath().getAbsolutePath());
         } catch (SftpException e) {
             session.failedSftpChannel(channel);
             throw SshUtil.sftpExceptionToXenonException(e);
         }
+    }
+
+    private SftpATTRS statOrNull(Path path) throws XenonException {
+
+        SshMultiplexedSession session = getSession(path);
+        ChannelSftp channel = session.getSftpChannel();
+
+        SftpATTRS result = stat(session, channel, path);
 
         session.releaseSftpChannel(channel);
-        
-        LOGGER.debug("* stat OK result = {}", result);
-        
+
+        return result;
+    }
+
+    private SftpATTRS stat(Path path) throws XenonException {
+
+        SftpATTRS result = statOrNull(path);
+
+        if (result == null) {
+            throw new NoSuchPathException(SshAdaptor.ADAPTOR_NAME, "No such file: " + path);
+        }
+
         return result;
     }
 
@@ -656,20 +933,95 @@ public class SshFiles implements Files {
         
         LOGGER.debug("exists path = {}", path);
 
-        boolean result;
-        
-        try {
-            stat(path);
-            result = true;
-        } catch (NoSuchPathException e) {
-            result = false;
-        }
+        boolean result = statOrNull(path) != null;
         
         LOGGER.debug("exists OK result = {}", result);
 
         return result;
     }
     
+    @Override
+    public String checksum(Path path, long offset, long length) throws XenonException {
+
+        LOGGER.debug("checksum path = {} offset = {} length = {}", path, offset, length);
+
+        String file = CommandLineUtils.protectAgainstShellMetas(path.getRelativePath().getAbsolutePath());
+
+        String command;
+
+        if (offset == 0) {
+            command = "head -c " + length + " " + file + " | md5sum";
+        } else {
+            command = "tail -c +" + (offset + 1) + " " + file + " | head -c " + length + " | md5sum";
+        }
+
+        SshCommandRunner runner = new SshCommandRunner(getSession(path), command);
+
+        String result = null;
+
+        // The exit code of a pipeline is that of md5sum, so also check for errors reported by head or tail.
+        if (runner.getExitCode() == 0 && runner.getStderr().isEmpty()) {
+            // The output of md5sum is the checksum followed by the file name ("-" for stdin).
+            String out = runner.getStdout().trim();
+
+            if (out.length() >= CHECKSUM_LENGTH && out.substring(0, CHECKSUM_LENGTH).matches("[0-9a-f]+")) {
+                result = out.substring(0, CHECKSUM_LENGTH);
+            }
+        }
+
+        if (length > 0 && EMPTY_CHECKSUM.equals(result)) {
+            result = null;
+        }
+
+        LOGGER.debug("checksum OK result = {}", result);
+
+        return result;
+    }
+
+    @Override
+    public boolean truncate(Path path, long size) throws XenonException {
+
+        LOGGER.debug("truncate path = {} size = {}", path, size);
+
+        SshCommandRunner runner = new SshCommandRunner(getSession(path), "truncate -s " + size + " "
+                + CommandLineUtils.protectAgainstShellMetas(path.getRelativePath().getAbsolutePath()));
+
+        boolean result = runner.getExitCode() == 0;
+
+        invalidate(path);
+
+        LOGGER.debug("truncate OK result = {}", result);
+
+        return result;
+    }
+
+    @Override
+    public boolean supportsRecursiveDelete(Path path) throws XenonException {
+        return true;
+    }
+
+    @Override
+    public void recursiveDelete(Path path) throws XenonException {
+
+        LOGGER.debug("recursiveDelete path = {}", path);
+
+        if (!exists(path)) {
+            throw new NoSuchPathException(SshAdaptor.ADAPTOR_NAME, "Cannot delete " + path + ", as it does not exist");
+        }
+
+        // Deletes the entire tree on the server, instead of using an sftp round trip per entry.
+        SshCommandRunner runner = new SshCommandRunner(getSession(path), "rm -rf -- "
+                + CommandLineUtils.protectAgainstShellMetas(path.getRelativePath().getAbsolutePath()));
+
+        invalidateTree(path);
+
+        if (runner.getExitCode() != 0) {
+            throw new XenonException(SshAdaptor.ADAPTOR_NAME, "Failed to delete " + path + ": " + runner.getStderr().trim());
+        }
+
+        LOGGER.debug("recursiveDelete OK");
+    }
+
     @Override
     public Copy copy(Path source, Path target, CopyOption... options) throws XenonException {
 
@@ -701,6 +1053,18 @@ public class SshFiles implements Files {
         return result;
     }
 
+    @Override
+    public Copy copyTree(Path source, Path target, CopyOption... options) throws XenonException {
+
+        LOGGER.debug("copyTree source = {} target = {} options = {}", source, target, options);
+
+        Copy result = xenonEngine.getCopyEngine().copyTree(SshAdaptor.ADAPTOR_NAME, source, target, options);
+
+        LOGGER.debug("copyTree OK result = {}", result);
+
+        return result;
+    }
+
     @Override
     public CopyStatus getCopyStatus(Copy copy) throws XenonException {
 
@@ -19,20 +19,44 @@ import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.engine.jobs.JobImplementation;
 import nl.esciencecenter.xenon.engine.util.InteractiveProcess;
 import nl.esciencecenter.xenon.engine.util.InteractiveProcessFactory;
+import nl.esciencecenter.xenon.engine.util.Process;
+import nl.esciencecenter.xenon.engine.util.RecoverableProcess;
+import nl.esciencecenter.xenon.engine.util.RecoverableProcessFactory;
+import nl.esciencecenter.xenon.files.Path;
 
 /**
  * 
  * 
  */
-class SshInteractiveProcessFactory implements InteractiveProcessFactory {
+class SshInteractiveProcessFactory implements InteractiveProcessFactory, RecoverableProcessFactory {
     private final SshMultiplexedSession session;
 
+    private final SshProcessTable processTable;
+
     SshInteractiveProcessFactory(SshMultiplexedSession session) {
         this.session = session;
+        this.processTable = new SshProcessTable(session);
     }
 
     @Override
     public InteractiveProcess createInteractiveProcess(JobImplementation job) throws XenonException {
         return new SshInteractiveProcess(session, job);
     }
+
+    @Override
+    public Process createBatchProcess(JobImplementation job, Path workdir, Path stdin, Path stdout, Path stderr) 
+            throws XenonException {
+        return new SshBatchProcess(session, job, workdir, stdin, stdout, stderr);
+    }
+
+    @Override
+    public RecoverableProcess createRecoverableProcess(JobImplementation job, Path workdir, Path stdin, Path stdout, 
+            Path stderr, Path exitFile) throws XenonException {
+        return new SshBatchProcess(session, job, workdir, stdin, stdout, stderr, exitFile);
+    }
+
+    @Override
+    public Process recoverProcess(String handle, Path exitFile) throws XenonException {
+        return new SshRecoveredProcess(session, processTable, handle, exitFile.getRelativePath().getAbsolutePath());
+    }
 }
@@ -15,7 +15,9 @@
  */
 package nl.esciencecenter.xenon.adaptors.ssh;
 
+import java.io.File;
 import java.util.Map;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import nl.esciencecenter.xenon.XenonException;
@@ -25,11 +27,14 @@ import nl.esciencecenter.xenon.engine.XenonEngine;
 import nl.esciencecenter.xenon.engine.XenonProperties;
 import nl.esciencecenter.xenon.engine.jobs.JobStatusImplementation;
 import nl.esciencecenter.xenon.engine.jobs.SchedulerImplementation;
+import nl.esciencecenter.xenon.engine.util.JobJournal;
 import nl.esciencecenter.xenon.engine.util.JobQueues;
+import nl.esciencecenter.xenon.engine.util.JobStatusMonitor;
 import nl.esciencecenter.xenon.files.FileSystem;
 import nl.esciencecenter.xenon.jobs.Job;
 import nl.esciencecenter.xenon.jobs.JobDescription;
 import nl.esciencecenter.xenon.jobs.JobStatus;
+import nl.esciencecenter.xenon.jobs.JobStatusListener;
 import nl.esciencecenter.xenon.jobs.Jobs;
 import nl.esciencecenter.xenon.jobs.NoSuchSchedulerException;
 import nl.esciencecenter.xenon.jobs.QueueStatus;
@@ -85,6 +90,8 @@ public class SshJobs implements Jobs {
 
     private boolean isEnded;
 
+    private final JobStatusMonitor monitor = new JobStatusMonitor(SshAdaptor.ADAPTOR_NAME, this);
+
     private final Map<String, SchedulerInfo> schedulers;
 
     public SshJobs(XenonProperties properties, SshAdaptor sshAdaptor, XenonEngine xenonEngine) {
@@ -121,8 +128,21 @@ public class SshJobs implements Jobs {
         long pollingDelay = p.getLongProperty(SshAdaptor.POLLING_DELAY);
         int multiQThreads = p.getIntegerProperty(SshAdaptor.MULTIQ_MAX_CONCURRENT);
 
+        String journalFile = p.getStringProperty(SshAdaptor.JOURNAL);
+
+        JobJournal journal = null;
+
+        if (journalFile != null) {
+            try {
+                journal = new JobJournal(SshAdaptor.ADAPTOR_NAME, new File(journalFile));
+            } catch (XenonException e) {
+                session.disconnect();
+                throw e;
+            }
+        }
+
         JobQueues jobQueues = new JobQueues(SshAdaptor.ADAPTOR_NAME, xenonEngine.files(), scheduler, fs.getEntryPath(), factory,
-                multiQThreads, pollingDelay);
+                multiQThreads, pollingDelay, journal);
 
         synchronized (this) {
             schedulers.put(uniqueID, new SchedulerInfo(session, jobQueues));
@@ -174,6 +194,23 @@ public class SshJobs implements Jobs {
         return job;
     }
 
+    @Override
+    public Job[] submitJobs(Scheduler scheduler, JobDescription... descriptions) throws XenonException {
+        for (JobDescription description : descriptions) {
+            if (!description.getEnvironment().isEmpty()) {
+                throw new UnsupportedJobDescriptionException(SshAdaptor.ADAPTOR_NAME, "Environment variables not supported!");
+            }
+        }
+
+        Job[] jobs = getJobQueue(scheduler).submitJobs(descriptions);
+
+        for (int i = 0; i < jobs.length; i++) {
+            addSubmittedJob();
+        }
+
+        return jobs;
+    }
+
     @Override
     public JobStatus getJobStatus(Job job) throws XenonException {
         return getJobQueue(job.getScheduler()).getJobStatus(job);
@@ -208,6 +245,26 @@ public class SshJobs implements Jobs {
         return getJobQueue(job.getScheduler()).waitUntilRunning(job, timeout);
     }
 
+    @Override
+    public void addJobStatusListener(Job job, JobStatusListener listener) throws XenonException {
+        monitor.addListener(job, listener, getJobQueue(job.getScheduler()).getPollingDelay());
+    }
+
+    @Override
+    public void removeJobStatusListener(Job job, JobStatusListener listener) {
+        monitor.removeListener(job, listener);
+    }
+
+    @Override
+    public Future<JobStatus> waitUntilDoneAsync(Job job) throws XenonException {
+        return monitor.waitUntilDone(job, getJobQueue(job.getScheduler()).getPollingDelay());
+    }
+
+    @Override
+    public Future<JobStatus> waitUntilRunningAsync(Job job) throws XenonException {
+        return monitor.waitUntilRunning(job, getJobQueue(job.getScheduler()).getPollingDelay());
+    }
+
     @Override
     public JobStatus cancelJob(Job job) throws XenonException {
         return getJobQueue(job.getScheduler()).cancelJob(job);
@@ -216,6 +273,8 @@ public class SshJobs implements Jobs {
     public void end() {
         isEnded = true;
 
+        monitor.end();
+
         for (SchedulerInfo tmp : schedulers.values()) { 
             tmp.end();
         }
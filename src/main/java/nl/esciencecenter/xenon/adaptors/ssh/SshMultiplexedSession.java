@@ -15,12 +15,15 @@
  */
 package nl.esciencecenter.xenon.adaptors.ssh;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import nl.esciencecenter.xenon.InvalidCredentialException;
 import nl.esciencecenter.xenon.InvalidLocationException;
+import nl.esciencecenter.xenon.InvalidPropertyException;
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.credentials.Credential;
 import nl.esciencecenter.xenon.engine.XenonProperties;
@@ -38,13 +41,37 @@ import com.jcraft.jsch.JSchException;
 import com.jcraft.jsch.Session;
 
 /**
+ * An elastic pool of SSH sessions to a single location.
  * 
+ * Channels are spread over a bounded number of sessions, each of which supports a limited number of channels. New sessions are
+ * created when all channels of the existing sessions are in use. When the maximum number of sessions has been reached, 
+ * acquiring a channel waits until a channel is released. A number of channels is reserved for sftp: exec channels, which may 
+ * be held by long running commands, wait once all other channels are used by exec channels.
  * 
+ * Sessions that lose their connection are removed from the pool and replaced by a new session the next time a channel is 
+ * needed. A reaper thread periodically disconnects sessions that have been idle for too long, always keeping the oldest 
+ * session, and removes sessions that have lost their connection. Keepalive messages are sent by JSch itself.
  */
 class SshMultiplexedSession {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SshMultiplexedSession.class);
 
+    /** Periodically removes idle and broken sessions. */
+    private class Reaper extends Thread {
+
+        Reaper() {
+            super("SshSessionReaper-" + location);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (waitForReaping()) {
+                reap();
+            }
+        }
+    }
+
     private final JSch jsch;
     private final XenonProperties properties;
     private final boolean useAgentForwarding;
@@ -56,15 +83,59 @@ class SshMultiplexedSession {
     
     private SshSession gatewaySession;
 
+    private final int maxSessions;
+    private final int maxChannels;
+    private final int maxCachedSftpChannels;
+    private final int maxExecChannels;
+    private final long idleTimeout;
+    private final long keepAliveInterval;
+    private final long maxWait;
+
     private int nextSessionID = 0;
-    
-    private final List<SshSession> sessions = new ArrayList<>();
+
+    /** The sessions, oldest first. Copy on write, so a free channel can be found without holding the lock of this object. */
+    private final List<SshSession> sessions = new CopyOnWriteArrayList<>();
+
+    /** The session wrapping each JSch session, used to find the owner of a released channel. */
+    private final Map<Session, SshSession> owners = new ConcurrentHashMap<>();
+
+    /** The number of sessions that are being created. */
+    private int pendingSessions = 0;
+
+    /** The number of exec channels in use, or being created. */
+    private int execChannels = 0;
+
+    /** Incremented whenever a channel slot may have become available. */
+    private long released = 0;
+
+    /** The number of threads waiting for a channel slot because all slots are in use. */
+    private int channelWaiters = 0;
+
+    private boolean closed = false;
 
     protected SshMultiplexedSession() {
+        this(8, 7, 2, 60000, 15000, 60000);
+    }
+
+    SshMultiplexedSession(int maxSessions, int maxChannels, int maxCachedSftpChannels, long idleTimeout, long keepAliveInterval, 
+            long maxWait) {
+        this(maxSessions, maxChannels, maxCachedSftpChannels, 0, idleTimeout, keepAliveInterval, maxWait);
+    }
+
+    SshMultiplexedSession(int maxSessions, int maxChannels, int maxCachedSftpChannels, int reservedSftpChannels, 
+            long idleTimeout, long keepAliveInterval, long maxWait) {
         // Needed for unit testing
         jsch = null;
         properties = null;
         useAgentForwarding = false;
+
+        this.maxSessions = maxSessions;
+        this.maxChannels = maxChannels;
+        this.maxCachedSftpChannels = maxCachedSftpChannels;
+        this.maxExecChannels = maxSessions * maxChannels - reservedSftpChannels;
+        this.idleTimeout = idleTimeout;
+        this.keepAliveInterval = keepAliveInterval;
+        this.maxWait = maxWait;
     }
     
     @SuppressWarnings("PMD.EmptyIfStmt")
@@ -77,6 +148,48 @@ class SshMultiplexedSession {
         this.location = loc;
         this.properties = prop;
 
+        maxSessions = properties.getIntegerProperty(SshAdaptor.MAX_SESSIONS);
+        maxChannels = properties.getIntegerProperty(SshAdaptor.MAX_CHANNELS);
+        maxCachedSftpChannels = properties.getIntegerProperty(SshAdaptor.CACHED_SFTP_CHANNELS);
+        int reservedSftpChannels = properties.getIntegerProperty(SshAdaptor.RESERVED_SFTP_CHANNELS);
+        idleTimeout = properties.getLongProperty(SshAdaptor.SESSION_IDLE_TIMEOUT);
+        keepAliveInterval = properties.getLongProperty(SshAdaptor.SESSION_KEEP_ALIVE);
+        maxWait = properties.getLongProperty(SshAdaptor.SESSION_MAX_WAIT);
+
+        if (maxSessions < 1) {
+            throw new InvalidPropertyException(SshAdaptor.ADAPTOR_NAME, "Invalid maximum number of sessions: " + maxSessions);
+        }
+
+        if (maxChannels < 1) {
+            throw new InvalidPropertyException(SshAdaptor.ADAPTOR_NAME, "Invalid maximum number of channels per session: " 
+                    + maxChannels);
+        }
+
+        if (maxCachedSftpChannels < 0) {
+            throw new InvalidPropertyException(SshAdaptor.ADAPTOR_NAME, "Invalid number of cached sftp channels: " 
+                    + maxCachedSftpChannels);
+        }
+
+        if (reservedSftpChannels < 0 || reservedSftpChannels >= maxSessions * maxChannels) {
+            throw new InvalidPropertyException(SshAdaptor.ADAPTOR_NAME, "Invalid number of reserved sftp channels: " 
+                    + reservedSftpChannels);
+        }
+
+        maxExecChannels = maxSessions * maxChannels - reservedSftpChannels;
+
+        if (idleTimeout <= 0) {
+            throw new InvalidPropertyException(SshAdaptor.ADAPTOR_NAME, "Invalid session idle timeout: " + idleTimeout);
+        }
+
+        if (keepAliveInterval < 0 || keepAliveInterval > Integer.MAX_VALUE) {
+            throw new InvalidPropertyException(SshAdaptor.ADAPTOR_NAME, "Invalid session keep alive interval: " 
+                    + keepAliveInterval);
+        }
+
+        if (maxWait < 0) {
+            throw new InvalidPropertyException(SshAdaptor.ADAPTOR_NAME, "Invalid maximum session wait time: " + maxWait);
+        }
+
         credential = cred;
         
         if (credential == null) {
@@ -124,7 +237,8 @@ class SshMultiplexedSession {
             }
             LOGGER.debug("Creating gateway via {}", gatewayLocation);
 
-            gatewaySession = createSession(jsch, -1, gatewayLocation, credential, null, null, properties);
+            gatewaySession = createSession(jsch, -1, gatewayLocation, credential, null, null, properties, 1, 0,
+                    keepAliveInterval);
             
             LOGGER.debug("Gateway session via {} created!", gatewayLocation);
         }
@@ -132,54 +246,368 @@ class SshMultiplexedSession {
         // TODO: allow the uses to set agent forwarding for each scheduler connection ?
         useAgentForwarding = adaptor.useAgentForwarding();
 
-        createSession();
+        addSession(connectSession(nextSessionID()));
+
+        new Reaper().start();
     }
 
-    private synchronized SshSession findSession(Channel c) throws XenonException {
+    private SshSession findSession(Channel c) throws XenonException {
+
+        SshSession result;
+
         try {
-            return findSession(c.getSession());
+            result = owners.get(c.getSession());
         } catch (JSchException e) {
             throw new XenonException(SshAdaptor.ADAPTOR_NAME, "Failed to retrieve Session from SSH Channel!", e);
         }
+
+        if (result == null) {
+            throw new XenonException(SshAdaptor.ADAPTOR_NAME, "SSH Session not found!");
+        }
+
+        return result;
+    }
+
+    private synchronized int nextSessionID() {
+        return nextSessionID++;
+    }
+
+    // Create and connect a new session. Package private, so it can be replaced in tests.
+    SshSession connectSession(int sessionID) throws XenonException {
+        return createSession(jsch, sessionID, location, credential, gatewaySession, gatewayLocation, properties, maxChannels,
+                maxCachedSftpChannels, keepAliveInterval);
     }
 
-    private synchronized SshSession findSession(Session s) throws XenonException {
+    private void addSession(SshSession s) {
+        owners.put(s.getSession(), s);
+        sessions.add(s);
+    }
+
+    /**
+     * Reserve a channel slot in one of the sessions, creating a new session if all slots are in use. If the maximum number 
+     * of sessions has been reached, this waits until a slot becomes available. 
+     */
+    private SshSession reserveChannel() throws XenonException {
+
+        long deadline = System.currentTimeMillis() + maxWait;
+
+        while (true) {
+
+            long seen;
+
+            synchronized (this) {
+                if (closed) {
+                    throw new XenonException(SshAdaptor.ADAPTOR_NAME, "SSH session is already closed");
+                }
+                seen = released;
+            }
+
+            for (SshSession s : sessions) {
+                if (s.reserveChannel()) {
+                    return s;
+                }
+
+                if (!s.isAlive()) {
+                    removeSession(s);
+                }
+            }
+
+            boolean create = false;
+
+            synchronized (this) {
+                if (seen != released) {
+                    continue;
+                }
+
+                if (sessions.size() + pendingSessions < maxSessions) {
+                    pendingSessions++;
+                    create = true;
+                }
+            }
+
+            if (create) {
+                return reserveChannelInNewSession();
+            }
 
-        for (SshSession info : sessions) {
-            if (info != null && info.getSession() == s) {
-                return info;
+            // All slots are in use, but some may be taken by cached sftp channels that can be closed.
+            if (evictCachedSftpChannel()) {
+                continue;
+            }
+
+            synchronized (this) {
+                if (seen == released) {
+                    long timeout = deadline - System.currentTimeMillis();
+
+                    if (timeout <= 0) {
+                        throw new XenonException(SshAdaptor.ADAPTOR_NAME, "Timeout while waiting for an SSH channel to " 
+                                + location + ", all " + maxSessions * maxChannels + " channels are in use");
+                    }
+
+                    channelWaiters++;
+
+                    try {
+                        wait(timeout);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new XenonException(SshAdaptor.ADAPTOR_NAME, "Interrupted while waiting for an SSH channel", e);
+                    } finally {
+                        channelWaiters--;
+                    }
+                }
             }
         }
+    }
 
-        throw new XenonException(SshAdaptor.ADAPTOR_NAME, "SSH Session not found!");
+    /**
+     * Returns if any thread is waiting for a channel because all channels are in use. Users that hold on to a channel for a
+     * long time may use this to decide to release it early.
+     * 
+     * @return if any thread is waiting for a channel.
+     */
+    protected synchronized boolean hasChannelWaiters() {
+        return channelWaiters > 0;
     }
 
-    private synchronized SshSession createSession() throws XenonException {
-        SshSession s = createSession(jsch, nextSessionID++, location, credential, gatewaySession, gatewayLocation, properties);
-        sessions.add(s);
+    private boolean evictCachedSftpChannel() {
+        for (SshSession s : sessions) {
+            if (s.evictCachedSftpChannel()) {
+                channelReleased();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private SshSession reserveChannelInNewSession() throws XenonException {
+
+        SshSession s = null;
+
+        try {
+            s = connectSession(nextSessionID());
+            s.reserveChannel();
+        } catch (XenonException e) {
+            throw new XenonException(SshAdaptor.ADAPTOR_NAME, "Failed to create new SSH session!", e);
+        } finally {
+            synchronized (this) {
+                pendingSessions--;
+
+                if (s != null && !closed) {
+                    addSession(s);
+                }
+
+                released++;
+                notifyAll();
+            }
+        }
+
+        if (isClosed()) {
+            disconnect(s);
+            throw new XenonException(SshAdaptor.ADAPTOR_NAME, "SSH session is already closed");
+        }
+
         return s;
     }
 
+    /**
+     * Reserve one of the channels that may be used for exec channels, waiting until one is available. The remaining channels 
+     * are reserved for sftp.
+     */
+    private synchronized void reserveExecChannel() throws XenonException {
+
+        long deadline = System.currentTimeMillis() + maxWait;
+
+        while (execChannels >= maxExecChannels) {
+            if (closed) {
+                throw new XenonException(SshAdaptor.ADAPTOR_NAME, "SSH session is already closed");
+            }
+
+            long timeout = deadline - System.currentTimeMillis();
+
+            if (timeout <= 0) {
+                throw new XenonException(SshAdaptor.ADAPTOR_NAME, "Timeout while waiting for an SSH exec channel to " 
+                        + location + ", all " + maxExecChannels + " exec channels are in use");
+            }
+
+            try {
+                wait(timeout);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new XenonException(SshAdaptor.ADAPTOR_NAME, "Interrupted while waiting for an SSH channel", e);
+            }
+        }
+
+        execChannels++;
+    }
+
+    private synchronized void execChannelReleased() {
+        execChannels--;
+        released++;
+        notifyAll();
+    }
+
+    private synchronized boolean isClosed() {
+        return closed;
+    }
+
+    private synchronized void channelReleased() {
+        released++;
+        notifyAll();
+    }
+
+    /**
+     * Remove a session from the pool and disconnect it. Channels of this session that are still in use will fail.
+     */
+    private void removeSession(SshSession s) {
+        if (sessions.remove(s)) {
+            LOGGER.debug("Removing SSH session {} to {}", s.getSessionID(), location);
+            owners.remove(s.getSession());
+            disconnect(s);
+            channelReleased();
+        }
+    }
+
+    private void disconnect(SshSession s) {
+        s.disconnect();
+
+        int tunnelPort = s.getTunnelPort();
+
+        if (tunnelPort > 0) {
+            try {
+                gatewaySession.removeTunnel(tunnelPort);
+            } catch (XenonException e) {
+                LOGGER.warn("Failed to remove SSH tunnel at localhost:" + tunnelPort);
+            }
+        }
+    }
+
+    // Check if a session in which a channel failed is still connected, and if not, remove it from the pool.
+    private boolean removeIfBroken(SshSession s) {
+        if (s.isAlive()) {
+            return false;
+        }
+
+        removeSession(s);
+        return true;
+    }
+
+    private synchronized boolean waitForReaping() {
+
+        long deadline = System.currentTimeMillis() + idleTimeout;
+
+        long timeout = deadline - System.currentTimeMillis();
+
+        while (!closed && timeout > 0) {
+            try {
+                wait(timeout);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            timeout = deadline - System.currentTimeMillis();
+        }
+
+        return !closed;
+    }
+
+    /**
+     * Remove all broken sessions, and all sessions that have been idle for longer than the idle timeout, except the oldest.
+     */
+    void reap() {
+
+        long now = System.currentTimeMillis();
+
+        boolean first = true;
+
+        for (SshSession s : sessions) {
+            if (!s.isAlive()) {
+                removeSession(s);
+            } else if (first) {
+                first = false;
+            } else if (s.isIdle(now, idleTimeout)) {
+                removeSession(s);
+            }
+        }
+    }
+
+    int getSessionCount() {
+        return sessions.size();
+    }
+
     private static byte [] convertPassword(char [] password) {
         return new String(password).getBytes();                
     }
     
-    private static synchronized SshSession createSession(JSch jsch, int sessionID, SshLocation location, Credential credential,
-            SshSession gateway, SshLocation gatewayLocation, XenonProperties properties) throws XenonException {
+    private static SshSession createSession(JSch jsch, int sessionID, SshLocation location, Credential credential,
+            SshSession gateway, SshLocation gatewayLocation, XenonProperties properties, int maxChannels, 
+            int maxCachedSftpChannels, long keepAliveInterval) throws XenonException {
+
+        LOGGER.debug("Creating new session to {} using credential {} via gateway {} (session {})", location, credential, 
+                gatewayLocation, gateway);
 
         String sessionHost = location.getHost();
         int sessionPort = location.getPort();
         int tunnelPort = -1;
 
-        LOGGER.debug("Creating new session to {} using credential {} via gateway {} (session {})", location, credential, 
-                gatewayLocation, gateway);
-                
         if (gateway != null) {
             LOGGER.debug("Using tunnel to {}", gatewayLocation);
             tunnelPort = gateway.addTunnel(0, location.getHost(), location.getPort());
             sessionPort = tunnelPort;
             sessionHost = "localhost";
         }
+
+        Session session;
+
+        try {
+            session = prepareSession(jsch, location.getUser(), sessionHost, sessionPort, credential, properties);
+        } catch (XenonException e) {
+            removeTunnel(gateway, tunnelPort);
+            throw e;
+        }
+
+        // Connecting and authenticating takes several round trips, so it is done without holding the lock, allowing sessions 
+        // to be set up in parallel.
+        try {
+            session.connect();
+        } catch (JSchException e) {
+
+            LOGGER.debug("Failed to connect ssh session!!!");
+
+            removeTunnel(gateway, tunnelPort);
+
+            if ("Auth cancel".equals(e.getMessage())) { 
+                throw new InvalidCredentialException(SshAdaptor.ADAPTOR_NAME, e.getMessage(), e);
+            } else {
+                throw new InvalidLocationException(SshAdaptor.ADAPTOR_NAME, e.getMessage(), e);
+            }
+        }
+        
+        if (keepAliveInterval > 0) {
+            try {
+                session.setServerAliveInterval((int) keepAliveInterval);
+            } catch (JSchException e) {
+                LOGGER.debug("Failed to set keep alive interval of ssh session", e);
+            }
+        }
+
+        return new SshSession(session, tunnelPort, sessionID, maxChannels, maxCachedSftpChannels);
+    }
+
+    private static void removeTunnel(SshSession gateway, int tunnelPort) {
+        if (tunnelPort > 0) {
+            try {
+                gateway.removeTunnel(tunnelPort);
+            } catch (XenonException e) {
+                LOGGER.warn("Failed to remove SSH tunnel at localhost:" + tunnelPort);
+            }
+        }
+    }
+
+    /**
+     * Create an unconnected session. This changes the identities of the shared JSch object, so it is done while holding a 
+     * global lock.
+     */
+    private static synchronized Session prepareSession(JSch jsch, String user, String sessionHost, int sessionPort, 
+            Credential credential, XenonProperties properties) throws XenonException {
         
         if (credential instanceof SSHCertificateCredentialImplementation) { 
             
@@ -210,7 +638,7 @@ class SshMultiplexedSession {
         Session session;
 
         try {
-            session = jsch.getSession(location.getUser(), sessionHost, sessionPort);
+            session = jsch.getSession(user, sessionHost, sessionPort);
         } catch (JSchException e) {
             throw new XenonException(SshAdaptor.ADAPTOR_NAME, "Failed to create SSH session!", e);
         }
@@ -233,20 +661,7 @@ class SshMultiplexedSession {
             session.setConfig("StrictHostKeyChecking", "no");
         }
 
-        try {
-            session.connect();
-        } catch (JSchException e) {
-
-            LOGGER.debug("Failed to connect ssh session!!!");
-            
-            if ("Auth cancel".equals(e.getMessage())) { 
-                throw new InvalidCredentialException(SshAdaptor.ADAPTOR_NAME, e.getMessage(), e);
-            } else {
-                throw new InvalidLocationException(SshAdaptor.ADAPTOR_NAME, e.getMessage(), e);
-            }
-        }
-        
-        return new SshSession(session, tunnelPort, sessionID);
+        return session;
     }
 
     /**
@@ -266,30 +681,49 @@ class SshMultiplexedSession {
      * @throws XenonException
      *          if an error occurred
      */
-    protected synchronized ChannelExec getExecChannel() throws XenonException {
+    protected ChannelExec getExecChannel() throws XenonException {
 
-        for (SshSession s : sessions) {
-            ChannelExec channel = s.getExecChannel();
+        reserveExecChannel();
 
-            if (channel != null) {
-                return channel;
+        try {
+            while (true) {
+                SshSession s = reserveChannel();
+
+                try {
+                    return s.createExecChannel();
+                } catch (XenonException e) {
+                    channelReleased();
+
+                    if (!removeIfBroken(s)) {
+                        throw e;
+                    }
+                }
             }
+        } catch (XenonException | RuntimeException e) {
+            execChannelReleased();
+            throw e;
         }
+    }
 
+    protected void releaseExecChannel(ChannelExec channel) throws XenonException {
         try {
-            SshSession s = createSession();
-            return s.getExecChannel();
-        } catch (XenonException e) {
-            throw new XenonException(SshAdaptor.ADAPTOR_NAME, "Failed to create new SSH session!", e);
+            findSession(channel).releaseExecChannel(channel);
+        } finally {
+            execChannelReleased();
         }
     }
 
-    protected synchronized void releaseExecChannel(ChannelExec channel) throws XenonException {
-        findSession(channel).releaseExecChannel(channel);
-    }
+    protected void failedExecChannel(ChannelExec channel) throws XenonException {
+        SshSession s;
+
+        try {
+            s = findSession(channel);
+            s.failedExecChannel(channel);
+        } finally {
+            execChannelReleased();
+        }
 
-    protected synchronized void failedExecChannel(ChannelExec channel) throws XenonException {
-        findSession(channel).failedExecChannel(channel);
+        removeIfBroken(s);
     }
 
     /**
@@ -299,55 +733,56 @@ class SshMultiplexedSession {
      * @throws XenonException
      *          if an error occurred
      */
-    protected synchronized ChannelSftp getSftpChannel() throws XenonException {
+    protected ChannelSftp getSftpChannel() throws XenonException {
 
         for (SshSession s : sessions) {
-            ChannelSftp channel = s.getSftpChannel();
+            ChannelSftp channel = s.getSftpChannelFromCache();
 
             if (channel != null) {
                 return channel;
             }
         }
 
-        try {
-            SshSession s = createSession();
-            return s.getSftpChannel();
-        } catch (XenonException e) {
-            throw new XenonException(SshAdaptor.ADAPTOR_NAME, "Failed to create new SSH session!", e);
+        while (true) {
+            SshSession s = reserveChannel();
+
+            try {
+                return s.createSftpChannel();
+            } catch (XenonException e) {
+                channelReleased();
+
+                if (!removeIfBroken(s)) {
+                    throw e;
+                }
+            }
         }
     }
 
-    protected synchronized void releaseSftpChannel(ChannelSftp channel) throws XenonException {
+    protected void releaseSftpChannel(ChannelSftp channel) throws XenonException {
         findSession(channel).releaseSftpChannel(channel);
+        channelReleased();
     }
 
-    protected synchronized void failedSftpChannel(ChannelSftp channel) throws XenonException {
-        findSession(channel).failedSftpChannel(channel);
+    protected void failedSftpChannel(ChannelSftp channel) throws XenonException {
+        SshSession s = findSession(channel);
+        s.failedSftpChannel(channel);
+        channelReleased();
+        removeIfBroken(s);
     }
 
-    protected synchronized void disconnect() {
-
-        while (!sessions.isEmpty()) {
-
-            SshSession s = sessions.remove(0);
-
-            if (s != null) {
-                s.disconnect();
+    protected void disconnect() {
 
-                int tunnelPort = s.getTunnelPort();
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
 
-                if (tunnelPort > 0) {
-                    try {
-                        gatewaySession.removeTunnel(tunnelPort);
-                    } catch (XenonException e) {
-                        LOGGER.warn("Failed to remove SSH tunnel at localhost:" + tunnelPort);
-                    }
-                }
-            }
+        for (SshSession s : sessions) {
+            removeSession(s);
         }
 
         if (gatewaySession != null) {
             gatewaySession.disconnect();
         }
-    }    
+    }
 }
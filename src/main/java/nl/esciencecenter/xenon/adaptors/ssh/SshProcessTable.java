@@ -0,0 +1,149 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.ssh;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.engine.util.ProcessIdentity;
+
+/**
+ * SshProcessTable retrieves the start times of all recovered remote processes of a session with a single remote 
+ * <code>ps</code> command, instead of running a command for each process every time it is polled.
+ * 
+ * The start times are reused for a short while, so polling all recovered processes in one pass of the process reaper results 
+ * in a single remote command.
+ * 
+ * @version 1.0
+ * @since 1.0
+ */
+class SshProcessTable {
+
+    /** The time for which the retrieved start times are reused (in ms.) */
+    static final long MAX_AGE = 1000;
+
+    private final SshMultiplexedSession session;
+
+    /** The process IDs to retrieve the start times of. */
+    private final Set<Integer> watched = new HashSet<>();
+
+    /** The start times of the watched processes that were alive at the last update. */
+    private Map<Integer, String> startTimes = new HashMap<>();
+
+    /** The time of the last update, or 0 if the start times must be retrieved again. */
+    private long updated = 0;
+
+    SshProcessTable(SshMultiplexedSession session) {
+        this.session = session;
+    }
+
+    synchronized void add(ProcessIdentity identity) {
+        if (watched.add(identity.getPid())) {
+            // The new process is not part of the current start times.
+            updated = 0;
+        }
+    }
+
+    synchronized void remove(ProcessIdentity identity) {
+        watched.remove(identity.getPid());
+    }
+
+    /**
+     * Check if a process is still running. The process must have been added to this table.
+     * 
+     * @param identity
+     *          the identity of the process.
+     * @return if a process with the same process ID and start time is running.
+     * @throws XenonException
+     *          if the start times could not be retrieved.
+     */
+    synchronized boolean isRunning(ProcessIdentity identity) throws XenonException {
+        if (identity.getStartTime() == null) {
+            return false;
+        }
+
+        long now = System.currentTimeMillis();
+
+        if (now - updated > MAX_AGE) {
+            startTimes = update();
+            updated = now;
+        }
+
+        return identity.matches(startTimes.get(identity.getPid()));
+    }
+
+    private Map<Integer, String> update() throws XenonException {
+        if (watched.isEmpty()) {
+            return new HashMap<>();
+        }
+
+        SshCommandRunner runner = new SshCommandRunner(session, buildCommand(watched));
+
+        // ps exits with 1 if none of the processes exist.
+        if (runner.getExitCode() > 1 || !runner.getStderr().isEmpty()) {
+            throw new XenonException(SshAdaptor.ADAPTOR_NAME, "Failed to retrieve state of remote processes: " 
+                    + runner.getStderr());
+        }
+
+        return parse(runner.getStdout());
+    }
+
+    static String buildCommand(Set<Integer> pids) {
+        StringBuilder command = new StringBuilder("ps -o pid=,lstart= -p ");
+
+        String separator = "";
+
+        for (Integer pid : pids) {
+            command.append(separator).append(pid);
+            separator = ",";
+        }
+
+        return command.toString();
+    }
+
+    /**
+     * Parse the output of <code>ps -o pid=,lstart=</code>.
+     * 
+     * @param output
+     *          the output to parse.
+     * @return the start time of each process in the output.
+     * @throws XenonException
+     *          if the output could not be parsed.
+     */
+    static Map<Integer, String> parse(String output) throws XenonException {
+        Map<Integer, String> result = new HashMap<>();
+
+        for (String line : output.split("\n")) {
+            String tmp = line.trim();
+
+            if (tmp.isEmpty()) {
+                continue;
+            }
+
+            try {
+                ProcessIdentity identity = ProcessIdentity.parse(tmp);
+                result.put(identity.getPid(), identity.getStartTime());
+            } catch (IllegalArgumentException e) {
+                throw new XenonException(SshAdaptor.ADAPTOR_NAME, "Failed to parse output of ps: " + line, e);
+            }
+        }
+
+        return result;
+    }
+}
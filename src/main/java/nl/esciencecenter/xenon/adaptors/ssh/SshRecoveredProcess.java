@@ -0,0 +1,159 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.ssh;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.engine.util.CommandLineUtils;
+import nl.esciencecenter.xenon.engine.util.Process;
+import nl.esciencecenter.xenon.engine.util.ProcessIdentity;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * SshRecoveredProcess implements a {@link Process} for a remote batch process that was started by a {@link SshBatchProcess} 
+ * before the JVM was restarted. The state of the process is determined from its process ID and start time, which are checked 
+ * for all recovered processes of a session at once by a {@link SshProcessTable}. Once the process is gone, its exit file is 
+ * read and removed. A process ID that now belongs to a process with a different start time is never reported as running or 
+ * killed.
+ * 
+ * @version 1.0
+ * @since 1.0
+ */
+class SshRecoveredProcess implements Process {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SshRecoveredProcess.class);
+
+    private final SshMultiplexedSession session;
+
+    private final SshProcessTable table;
+
+    private final ProcessIdentity identity;
+
+    private final String exitFile;
+
+    private int exitCode = -1;
+    private boolean done = false;
+
+    SshRecoveredProcess(SshMultiplexedSession session, SshProcessTable table, String handle, String exitFile) 
+            throws XenonException {
+
+        try {
+            identity = ProcessIdentity.parse(handle);
+        } catch (IllegalArgumentException e) {
+            throw new XenonException(SshAdaptor.ADAPTOR_NAME, "Invalid process handle: " + handle, e);
+        }
+
+        this.session = session;
+        this.table = table;
+        this.exitFile = exitFile;
+
+        table.add(identity);
+    }
+
+    /**
+     * Kill a remote process and the processes it started, if the process ID still belongs to the process with the given 
+     * identity. The start time is checked by the same remote command that kills the process.
+     * 
+     * @param session
+     *          the session to run the command with.
+     * @param identity
+     *          the identity of the process to kill.
+     */
+    static void kill(SshMultiplexedSession session, ProcessIdentity identity) {
+        if (identity.getStartTime() == null) {
+            LOGGER.warn("Not killing remote process {}, as its start time is unknown", identity);
+            return;
+        }
+
+        try {
+            new SshCommandRunner(session, buildKillCommand(identity));
+        } catch (XenonException e) {
+            LOGGER.warn("Failed to kill remote process {}", identity, e);
+        }
+    }
+
+    static String buildKillCommand(ProcessIdentity identity) {
+        int pid = identity.getPid();
+
+        return "if [ \"$(echo $(ps -o lstart= -p " + pid + "))\" = " 
+                + CommandLineUtils.protectAgainstShellMetas(identity.getStartTime()) + " ]; then pkill -9 -P " + pid 
+                + "; kill -9 " + pid + "; fi";
+    }
+
+    static String buildExitFileCommand(String exitFile) {
+        String file = CommandLineUtils.protectAgainstShellMetas(exitFile);
+
+        return "if [ -f " + file + " ]; then cat " + file + "; rm -f " + file + "; fi";
+    }
+
+    private void readExitFile() {
+        String result;
+
+        try {
+            result = new SshCommandRunner(session, buildExitFileCommand(exitFile)).getStdout().trim();
+        } catch (XenonException e) {
+            LOGGER.warn("Failed to read exit file of remote process {}", identity, e);
+            return;
+        }
+
+        if (!result.isEmpty()) {
+            try {
+                exitCode = Integer.parseInt(result);
+            } catch (NumberFormatException e) {
+                LOGGER.warn("Failed to parse exit code of remote process {}: {}", identity, result);
+            }
+        }
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        if (done) {
+            return true;
+        }
+
+        try {
+            if (table.isRunning(identity)) {
+                return false;
+            }
+        } catch (XenonException e) {
+            LOGGER.warn("Failed to retrieve state of remote process {}", identity, e);
+            return false;
+        }
+
+        // The exit file must be read after the process is gone, or we may miss it.
+        readExitFile();
+        done = true;
+        table.remove(identity);
+        return true;
+    }
+
+    @Override
+    public synchronized int getExitStatus() {
+        return exitCode;
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (isDone()) {
+            return;
+        }
+
+        kill(session, identity);
+        done = true;
+        table.remove(identity);
+    }
+}
@@ -15,6 +15,10 @@
  */
 package nl.esciencecenter.xenon.adaptors.ssh;
 
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
 import nl.esciencecenter.xenon.XenonException;
 
 import org.slf4j.Logger;
@@ -26,25 +30,42 @@ import com.jcraft.jsch.JSchException;
 import com.jcraft.jsch.Session;
 
 /**
- *  
+ * A single SSH session and the channels opened over it.
+ * 
+ * Each session has a limited number of channel slots. A slot must be reserved using {@link #reserveChannel()} before a 
+ * channel is opened, and is freed again when the channel is released. Released sftp channels are kept open in a small cache,
+ * so they can be reused without an additional round trip to the server. Cached channels keep their slot.
+ * 
+ * All bookkeeping is guarded by the lock of the session itself, so sessions can be used concurrently without a shared lock.
  */
 class SshSession {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SshSession.class);
 
-    private static final int MAX_OPEN_CHANNELS = 7;
-
     private final Session session;
     private final int tunnelPort;
     private final int sessionID;
 
-    private ChannelSftp sftpChannelCache;
+    private final int maxChannels;
+    private final int maxCachedSftpChannels;
+
+    /** The cached sftp channels, most recently used first. */
+    private final LinkedList<ChannelSftp> sftpChannelCache = new LinkedList<>();
+
+    /** The number of reserved slots, including the ones used by cached sftp channels. */
     private int openChannels = 0;
 
-    SshSession(Session session, int tunnelPort, int sessionID) {
+    /** The time at which a channel was last released (in ms. since the epoch). */
+    private long lastUsed = System.currentTimeMillis();
+
+    private boolean closed = false;
+
+    SshSession(Session session, int tunnelPort, int sessionID, int maxChannels, int maxCachedSftpChannels) {
         this.session = session;
         this.tunnelPort = tunnelPort;
         this.sessionID = sessionID;
+        this.maxChannels = maxChannels;
+        this.maxCachedSftpChannels = maxCachedSftpChannels;
     }
 
     protected Session getSession() {
@@ -57,58 +78,126 @@ class SshSession {
 
     protected int getSessionID() { return sessionID; }
 
-    protected boolean incOpenChannels(String info) {
-        if (openChannels == MAX_OPEN_CHANNELS) {
+    /**
+     * Returns if the underlying connection is still alive.
+     * 
+     * @return if the underlying connection is still alive.
+     */
+    protected boolean isAlive() {
+        return session.isConnected();
+    }
+
+    /**
+     * Reserve a channel slot in this session.
+     * 
+     * @return if a slot was reserved, <code>false</code> if all slots are in use or the session is no longer usable.
+     */
+    protected synchronized boolean reserveChannel() {
+        if (closed || openChannels >= maxChannels || !isAlive()) {
             return false;
         }
 
         openChannels++;
-        LOGGER.debug("SSHSESSION-{}: ++Open channels: {} {}", sessionID, openChannels, info);
+        LOGGER.debug("SSHSESSION-{}: ++Open channels: {}", sessionID, openChannels);
         return true;
     }
 
-    protected void decOpenChannels(String info) {
+    protected synchronized void releaseChannel(String info) {
         openChannels--;
+        lastUsed = System.currentTimeMillis();
         LOGGER.debug("SSHSESSION-{}: --Open channels: {} {}", sessionID, openChannels, info);
     }
 
     /**
-     * Cached channel from putSftpChannelInCache() is returned and removed from cache.
+     * Returns if none of the channels in this session are in use, and no channel was released during the last 
+     * <code>timeout</code> milliseconds.
      * 
-     * @return
-     *          the channel
+     * @param now
+     *          the current time (in ms. since the epoch).
+     * @param timeout
+     *          the idle timeout (in ms.).
+     * @return if the session has been idle for at least <code>timeout</code> milliseconds.
+     */
+    protected synchronized boolean isIdle(long now, long timeout) {
+        return openChannels == sftpChannelCache.size() && now - lastUsed >= timeout;
+    }
+
+    /**
+     * Remove a cached sftp channel from the cache. Cached channels that are no longer connected are discarded.
+     * 
+     * @return a connected sftp channel, or <code>null</code> if no cached channel is available.
      */
     protected ChannelSftp getSftpChannelFromCache() {
-        ChannelSftp channel = sftpChannelCache;
-        sftpChannelCache = null;
-        return channel;
+
+        while (true) {
+            ChannelSftp channel;
+
+            synchronized (this) {
+                if (sftpChannelCache.isEmpty()) {
+                    return null;
+                }
+
+                channel = sftpChannelCache.removeFirst();
+            }
+
+            if (channel.isConnected()) {
+                LOGGER.debug("SSHSESSION-{}: Reusing SFTP channel", sessionID);
+                return channel;
+            }
+
+            channel.disconnect();
+            releaseChannel("STALE SFTP");
+        }
     }
 
     /**
-     * Caches one channel.
+     * Adds a channel to the cache, unless the cache is full or the session is closed.
      *
-     * If a channel is already cached, it does nothing. Gets reset by getSftpChannelFromCache().
      * @param channel channel to cache
-     * @return whether the given channel is now the cached channel
+     * @return whether the given channel was cached
      */
-    @SuppressWarnings("PMD.CompareObjectsWithEquals")
-    protected boolean putSftpChannelInCache(ChannelSftp channel) {
-        if (sftpChannelCache == null) {
-            sftpChannelCache = channel;
+    protected synchronized boolean putSftpChannelInCache(ChannelSftp channel) {
+        if (closed || sftpChannelCache.size() >= maxCachedSftpChannels || !channel.isConnected()) {
+            return false;
         }
-        return sftpChannelCache == channel;
+
+        sftpChannelCache.addFirst(channel);
+        lastUsed = System.currentTimeMillis();
+        return true;
+    }
+
+    /**
+     * Close the least recently used cached sftp channel, freeing its slot.
+     * 
+     * @return if a cached channel was closed.
+     */
+    protected boolean evictCachedSftpChannel() {
+
+        ChannelSftp channel;
+
+        synchronized (this) {
+            if (sftpChannelCache.isEmpty()) {
+                return false;
+            }
+
+            channel = sftpChannelCache.removeLast();
+        }
+
+        channel.disconnect();
+        releaseChannel("EVICTED SFTP");
+        return true;
     }
 
     protected void releaseExecChannel(ChannelExec channel) {
         LOGGER.debug("SSHSESSION-{}: Releasing EXEC channel", sessionID);
         channel.disconnect();
-        decOpenChannels("EXEC");
+        releaseChannel("EXEC");
     }
 
     protected void failedExecChannel(ChannelExec channel) {
         LOGGER.debug("SSHSESSION-{}: Releasing FAILED EXEC channel", sessionID);
         channel.disconnect();
-        decOpenChannels("FAILED EXEC");
+        releaseChannel("FAILED EXEC");
     }
 
     protected void releaseSftpChannel(ChannelSftp channel) {
@@ -116,68 +205,78 @@ class SshSession {
 
         if (!putSftpChannelInCache(channel)) {
             channel.disconnect();
-            decOpenChannels("SFTP");
+            releaseChannel("SFTP");
         }
     }
 
     protected void failedSftpChannel(ChannelSftp channel) {
         LOGGER.debug("SSHSESSION-{}: Releasing FAILED SFTP channel", sessionID);
         channel.disconnect();
-        decOpenChannels("FAILED SFTP");
+        releaseChannel("FAILED SFTP");
     }
 
     protected void disconnect() {
-        if (sftpChannelCache != null) {
-            sftpChannelCache.disconnect();
-        }
 
-        session.disconnect();
-    }
+        List<ChannelSftp> cached;
 
-    protected ChannelExec getExecChannel() throws XenonException {
+        synchronized (this) {
+            closed = true;
+            cached = new ArrayList<>(sftpChannelCache);
+            sftpChannelCache.clear();
+        }
 
-        if (openChannels == MAX_OPEN_CHANNELS) {
-            return null;
+        for (ChannelSftp channel : cached) {
+            channel.disconnect();
         }
 
-        ChannelExec channel;
+        session.disconnect();
+    }
 
+    /**
+     * Open an exec channel in a slot previously reserved with {@link #reserveChannel()}. The slot is freed if the channel 
+     * could not be opened.
+     * 
+     * @return the channel
+     * @throws XenonException
+     *          if the channel could not be opened.
+     */
+    protected ChannelExec createExecChannel() throws XenonException {
         try {
-            LOGGER.debug("SSHSESSION-{}: Creating EXEC channel {}", sessionID, openChannels);
-            channel = (ChannelExec) session.openChannel("exec");
+            LOGGER.debug("SSHSESSION-{}: Creating EXEC channel", sessionID);
+            return (ChannelExec) session.openChannel("exec");
         } catch (JSchException e) {
-            LOGGER.debug("SSHSESSION-{}: Failed to create EXEC channel {}", sessionID, openChannels, e);
+            LOGGER.debug("SSHSESSION-{}: Failed to create EXEC channel", sessionID, e);
+            releaseChannel("FAILED EXEC");
             throw new XenonException(SshAdaptor.ADAPTOR_NAME, e.getMessage(), e);
         }
-
-        incOpenChannels("EXEC");
-        return channel;
     }
 
-    protected ChannelSftp getSftpChannel() throws XenonException {
-
-        ChannelSftp channel = getSftpChannelFromCache();
-
-        if (channel != null) {
-            LOGGER.debug("SSHSESSION-{}: Reusing SFTP channel {}", sessionID, openChannels);
-            return channel;
-        }
-
-        if (openChannels == MAX_OPEN_CHANNELS) {
-            return null;
-        }
+    /**
+     * Open and connect an sftp channel in a slot previously reserved with {@link #reserveChannel()}. The slot is freed if 
+     * the channel could not be opened.
+     * 
+     * @return the channel
+     * @throws XenonException
+     *          if the channel could not be opened.
+     */
+    protected ChannelSftp createSftpChannel() throws XenonException {
+        ChannelSftp channel = null;
 
         try {
-            LOGGER.debug("SSHSESSION-{}: Creating SFTP channel {}", sessionID, openChannels);
+            LOGGER.debug("SSHSESSION-{}: Creating SFTP channel", sessionID);
             channel = (ChannelSftp) session.openChannel("sftp");
             channel.connect();
+            return channel;
         } catch (JSchException e) {
-            LOGGER.debug("SSHSESSION-{}: Failed to create SFTP channel {}", sessionID, openChannels, e);
+            LOGGER.debug("SSHSESSION-{}: Failed to create SFTP channel", sessionID, e);
+
+            if (channel != null) {
+                channel.disconnect();
+            }
+
+            releaseChannel("FAILED SFTP");
             throw new XenonException(SshAdaptor.ADAPTOR_NAME, e.getMessage(), e);
         }
-
-        incOpenChannels("SFTP");
-        return channel;
     }
 
     protected int addTunnel(int localPort, String targetHost, int targetPort) throws XenonException {
@@ -209,4 +308,4 @@ class SshSession {
             throw new XenonException(SshAdaptor.ADAPTOR_NAME, e.getMessage(), e);
         }
     }
-}
\ No newline at end of file
+}
@@ -52,10 +52,7 @@ final class TorqueJobScriptGenerator {
         script.format("\n");
     }
 
-    public static String generate(JobDescription description, RelativePath fsEntryPath) {
-        StringBuilder stringBuilder = new StringBuilder(500);
-        Formatter script = new Formatter(stringBuilder, Locale.US);
-
+    private static void generateHeader(Formatter script, JobDescription description, RelativePath fsEntryPath) {
         script.format("#!/bin/sh\n");
 
         //set shell to sh
@@ -90,19 +87,32 @@ final class TorqueJobScriptGenerator {
         script.format("#PBS -l walltime=%02d:%02d:00\n",
                 description.getMaxTime() / MINUTES_PER_HOUR,
                 description.getMaxTime() % MINUTES_PER_HOUR);
+    }
 
+    private static void generateEnvironment(Formatter script, JobDescription description) {
         for (Map.Entry<String, String> entry : description.getEnvironment().entrySet()) {
             script.format("export %s=\"%s\"\n", entry.getKey(), entry.getValue());
         }
 
         script.format("\n");
+    }
 
+    private static void generateContent(Formatter script, JobDescription description) {
         String customContents = description.getJobOptions().get(TorqueSchedulerConnection.JOB_OPTION_JOB_CONTENTS);
         if (customContents == null) {
             generateScriptContent(description, script);
         } else {
             script.format("%s\n", customContents);
         }
+    }
+
+    public static String generate(JobDescription description, RelativePath fsEntryPath) {
+        StringBuilder stringBuilder = new StringBuilder(500);
+        Formatter script = new Formatter(stringBuilder, Locale.US);
+
+        generateHeader(script, description, fsEntryPath);
+        generateEnvironment(script, description);
+        generateContent(script, description);
 
         script.close();
 
@@ -110,4 +120,57 @@ final class TorqueJobScriptGenerator {
 
         return stringBuilder.toString();
     }
+
+    /**
+     * Generate a script that runs the given descriptions as the tasks of a single job array. The descriptions are assumed to
+     * only differ in executable and arguments. Each task selects its command using its index in the array.
+     * 
+     * @param descriptions
+     *          the descriptions of the tasks in the array.
+     * @param fsEntryPath
+     *          the entry path of the scheduler file system, used to resolve relative working directories.
+     * @return the job script.
+     */
+    public static String generateArray(JobDescription[] descriptions, RelativePath fsEntryPath) {
+        StringBuilder stringBuilder = new StringBuilder(500);
+        Formatter script = new Formatter(stringBuilder, Locale.US);
+
+        generateHeader(script, descriptions[0], fsEntryPath);
+
+        script.format("#PBS -t 0-%d\n", descriptions.length - 1);
+
+        generateEnvironment(script, descriptions[0]);
+
+        String[] commands = new String[descriptions.length];
+        boolean identical = true;
+
+        for (int i = 0; i < descriptions.length; i++) {
+            StringBuilder command = new StringBuilder();
+            Formatter formatter = new Formatter(command, Locale.US);
+            generateContent(formatter, descriptions[i]);
+            formatter.close();
+
+            commands[i] = command.toString();
+            identical = identical && commands[i].equals(commands[0]);
+        }
+
+        if (identical) {
+            script.format("%s", commands[0]);
+        } else {
+            //select the command using the index of this task in the array
+            script.format("case \"$PBS_ARRAYID\" in\n");
+
+            for (int i = 0; i < commands.length; i++) {
+                script.format("%d)\n    %s    ;;\n", i, commands[i]);
+            }
+
+            script.format("esac\n");
+        }
+
+        script.close();
+
+        LOGGER.debug("Created job array script:\n{} for {} tasks", stringBuilder, descriptions.length);
+
+        return stringBuilder.toString();
+    }
 }
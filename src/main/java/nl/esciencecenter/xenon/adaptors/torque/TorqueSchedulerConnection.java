@@ -19,19 +19,19 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.adaptors.scripting.JobStateTable;
 import nl.esciencecenter.xenon.adaptors.scripting.RemoteCommandRunner;
 import nl.esciencecenter.xenon.adaptors.scripting.SchedulerConnection;
 import nl.esciencecenter.xenon.adaptors.scripting.ScriptingAdaptor;
 import nl.esciencecenter.xenon.adaptors.scripting.ScriptingParser;
+import nl.esciencecenter.xenon.adaptors.scripting.StatusCache;
 import nl.esciencecenter.xenon.credentials.Credential;
 import nl.esciencecenter.xenon.engine.XenonEngine;
 import nl.esciencecenter.xenon.engine.XenonProperties;
@@ -64,7 +64,6 @@ public class TorqueSchedulerConnection extends SchedulerConnection {
 
     private static final Pattern queueInfoName = Pattern.compile("^Queue: ([a-zA-Z_]+)$");
     
-    public static final String JOB_OPTION_JOB_SCRIPT = "job.script";
     public static final String JOB_OPTION_JOB_CONTENTS = "job.contents";
     public static final String JOB_OPTION_RESOURCES = "job.resources";
 
@@ -101,6 +100,28 @@ public class TorqueSchedulerConnection extends SchedulerConnection {
         SchedulerConnection.verifyJobDescription(description, TorqueAdaptor.ADAPTOR_NAME);
     }
 
+    /**
+     * Returns the identifier of a task of a job array. The identifier of a job array contains empty brackets after the job
+     * number, for example "123[].server". The identifier of a task contains the task number between these brackets.
+     * 
+     * @param arrayIdentifier
+     *          the identifier of the job array.
+     * @param task
+     *          the number of the task.
+     * @return the identifier of the task.
+     * @throws XenonException
+     *          if the identifier is not the identifier of a job array.
+     */
+    protected static String getTaskIdentifier(String arrayIdentifier, int task) throws XenonException {
+        int brackets = arrayIdentifier.indexOf("[]");
+
+        if (brackets < 0) {
+            throw new XenonException(TorqueAdaptor.ADAPTOR_NAME, "Job ID \"" + arrayIdentifier + "\" is not a job array");
+        }
+
+        return arrayIdentifier.substring(0, brackets + 1) + task + arrayIdentifier.substring(brackets + 1);
+    }
+
     protected static JobStatus getJobStatusFromQstatInfo(Map<String, Map<String, String>> info, Job job) throws XenonException {
         boolean done = false;
         Map<String, String> jobInfo = info.get(job.getIdentifier());
@@ -133,17 +154,19 @@ public class TorqueSchedulerConnection extends SchedulerConnection {
     private final long accountingGraceTime;
 
     /**
-     * Map with the last seen time of jobs. There is a delay between jobs disappearing from the qstat queue output. 
+     * Jobs seen recently, expiring after the grace time. There is a delay between jobs disappearing from the qstat queue output. 
      * Instead of throwing an exception, we allow for a certain grace
      * time. Jobs will report the status "pending" during this time. Typical delays are in the order of seconds.
      */
-    private final Map<String, Long> lastSeenMap;
+    private final JobStateTable<Boolean> seenJobs;
 
-    //list of jobs we have killed before they even started. These will not end up in qstat, so we keep them here.
-    private final Set<String> deletedJobs;
+    //jobs we have killed before they even started. These will not end up in qstat, so we keep them here (for a while).
+    private final JobStateTable<Boolean> deletedJobs;
 
     private final Scheduler scheduler;
 
+    private final StatusCache statusCache;
+
     private final TorqueXmlParser parser;
 
     private final String[] queueNames;
@@ -158,8 +181,18 @@ public class TorqueSchedulerConnection extends SchedulerConnection {
 
         parser = new TorqueXmlParser();
 
-        lastSeenMap = new HashMap<>(30);
-        deletedJobs = new HashSet<>(10);
+        seenJobs = new JobStateTable<>(TorqueAdaptor.ADAPTOR_NAME + " seen jobs", JobStateTable.DEFAULT_MAX_SIZE,
+                accountingGraceTime);
+        deletedJobs = new JobStateTable<>(TorqueAdaptor.ADAPTOR_NAME + " deleted jobs", JobStateTable.DEFAULT_MAX_SIZE,
+                JobStateTable.DEFAULT_LIFETIME);
+
+        //status of all jobs in the queue, shared by all status requests
+        statusCache = new StatusCache(TorqueAdaptor.ADAPTOR_NAME, new StatusCache.Fetcher() {
+            @Override
+            public Map<String, Map<String, String>> fetch() throws XenonException {
+                return getQstatInfo(null);
+            }
+        }, properties.getLongProperty(TorqueAdaptor.STATUS_CACHE_PROPERTY));
 
         queueNames = queryQueueNames();
 
@@ -188,44 +221,23 @@ public class TorqueSchedulerConnection extends SchedulerConnection {
         return null;
     }
 
-    private synchronized void updateJobsSeenMap(Set<String> identifiers) {
-        long currentTime = System.currentTimeMillis();
-
-        for (String identifier : identifiers) {
-            lastSeenMap.put(identifier, currentTime);
-        }
-
-        long expiredTime = currentTime + accountingGraceTime;
-
-        Iterator<Entry<String, Long>> iterator = lastSeenMap.entrySet().iterator();
-
-        while (iterator.hasNext()) {
-            Entry<String, Long> entry = iterator.next();
-
-            if (entry.getValue() > expiredTime) {
-                iterator.remove();
-            }
-        }
-
+    private void updateJobsSeenMap(Set<String> identifiers) {
+        seenJobs.putAll(identifiers, Boolean.TRUE);
     }
 
-    private synchronized boolean haveRecentlySeen(String identifier) {
-        if (!lastSeenMap.containsKey(identifier)) {
-            return false;
-        }
-
-        return (lastSeenMap.get(identifier) + accountingGraceTime) > System.currentTimeMillis();
+    private boolean haveRecentlySeen(String identifier) {
+        return seenJobs.contains(identifier);
     }
 
-    private synchronized void addDeletedJob(Job job) {
-        deletedJobs.add(job.getIdentifier());
+    private void addDeletedJob(Job job) {
+        deletedJobs.put(job.getIdentifier(), Boolean.TRUE);
     }
 
     /*
      * Note: Works exactly once per job.
      */
-    private synchronized boolean jobWasDeleted(Job job) {
-        return deletedJobs.remove(job.getIdentifier());
+    private boolean jobWasDeleted(Job job) {
+        return deletedJobs.remove(job.getIdentifier()) != null;
     }
 
     private void jobsFromStatus(String statusOutput, Scheduler scheduler, List<Job> result) throws XenonException {
@@ -243,12 +255,12 @@ public class TorqueSchedulerConnection extends SchedulerConnection {
         List<Job> result = new ArrayList<>(1500);
 
         if (queueNames == null || queueNames.length == 0) {
-            String statusOutput = runCheckedCommand(null, "qstat", "-x").trim();
+            String statusOutput = runCheckedCommand(null, "qstat", "-x", "-t").trim();
 
             jobsFromStatus(statusOutput, getScheduler(), result);
         } else {
             for (String queueName : queueNames) {
-                RemoteCommandRunner runner = runCommand(null, "qstat", "-x", queueName);
+                RemoteCommandRunner runner = runCommand(null, "qstat", "-x", "-t", queueName);
 
                 if (runner.success()) {
                     jobsFromStatus(runner.getStdout(), getScheduler(), result);
@@ -370,51 +382,139 @@ public class TorqueSchedulerConnection extends SchedulerConnection {
         return result;
     }
     
+    private Job createJob(JobDescription description, String qsubOutput) throws XenonException {
+        String identifier = ScriptingParser.parseJobIDFromLine(qsubOutput, TorqueAdaptor.ADAPTOR_NAME, "");
+
+        updateJobsSeenMap(Collections.singleton(identifier));
+
+        if (!description.getJobOptions().containsKey(TorqueSchedulerConnection.JOB_OPTION_JOB_SCRIPT)) {
+            String[] idParts = identifier.split("\\.");
+            try {
+                long idNumber = Long.parseLong(idParts[0]);
+                description.setStderr("xenon.e" + idNumber);
+                description.setStdout("xenon.o" + idNumber);
+            } catch (NumberFormatException ex) {
+                LOGGER.warn("Standard out and standard err could not be set from Job ID {0}", identifier);
+            }
+        }
+
+        return new JobImplementation(getScheduler(), identifier, description, false, false);
+    }
+
     @Override
     public Job submitJob(JobDescription description) throws XenonException {
         String output;
-        RelativePath fsEntryPath = getFsEntryPath().getRelativePath();
         
         verifyJobDescription(description);
 
         //check for option that overrides job script completely.
-        String customScriptFile = description.getJobOptions().get(JOB_OPTION_JOB_SCRIPT);
+        String customScriptFile = getCustomScriptFile(description);
 
         if (customScriptFile == null) {
             checkWorkingDirectory(description.getWorkingDirectory());
-            String jobScript = TorqueJobScriptGenerator.generate(description, fsEntryPath);
+            String jobScript = TorqueJobScriptGenerator.generate(description, getFsEntryPath().getRelativePath());
 
             output = runCheckedCommand(jobScript, "qsub");
         } else {
             //the user gave us a job script. Pass it to qsub as-is
+            output = runCheckedCommand(null, "qsub", customScriptFile);
+        }
+
+        Job result = createJob(description, output);
+
+        statusCache.invalidate();
+
+        return result;
+    }
 
-            //convert to absolute path if needed
-            if (!customScriptFile.startsWith("/")) {
-                RelativePath scriptFile = fsEntryPath.resolve(customScriptFile);
-                customScriptFile = scriptFile.getAbsolutePath();
+    @Override
+    public Job[] submitJobs(JobDescription... descriptions) throws XenonException {
+        for (JobDescription description : descriptions) {
+            verifyJobDescription(description);
+        }
+
+        try {
+            if (descriptions.length > 1 && isJobArray(descriptions)) {
+                return submitJobArray(descriptions);
+            } else {
+                return submitBatchJobs(descriptions);
             }
+        } finally {
+            statusCache.invalidate();
+        }
+    }
 
-            output = runCheckedCommand(null, "qsub", customScriptFile);
+    private Job[] submitJobArray(JobDescription[] descriptions) throws XenonException {
+        checkWorkingDirectory(descriptions[0].getWorkingDirectory());
+
+        String jobScript = TorqueJobScriptGenerator.generateArray(descriptions, getFsEntryPath().getRelativePath());
+
+        String output = runCheckedCommand(jobScript, "qsub");
+
+        String arrayIdentifier = ScriptingParser.parseJobIDFromLine(output, TorqueAdaptor.ADAPTOR_NAME, "");
+        String jobNumber = arrayIdentifier.substring(0, arrayIdentifier.indexOf('['));
+
+        //each task of the array has its own identifier and output files
+        Job[] result = new Job[descriptions.length];
+        Set<String> identifiers = new HashSet<>();
+
+        for (int i = 0; i < descriptions.length; i++) {
+            descriptions[i].setStderr("xenon.e" + jobNumber + "-" + i);
+            descriptions[i].setStdout("xenon.o" + jobNumber + "-" + i);
+
+            result[i] = new JobImplementation(getScheduler(), getTaskIdentifier(arrayIdentifier, i), descriptions[i], false,
+                    false);
+            identifiers.add(result[i].getIdentifier());
         }
 
-        String identifier = ScriptingParser.parseJobIDFromLine(output, TorqueAdaptor.ADAPTOR_NAME, "");
+        updateJobsSeenMap(identifiers);
 
-        updateJobsSeenMap(Collections.singleton(identifier));
+        return result;
+    }
 
-        if (!description.getJobOptions().containsKey(TorqueSchedulerConnection.JOB_OPTION_JOB_SCRIPT)) {
-            String[] idParts = identifier.split("\\.");
+    private Job[] submitBatchJobs(JobDescription[] descriptions) throws XenonException {
+        String[] jobScripts = new String[descriptions.length];
+        String[][] arguments = new String[descriptions.length][];
+
+        for (int i = 0; i < descriptions.length; i++) {
+            String customScriptFile = getCustomScriptFile(descriptions[i]);
+
+            if (customScriptFile == null) {
+                checkWorkingDirectory(descriptions[i].getWorkingDirectory());
+                jobScripts[i] = TorqueJobScriptGenerator.generate(descriptions[i], getFsEntryPath().getRelativePath());
+                arguments[i] = new String[0];
+            } else {
+                arguments[i] = new String[] { customScriptFile };
+            }
+        }
+
+        //run all qsub commands at once
+        RemoteCommandRunner[] runners = runCommands(jobScripts, "qsub", arguments);
+
+        Job[] result = new Job[descriptions.length];
+        XenonException error = null;
+
+        for (int i = 0; i < descriptions.length; i++) {
             try {
-                long idNumber = Long.parseLong(idParts[0]);
-                description.setStderr("xenon.e" + idNumber);
-                description.setStdout("xenon.o" + idNumber);
-            } catch (NumberFormatException ex) {
-                LOGGER.warn("Standard out and standard err could not be set from Job ID {0}", identifier);
+                if (!runners[i].success()) {
+                    throw new XenonException(TorqueAdaptor.ADAPTOR_NAME, "could not submit job: " + runners[i]);
+                }
+
+                result[i] = createJob(descriptions[i], runners[i].getStdout());
+            } catch (XenonException e) {
+                //remember the first failure
+                if (error == null) {
+                    error = e;
+                }
             }
         }
 
-        //noinspection UnnecessaryLocalVariable
+        if (error != null) {
+            cancelJobs(result);
+            throw error;
+        }
 
-        return new JobImplementation(getScheduler(), identifier, description, false, false);
+        return result;
     }
 
     @Override
@@ -422,6 +522,9 @@ public class TorqueSchedulerConnection extends SchedulerConnection {
     public JobStatus cancelJob(Job job) throws XenonException {
         String identifier = job.getIdentifier();
         RemoteCommandRunner runner = runCommand(null, "qdel", identifier);
+
+        statusCache.invalidate();
+
         if (runner.success()) {
             // deleted or already finished
             addDeletedJob(job);
@@ -435,15 +538,27 @@ public class TorqueSchedulerConnection extends SchedulerConnection {
         return getJobStatus(job);
     }
 
-    private Map<String, Map<String, String>> getQstatInfo() throws XenonException {
-        RemoteCommandRunner runner = runCommand(null, "qstat", "-x");
+    /*
+     * Returns the status of the given jobs from the shared snapshot. Without a snapshot to share, only the given jobs are
+     * parsed from the qstat output.
+     */
+    private Map<String, Map<String, String>> getStatusInfo(Job... jobs) throws XenonException {
+        if (statusCache.isEnabled()) {
+            return statusCache.get();
+        }
+        return getQstatInfo(identifiersAsSet(jobs));
+    }
+
+    private Map<String, Map<String, String>> getQstatInfo(Set<String> jobIDs) throws XenonException {
+        //list the tasks of job arrays separately
+        RemoteCommandRunner runner = runCommand(null, "qstat", "-x", "-t");
 
         if (!runner.success()) {
             LOGGER.debug("failed to get job status {}", runner);
             return new HashMap<>(0);
         }
 
-        Map<String, Map<String, String>> result = parser.parseJobInfos(runner.getStdout());
+        Map<String, Map<String, String>> result = parser.parseJobInfos(runner.getStdout(), jobIDs);
 
         //mark jobs we found as seen, in case they disappear from the queue
         updateJobsSeenMap(result.keySet());
@@ -499,7 +614,7 @@ public class TorqueSchedulerConnection extends SchedulerConnection {
             throw new NoSuchJobException(TorqueAdaptor.ADAPTOR_NAME, "Job <null> not found on server");
         }
         
-        Map<String, Map<String, String>> info = getQstatInfo();
+        Map<String, Map<String, String>> info = getStatusInfo(job);
 
         JobStatus result = getJobStatus(info, job);
 
@@ -513,7 +628,7 @@ public class TorqueSchedulerConnection extends SchedulerConnection {
 
     @Override
     public JobStatus[] getJobStatuses(Job... jobs) throws XenonException {
-        Map<String, Map<String, String>> info = getQstatInfo();
+        Map<String, Map<String, String>> info = getStatusInfo(jobs);
 
         JobStatus[] result = new JobStatus[jobs.length];
 
@@ -538,4 +653,10 @@ public class TorqueSchedulerConnection extends SchedulerConnection {
     public Streams getStreams(Job job) throws XenonException {
         throw new XenonException(TorqueAdaptor.ADAPTOR_NAME, "does not support interactive jobs");
     }
+
+    @Override
+    public void close() throws XenonException {
+        statusCache.close();
+        super.close();
+    }
 }
@@ -17,15 +17,24 @@ package nl.esciencecenter.xenon.adaptors.torque;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.adaptors.scripting.CompactRecord;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,6 +54,8 @@ final class TorqueXmlParser {
 
     private final DocumentBuilder documentBuilder;
 
+    private final XMLInputFactory inputFactory;
+
     TorqueXmlParser() throws XenonException {
         try {
             DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
@@ -52,6 +63,10 @@ final class TorqueXmlParser {
         } catch (ParserConfigurationException e) {
             throw new XenonException(TorqueAdaptor.ADAPTOR_NAME, "could not create parser for xml files", e);
         }
+
+        inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
     }
 
     protected Document parseDocument(String data) throws XenonException {
@@ -110,32 +125,121 @@ final class TorqueXmlParser {
      *             if the server version is not compatible with this adaptor
      */
     protected Map<String, Map<String, String>> parseJobInfos(String data) throws XenonException {
+        return parseJobInfos(data, null);
+    }
+
+    /**
+     * Parses job info from "qstat -x", without building a document of the entire output. The tags of each job are collected
+     * like {@link #recursiveMapFromElement(Node, Map)} does. Only the jobs with the given identifiers are returned. Other jobs
+     * are skipped as soon as their identifier is found.
+     * 
+     * @param data
+     *            the stream to get the xml data from
+     * @param jobIDs
+     *            the identifiers of the jobs to return, or <code>null</code> to return all jobs.
+     * @return a map containing the info of the requested jobs found, indexed by job identifier
+     * @throws XenonException
+     *             if the file could not be parsed
+     */
+    protected Map<String, Map<String, String>> parseJobInfos(String data, Set<String> jobIDs) throws XenonException {
+        Map<String, Map<String, String>> result = new HashMap<>();
+
         if (data.trim().isEmpty()) {
-            return new HashMap<>();
+            return result;
         }
-        Document document = parseDocument(data);
 
-        LOGGER.debug("root node of xml file: " + document.getDocumentElement().getNodeName());
-        NodeList nodes = document.getDocumentElement().getChildNodes();
-        int numNodes = nodes.getLength();
-        Map<String, Map<String, String>> result = new HashMap<>();
+        CompactRecord.Builder builder = new CompactRecord.Builder();
+        XMLStreamReader reader = null;
+
+        try {
+            reader = inputFactory.createXMLStreamReader(new StringReader(data));
 
-        for (int i = 0; i < numNodes; i++) {
-            Node node = nodes.item(i);
+            reader.nextTag();
+            LOGGER.debug("root node of xml file: " + reader.getLocalName());
 
-            if (node.getNodeType() == Node.ELEMENT_NODE) {
-                Map<String, String> jobInfo = new HashMap<>();
-                recursiveMapFromElement(node, jobInfo);
+            while (reader.next() != XMLStreamConstants.END_ELEMENT) {
+                if (reader.getEventType() == XMLStreamConstants.START_ELEMENT) {
+                    String jobId = parseJob(reader, builder, jobIDs);
 
-                String jobId = jobInfo.get("Job_Id");
-                if (jobId == null || jobId.isEmpty()) {
-                    throw new XenonException(TorqueAdaptor.ADAPTOR_NAME, "found job in queue with no job number");
+                    if (jobId != null) {
+                        result.put(jobId, builder.build());
+                    }
+                    builder.clear();
                 }
+            }
 
-                result.put(jobId, jobInfo);
+            //check the remainder of the document
+            while (reader.hasNext()) {
+                reader.next();
+            }
+        } catch (XMLStreamException e) {
+            throw new XenonException(TorqueAdaptor.ADAPTOR_NAME, "could not parse qstat xml file", e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    LOGGER.debug("could not close xml reader", e);
+                }
             }
         }
 
         return result;
     }
+
+    /*
+     * Parses all tags inside a single job element into the builder, and moves the reader to the end of the element. Returns the 
+     * job identifier, or null if the job was not requested.
+     */
+    private String parseJob(XMLStreamReader reader, CompactRecord.Builder builder, Set<String> jobIDs) throws XMLStreamException,
+            XenonException {
+        List<String> elements = new ArrayList<>();
+        elements.add(reader.getLocalName());
+
+        while (!elements.isEmpty()) {
+            int event = reader.next();
+
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                elements.add(reader.getLocalName());
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                elements.remove(elements.size() - 1);
+            } else if (event == XMLStreamConstants.CHARACTERS) {
+                String value = reader.getText().trim();
+
+                if (!value.isEmpty()) {
+                    String key = elements.get(elements.size() - 1);
+                    builder.put(key, value);
+
+                    //skip the rest of jobs that are not requested
+                    if (jobIDs != null && elements.size() == 2 && key.equals("Job_Id") && !jobIDs.contains(value)) {
+                        skipElements(reader, elements.size());
+                        return null;
+                    }
+                }
+            }
+        }
+
+        String jobId = builder.get("Job_Id");
+
+        if (jobId == null || jobId.isEmpty()) {
+            throw new XenonException(TorqueAdaptor.ADAPTOR_NAME, "found job in queue with no job number");
+        }
+
+        return jobId;
+    }
+
+    //moves the reader to the end of the element the given number of levels up
+    private static void skipElements(XMLStreamReader reader, int levels) throws XMLStreamException {
+        int depth = levels;
+
+        while (depth > 0) {
+            int event = reader.next();
+
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
 }
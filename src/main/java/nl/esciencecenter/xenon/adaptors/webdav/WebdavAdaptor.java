@@ -64,6 +64,15 @@ public class WebdavAdaptor extends Adaptor {
     /** Add gateway to access machine. */
     public static final String GATEWAY = PREFIX + "gateway";
 
+    /** All our own metadata cache properties start with this prefix. */
+    public static final String CACHE = PREFIX + "cache.";
+
+    /** The time after which cached attributes and directory listings expire. */
+    public static final String CACHE_TIME_TO_LIVE = CACHE + "timeToLive";
+
+    /** The maximum number of cached attributes and directory listings per file system. */
+    public static final String CACHE_MAX_ENTRIES = CACHE + "maxEntries";
+
     /** All our own queue properties start with this prefix. */
     public static final String QUEUE = PREFIX + "queue.";
 
@@ -88,6 +97,18 @@ public class WebdavAdaptor extends Adaptor {
     /** How many jobs have been submitted using this adaptor. */
     public static final String SUBMITTED = JOBS + "submitted";
 
+    /** Metadata cache information start with this prefix. */
+    public static final String CACHE_INFO = INFO + "cache.";
+
+    /** How many requests were answered by the metadata caches of all open file systems. */
+    public static final String CACHE_HITS = CACHE_INFO + "hits";
+
+    /** How many requests were not answered by the metadata caches of all open file systems. */
+    public static final String CACHE_MISSES = CACHE_INFO + "misses";
+
+    /** How many entries were evicted from the metadata caches of all open file systems. */
+    public static final String CACHE_EVICTIONS = CACHE_INFO + "evictions";
+
     /** List of properties supported by this FTP adaptor */
     private static final ImmutableArray<XenonPropertyDescription> VALID_PROPERTIES = new ImmutableArray<XenonPropertyDescription>(
             new XenonPropertyDescriptionImplementation(AUTOMATICALLY_ADD_HOST_KEY, Type.BOOLEAN,
@@ -101,7 +122,11 @@ public class WebdavAdaptor extends Adaptor {
             new XenonPropertyDescriptionImplementation(MULTIQ_MAX_CONCURRENT, Type.INTEGER, EnumSet.of(Component.SCHEDULER), "4",
                                                     "The maximum number of concurrent jobs in the multiq.."), new XenonPropertyDescriptionImplementation(GATEWAY,
                                                             Type.STRING, EnumSet.of(Component.SCHEDULER, Component.FILESYSTEM), null,
-                                                            "The gateway machine used to create an SSH tunnel to the target."));
+                                                            "The gateway machine used to create an SSH tunnel to the target."),
+            new XenonPropertyDescriptionImplementation(CACHE_TIME_TO_LIVE, Type.LONG, EnumSet.of(Component.FILESYSTEM), "0",
+                    "The time after which cached file attributes and directory listings expire (in milliseconds, 0 to disable)."),
+            new XenonPropertyDescriptionImplementation(CACHE_MAX_ENTRIES, Type.INTEGER, EnumSet.of(Component.FILESYSTEM),
+                    "10000", "The maximum number of cached file attributes and directory listings per file system."));
 
     private final WebdavFiles filesAdaptor;
     private Credentials credentialsAdaptor;
@@ -141,6 +166,8 @@ public class WebdavAdaptor extends Adaptor {
 
     @Override
     public Map<String, String> getAdaptorSpecificInformation() {
-        return new HashMap<>();
+        Map<String, String> result = new HashMap<>(3);
+        filesAdaptor.getAdaptorSpecificInformation(result);
+        return result;
     }
 }
@@ -20,6 +20,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -50,13 +51,18 @@ import org.apache.jackrabbit.webdav.client.methods.MoveMethod;
 import org.apache.jackrabbit.webdav.client.methods.OptionsMethod;
 import org.apache.jackrabbit.webdav.client.methods.PropFindMethod;
 import org.apache.jackrabbit.webdav.client.methods.PutMethod;
+import org.apache.jackrabbit.webdav.property.DavProperty;
+import org.apache.jackrabbit.webdav.property.DavPropertyName;
 import org.apache.jackrabbit.webdav.property.DavPropertyNameSet;
 import org.apache.jackrabbit.webdav.property.DavPropertySet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.w3c.dom.Node;
 
+import nl.esciencecenter.xenon.InvalidPropertyException;
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.XenonPropertyDescription.Component;
+import nl.esciencecenter.xenon.adaptors.generic.MetadataCache;
 import nl.esciencecenter.xenon.credentials.Credential;
 import nl.esciencecenter.xenon.engine.XenonProperties;
 import nl.esciencecenter.xenon.engine.files.FileSystemImplementation;
@@ -106,12 +112,15 @@ public class WebdavFiles implements Files {
         private final FileSystemImplementation impl;
         private final Credential credential;
         private final HttpClient client;
+        private final MetadataCache<WebdavFileAttributes, List<MultiStatusResponse>> cache;
 
-        public FileSystemInfo(FileSystemImplementation impl, HttpClient client, Credential credential) {
+        public FileSystemInfo(FileSystemImplementation impl, HttpClient client, Credential credential,
+                MetadataCache<WebdavFileAttributes, List<MultiStatusResponse>> cache) {
             super();
             this.impl = impl;
             this.credential = credential;
             this.client = client;
+            this.cache = cache;
         }
 
         public HttpClient getClient() {
@@ -125,6 +134,10 @@ public class WebdavFiles implements Files {
         public Credential getCredential() {
             return credential;
         }
+
+        public MetadataCache<WebdavFileAttributes, List<MultiStatusResponse>> getCache() {
+            return cache;
+        }
     }
 
     public WebdavFiles(WebdavAdaptor webdavAdaptor) {
@@ -138,6 +151,9 @@ public class WebdavFiles implements Files {
                 properties);
 
         WebdavLocation webdavLocation = new WebdavLocation(location);
+        XenonProperties xenonProperties = new XenonProperties(adaptor.getSupportedProperties(Component.FILESYSTEM), properties);
+        String uniqueID = getNewUniqueID();
+        MetadataCache<WebdavFileAttributes, List<MultiStatusResponse>> cache = createCache(uniqueID, xenonProperties);
 
         HttpClient client = getClient(webdavLocation);
         HttpMethod method;
@@ -155,15 +171,30 @@ public class WebdavFiles implements Files {
 
         String cwd = webdavLocation.getPath();
         RelativePath entryPath = new RelativePath(cwd);
-        String uniqueID = getNewUniqueID();
-        XenonProperties xenonProperties = new XenonProperties(adaptor.getSupportedProperties(Component.FILESYSTEM), properties);
         FileSystemImplementation fileSystem = new FileSystemImplementation(adaptor.getName(), uniqueID, scheme,
                 webdavLocation.getHost(), entryPath, credential, xenonProperties);
-        fileSystems.put(uniqueID, new FileSystemInfo(fileSystem, client, credential));
+        fileSystems.put(uniqueID, new FileSystemInfo(fileSystem, client, credential, cache));
         LOGGER.debug("* newFileSystem OK remote cwd = {} entryPath = {} uniqueID = {}", cwd, entryPath, uniqueID);
         return fileSystem;
     }
 
+    private MetadataCache<WebdavFileAttributes, List<MultiStatusResponse>> createCache(String uniqueID,
+            XenonProperties xenonProperties) throws XenonException {
+
+        long timeToLive = xenonProperties.getLongProperty(WebdavAdaptor.CACHE_TIME_TO_LIVE);
+        int maxEntries = xenonProperties.getIntegerProperty(WebdavAdaptor.CACHE_MAX_ENTRIES);
+
+        if (timeToLive < 0) {
+            throw new InvalidPropertyException(adaptor.getName(), "Invalid cache time to live: " + timeToLive);
+        }
+
+        if (maxEntries < 0) {
+            throw new InvalidPropertyException(adaptor.getName(), "Invalid maximum number of cache entries: " + maxEntries);
+        }
+
+        return new MetadataCache<>(uniqueID, maxEntries, timeToLive);
+    }
+
     private HttpClient getClient(WebdavLocation webdavLocation) {
         HostConfiguration hostConfig = new HostConfiguration();
         hostConfig.setHost(webdavLocation.getHost(), webdavLocation.getPort());
@@ -276,7 +307,6 @@ public class WebdavFiles implements Files {
             return;
         }
 
-        assertExists(source);
         String sourcePath;
         String targetPath;
         if (getAttributes(source).isDirectory()) {
@@ -292,10 +322,18 @@ public class WebdavFiles implements Files {
             executeMethod(client, method);
         } catch (IOException e) {
             throw new XenonException(adaptor.getName(), "Could not move " + sourcePath + " to " + targetPath, e);
+        } finally {
+            invalidateTree(source);
+            invalidateTree(target);
         }
         LOGGER.debug("move OK");
     }
 
+    @Override
+    public Copy copyTree(Path source, Path target, CopyOption... options) throws XenonException {
+        throw new XenonException(adaptor.getName(), "Webdav adaptor does not support copying directory trees.");
+    }
+
     @Override
     public CopyStatus getCopyStatus(Copy copy) throws XenonException {
         throw new XenonException(adaptor.getName(), "Webdav adaptor does not support copy status requests.");
@@ -332,6 +370,8 @@ public class WebdavFiles implements Files {
             executeMethod(client, method);
         } catch (IOException e) {
             throw new XenonException(adaptor.getName(), "Could not create directory " + folderPath, e);
+        } finally {
+            invalidate(path);
         }
         LOGGER.debug("createDirectory OK");
     }
@@ -352,6 +392,8 @@ public class WebdavFiles implements Files {
             executeMethod(client, method);
         } catch (IOException e) {
             throw new XenonException(adaptor.getName(), "Could not create file " + filePath, e);
+        } finally {
+            invalidate(path);
         }
         LOGGER.debug("createFile OK");
     }
@@ -359,19 +401,44 @@ public class WebdavFiles implements Files {
     @Override
     public void delete(Path path) throws XenonException {
         LOGGER.debug("delete path = {}", path);
-        assertExists(path);
         HttpClient client = getFileSystemByPath(path);
         FileAttributes attributes = getAttributes(path);
-        if (attributes.isDirectory()) {
-            assertIsEmpty(path);
-            String folderPath = toFolderPath(path.toString());
-            executeDeleteMethod(folderPath, client);
-        } else {
-            executeDeleteMethod(toFilePath(path.toString()), client);
+        try {
+            if (attributes.isDirectory()) {
+                assertIsEmpty(path);
+                String folderPath = toFolderPath(path.toString());
+                executeDeleteMethod(folderPath, client);
+            } else {
+                executeDeleteMethod(toFilePath(path.toString()), client);
+            }
+        } finally {
+            invalidate(path);
         }
         LOGGER.debug("delete OK");
     }
 
+    @Override
+    public boolean supportsRecursiveDelete(Path path) {
+        return true;
+    }
+
+    @Override
+    public void recursiveDelete(Path path) throws XenonException {
+        LOGGER.debug("recursiveDelete path = {}", path);
+        HttpClient client = getFileSystemByPath(path);
+        // A DELETE of a collection also deletes all its members.
+        try {
+            if (getAttributes(path).isDirectory()) {
+                executeDeleteMethod(toFolderPath(path.toString()), client);
+            } else {
+                executeDeleteMethod(toFilePath(path.toString()), client);
+            }
+        } finally {
+            invalidateTree(path);
+        }
+        LOGGER.debug("recursiveDelete OK");
+    }
+
     private void executeDeleteMethod(String deletePath, HttpClient client) throws XenonException {
         DeleteMethod method = new DeleteMethod(deletePath);
         try {
@@ -386,8 +453,7 @@ public class WebdavFiles implements Files {
         LOGGER.debug("exists path = {}", path);
         boolean result = false;
         try {
-            getAttributes(path);
-            result = true;
+            result = stat(path) != null;
         } catch (XenonException e) {
             // getAttributes did not find evidence that the specified path exists
         }
@@ -414,8 +480,17 @@ public class WebdavFiles implements Files {
         return result;
     }
 
-    private List<MultiStatusResponse> listDirectory(Path path) throws XenonException {
+    private List<MultiStatusResponse> listDirectory(final Path path) throws XenonException {
         assertExists(path);
+        return getCache(path).getListing(path, new MetadataCache.Loader<List<MultiStatusResponse>>() {
+            @Override
+            public List<MultiStatusResponse> load() throws XenonException {
+                return propFindChildren(path);
+            }
+        });
+    }
+
+    private List<MultiStatusResponse> propFindChildren(Path path) throws XenonException {
         HttpClient client = getFileSystemByPath(path);
         String folderPath = toFolderPath(path.toString());
         PropFindMethod method = null;
@@ -478,17 +553,19 @@ public class WebdavFiles implements Files {
     @Override
     public OutputStream newOutputStream(Path path, OpenOption... options) throws XenonException {
         OpenOptions tmp = OpenOptions.processOptions(adaptor.getName(), options);
-        assertValidArgumentsForNewOutputStream(path, tmp);
+        assertValidArgumentsForNewOutputStream(tmp);
         if (tmp.getOpenMode() == OpenOption.CREATE) {
             assertNotExists(path);
         } else {
             assertRegularFileExists(path);
         }
 
-        return new WebdavOutputStream(path, this);
+        // Overwrites an existing file using a single PUT request.
+        return getCache(path).invalidateOnClose(path, new WebdavOutputStream(getFileSystemByPath(path),
+                toFilePath(path.toString())));
     }
 
-    private void assertValidArgumentsForNewOutputStream(Path path, OpenOptions processedOptions) throws XenonException {
+    private void assertValidArgumentsForNewOutputStream(OpenOptions processedOptions) throws XenonException {
         if (processedOptions.getReadMode() != null) {
             throw new InvalidOpenOptionsException(adaptor.getName(), "Disallowed open option: READ");
         }
@@ -505,62 +582,105 @@ public class WebdavFiles implements Files {
         if (processedOptions.getWriteMode() == null) {
             processedOptions.setWriteMode(OpenOption.WRITE);
         }
-
-        if (processedOptions.getOpenMode() == OpenOption.CREATE) {
-            assertNotExists(path);
-        } else if (processedOptions.getOpenMode() == OpenOption.OPEN) {
-            assertRegularFileExists(path);
-        }
     }
 
     @Override
     public FileAttributes getAttributes(Path path) throws XenonException {
         LOGGER.debug("getAttributes path = {}", path);
-        HttpClient client = getFileSystemByPath(path);
-        FileAttributes fileAttributes = getFileOrDirAttributes(path, client);
+        FileAttributes fileAttributes = stat(path);
+        if (fileAttributes == null) {
+            throw new NoSuchPathException(adaptor.getName(), "Path does not exist " + path.toString());
+        }
         LOGGER.debug("getAttributes OK result = {}", fileAttributes);
         return fileAttributes;
     }
 
-    private FileAttributes getFileOrDirAttributes(Path path, HttpClient client) throws XenonException {
-        WebdavFileAttributes fileAttributes;
-        try {
-            String folderPath = toFolderPath(path.toString());
-            DavPropertySet properties = getPathProperties(client, folderPath);
-            fileAttributes = new WebdavDirectoryAttributes(properties);
-        } catch (PathUninspectableException e) {
-            String filePath = toFilePath(path.toString());
-            DavPropertySet properties = getPathProperties(client, filePath);
-            fileAttributes = new WebdavRegularFileAttributes(properties);
-        }
-        return fileAttributes;
+    /*
+     * Retrieves the attributes of a path with a single PROPFIND request of depth 0. The resource type in the response tells
+     * whether the path is a directory. Returns null if the path does not exist.
+     */
+    private WebdavFileAttributes stat(final Path path) throws XenonException {
+        return getCache(path).getAttributes(path, new MetadataCache.Loader<WebdavFileAttributes>() {
+            @Override
+            public WebdavFileAttributes load() throws XenonException {
+                HttpClient client = getFileSystemByPath(path);
+                return stat(client, toFilePath(path.toString()), false);
+            }
+        });
     }
 
-    private DavPropertySet getPathProperties(HttpClient client, String path) throws XenonException {
+    private WebdavFileAttributes stat(HttpClient client, String path, boolean isFolderPath) throws XenonException {
         PropFindMethod method;
-        DavPropertySet properties = null;
         try {
-            method = new PropFindMethod(path, DavPropertyNameSet.PROPFIND_ALL_PROP_INCLUDE, DavPropertyNameSet.DEPTH_1);
+            method = new PropFindMethod(path, DavPropertyNameSet.PROPFIND_ALL_PROP_INCLUDE, DavPropertyNameSet.DEPTH_0);
         } catch (IOException e) {
             throw new XenonException(adaptor.getName(), "Could not inspect path " + path, e);
         }
         try {
-            executeMethod(client, method);
-            properties = getProperties(method);
+            int response = client.executeMethod(method);
+
+            if (response == HttpStatus.SC_NOT_FOUND) {
+                return null;
+            }
+
+            // Some servers redirect requests for a collection without a trailing slash.
+            if (isRedirect(response) && !isFolderPath) {
+                method.releaseConnection();
+                return stat(client, toFolderPath(path), true);
+            }
+
+            if (!isOkish(response)) {
+                throw new IOException(method.getStatusLine().toString());
+            }
+
+            MultiStatusResponse[] responses = method.getResponseBodyAsMultiStatus().getResponses();
+
+            if (responses.length == 0) {
+                throw new IOException("Empty multi status response");
+            }
+
+            DavPropertySet properties = responses[0].getProperties(OK_CODE);
+
+            if (isFolderPath || isCollection(responses[0], properties)) {
+                return new WebdavDirectoryAttributes(properties);
+            }
+            return new WebdavRegularFileAttributes(properties);
         } catch (IOException | DavException e) {
             throw new PathUninspectableException(adaptor.getName(), "Could not inspect path " + path, e);
+        } finally {
+            method.releaseConnection();
         }
-        return properties;
     }
 
-    private DavPropertySet getProperties(PropFindMethod method) throws IOException, DavException {
-        MultiStatus document = method.getResponseBodyAsMultiStatus();
-        MultiStatusResponse[] responses = document.getResponses();
-        DavPropertySet properties = null;
-        for (MultiStatusResponse multiStatusResponse : responses) {
-            properties = multiStatusResponse.getProperties(OK_CODE);
+    private static boolean isRedirect(int response) {
+        return response == HttpStatus.SC_MOVED_PERMANENTLY || response == HttpStatus.SC_MOVED_TEMPORARILY
+                || response == HttpStatus.SC_TEMPORARY_REDIRECT;
+    }
+
+    static boolean isCollection(MultiStatusResponse response, DavPropertySet properties) {
+        String href = response.getHref();
+
+        if (href != null && href.endsWith("/")) {
+            return true;
         }
-        return properties;
+
+        DavProperty<?> resourceType = properties.get(DavPropertyName.RESOURCETYPE);
+        Object value = resourceType == null ? null : resourceType.getValue();
+
+        if (value instanceof Collection) {
+            for (Object node : (Collection<?>) value) {
+                if (isCollectionNode(node)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        return isCollectionNode(value);
+    }
+
+    private static boolean isCollectionNode(Object node) {
+        return node instanceof Node && DavConstants.XML_COLLECTION.equals(((Node) node).getLocalName());
     }
 
     @Override
@@ -598,7 +718,6 @@ public class WebdavFiles implements Files {
     }
 
     private void assertRegularFileExists(Path path) throws XenonException {
-        assertExists(path);
         if (getAttributes(path).isDirectory()) {
             String message = "Specified path should be a file but is a directory: " + path.toString();
             throw new XenonException(adaptor.getName(), message);
@@ -606,13 +725,13 @@ public class WebdavFiles implements Files {
     }
 
     private void assertExists(Path path) throws XenonException {
-        if (!exists(path)) {
+        if (stat(path) == null) {
             throw new NoSuchPathException(adaptor.getName(), "Path does not exist " + path.toString());
         }
     }
 
     private void assertNotExists(Path path) throws XenonException {
-        if (exists(path)) {
+        if (stat(path) != null) {
             throw new PathAlreadyExistsException(adaptor.getName(), "Path already exists " + path.toString());
         }
     }
@@ -631,6 +750,44 @@ public class WebdavFiles implements Files {
         return fileSystems.get(fileSystem.getUniqueID()).getClient();
     }
 
+    private MetadataCache<WebdavFileAttributes, List<MultiStatusResponse>> getCache(Path path) {
+        FileSystemImplementation fileSystem = (FileSystemImplementation) path.getFileSystem();
+        return fileSystems.get(fileSystem.getUniqueID()).getCache();
+    }
+
+    // Invalidates the cached metadata of a changed path.
+    private void invalidate(Path path) {
+        getCache(path).invalidate(path);
+    }
+
+    private void invalidateTree(Path path) {
+        getCache(path).invalidateTree(path);
+    }
+
+    /**
+     * Add information about the webdav files adaptor to the map.
+     *
+     * @param result
+     *          the map to add information to.
+     */
+    public void getAdaptorSpecificInformation(Map<String, String> result) {
+        long hits = 0;
+        long misses = 0;
+        long evictions = 0;
+
+        synchronized (fileSystems) {
+            for (FileSystemInfo info : fileSystems.values()) {
+                hits += info.getCache().getHits();
+                misses += info.getCache().getMisses();
+                evictions += info.getCache().getEvictions();
+            }
+        }
+
+        result.put(WebdavAdaptor.CACHE_HITS, Long.toString(hits));
+        result.put(WebdavAdaptor.CACHE_MISSES, Long.toString(misses));
+        result.put(WebdavAdaptor.CACHE_EVICTIONS, Long.toString(evictions));
+    }
+
     public static void executeMethod(HttpClient client, HttpMethod method) throws IOException {
         int response = client.executeMethod(method);
         String responseBodyAsString = method.getStatusLine().toString();
@@ -640,7 +797,7 @@ public class WebdavFiles implements Files {
         }
     }
 
-    private static boolean isOkish(int response) {
+    static boolean isOkish(int response) {
         return response == HttpStatus.SC_OK || response == HttpStatus.SC_CREATED || response == HttpStatus.SC_MULTI_STATUS
                 || response == HttpStatus.SC_NO_CONTENT;
     }
@@ -15,47 +15,187 @@
  */
 package nl.esciencecenter.xenon.adaptors.webdav;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 
-import nl.esciencecenter.xenon.XenonException;
-import nl.esciencecenter.xenon.files.Path;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.apache.commons.httpclient.params.HttpMethodParams;
+import org.apache.jackrabbit.webdav.client.methods.PutMethod;
 
 /**
- * Webdav does not support resuming or appending. This class acts as a buffer. On closing, the complete content is written at once
- * using the WebdavFiles adaptor.
+ * Webdav does not support resuming or appending. This class streams the data written to it as the body of a single PUT request,
+ * using chunked transfer encoding. The request is performed by a separate thread, which hands the connection's output stream to 
+ * the writer. On closing, the request is completed and its result is checked.
  *
  * @author Christiaan Meijer
  *
  */
 public class WebdavOutputStream extends OutputStream {
-    private final WebdavFiles files;
-    private final Path path;
-    private final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
 
-    public WebdavOutputStream(Path path, WebdavFiles webdavFiles) {
-        this.path = path;
-        files = webdavFiles;
+    private static final String CONTENT_TYPE = "application/octet-stream";
+
+    /** The body of the PUT request, which is written by the user of this output stream. */
+    private class StreamingRequestEntity implements RequestEntity {
+
+        @Override
+        public boolean isRepeatable() {
+            return false;
+        }
+
+        @Override
+        public void writeRequest(OutputStream out) throws IOException {
+            bodyStarted(out);
+            waitUntilClosed();
+        }
+
+        @Override
+        public long getContentLength() {
+            // Unknown, so the body is sent using chunked transfer encoding.
+            return -1;
+        }
+
+        @Override
+        public String getContentType() {
+            return CONTENT_TYPE;
+        }
+    }
+
+    /** Performs the PUT request. */
+    private class Uploader extends Thread {
+
+        Uploader() {
+            super("WebdavUpload-" + filePath);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            IOException result = null;
+
+            try {
+                int status = client.executeMethod(method);
+
+                if (!WebdavFiles.isOkish(status)) {
+                    result = new IOException("Failed to write " + filePath + " (status " + status + ")");
+                }
+            } catch (IOException e) {
+                result = e;
+            } finally {
+                method.releaseConnection();
+            }
+
+            done(result);
+        }
+    }
+
+    private final HttpClient client;
+    private final String filePath;
+    private final PutMethod method;
+
+    /** The output stream of the request body, or null if the request has not started writing the body yet. */
+    private OutputStream body;
+
+    private boolean closed = false;
+    private boolean done = false;
+    private IOException exception;
+
+    public WebdavOutputStream(HttpClient client, String filePath) {
+        this.client = client;
+        this.filePath = filePath;
+
+        method = new PutMethod(filePath);
+        method.setRequestEntity(new StreamingRequestEntity());
+
+        // The body can only be sent once, so let the server reject the request (or ask for authentication) before it is sent.
+        method.getParams().setBooleanParameter(HttpMethodParams.USE_EXPECT_CONTINUE, true);
+
+        new Uploader().start();
+    }
+
+    private synchronized void bodyStarted(OutputStream out) {
+        body = out;
+        notifyAll();
+    }
+
+    private synchronized void waitUntilClosed() throws IOException {
+        while (!closed) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while uploading " + filePath);
+            }
+        }
+    }
+
+    private synchronized void done(IOException result) {
+        exception = result;
+        done = true;
+        notifyAll();
+    }
+
+    // Wait until the request is ready to receive the body.
+    private synchronized OutputStream getBody() throws IOException {
+
+        if (closed) {
+            throw new IOException("Stream is closed");
+        }
+
+        while (body == null && !done) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while uploading " + filePath);
+            }
+        }
+
+        if (done) {
+            throw new IOException("Failed to write " + filePath, exception);
+        }
+
+        return body;
     }
 
     @Override
     public void write(int b) throws IOException {
-        outputStream.write(b);
+        getBody().write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        getBody().write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        getBody().flush();
     }
 
     @Override
     public void close() throws IOException {
-        try {
-            if (files.exists(path)) {
-                // first delete the file otherwise we get a 405 when executing the put
-                files.delete(path);
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+            notifyAll();
+
+            while (!done) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while uploading " + filePath);
+                }
             }
-            files.createFile(path, outputStream.toByteArray());
-        } catch (XenonException e) {
-            throw new IOException(e);
         }
 
+        if (exception != null) {
+            throw exception;
+        }
     }
-
 }
@@ -159,21 +159,21 @@ public final class XenonEngine implements Xenon {
             this.properties = Collections.unmodifiableMap(new HashMap<>(properties));
         }
 
+        // Copy the map so we can manipulate it.
+        Map<String, String> unprocessedProperties = new HashMap<>(this.properties);
+
         // NOTE: Order is important here! We initialize the abstract engines first, as the adaptors may want to use them!
         filesEngine = new FilesEngine(this);
         jobsEngine = new JobsEngine(this);
         credentialsEngine = new CredentialsEngine(this);
-        copyEngine = new CopyEngine(filesEngine);
+        copyEngine = new CopyEngine(filesEngine, extract(unprocessedProperties, CopyEngine.PREFIX));
 
-        adaptors = loadAdaptors(this.properties);
+        adaptors = loadAdaptors(unprocessedProperties);
 
         LOGGER.debug("Xenon engine initialized with adaptors: {}", Arrays.toString(adaptors));
     }
 
-    private Adaptor[] loadAdaptors(Map<String, String> properties) throws XenonException {
-
-        // Copy the map so we can manipulate it.
-        Map<String, String> unprocesedProperties = new HashMap<>(properties);
+    private Adaptor[] loadAdaptors(Map<String, String> unprocesedProperties) throws XenonException {
 
         List<Adaptor> result = new ArrayList<>(10);
 
@@ -45,7 +45,7 @@ import nl.esciencecenter.xenon.files.DirectoryStream.Filter;
  * object.
  * 
  */
-public class FilesEngine implements Files {
+public class FilesEngine implements Files, ResumeSupport, RangeSupport {
     
     /** The name of this component, for use in exceptions */
     private static final String COMPONENT_NAME = "FilesEngine";
@@ -137,21 +137,30 @@ public class FilesEngine implements Files {
         return getFilesAdaptor(path).exists(path);
     }
 
-    @Override
-    public Copy copy(Path source, Path target, CopyOption... options) throws XenonException {
+    private Files getCopyAdaptor(Path source, Path target) throws XenonException {
         FileSystem sourcefs = source.getFileSystem();
         FileSystem targetfs = target.getFileSystem();
 
         if (sourcefs.getAdaptorName().equals(targetfs.getAdaptorName()) ||
                 targetfs.getAdaptorName().equals(XenonEngine.LOCAL_ADAPTOR_NAME)) {
-            return getFilesAdaptor(source).copy(source, target, options);
+            return getFilesAdaptor(source);
         } else if (sourcefs.getAdaptorName().equals(XenonEngine.LOCAL_ADAPTOR_NAME)) {
-            return getFilesAdaptor(target).copy(source, target, options);
+            return getFilesAdaptor(target);
         } else {
             throw new XenonException(COMPONENT_NAME, "Cannot do inter-scheme third party copy!");
         }
     }
 
+    @Override
+    public Copy copy(Path source, Path target, CopyOption... options) throws XenonException {
+        return getCopyAdaptor(source, target).copy(source, target, options);
+    }
+
+    @Override
+    public Copy copyTree(Path source, Path target, CopyOption... options) throws XenonException {
+        return getCopyAdaptor(source, target).copyTree(source, target, options);
+    }
+
     @Override
     public void move(Path source, Path target) throws XenonException {
 
@@ -221,7 +230,71 @@ public class FilesEngine implements Files {
     public void setPosixFilePermissions(Path path, Set<PosixFilePermission> permissions) throws XenonException {
         getFilesAdaptor(path).setPosixFilePermissions(path, permissions);
     }
+
+    @Override
+    public String checksum(Path path, long offset, long length) throws XenonException {
+        Files files = getFilesAdaptor(path);
+
+        if (files instanceof ResumeSupport) {
+            return ((ResumeSupport) files).checksum(path, offset, length);
+        }
+
+        return null;
+    }
+
+    @Override
+    public boolean truncate(Path path, long size) throws XenonException {
+        Files files = getFilesAdaptor(path);
+
+        if (files instanceof ResumeSupport) {
+            return ((ResumeSupport) files).truncate(path, size);
+        }
+
+        return false;
+    }
+
+    @Override
+    public int getMaxStripes(Path path) throws XenonException {
+        Files files = getFilesAdaptor(path);
+
+        if (files instanceof RangeSupport) {
+            return ((RangeSupport) files).getMaxStripes(path);
+        }
+
+        return 0;
+    }
+
+    private RangeSupport getRangeSupport(Path path) throws XenonException {
+        Files files = getFilesAdaptor(path);
+
+        if (!(files instanceof RangeSupport)) {
+            throw new XenonException(COMPONENT_NAME, "Adaptor " + path.getFileSystem().getAdaptorName() 
+                    + " does not support reading or writing at an offset");
+        }
+
+        return (RangeSupport) files;
+    }
+
+    @Override
+    public InputStream newInputStream(Path path, long offset) throws XenonException {
+        return getRangeSupport(path).newInputStream(path, offset);
+    }
+
+    @Override
+    public OutputStream newOutputStream(Path path, long offset) throws XenonException {
+        return getRangeSupport(path).newOutputStream(path, offset);
+    }
     
+    @Override
+    public boolean supportsRecursiveDelete(Path path) throws XenonException {
+        return getFilesAdaptor(path).supportsRecursiveDelete(path);
+    }
+
+    @Override
+    public void recursiveDelete(Path path) throws XenonException {
+        getFilesAdaptor(path).recursiveDelete(path);
+    }
+
     @Override
     public String toString() {
         return "FilesEngine [XenonEngine=" + xenonEngine + "]";
@@ -0,0 +1,75 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.engine.files;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.files.Path;
+
+/**
+ * RangeSupport may be implemented by the Files object of an adaptor that is capable of reading and writing a file starting at 
+ * an arbitrary offset. This allows the copy engine to split the transfer of a single large file into several stripes which are 
+ * transferred in parallel.
+ * 
+ * @version 1.0
+ * @since 1.0
+ */
+public interface RangeSupport {
+
+    /**
+     * Returns the maximum number of stripes that may be used to transfer a single file from or to the given path. 
+     * 
+     * @param path
+     *          the path to transfer from or to.
+     * @return
+     *          the maximum number of stripes, 1 if transferring multiple stripes in parallel is not beneficial, or 0 if reading 
+     *          and writing at an offset is not supported for this path.
+     * @throws XenonException
+     *          if the FileSystem of the path is not valid.
+     */
+    int getMaxStripes(Path path) throws XenonException;
+
+    /**
+     * Open an existing file and return an {@link InputStream} to read from this file, starting at the given offset.
+     * 
+     * @param path
+     *          the file to read.
+     * @param offset
+     *          the offset of the first byte to read.
+     * @return
+     *          the {@link InputStream} to read from the file.
+     * @throws XenonException
+     *          if an I/O error occurred.
+     */
+    InputStream newInputStream(Path path, long offset) throws XenonException;
+
+    /**
+     * Open an existing file and return an {@link OutputStream} to write to this file, starting at the given offset. The file is 
+     * not truncated, so any data beyond the written range is retained. 
+     * 
+     * @param path
+     *          the file to write.
+     * @param offset
+     *          the offset of the first byte to write.
+     * @return
+     *          the {@link OutputStream} to write to the file.
+     * @throws XenonException
+     *          if an I/O error occurred.
+     */
+    OutputStream newOutputStream(Path path, long offset) throws XenonException;
+}
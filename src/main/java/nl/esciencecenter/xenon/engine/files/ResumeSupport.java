@@ -0,0 +1,64 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.engine.files;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.files.Path;
+
+/**
+ * ResumeSupport may be implemented by the Files object of an adaptor that is capable of computing checksums and truncating 
+ * files without transferring the file data. This allows the copy engine to verify (and repair) the target of a resumed copy 
+ * without reading the entire target and source.
+ * 
+ * @version 1.0
+ * @since 1.0
+ */
+public interface ResumeSupport {
+
+    /** The digest algorithm used to compute checksums. */
+    String CHECKSUM_ALGORITHM = "MD5";
+
+    /**
+     * Compute the checksum of a range of bytes of a file, using {@link #CHECKSUM_ALGORITHM}. 
+     * 
+     * @param path
+     *          the file to compute the checksum of.
+     * @param offset
+     *          the offset of the first byte in the range.
+     * @param length
+     *          the number of bytes in the range.
+     * @return
+     *          the checksum as a lowercase hexadecimal string, or <code>null</code> if the checksum could not be computed 
+     *          without reading the data.
+     * @throws XenonException
+     *          if an I/O error occurred.
+     */
+    String checksum(Path path, long offset, long length) throws XenonException;
+
+    /**
+     * Truncate a file to the given size.
+     * 
+     * @param path
+     *          the file to truncate.
+     * @param size
+     *          the new size of the file.
+     * @return
+     *          <code>true</code> if the file was truncated, or <code>false</code> if truncation is not supported.
+     * @throws XenonException
+     *          if an I/O error occurred.
+     */
+    boolean truncate(Path path, long size) throws XenonException;
+}
@@ -17,6 +17,7 @@ package nl.esciencecenter.xenon.engine.jobs;
 
 import java.util.HashSet;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.credentials.Credential;
@@ -25,6 +26,7 @@ import nl.esciencecenter.xenon.engine.XenonEngine;
 import nl.esciencecenter.xenon.jobs.Job;
 import nl.esciencecenter.xenon.jobs.JobDescription;
 import nl.esciencecenter.xenon.jobs.JobStatus;
+import nl.esciencecenter.xenon.jobs.JobStatusListener;
 import nl.esciencecenter.xenon.jobs.Jobs;
 import nl.esciencecenter.xenon.jobs.QueueStatus;
 import nl.esciencecenter.xenon.jobs.Scheduler;
@@ -161,6 +163,26 @@ public class JobsEngine implements Jobs {
         return getAdaptor(job.getScheduler()).jobsAdaptor().waitUntilRunning(job, timeout);
     }
 
+    @Override
+    public void addJobStatusListener(Job job, JobStatusListener listener) throws XenonException {
+        getAdaptor(job.getScheduler()).jobsAdaptor().addJobStatusListener(job, listener);
+    }
+
+    @Override
+    public void removeJobStatusListener(Job job, JobStatusListener listener) throws XenonException {
+        getAdaptor(job.getScheduler()).jobsAdaptor().removeJobStatusListener(job, listener);
+    }
+
+    @Override
+    public Future<JobStatus> waitUntilDoneAsync(Job job) throws XenonException {
+        return getAdaptor(job.getScheduler()).jobsAdaptor().waitUntilDoneAsync(job);
+    }
+
+    @Override
+    public Future<JobStatus> waitUntilRunningAsync(Job job) throws XenonException {
+        return getAdaptor(job.getScheduler()).jobsAdaptor().waitUntilRunningAsync(job);
+    }
+
     @Override
     public JobStatus cancelJob(Job job) throws XenonException {
         return getAdaptor(job.getScheduler()).jobsAdaptor().cancelJob(job);
@@ -176,6 +198,11 @@ public class JobsEngine implements Jobs {
         return getAdaptor(scheduler).jobsAdaptor().submitJob(scheduler, description);
     }
 
+    @Override
+    public Job[] submitJobs(Scheduler scheduler, JobDescription... descriptions) throws XenonException {
+        return getAdaptor(scheduler).jobsAdaptor().submitJobs(scheduler, descriptions);
+    }
+
     @Override
     public QueueStatus getQueueStatus(Scheduler scheduler, String queueName) throws XenonException {
         return getAdaptor(scheduler).jobsAdaptor().getQueueStatus(scheduler, queueName);
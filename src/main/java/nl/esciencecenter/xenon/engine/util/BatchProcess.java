@@ -21,6 +21,7 @@ import java.io.OutputStream;
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.engine.jobs.JobImplementation;
 import nl.esciencecenter.xenon.files.Files;
+import nl.esciencecenter.xenon.files.NoSuchPathException;
 import nl.esciencecenter.xenon.files.OpenOption;
 import nl.esciencecenter.xenon.files.Path;
 import nl.esciencecenter.xenon.files.RelativePath;
@@ -29,18 +30,35 @@ import nl.esciencecenter.xenon.jobs.Streams;
 import nl.esciencecenter.xenon.util.StreamForwarder;
 import nl.esciencecenter.xenon.util.Utils;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 /**
- * BatchProcess wraps an {@link InteractiveProcess} to emulate a batch process.
+ * BatchProcess starts a batch process, using a {@link BatchProcessFactory} if the factory supports it. Otherwise, an 
+ * {@link InteractiveProcess} is wrapped to emulate a batch process, by forwarding its streams from and to files.
+ * 
+ * When an exit file is requested and the factory is a {@link RecoverableProcessFactory}, a recoverable process is started 
+ * instead. The exit file is removed once the process is done.
  * 
  * @version 1.0
  * @since 1.0
  */
 class BatchProcess implements Process {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchProcess.class);
+
     /** Time to wait for a StreamForwarder to terminate (in ms.) */ 
     private static final long TERMINATION_DELAY = 1000L;
     
-    private final InteractiveProcess process;
+    private final Process process;
+
+    private final Files files;
+
+    private Path exitFile;
+
+    private String handle;
+
+    private boolean exitFileDeleted = false;
 
     private StreamForwarder stdinForwarder;
     private StreamForwarder stdoutForwarder;
@@ -48,6 +66,13 @@ class BatchProcess implements Process {
    
     public BatchProcess(Files files, Path workingDirectory, JobImplementation job, InteractiveProcessFactory factory)
             throws XenonException, IOException {
+        this(files, workingDirectory, job, factory, null);
+    }
+
+    public BatchProcess(Files files, Path workingDirectory, JobImplementation job, InteractiveProcessFactory factory,
+            String exitFileName) throws XenonException, IOException {
+
+        this.files = files;
 
         JobDescription description = job.getJobDescription();
 
@@ -69,11 +94,35 @@ class BatchProcess implements Process {
             }
         }
 
+        if (exitFileName != null && factory instanceof RecoverableProcessFactory) {
+            Path stdout = createOutputFile(files, workdir, description.getStdout());
+            Path stderr = createOutputFile(files, workdir, description.getStderr());
+
+            exitFile = processPath(files, workdir, exitFileName);
+
+            RecoverableProcess tmp = ((RecoverableProcessFactory) factory).createRecoverableProcess(job, workdir, stdin, 
+                    stdout, stderr, exitFile);
+
+            handle = tmp.getHandle();
+            process = tmp;
+            return;
+        }
+
+        if (factory instanceof BatchProcessFactory) {
+            Path stdout = createOutputFile(files, workdir, description.getStdout());
+            Path stderr = createOutputFile(files, workdir, description.getStderr());
+
+            process = ((BatchProcessFactory) factory).createBatchProcess(job, workdir, stdin, stdout, stderr);
+            return;
+        }
+
         OutputStream out = createOutputStream(files, workdir, description.getStdout());
         OutputStream err = createOutputStream(files, workdir, description.getStderr());
 
-        process = factory.createInteractiveProcess(job);
-        Streams streams = process.getStreams();
+        InteractiveProcess interactive = factory.createInteractiveProcess(job);
+        process = interactive;
+
+        Streams streams = interactive.getStreams();
 
         stdoutForwarder = new StreamForwarder(streams.getStdout(), out);
         stderrForwarder = new StreamForwarder(streams.getStderr(), err);
@@ -100,7 +149,7 @@ class BatchProcess implements Process {
         return result;
     }
 
-    private OutputStream createOutputStream(Files files, Path workdir, String filename) throws XenonException {
+    private Path createOutputFile(Files files, Path workdir, String filename) throws XenonException {
 
         if (filename == null) {
             return null;
@@ -108,9 +157,20 @@ class BatchProcess implements Process {
 
         Path file = processPath(files, workdir, filename);
 
-        // Create the files for the output stream. Will fail if the files already exist!
+        // Create the file for the output. Will fail if the file already exists!
         files.createFile(file);
 
+        return file;
+    }
+
+    private OutputStream createOutputStream(Files files, Path workdir, String filename) throws XenonException {
+
+        Path file = createOutputFile(files, workdir, filename);
+
+        if (file == null) {
+            return null;
+        }
+
         // Create the output stream and return it. 
         return files.newOutputStream(file, OpenOption.OPEN_OR_CREATE, OpenOption.WRITE, OpenOption.TRUNCATE);
     }
@@ -133,10 +193,46 @@ class BatchProcess implements Process {
         }
     }
 
+    /**
+     * Returns the handle of the process if it is recoverable, or <code>null</code> otherwise.
+     * 
+     * @return the handle of the process.
+     */
+    public String getHandle() {
+        return handle;
+    }
+
+    /**
+     * Returns the file the process writes its exit code to if it is recoverable, or <code>null</code> otherwise.
+     * 
+     * @return the exit file.
+     */
+    public Path getExitFile() {
+        return exitFile;
+    }
+
+    private synchronized void deleteExitFile() {
+
+        if (exitFile == null || exitFileDeleted) {
+            return;
+        }
+
+        exitFileDeleted = true;
+
+        try {
+            files.delete(exitFile);
+        } catch (NoSuchPathException e) {
+            // The process was destroyed before it could write its exit code.
+        } catch (XenonException e) {
+            LOGGER.warn("Failed to delete exit file {}", exitFile, e);
+        }
+    }
+
     public boolean isDone() {
 
         if (process.isDone()) {
             closeStreams();
+            deleteExitFile();
             return true;
         }
 
@@ -150,5 +246,6 @@ class BatchProcess implements Process {
     public void destroy() {
         process.destroy();
         closeStreams();
+        deleteExitFile();
     }
 }
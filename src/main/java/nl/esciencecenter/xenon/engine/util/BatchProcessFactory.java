@@ -0,0 +1,51 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.engine.util;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.engine.jobs.JobImplementation;
+import nl.esciencecenter.xenon.files.Path;
+
+/**
+ * BatchProcessFactory can be implemented by an {@link InteractiveProcessFactory} that is able to start processes which 
+ * redirect their own standard streams to files. When available, {@link BatchProcess} uses it instead of forwarding the output 
+ * of an interactive process, so the output of a batch job does not pass through the JVM.
+ * 
+ * @version 1.0
+ * @since 1.0
+ */
+public interface BatchProcessFactory {
+
+    /**
+     * Start a batch process.
+     * 
+     * @param job
+     *          the job to start a process for.
+     * @param workdir
+     *          the working directory of the process.
+     * @param stdin
+     *          the file to read standard input from, or <code>null</code> if the process has no input.
+     * @param stdout
+     *          the file to write standard output to, or <code>null</code> if the output should be discarded.
+     * @param stderr
+     *          the file to write standard error to, or <code>null</code> if the output should be discarded.
+     * @return the process.
+     * @throws XenonException
+     *          if the process could not be started.
+     */
+    Process createBatchProcess(JobImplementation job, Path workdir, Path stdin, Path stdout, Path stderr) 
+            throws XenonException;
+}
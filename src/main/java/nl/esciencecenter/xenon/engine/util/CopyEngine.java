@@ -16,22 +16,43 @@
 package nl.esciencecenter.xenon.engine.util;
 
 import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Deque;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import nl.esciencecenter.xenon.InvalidPropertyException;
 import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.XenonPropertyDescription;
+import nl.esciencecenter.xenon.XenonPropertyDescription.Component;
+import nl.esciencecenter.xenon.XenonPropertyDescription.Type;
+import nl.esciencecenter.xenon.engine.XenonEngine;
+import nl.esciencecenter.xenon.engine.XenonProperties;
+import nl.esciencecenter.xenon.engine.XenonPropertyDescriptionImplementation;
 import nl.esciencecenter.xenon.engine.files.CopyImplementation;
 import nl.esciencecenter.xenon.engine.files.CopyStatusImplementation;
+import nl.esciencecenter.xenon.engine.files.RangeSupport;
+import nl.esciencecenter.xenon.engine.files.ResumeSupport;
 import nl.esciencecenter.xenon.files.Copy;
 import nl.esciencecenter.xenon.files.CopyOption;
 import nl.esciencecenter.xenon.files.CopyStatus;
+import nl.esciencecenter.xenon.files.DirectoryStream;
 import nl.esciencecenter.xenon.files.FileAttributes;
+import nl.esciencecenter.xenon.files.FileSystem;
 import nl.esciencecenter.xenon.files.Files;
 import nl.esciencecenter.xenon.files.IllegalSourcePathException;
 import nl.esciencecenter.xenon.files.IllegalTargetPathException;
@@ -40,6 +61,7 @@ import nl.esciencecenter.xenon.files.NoSuchCopyException;
 import nl.esciencecenter.xenon.files.NoSuchPathException;
 import nl.esciencecenter.xenon.files.OpenOption;
 import nl.esciencecenter.xenon.files.Path;
+import nl.esciencecenter.xenon.files.PathAttributesPair;
 import nl.esciencecenter.xenon.files.PathAlreadyExistsException;
 import nl.esciencecenter.xenon.files.RelativePath;
 
@@ -49,20 +71,478 @@ import org.slf4j.LoggerFactory;
 /**
  * A CopyEngine is responsible for performing the asynchronous copy operations.
  * 
+ * Asynchronous copies are performed by a pool of copy threads. To prevent a single (remote) location from being flooded, the
+ * number of copies that may run concurrently on a single FileSystem and on a single adaptor can be limited. A queued copy is
+ * only started once both its source and target are below these limits, allowing independent copies to overtake it.
+ * 
+ * Data is copied using (pooled) buffers of a configurable size. If both streams are backed by a local file, the data is 
+ * transferred directly between the file channels instead, allowing the operating system to avoid copying the data into 
+ * user space. 
+ * 
+ * Large files may be split into several stripes which are copied in parallel, each using its own stream. This is done if both 
+ * adaptors involved can read and write at an offset, and one of them indicates that parallel transfers are beneficial (for 
+ * example to fill a high-latency link). The stripes are copied by the thread performing the copy, helped by idle copy threads 
+ * as long as the concurrency limits allow. If the transfer of a stripe fails, it is retried from the last data known to be 
+ * written.   
+ * 
+ * A directory tree is copied as a single (asynchronous) copy. The tree is walked breadth first, listing each directory only once 
+ * together with the attributes of its entries. Target directories are created while walking the tree, and the files found are 
+ * queued. Idle copy threads immediately start copying queued files, as long as the concurrency limits allow, while the thread 
+ * performing the tree copy copies the remaining files once the walk is done. Symbolic links are skipped.
+ * 
+ * When the target of a resumed copy must be verified, the copy engine first compares checksums of the source and target. If 
+ * the adaptors involved can compute these checksums remotely, no data needs to be transferred. If the target does not match 
+ * the source, the first mismatching block is located, the target is truncated to the start of this block, and the copy is 
+ * resumed from there.
+ * 
  * @version 1.0
  * @since 1.0
  */
 public final class CopyEngine {
 
+    /** All copy engine properties start with this prefix. */
+    public static final String PREFIX = XenonEngine.PREFIX + "copy.";
+
+    /** Property for the number of threads used to perform asynchronous copies. */
+    public static final String THREADS = PREFIX + "threads";
+
+    /** Property for the maximum number of concurrent asynchronous copies per adaptor. */
+    public static final String MAX_CONCURRENT_PER_ADAPTOR = PREFIX + "maxConcurrentPerAdaptor";
+
+    /** Property for the maximum number of concurrent asynchronous copies per FileSystem. */
+    public static final String MAX_CONCURRENT_PER_FILESYSTEM = PREFIX + "maxConcurrentPerFileSystem";
+
+    /** Property for the size of the buffers used to copy data. */
+    public static final String BUFFER_SIZE = PREFIX + "bufferSize";
+
+    /** Property for the size of the blocks compared when verifying the target of a resumed copy. */
+    public static final String VERIFY_BLOCK_SIZE = PREFIX + "verifyBlockSize";
+
+    /** Property for the minimal size of a stripe when copying a single file using multiple streams in parallel. */
+    public static final String MIN_STRIPE_SIZE = PREFIX + "minStripeSize";
+
+    /** Property for the maximum number of files copied in parallel by a single tree copy. */
+    public static final String TREE_THREADS = PREFIX + "treeThreads";
+
+    /** The properties supported by the copy engine */
+    public static final ImmutableArray<XenonPropertyDescription> VALID_PROPERTIES = 
+            new ImmutableArray<XenonPropertyDescription>(
+                    new XenonPropertyDescriptionImplementation(THREADS, Type.INTEGER, EnumSet.of(Component.XENON), 
+                            "4", "The number of threads used to perform asynchronous copies."),
+                    new XenonPropertyDescriptionImplementation(MAX_CONCURRENT_PER_ADAPTOR, Type.INTEGER, 
+                            EnumSet.of(Component.XENON), "4", 
+                            "The maximum number of concurrent asynchronous copies using a single adaptor."),
+                    new XenonPropertyDescriptionImplementation(MAX_CONCURRENT_PER_FILESYSTEM, Type.INTEGER, 
+                            EnumSet.of(Component.XENON), "2", 
+                            "The maximum number of concurrent asynchronous copies using a single FileSystem."),
+                    new XenonPropertyDescriptionImplementation(BUFFER_SIZE, Type.SIZE, EnumSet.of(Component.XENON), "64K", 
+                            "The size of the buffers used to copy data."),
+                    new XenonPropertyDescriptionImplementation(VERIFY_BLOCK_SIZE, Type.SIZE, EnumSet.of(Component.XENON), 
+                            "32M", "The size of the blocks compared when verifying the target of a resumed copy."),
+                    new XenonPropertyDescriptionImplementation(MIN_STRIPE_SIZE, Type.SIZE, EnumSet.of(Component.XENON), 
+                            "32M", "The minimal size of a stripe when copying a single file using multiple streams in parallel."),
+                    new XenonPropertyDescriptionImplementation(TREE_THREADS, Type.INTEGER, EnumSet.of(Component.XENON), "4", 
+                            "The maximum number of files copied in parallel by a single tree copy."));
+
     private class CopyThread extends Thread {
+        
+        CopyThread(int index) { 
+            super(NAME + "-" + index);
+        }
+        
+        @Override
+        public void run() {
+            Work work = dequeue(null);
+
+            while (work != null) {
+                work.run();
+                work = dequeue(work);
+            }
+        }
+    }
+
+    /**
+     * The work picked up by a copy thread: a queued copy, or a part of a running shared copy. 
+     */
+    private class Work {
+
+        private final CopyInfo info;
+        private final SharedCopy shared;
+        private final Runnable part;
+
+        Work(CopyInfo info) {
+            this.info = info;
+            this.shared = null;
+            this.part = null;
+        }
+
+        Work(SharedCopy shared, Runnable part) {
+            this.info = shared.ac;
+            this.shared = shared;
+            this.part = part;
+        }
+
+        void run() {
+            if (shared == null) {
+                startCopy(info);
+            } else {
+                shared.run(part);
+            }
+        }
+    }
+
+    /**
+     * Copies a single range of a file. If an attempt fails, the copy is retried from the last checkpoint, i.e., the last 
+     * position at which the written data was flushed to the target.
+     */
+    private class Stripe implements Runnable {
+
+        private final String name;
+        private final CopyInfo ac;
+        private final Path source;
+        private final Path target;
+
+        private long sourceOffset;
+        private long targetOffset;
+        private long remaining;
+
+        private volatile long copied = 0;
+        private Exception exception;
+
+        Stripe(CopyInfo ac, Path source, long sourceOffset, Path target, long targetOffset, long length, int index) {
+            this.name = ac.getUniqueID() + "-stripe-" + index;
+            this.ac = ac;
+            this.source = source;
+            this.sourceOffset = sourceOffset;
+            this.target = target;
+            this.targetOffset = targetOffset;
+            this.remaining = length;
+        }
+
+        private void checkpoint(long size) {
+            sourceOffset += size;
+            targetOffset += size;
+            remaining -= size;
+            copied += size;
+        }
+
+        private void copyRange() throws XenonException, IOException {
+
+            RangeSupport ranges = (RangeSupport) owner;
+
+            InputStream in = null;
+            OutputStream out = null;
+
+            byte[] buffer = getBuffer();
+
+            try {
+                in = ranges.newInputStream(source, sourceOffset);
+                out = ranges.newOutputStream(target, targetOffset);
+
+                long written = 0;
+
+                while (remaining - written > 0 && !ac.isCancelled()) {
+
+                    int size = in.read(buffer, 0, (int) Math.min(buffer.length, remaining - written));
+
+                    if (size <= 0) {
+                        throw new IOException("Unexpected end of file " + source);
+                    }
+
+                    out.write(buffer, 0, size);
+                    written += size;
+
+                    if (written >= STRIPE_CHECKPOINT_SIZE) {
+                        out.flush();
+                        checkpoint(written);
+                        written = 0;
+                    }
+                }
+
+                // Closing the stream flushes the remaining data.
+                OutputStream tmp = out;
+                out = null;
+                tmp.close();
+
+                checkpoint(written);
+            } finally {
+                close(in);
+                close(out);
+                releaseBuffer(buffer);
+            }
+        }
+
+        @Override
+        public void run() {
+
+            int failures = 0;
+
+            while (remaining > 0 && !ac.isCancelled()) {
+                try {
+                    copyRange();
+                } catch (XenonException | IOException e) {
+                    failures++;
+
+                    if (failures > STRIPE_RETRIES) {
+                        exception = e;
+                        return;
+                    }
+
+                    LOGGER.debug("Copy of stripe {} failed, retrying from offset {}", name, sourceOffset, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * A copy consisting of parts that may be copied in parallel, such as the files of a tree or the stripes of a large file. The 
+     * parts are queued here, until they are picked up by the thread performing the copy, or by an idle copy thread of the engine.
+     */
+    private abstract class SharedCopy {
+
+        final CopyInfo ac;
+
+        final LinkedList<Runnable> queue = new LinkedList<>();
+        final Set<Runnable> active = new HashSet<>();
+
+        private final int maxActive;
+
+        private Exception exception;
+
+        SharedCopy(CopyInfo ac, int maxActive) {
+            this.ac = ac;
+            this.maxActive = maxActive;
+        }
+
+        void add(Runnable part) {
+            synchronized (this) {
+                queue.addLast(part);
+            }
+
+            // Not called while holding the lock of this copy, as the engine locks itself before its shared copies.
+            sharedWorkAvailable();
+        }
+
+        synchronized boolean isStopped() {
+            return exception != null || ac.isCancelled();
+        }
+
+        /**
+         * Returns the next part to copy, or <code>null</code> if there is none, or the maximum number of parts are already 
+         * copied in parallel.
+         */
+        synchronized Runnable poll() {
+            if (queue.isEmpty() || isStopped() || active.size() >= maxActive) {
+                return null;
+            }
+
+            Runnable part = queue.removeFirst();
+            active.add(part);
+            return part;
+        }
+
+        void run(Runnable part) {
+            try {
+                part.run();
+            } finally {
+                done(part);
+            }
+        }
+
+        private synchronized void done(Runnable part) {
+            active.remove(part);
+            partDone(part);
+            notifyAll();
+        }
+
+        /** Called when a part is done, while holding the lock of this copy. */
+        void partDone(Runnable part) {
+            // Nothing to do by default.
+        }
+
+        synchronized void failed(Exception e) {
+            if (exception == null) {
+                exception = e;
+            }
+
+            cancelActive();
+        }
+
+        synchronized void cancelActive() {
+            notifyAll();
+        }
+
+        private boolean isDone() {
+            return active.isEmpty() && (queue.isEmpty() || isStopped());
+        }
+
+        /**
+         * Wait until a part has been copied, or the timeout expires.
+         * 
+         * @return if all parts have been copied, or the copy has stopped and no parts are being copied.
+         */
+        private synchronized boolean waitUntilDone(long timeout) throws InterruptedException {
+            if (!isDone()) {
+                wait(timeout);
+            }
+
+            return isDone();
+        }
+
+        /**
+         * Copies the queued parts in the calling thread, helped by any idle copy threads, until all parts are done or the copy 
+         * has stopped. The calling thread guarantees progress, even when no copy thread is idle.
+         */
+        void copyAll() throws InterruptedException {
+            try {
+                boolean done = false;
+
+                while (!done) {
+                    Runnable part = poll();
+
+                    if (part != null) {
+                        run(part);
+                    } else {
+                        done = waitUntilDone(PROGRESS_DELAY);
+                    }
+
+                    ac.setBytesCopied(getBytesCopied());
+
+                    if (ac.isCancelled()) {
+                        cancelActive();
+                    }
+                }
+            } finally {
+                ac.setBytesCopied(getBytesCopied());
+            }
+        }
+
+        synchronized Exception getException() {
+            return exception;
+        }
+
+        abstract long getBytesCopied();
+    }
+
+    /**
+     * A single file of a tree copy.
+     */
+    private class TreeFile implements Runnable {
+
+        private final CopyInfo info;
+
+        TreeFile(CopyInfo info) {
+            this.info = info;
+        }
+
         @Override
         public void run() {
-            CopyInfo ac = dequeue();
+            try {
+                copyTreeFile(info);
+            } catch (XenonException e) {
+                info.setException(e);
+            }
+        }
+    }
+
+    /**
+     * The state of a single tree copy. The files found while walking the tree are added as they are found.
+     */
+    private class TreeCopy extends SharedCopy {
+
+        private long nextID = 0;
+        private long bytesToCopy = 0;
+        private long bytesCopied = 0;
 
-            while (ac != null) {
-                startCopy(ac);
-                ac = dequeue();
+        TreeCopy(CopyInfo ac) {
+            super(ac, treeThreads);
+        }
+
+        void add(Path source, Path target, long size, boolean replace) {
+            TreeFile file;
+
+            synchronized (this) {
+                CopyImplementation copy = new CopyImplementation(ac.getCopy().getAdaptorName(), 
+                        ac.getUniqueID() + "-" + nextID++, source, target);
+
+                file = new TreeFile(new CopyInfo(copy, replace ? CopyOption.REPLACE : CopyOption.CREATE, false, false));
+
+                bytesToCopy += size;
+                ac.setBytesToCopy(bytesToCopy);
             }
+
+            add(file);
+        }
+
+        @Override
+        void partDone(Runnable part) {
+            CopyInfo info = ((TreeFile) part).info;
+
+            bytesCopied += info.getBytesCopied();
+
+            if (info.getException() != null) {
+                failed(info.getException());
+            }
+        }
+
+        @Override
+        synchronized void cancelActive() {
+            for (Runnable part : active) {
+                ((TreeFile) part).info.cancel();
+            }
+
+            super.cancelActive();
+        }
+
+        @Override
+        synchronized long getBytesCopied() {
+            long total = bytesCopied;
+
+            for (Runnable part : active) {
+                total += ((TreeFile) part).info.getBytesCopied();
+            }
+
+            return total;
+        }
+    }
+
+    /**
+     * The stripes of a single file, copied in parallel.
+     */
+    private class StripedCopy extends SharedCopy {
+
+        private final Stripe[] stripes;
+        private final long offset;
+
+        StripedCopy(CopyInfo ac, Stripe[] stripes, long offset) {
+            super(ac, stripes.length);
+            this.stripes = stripes;
+            this.offset = offset;
+
+            for (Stripe stripe : stripes) {
+                queue.add(stripe);
+            }
+        }
+
+        @Override
+        long getBytesCopied() {
+            long total = offset;
+
+            for (Stripe stripe : stripes) {
+                total += stripe.copied;
+            }
+
+            return total;
+        }
+
+        Exception getStripeException() {
+            for (Stripe stripe : stripes) {
+                if (stripe.exception != null) {
+                    return stripe.exception;
+                }
+            }
+
+            return null;
         }
     }
 
@@ -75,20 +555,59 @@ public final class CopyEngine {
     /** The polling delay */
     private static final int POLLING_DELAY = 1000;
 
-    /** The default buffer size */
-    private static final int BUFFER_SIZE = 4 * 1024;
+    /** The minimal delay between two progress updates of a copy (in milliseconds) */
+    private static final long PROGRESS_DELAY = 250;
+
+    /** The maximum number of bytes transferred between two file channels in a single step */
+    private static final long TRANSFER_SIZE = 8 * 1024 * 1024;
+
+    /** The amount of data a stripe copies before flushing it to the target. */
+    private static final long STRIPE_CHECKPOINT_SIZE = 8 * 1024 * 1024;
+
+    /** The number of times the copy of a stripe is retried. */
+    private static final int STRIPE_RETRIES = 3;
 
     /** A Files used to access the files that need to be copied. */
     private final Files owner;
 
-    /** Pending copies */
-    private final Deque<CopyInfo> pending = new LinkedList<>();
+    /** Maximum number of concurrent copies per adaptor */
+    private final int maxPerAdaptor;
+
+    /** Maximum number of concurrent copies per FileSystem */
+    private final int maxPerFileSystem;
+
+    /** Size of the copy buffers */
+    private final int bufferSize;
+
+    /** The size of the blocks compared when verifying the target of a resumed copy. */
+    private final long verifyBlockSize;
+
+    /** The minimal size of a stripe. */
+    private final long minStripeSize;
+
+    /** The maximum number of files copied in parallel by a single tree copy. */
+    private final int treeThreads;
+
+    /** Copy buffers that are currently not in use */
+    private final Deque<byte[]> buffers = new ArrayDeque<>();
+
+    /** Pending copies, in submission order */
+    private final Map<String, CopyInfo> pending = new LinkedHashMap<>();
+
+    /** Running copies */
+    private final Map<String, CopyInfo> running = new HashMap<>();
 
     /** Finished copies */
     private final Map<String, CopyInfo> finished = new LinkedHashMap<>();
 
-    /** Running copy */
-    private CopyInfo running;
+    /** Number of running copies per adaptor */
+    private final Map<String, Integer> runningPerAdaptor = new HashMap<>();
+
+    /** Number of running copies per FileSystem */
+    private final Map<FileSystem, Integer> runningPerFileSystem = new HashMap<>();
+
+    /** Running copies whose parts may be copied by idle copy threads */
+    private final List<SharedCopy> sharedCopies = new ArrayList<>();
 
     /** Current Copy ID */
     private long nextID = 0;
@@ -96,12 +615,45 @@ public final class CopyEngine {
     /** Should we terminate ? */
     private boolean done = false;
 
-    public CopyEngine(Files owner) {
+    public CopyEngine(Files owner, Map<String, String> properties) throws XenonException {
         this.owner = owner;
-        
-        Thread copyThread = new CopyThread();
-        copyThread.setDaemon(true);
-        copyThread.start();
+
+        XenonProperties p = new XenonProperties(VALID_PROPERTIES, Component.XENON, properties);
+
+        int threads = p.getIntegerProperty(THREADS);
+        maxPerAdaptor = p.getIntegerProperty(MAX_CONCURRENT_PER_ADAPTOR);
+        maxPerFileSystem = p.getIntegerProperty(MAX_CONCURRENT_PER_FILESYSTEM);
+        treeThreads = p.getIntegerProperty(TREE_THREADS);
+
+        if (threads < 1 || maxPerAdaptor < 1 || maxPerFileSystem < 1 || treeThreads < 1) {
+            throw new InvalidPropertyException(NAME, "Copy engine thread count and concurrency limits must be at least 1");
+        }
+
+        long size = p.getSizeProperty(BUFFER_SIZE);
+
+        if (size < 1 || size > Integer.MAX_VALUE) {
+            throw new InvalidPropertyException(NAME, "Invalid copy buffer size: " + size);
+        }
+
+        bufferSize = (int) size;
+
+        verifyBlockSize = p.getSizeProperty(VERIFY_BLOCK_SIZE);
+
+        if (verifyBlockSize < 1) {
+            throw new InvalidPropertyException(NAME, "Invalid verify block size: " + verifyBlockSize);
+        }
+
+        minStripeSize = p.getSizeProperty(MIN_STRIPE_SIZE);
+
+        if (minStripeSize < 1) {
+            throw new InvalidPropertyException(NAME, "Invalid minimal stripe size: " + minStripeSize);
+        }
+
+        for (int i = 0; i < threads; i++) {
+            Thread copyThread = new CopyThread(i);
+            copyThread.setDaemon(true);
+            copyThread.start();
+        }
     }
 
     private void close(Closeable c) {
@@ -115,37 +667,185 @@ public final class CopyEngine {
         }
     }
 
-    private void streamCopy(InputStream in, OutputStream out, CopyInfo ac) throws IOException {
+    private synchronized byte[] getBuffer() {
+        byte[] buffer = buffers.pollFirst();
 
-        long total = 0;
+        if (buffer == null) {
+            buffer = new byte[bufferSize];
+        }
 
-        byte[] buffer = new byte[BUFFER_SIZE];
+        return buffer;
+    }
 
+    private synchronized void releaseBuffer(byte[] buffer) {
+        buffers.addFirst(buffer);
+    }
+
+    private boolean checkCancelled(CopyInfo ac) {
         if (ac.isCancelled()) {
             LOGGER.debug("Copy killed by user!");
             ac.setException(new IOException("Copy killed by user"));
+            return true;
+        }
+
+        return false;
+    }
+
+    private void streamCopy(InputStream in, OutputStream out, CopyInfo ac) throws IOException {
+
+        if (checkCancelled(ac)) {
             return;
         }
 
-        int size = in.read(buffer);
+        if (in instanceof FileInputStream && out instanceof FileOutputStream) {
+            channelCopy(((FileInputStream) in).getChannel(), ((FileOutputStream) out).getChannel(), ac);
+            return;
+        }
 
-        while (size > 0) {
-            out.write(buffer, 0, size);
-            total += size;
+        long total = 0;
+        long lastUpdate = System.currentTimeMillis();
 
+        byte[] buffer = getBuffer();
+
+        try {
+            int size = in.read(buffer);
+
+            while (size > 0) {
+                out.write(buffer, 0, size);
+                total += size;
+
+                long now = System.currentTimeMillis();
+
+                if (now - lastUpdate >= PROGRESS_DELAY) {
+                    ac.setBytesCopied(total);
+                    lastUpdate = now;
+                }
+
+                if (checkCancelled(ac)) {
+                    return;
+                }
+
+                size = in.read(buffer);
+            }
+        } finally {
             ac.setBytesCopied(total);
+            releaseBuffer(buffer);
+        }
+    }
 
-            if (ac.isCancelled()) {
-                LOGGER.debug("Copy killed by user!");
-                ac.setException(new IOException("Copy killed by user"));
-                return;
+    private void channelCopy(FileChannel in, FileChannel out, CopyInfo ac) throws IOException {
+
+        LOGGER.debug("Using file channel transfer for copy {}", ac.getUniqueID());
+
+        long position = in.position();
+        long end = in.size();
+        long total = 0;
+        long lastUpdate = System.currentTimeMillis();
+
+        try {
+            while (position < end) {
+                long size = in.transferTo(position, Math.min(TRANSFER_SIZE, end - position), out);
+
+                if (size <= 0) {
+                    break;
+                }
+
+                position += size;
+                total += size;
+
+                long now = System.currentTimeMillis();
+
+                if (now - lastUpdate >= PROGRESS_DELAY) {
+                    ac.setBytesCopied(total);
+                    lastUpdate = now;
+                }
+
+                if (checkCancelled(ac)) {
+                    return;
+                }
             }
+        } finally {
+            ac.setBytesCopied(total);
+        }
+    }
+
+    private int getStripes(Path source, Path target, long length) throws XenonException {
+
+        if (!(owner instanceof RangeSupport)) {
+            return 1;
+        }
+
+        RangeSupport ranges = (RangeSupport) owner;
+
+        int sourceStripes = ranges.getMaxStripes(source);
+        int targetStripes = sourceStripes == 0 ? 0 : ranges.getMaxStripes(target);
+
+        if (sourceStripes == 0 || targetStripes == 0) {
+            return 1;
+        }
+
+        return (int) Math.max(1, Math.min(Math.max(sourceStripes, targetStripes), length / minStripeSize));
+    }
+
+    private void stripedCopy(Path source, long sourceOffset, Path target, long targetOffset, long length, int stripes,
+            CopyInfo ac) throws XenonException {
+
+        LOGGER.debug("Copying {} bytes from {}:{} to {}:{} using {} stripes", length, source, sourceOffset, target, targetOffset,
+                stripes);
+
+        // Copy the last byte first, so the target has its final size before the stripes are written concurrently.
+        long remaining = length - 1;
+
+        Stripe last = new Stripe(ac, source, sourceOffset + remaining, target, targetOffset + remaining, 1, stripes);
+        last.run();
+
+        if (last.exception != null) {
+            throw new XenonException(NAME, "Failed to copy " + source + " to " + target, last.exception);
+        }
+
+        long stripeSize = (remaining + stripes - 1) / stripes;
+
+        Stripe[] parts = new Stripe[stripes];
+
+        for (int i = 0; i < stripes; i++) {
+            long start = Math.min(i * stripeSize, remaining);
+            long size = Math.min(stripeSize, remaining - start);
+
+            parts[i] = new Stripe(ac, source, sourceOffset + start, target, targetOffset + start, size, i);
+        }
+
+        // The stripes are copied by this thread and any idle copy threads, within the limits of the engine.
+        StripedCopy striped = new StripedCopy(ac, parts, last.copied);
+
+        addSharedCopy(striped);
+
+        try {
+            striped.copyAll();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new XenonException(NAME, "Interrupted while copying " + source + " to " + target, e);
+        } finally {
+            removeSharedCopy(striped);
+        }
 
-            size = in.read(buffer);
+        Exception exception = striped.getStripeException();
+
+        if (exception != null) {
+            throw new XenonException(NAME, "Failed to copy " + source + " to " + target, exception);
         }
+
+        checkCancelled(ac);
     }
 
-    private void append(Path source, long fromOffset, Path target, CopyInfo ac) throws XenonException {
+    private void append(Path source, long fromOffset, Path target, long targetSize, CopyInfo ac) throws XenonException {
+
+        long length = ac.getBytesToCopy();
+        int stripes = getStripes(source, target, length);
+
+        if (stripes > 1) {
+            stripedCopy(source, fromOffset, target, targetSize, length, stripes, ac);
+            return;
+        }
 
         // We need to append some bytes from source to target. 
         LOGGER.debug("Appending from {} to {} starting at {}", source, target, fromOffset);
@@ -158,7 +858,7 @@ public final class CopyEngine {
         try {
 
             while (skipped < fromOffset) {
-                long tmp = in.skip(fromOffset);
+                long tmp = in.skip(fromOffset - skipped);
 
                 if (tmp <= 0) {
                     throw new XenonException(NAME, "Failed to seek file " + source + " to " + fromOffset);
@@ -176,64 +876,169 @@ public final class CopyEngine {
         }
     }
 
-    private int readFully(InputStream in, byte[] buffer) throws IOException {
+    private int readFully(InputStream in, byte[] buffer, int length) throws IOException {
+
+        int offset = 0;
+
+        while (offset < length) {
+            int tmp = in.read(buffer, offset, length - offset);
+
+            if (tmp <= 0) {
+                break;
+            }
+
+            offset += tmp;
+        }
+
+        return offset;
+    }
+
+    private long blockStart(long offset) {
+        return offset - (offset % verifyBlockSize);
+    }
+
+    private String checksum(Path path, long offset, long length) throws XenonException {
+        if (owner instanceof ResumeSupport) {
+            return ((ResumeSupport) owner).checksum(path, offset, length);
+        }
+
+        return null;
+    }
+
+    /*
+     * Compares the first <code>size</code> bytes of target and source, and returns the start of the first block that does not 
+     * match, or <code>size</code> if all data matches.  
+     */
+    private long compareHead(CopyInfo ac, Path target, Path source, long size) throws XenonException {
+
+        if (size == 0) {
+            return 0;
+        }
+
+        String targetSum = checksum(target, 0, size);
+        String sourceSum = targetSum == null ? null : checksum(source, 0, size);
+
+        if (targetSum == null || sourceSum == null) {
+            // Fall back to comparing the data itself.
+            return compareData(ac, target, source, 0, size);
+        }
+
+        if (targetSum.equals(sourceSum)) {
+            return size;
+        }
+
+        LOGGER.debug("Checksum of {} does not match {}, comparing blocks", target, source);
+
+        if (size <= verifyBlockSize) {
+            return 0;
+        }
+
+        for (long offset = 0; offset < size; offset += verifyBlockSize) {
+
+            if (ac.isCancelled()) {
+                throw new XenonException(NAME, "Copy killed by user");
+            }
 
-        int offset = 0;
+            long length = Math.min(verifyBlockSize, size - offset);
 
-        while (offset < buffer.length) {
-            int tmp = in.read(buffer, offset, buffer.length - offset);
+            targetSum = checksum(target, offset, length);
+            sourceSum = targetSum == null ? null : checksum(source, offset, length);
 
-            if (tmp <= 0) {
-                break;
+            if (targetSum == null || sourceSum == null) {
+                // Ranges cannot be checksummed, so compare the remaining data itself.
+                return compareData(ac, target, source, offset, size);
             }
 
-            offset += tmp;
-        }
-
-        if (offset == 0) {
-            return -1;
+            if (!targetSum.equals(sourceSum)) {
+                return offset;
+            }
         }
 
-        return offset;
+        // The blocks all match, so the data must have changed while comparing. 
+        return 0;
     }
 
-    private boolean compareHead(CopyInfo ac, Path target, Path source) throws XenonException, IOException {
+    private long compareData(CopyInfo ac, Path target, Path source, long offset, long size) throws XenonException {
 
-        LOGGER.debug("Compare head of {} to {}", target, source);
+        LOGGER.debug("Compare head of {} to {} starting at {}", target, source, offset);
 
-        byte[] buf1 = new byte[BUFFER_SIZE];
-        byte[] buf2 = new byte[BUFFER_SIZE];
+        byte[] buf1 = getBuffer();
+        byte[] buf2 = getBuffer();
 
-        InputStream in1 = owner.newInputStream(target);
-        InputStream in2 = owner.newInputStream(source);
+        InputStream in1 = null;
+        InputStream in2 = null;
 
         try {
-            while (true) {
+            in1 = owner.newInputStream(target);
+            in2 = owner.newInputStream(source);
+
+            skipFully(in1, offset);
+            skipFully(in2, offset);
+
+            long position = offset;
+
+            while (position < size) {
 
                 if (ac.isCancelled()) {
                     throw new XenonException(NAME, "Copy killed by user");
                 }
 
-                int size1 = readFully(in1, buf1);
-                int size2 = readFully(in2, buf2);
+                int length = (int) Math.min(buf1.length, size - position);
 
-                if (size1 > size2) {
-                    return false;
-                }
+                int size1 = readFully(in1, buf1, length);
+                int size2 = readFully(in2, buf2, length);
 
-                if (size1 < 0) {
-                    return true;
-                }
+                int common = Math.min(size1, size2);
 
-                for (int i = 0; i < size1; i++) {
+                for (int i = 0; i < common; i++) {
                     if (buf1[i] != buf2[i]) {
-                        return false;
+                        return blockStart(position + i);
                     }
                 }
+
+                if (common < length) {
+                    // One of the files is shorter than expected.
+                    return blockStart(position + common);
+                }
+
+                position += length;
             }
+
+            return size;
+        } catch (IOException e) {
+            throw new XenonException(NAME, "Failed to compare " + source + " to " + target, e);
         } finally {
             close(in1);
             close(in2);
+            releaseBuffer(buf1);
+            releaseBuffer(buf2);
+        }
+    }
+
+    private static void skipFully(InputStream in, long count) throws IOException {
+
+        long skipped = 0;
+
+        while (skipped < count) {
+            long tmp = in.skip(count - skipped);
+
+            if (tmp <= 0) {
+                throw new IOException("Failed to skip to offset " + count);
+            }
+
+            skipped += tmp;
+        }
+    }
+
+    /*
+     * Truncates the target to the given size, or throws an InvalidResumeTargetException if this is not supported.  
+     */
+    private void truncate(Path source, Path target, long size) throws XenonException {
+
+        LOGGER.debug("Truncating {} to {} before resuming", target, size);
+
+        if (!(owner instanceof ResumeSupport) || !((ResumeSupport) owner).truncate(target, size)) {
+            throw new InvalidResumeTargetException(NAME, "Data in target " + target + " does not match source " + source);
         }
     }
 
@@ -287,22 +1092,6 @@ public final class CopyEngine {
             return;
         }
 
-        if (ac.mustVerify()) {
-            if (ac.isCancelled()) {
-                ac.setException(new IOException("Copy killed by user"));
-                return;
-            }
-
-            // check if the data in target corresponds to the head of source.
-            try {
-                if (!compareHead(ac, target, source)) {
-                    throw new InvalidResumeTargetException(NAME, "Data in target " + target + " does not match source " + source);
-                }
-            } catch (IOException e) {
-                throw new XenonException(NAME, "Failed to compare " + source + " to " + target, e);
-            }
-        }
-
         long targetSize = targetAtt.size();
         long sourceSize = sourceAtt.size();
 
@@ -314,6 +1103,21 @@ public final class CopyEngine {
                     + source);
         }
 
+        if (ac.mustVerify()) {
+            if (ac.isCancelled()) {
+                ac.setException(new IOException("Copy killed by user"));
+                return;
+            }
+
+            // check if the data in target corresponds to the head of source, and drop the data that does not.
+            long valid = compareHead(ac, target, source, targetSize);
+
+            if (valid < targetSize) {
+                truncate(source, target, valid);
+                targetSize = valid;
+            }
+        }
+
         // If target is the same size as source we are done.
         if (targetSize == sourceSize) {
             ac.setBytesToCopy(0);
@@ -324,7 +1128,7 @@ public final class CopyEngine {
         ac.setBytesToCopy(sourceSize - targetSize);
 
         // Now append source (from index targetSize) to target.
-        append(source, targetSize, target, ac);
+        append(source, targetSize, target, targetSize, ac);
     }
 
     private void doAppend(CopyInfo ac) throws XenonException {
@@ -370,7 +1174,7 @@ public final class CopyEngine {
         }
 
         ac.setBytesToCopy(sourceAtt.size());
-        append(source, 0, target, ac);
+        append(source, 0, target, targetAtt.size(), ac);
     }
 
     @SuppressWarnings("PMD.NPathComplexity")
@@ -422,13 +1226,19 @@ public final class CopyEngine {
             throw new NoSuchPathException(NAME, "Target directory " + parent + " does not exist!");
         }
 
-        ac.setBytesToCopy(sourceAtt.size());
+        long size = sourceAtt.size();
+
+        ac.setBytesToCopy(size);
+
+        int stripes = getStripes(source, target, size);
 
         InputStream in = null;
         OutputStream out = null;
 
         try {
-            in = owner.newInputStream(source);
+            if (stripes == 1) {
+                in = owner.newInputStream(source);
+            }
 
             if (replace) {
                 out = owner.newOutputStream(target, OpenOption.OPEN_OR_CREATE, OpenOption.TRUNCATE);
@@ -436,7 +1246,16 @@ public final class CopyEngine {
                 out = owner.newOutputStream(target, OpenOption.CREATE, OpenOption.APPEND);
             }
 
-            streamCopy(in, out, ac);
+            if (stripes > 1) {
+                // The (empty) target has now been created, so it can be written by the stripes.
+                OutputStream tmp = out;
+                out = null;
+                tmp.close();
+
+                stripedCopy(source, 0, target, 0, size, stripes, ac);
+            } else {
+                streamCopy(in, out, ac);
+            }
 
         } catch (IOException e) {
             throw new XenonException(NAME, "Failed to copy " + source + " to " + target, e);
@@ -446,29 +1265,221 @@ public final class CopyEngine {
         }
     }
 
+    private void copyTreeFile(CopyInfo info) throws XenonException {
+
+        Path source = info.getCopy().getSource();
+        Path target = info.getCopy().getTarget();
+
+        InputStream in = null;
+        OutputStream out = null;
+
+        try {
+            in = owner.newInputStream(source);
+
+            if (info.getMode() == CopyOption.REPLACE) {
+                out = owner.newOutputStream(target, OpenOption.OPEN_OR_CREATE, OpenOption.TRUNCATE);
+            } else {
+                out = owner.newOutputStream(target, OpenOption.CREATE, OpenOption.APPEND);
+            }
+
+            streamCopy(in, out, info);
+        } catch (IOException e) {
+            throw new XenonException(NAME, "Failed to copy " + source + " to " + target, e);
+        } finally {
+            close(in);
+            close(out);
+        }
+    }
+
+    private Set<String> listNames(Path dir) throws XenonException {
+
+        Set<String> result = new HashSet<>();
+
+        DirectoryStream<Path> stream = owner.newDirectoryStream(dir);
+
+        try {
+            for (Path p : stream) {
+                result.add(p.getRelativePath().getFileNameAsString());
+            }
+        } finally {
+            close(stream);
+        }
+
+        return result;
+    }
+
+    private void walkTree(TreeCopy tree, Path sourceRoot, Path targetRoot, Set<String> rootNames) throws XenonException {
+
+        boolean replace = tree.ac.getMode() == CopyOption.REPLACE;
+        boolean ignore = tree.ac.getMode() == CopyOption.IGNORE;
+
+        LinkedList<Path[]> directories = new LinkedList<>();
+        LinkedList<Set<String>> existingNames = new LinkedList<>();
+
+        directories.add(new Path[] { sourceRoot, targetRoot });
+        existingNames.add(rootNames);
+
+        while (!directories.isEmpty() && !tree.isStopped()) {
+
+            Path[] dir = directories.removeFirst();
+            Set<String> existing = existingNames.removeFirst();
+
+            DirectoryStream<PathAttributesPair> stream = owner.newAttributesDirectoryStream(dir[0]);
+
+            try {
+                for (PathAttributesPair pair : stream) {
+
+                    if (tree.isStopped()) {
+                        return;
+                    }
+
+                    String name = pair.path().getRelativePath().getFileNameAsString();
+
+                    // Files cannot create links, and following them may copy data outside the tree, or loop forever.
+                    if (pair.attributes().isSymbolicLink()) {
+                        LOGGER.debug("Tree copy skipping symbolic link {}", pair.path());
+                        continue;
+                    }
+
+                    Path target = owner.newPath(dir[1].getFileSystem(), dir[1].getRelativePath().resolve(name));
+                    boolean exists = existing.contains(name);
+
+                    if (exists && !replace && !ignore) {
+                        throw new PathAlreadyExistsException(NAME, "Target " + target + " already exists!");
+                    }
+
+                    if (pair.attributes().isDirectory()) {
+                        if (exists) {
+                            existingNames.add(listNames(target));
+                        } else {
+                            owner.createDirectory(target);
+                            existingNames.add(new HashSet<String>(0));
+                        }
+
+                        directories.add(new Path[] { pair.path(), target });
+                    } else if (!exists || replace) {
+                        tree.add(pair.path(), target, pair.attributes().size(), exists);
+                    }
+                }
+            } finally {
+                close(stream);
+            }
+
+            tree.ac.setBytesCopied(tree.getBytesCopied());
+        }
+    }
+
+    private void doTreeCopy(CopyInfo ac) throws XenonException {
+
+        if (checkCancelled(ac)) {
+            return;
+        }
+
+        Path source = ac.getCopy().getSource();
+        Path target = ac.getCopy().getTarget();
+
+        LOGGER.debug("Tree copy from {} to {} mode={}", source, target, ac.getMode());
+
+        if (!owner.getAttributes(source).isDirectory()) {
+            doCopy(ac);
+            return;
+        }
+
+        Set<String> existing;
+
+        if (owner.exists(target)) {
+            if (ac.getMode() == CopyOption.CREATE) {
+                throw new PathAlreadyExistsException(NAME, "Target " + target + " already exists!");
+            }
+
+            existing = listNames(target);
+        } else {
+            owner.createDirectories(target);
+            existing = new HashSet<>(0);
+        }
+
+        ac.setBytesToCopy(0);
+
+        TreeCopy tree = new TreeCopy(ac);
+
+        // Idle copy threads may start copying files while the tree is walked.
+        addSharedCopy(tree);
+
+        try {
+            try {
+                walkTree(tree, source, target, existing);
+            } catch (XenonException e) {
+                tree.failed(e);
+            }
+
+            tree.copyAll();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            tree.failed(e);
+        } finally {
+            removeSharedCopy(tree);
+        }
+
+        if (checkCancelled(ac)) {
+            return;
+        }
+
+        Exception e = tree.getException();
+
+        if (e instanceof XenonException) {
+            throw (XenonException) e;
+        } else if (e != null) {
+            throw new XenonException(NAME, "Failed to copy " + source + " to " + target, e);
+        }
+    }
+
+    /**
+     * Copy a file or directory tree.
+     * 
+     * @param adaptorName
+     *          the name of the adaptor performing the copy.
+     * @param source
+     *          the source file or directory.
+     * @param target
+     *          the target path.
+     * @param options
+     *          the copy options.
+     * @return
+     *          a {@link Copy} if the copy is asynchronous, or <code>null</code> if it has finished.
+     * @throws XenonException
+     *          if the options are invalid, or a blocking copy failed.
+     */
+    public Copy copyTree(String adaptorName, Path source, Path target, CopyOption... options) throws XenonException {
+
+        CopyInfo info = CopyInfo.createTreeCopyInfo(adaptorName, getNextID(adaptorName.toUpperCase() + "_TREE_COPY_"), source, 
+                target, options);
+
+        copy(info);
+
+        if (info.isAsync()) {
+            return info.getCopy();
+        }
+
+        Exception e = info.getException();
+
+        if (e instanceof XenonException) {
+            throw (XenonException) e;
+        } else if (e != null) {
+            throw new XenonException(adaptorName, "Copy failed!", e);
+        }
+
+        return null;
+    }
+
     private void startCopy(CopyInfo info) {
 
         LOGGER.debug("Start copy: {}", info);
 
         try {
-            
-            CopyOption mode = info.getMode(); 
-            
-            switch (mode) {
-            case CREATE:
-            case REPLACE:
-            case IGNORE:
-                doCopy(info);
-                break;
-            case APPEND:
-                doAppend(info);
-                break;
-            case RESUME:
-                doResume(info);
-                break;
-            default:
-                throw new XenonException(NAME, "INTERNAL ERROR: Failed to recognise copy mode! (" + mode + " "
-                        + info.mustVerify() + ")");
+            if (info.isTree()) {
+                doTreeCopy(info);
+            } else {
+                doFileCopy(info);
             }
         } catch (Exception e) {
             info.setException(e);
@@ -477,6 +1488,28 @@ public final class CopyEngine {
         LOGGER.debug("Finished copy: {}", info);
     }
 
+    private void doFileCopy(CopyInfo info) throws XenonException {
+
+        CopyOption mode = info.getMode(); 
+
+        switch (mode) {
+        case CREATE:
+        case REPLACE:
+        case IGNORE:
+            doCopy(info);
+            break;
+        case APPEND:
+            doAppend(info);
+            break;
+        case RESUME:
+            doResume(info);
+            break;
+        default:
+            throw new XenonException(NAME, "INTERNAL ERROR: Failed to recognise copy mode! (" + mode + " "
+                    + info.mustVerify() + ")");
+        }
+    }
+
     public void copy(CopyInfo info) {
         if (info.isAsync()) {
             enqueue(info);
@@ -495,21 +1528,150 @@ public final class CopyEngine {
 
         LOGGER.debug("CopyEngine queueing copy: {}", info);
 
-        pending.addLast(info);
+        pending.put(info.getUniqueID(), info);
+        notifyAll();
+    }
+
+    private synchronized void addSharedCopy(SharedCopy shared) {
+        sharedCopies.add(shared);
+    }
+
+    private synchronized void removeSharedCopy(SharedCopy shared) {
+        sharedCopies.remove(shared);
+    }
+
+    private synchronized void sharedWorkAvailable() {
         notifyAll();
     }
 
-    private synchronized CopyInfo dequeue() {
+    private static Set<String> getAdaptorNames(CopyInfo info) {
+        Set<String> result = new HashSet<>(2);
+        result.add(info.getCopy().getSource().getFileSystem().getAdaptorName());
+        result.add(info.getCopy().getTarget().getFileSystem().getAdaptorName());
+        return result;
+    }
+
+    private static Set<FileSystem> getFileSystems(CopyInfo info) {
+        Set<FileSystem> result = new HashSet<>(2);
+        result.add(info.getCopy().getSource().getFileSystem());
+        result.add(info.getCopy().getTarget().getFileSystem());
+        return result;
+    }
+
+    private static <K> int getCount(Map<K, Integer> counts, K key) {
+        Integer count = counts.get(key);
+        return count == null ? 0 : count;
+    }
+
+    private static <K> void updateCount(Map<K, Integer> counts, K key, int delta) {
+        int count = getCount(counts, key) + delta;
+
+        if (count <= 0) {
+            counts.remove(key);
+        } else {
+            counts.put(key, count);
+        }
+    }
+
+    private boolean mayStart(CopyInfo info) {
+
+        for (String adaptor : getAdaptorNames(info)) {
+            if (getCount(runningPerAdaptor, adaptor) >= maxPerAdaptor) {
+                return false;
+            }
+        }
+
+        for (FileSystem fs : getFileSystems(info)) {
+            if (getCount(runningPerFileSystem, fs) >= maxPerFileSystem) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void markRunning(Work work) {
+
+        CopyInfo info = work.info;
+
+        // The parts of a shared copy are only counted, as the copy itself is already running.
+        if (work.shared == null) {
+            running.put(info.getUniqueID(), info);
+        }
+
+        for (String adaptor : getAdaptorNames(info)) {
+            updateCount(runningPerAdaptor, adaptor, 1);
+        }
+
+        for (FileSystem fs : getFileSystems(info)) {
+            updateCount(runningPerFileSystem, fs, 1);
+        }
+    }
+
+    private void markFinished(Work work) {
+
+        CopyInfo info = work.info;
+
+        if (work.shared == null) {
+            running.remove(info.getUniqueID());
+            finished.put(info.getUniqueID(), info);
+        }
+
+        for (String adaptor : getAdaptorNames(info)) {
+            updateCount(runningPerAdaptor, adaptor, -1);
+        }
+
+        for (FileSystem fs : getFileSystems(info)) {
+            updateCount(runningPerFileSystem, fs, -1);
+        }
+    }
+
+    private Work findStartableCopy() {
+
+        Iterator<CopyInfo> it = pending.values().iterator();
+
+        while (it.hasNext()) {
+            CopyInfo c = it.next();
+
+            if (mayStart(c)) {
+                it.remove();
+                return new Work(c);
+            }
+        }
+
+        // Idle threads help copying the parts of running tree and striped copies, within the same limits.
+        for (SharedCopy shared : sharedCopies) {
+            if (mayStart(shared.ac)) {
+                Runnable part = shared.poll();
+
+                if (part != null) {
+                    return new Work(shared, part);
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private synchronized Work dequeue(Work previous) {
 
         LOGGER.debug("CopyEngine dequeueing copy");
 
-        if (running != null) {
-            finished.put(running.getUniqueID(), running);
-            running = null;
+        if (previous != null) {
+            markFinished(previous);
             notifyAll();
         }
 
-        while (!done && pending.isEmpty()) {
+        Work next = null;
+
+        while (!done) {
+
+            next = findStartableCopy();
+
+            if (next != null) {
+                break;
+            }
+
             try {
                 wait(POLLING_DELAY);
             } catch (InterruptedException e) {
@@ -524,20 +1686,21 @@ public final class CopyEngine {
             return null;
         }
 
-        running = pending.removeFirst();
-        return running;
+        markRunning(next);
+        return next;
     }
 
     private synchronized void waitUntilCancelled(String copyID) {
 
         LOGGER.debug("Waiting until copy {} is cancelled.", copyID);
 
-        while (running != null && running.hasID(copyID)) {
+        while (running.containsKey(copyID)) {
             try {
                 wait(POLLING_DELAY);
             } catch (InterruptedException e) {
                 LOGGER.warn("CopyEngine.waitUntilCancelled interrupted before copy {} has finished!", copyID);
                 Thread.currentThread().interrupt();
+                return;
             }
         }
     }
@@ -554,16 +1717,24 @@ public final class CopyEngine {
 
         LOGGER.debug("Attempting to cancel copy {}.", copyID);
 
-        if (running != null && running.hasID(copyID)) {
+        CopyInfo ac = running.get(copyID);
+
+        if (ac != null) {
             LOGGER.debug("Canceled copy {} is running,", copyID);
-            running.cancel();
+            ac.cancel();
+
+            for (SharedCopy shared : sharedCopies) {
+                if (shared.ac == ac) {
+                    shared.cancelActive();
+                }
+            }
 
             // We should now wait until the running copy is indeed cancelled. Otherwise, we are in an inconsistent state when 
             // we return.            
             waitUntilCancelled(copyID);
         }
 
-        CopyInfo ac = finished.remove(copyID);
+        ac = finished.remove(copyID);
 
         if (ac != null) {
             LOGGER.debug("Canceled copy {} was already finished.", copyID);
@@ -572,18 +1743,12 @@ public final class CopyEngine {
                     ac.getException());
         }
 
-        Iterator<CopyInfo> it = pending.iterator();
-
-        while (it.hasNext()) {
-
-            CopyInfo c = it.next();
+        ac = pending.remove(copyID);
 
-            if (c.hasID(copyID)) {
-                it.remove();
-                LOGGER.debug("Canceled copy {} was queued.", copyID);
-                return new CopyStatusImplementation(copy, "KILLED", false, false, c.getBytesToCopy(), 0, new IOException(
-                        "Copy killed by user"));
-            }
+        if (ac != null) {
+            LOGGER.debug("Canceled copy {} was queued.", copyID);
+            return new CopyStatusImplementation(copy, "KILLED", false, false, ac.getBytesToCopy(), 0, new IOException(
+                    "Copy killed by user"));
         }
 
         throw new NoSuchCopyException(NAME, "No such copy " + copyID);
@@ -602,13 +1767,13 @@ public final class CopyEngine {
         LOGGER.debug("Retrieving status of copy {}.", copyID);
 
         String state = null;
-        CopyInfo ac = null;
         boolean isRunning = false;
         boolean isDone = false;
 
-        if (running != null && running.hasID(copyID)) {
+        CopyInfo ac = running.get(copyID);
+
+        if (ac != null) {
             state = "RUNNING";
-            ac = running;
             isRunning = true;
         }
 
@@ -622,12 +1787,10 @@ public final class CopyEngine {
         }
 
         if (ac == null) {
-            for (CopyInfo c : pending) {
-                if (c.hasID(copyID)) {
-                    ac = c;
-                    state = "PENDING";
-                    break;
-                }
+            ac = pending.get(copyID);
+
+            if (ac != null) {
+                state = "PENDING";
             }
         }
 
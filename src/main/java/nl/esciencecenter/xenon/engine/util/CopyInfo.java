@@ -32,6 +32,7 @@ public class CopyInfo {
     private final CopyOption mode;
     private final boolean verify;
     private final boolean async;
+    private final boolean tree;
     
     private Exception exception;
     private boolean cancel = false;
@@ -39,11 +40,16 @@ public class CopyInfo {
     private long bytesCopied = 0;
 
     public CopyInfo(CopyImplementation copy, CopyOption mode, boolean verify, boolean async) {
+        this(copy, mode, verify, async, false);
+    }
+
+    public CopyInfo(CopyImplementation copy, CopyOption mode, boolean verify, boolean async, boolean tree) {
         super();
         this.copy = copy;
         this.mode = mode;
         this.verify = verify;
         this.async = async;
+        this.tree = tree;
     }
 
     public CopyImplementation getCopy() {
@@ -61,6 +67,10 @@ public class CopyInfo {
     public boolean isAsync() {
         return async;
     }
+
+    public boolean isTree() {
+        return tree;
+    }
     
     public boolean hasID(String copyID) { 
         return copy.hasID(copyID);
@@ -105,7 +115,7 @@ public class CopyInfo {
     @Override
     public String toString() {
         return "CopyInfo [ID=" + copy.getUniqueID() + ", source=" + copy.getSource() + ", target="
-                + copy.getTarget() + ", mode=" + mode + ", verify=" + verify + ", bytesToCopy=" + getBytesToCopy()
+                + copy.getTarget() + ", mode=" + mode + ", verify=" + verify + ", tree=" + tree + ", bytesToCopy=" + getBytesToCopy()
                 + ", bytesCopied=" + getBytesCopied() + ", isCancelled=" + isCancelled() + "]";
     }
 
@@ -161,5 +171,17 @@ public class CopyInfo {
         CopyImplementation copy = new CopyImplementation(adaptorName, nextID, source, target);
         return new CopyInfo(copy, mode, verify, async);
     }
+
+    public static CopyInfo createTreeCopyInfo(String adaptorName, String nextID, Path source, Path target,
+            CopyOption ... options) throws InvalidCopyOptionsException {
+
+        CopyInfo info = createCopyInfo(adaptorName, nextID, source, target, options);
+
+        if (info.mode == CopyOption.APPEND || info.mode == CopyOption.RESUME) {
+            throw new InvalidCopyOptionsException(adaptorName, "Copy option " + info.mode + " is not supported for trees");
+        }
+
+        return new CopyInfo(info.copy, info.mode, false, info.async, true);
+    }
     
 }
\ No newline at end of file
@@ -30,19 +30,37 @@ import nl.esciencecenter.xenon.jobs.Streams;
 import nl.esciencecenter.xenon.util.Utils;
 
 /**
+ * JobExecutor starts the process of a single job and tracks its state.
  * 
+ * The process is started by {@link #run()}, which returns as soon as the process is running. The executor does not use a 
+ * thread of its own while the process is running. Instead, {@link #poll()} must be called periodically to detect that the 
+ * process has finished or has exceeded its maximum run time. Status requests poll the process directly, so they never block.
+ * 
+ * @version 1.0
+ * @since 1.0
  */
 public class JobExecutor implements Runnable {
 
+    /**
+     * Listener that is notified once the job of an executor is done.
+     */
+    public interface Listener {
+
+        /**
+         * Called exactly once, when the job is done, killed, or failed to start. 
+         * 
+         * @param executor
+         *          the executor whose job is done.
+         */
+        void jobDone(JobExecutor executor);
+    }
+
     private static final String PENDING_STATE = "PENDING"; 
     private static final String RUNNING_STATE = "RUNNING"; 
     private static final String DONE_STATE = "DONE"; 
     private static final String ERROR_STATE = "ERROR"; 
     private static final String KILLED_STATE = "KILLED";
     
-    /** Polling delay in ms. */
-    private static final long POLLING_DELAY = 1000L;
-    
     /** Number of ms. per min. */
     private static final long MILLISECONDS_IN_MINUTE = 60L * 1000L;
 
@@ -50,18 +68,29 @@ public class JobExecutor implements Runnable {
 
     private final InteractiveProcessFactory factory;
 
-    private final long pollingDelay;
+    private final Listener listener;
 
     private final String adaptorName;
 
     private final Files files;
     private final Path workingDirectory;
 
+    /** The name of the exit file of a recoverable process, or <code>null</code> if the process need not be recoverable. */
+    private final String exitFileName;
+
     private Streams streams;
 
+    private String processHandle;
+
+    private String exitFile;
+
+    private Process process;
+
+    /** The time at which the job exceeds its maximum run time, or 0 if it has none (in ms. since the epoch). */
+    private long endTime = 0;
+
     private Integer exitStatus;
 
-    private boolean updateSignal = false;
     private boolean isRunning = false;
     private boolean killed = false;
     private boolean done = false;
@@ -72,33 +101,59 @@ public class JobExecutor implements Runnable {
     private Exception error;
 
     public JobExecutor(String adaptorName, Files files, Path workingDirectory, InteractiveProcessFactory factory,
-            JobImplementation job, long pollingDelay) {
+            JobImplementation job, Listener listener) {
+        this(adaptorName, files, workingDirectory, factory, job, listener, null);
+    }
+
+    public JobExecutor(String adaptorName, Files files, Path workingDirectory, InteractiveProcessFactory factory,
+            JobImplementation job, Listener listener, String exitFileName) {
 
         this.adaptorName = adaptorName;
         this.files = files;
         this.workingDirectory = workingDirectory;
         this.job = job;
         this.factory = factory;
-        this.pollingDelay = pollingDelay;
+        this.listener = listener;
+        this.exitFileName = exitFileName;
     }
 
     public synchronized boolean hasRun() {
         return hasRun;
     }
 
-    public synchronized boolean kill() {
-        if (done) {
-            return true;
+    /**
+     * Kill the job. A job that has not been started yet is cancelled, and the process of a running job is destroyed.
+     * 
+     * @return if the job is done, <code>false</code> if the job is still being started, in which case it is killed as soon 
+     *          as the process is running.
+     */
+    public boolean kill() {
+
+        Process p;
+
+        synchronized (this) {
+            if (done) {
+                return true;
+            }
+
+            killed = true;
+
+            if (!isRunning) {
+                return updateState(KILLED_STATE, -1, new JobCanceledException(adaptorName, "Process cancelled by user."));
+            }
+
+            p = process;
         }
 
-        killed = true;
+        if (p == null) {
+            return false;
+        }
 
-        if (!isRunning) {
-            updateState(KILLED_STATE, -1, new JobCanceledException(adaptorName, "Process cancelled by user."));
-            return true;
+        if (!checkDone(p)) {
+            terminate(p, "Process cancelled by user.");
         }
 
-        return false;
+        return true;
     }
 
     public synchronized boolean isDone() {
@@ -109,13 +164,59 @@ public class JobExecutor implements Runnable {
         return job;
     }
 
-    public synchronized JobStatus getStatus() {
-        if (!done && RUNNING_STATE.equals(state)) {
-            triggerStatusUpdate();
-            waitForStatusUpdate(pollingDelay);
+    /**
+     * Check if the process of the job has finished, or has exceeded its maximum run time, in which case it is destroyed. 
+     * This method does not block. 
+     * 
+     * @return if the job is done.
+     */
+    public boolean poll() {
+
+        Process p;
+        long end;
+
+        synchronized (this) {
+            if (done || process == null) {
+                return done;
+            }
+
+            p = process;
+            end = endTime;
+        }
+
+        if (checkDone(p)) {
+            return true;
+        }
+
+        if (end > 0 && System.currentTimeMillis() > end) {
+            terminate(p, "Process timed out.");
+            return true;
+        }
+
+        return false;
+    }
+
+    private boolean checkDone(Process p) {
+        if (p.isDone()) {
+            updateState(DONE_STATE, p.getExitStatus(), null);
+            return true;
         }
 
-        return new JobStatusImplementation(job, state, exitStatus, error, RUNNING_STATE.equals(state), done, null);
+        return false;
+    }
+
+    private void terminate(Process p, String reason) {
+        // Destroy first, update state last, otherwise we have a race condition!
+        p.destroy();
+        updateState(KILLED_STATE, -1, new JobCanceledException(adaptorName, reason));
+    }
+
+    public JobStatus getStatus() {
+        poll();
+
+        synchronized (this) {
+            return new JobStatusImplementation(job, state, exitStatus, error, RUNNING_STATE.equals(state), done, null);
+        }
     }
 
     public synchronized String getState() {
@@ -126,22 +227,43 @@ public class JobExecutor implements Runnable {
         return error;
     }
 
-    private synchronized void updateState(String state, int exitStatus, Exception e) {
-
-        if (ERROR_STATE.equals(state) || KILLED_STATE.equals(state)) {
-            error = e;
-            done = true;
-        } else if (DONE_STATE.equals(state)) {
-            this.exitStatus = exitStatus;
-            done = true;
-        } else if (RUNNING_STATE.equals(state)) {
-            hasRun = true;
-        } else {
-            throw new InternalError("Illegal state: " + state);
+    /**
+     * Update the state of the job. Once the job is done, its state no longer changes.
+     * 
+     * @return if the job is done.
+     */
+    private boolean updateState(String state, int exitStatus, Exception e) {
+
+        synchronized (this) {
+            if (done) {
+                return true;
+            }
+
+            if (ERROR_STATE.equals(state) || KILLED_STATE.equals(state)) {
+                error = e;
+                done = true;
+            } else if (DONE_STATE.equals(state)) {
+                this.exitStatus = exitStatus;
+                done = true;
+            } else if (RUNNING_STATE.equals(state)) {
+                hasRun = true;
+            } else {
+                throw new InternalError("Illegal state: " + state);
+            }
+
+            this.state = state;
+            notifyAll();
+
+            if (!done) {
+                return false;
+            }
         }
 
-        this.state = state;
-        clearUpdateRequest();
+        if (listener != null) {
+            listener.jobDone(this);
+        }
+
+        return true;
     }
 
     private synchronized boolean getKilled() {
@@ -149,6 +271,75 @@ public class JobExecutor implements Runnable {
         return killed;
     }
 
+    /**
+     * Returns the handle of the process of the job, or <code>null</code> if the process is not running or not recoverable.
+     * 
+     * @return the handle of the process.
+     */
+    public synchronized String getProcessHandle() {
+        return processHandle;
+    }
+
+    /**
+     * Returns the absolute path of the exit file of the process of the job, or <code>null</code> if the process is not 
+     * running or not recoverable.
+     * 
+     * @return the path of the exit file.
+     */
+    public synchronized String getExitFile() {
+        return exitFile;
+    }
+
+    /**
+     * Re-attach the executor to the (recovered) process of its job, which is already running.
+     * 
+     * @param p
+     *          the process of the job.
+     */
+    public void recover(Process p) {
+
+        synchronized (this) {
+            process = p;
+            isRunning = true;
+
+            // The original start time is unknown, so the maximum run time starts again.
+            int maxTime = job.getJobDescription().getMaxTime();
+
+            if (maxTime > 0) {
+                endTime = System.currentTimeMillis() + maxTime * MILLISECONDS_IN_MINUTE;
+            }
+        }
+
+        updateState(RUNNING_STATE, -1, null);
+    }
+
+    /**
+     * Restore the final state of a job that was done before it was recovered. The listener is not notified.
+     * 
+     * @param state
+     *          the final state of the job.
+     * @param exitStatus
+     *          the exit status of the job, or <code>null</code> if it is not known.
+     * @param e
+     *          the error of the job, or <code>null</code> if there is none.
+     */
+    public synchronized void restore(String state, Integer exitStatus, Exception e) {
+        this.state = state;
+        this.exitStatus = exitStatus;
+        this.error = e;
+
+        isRunning = true;
+        hasRun = true;
+        done = true;
+
+        notifyAll();
+    }
+
+    private synchronized void setRecoveryInfo(String processHandle, String exitFile) {
+        this.processHandle = processHandle;
+        this.exitFile = exitFile;
+    }
+
     private synchronized void setStreams(Streams streams) {
         this.streams = streams;
     }
@@ -162,137 +353,60 @@ public class JobExecutor implements Runnable {
         throw new XenonException(adaptorName, "Job is not interactive!");
     }
         
-    public synchronized JobStatus waitUntilRunning(long timeout) {
+    public JobStatus waitUntilRunning(long timeout) {
 
         long deadline = Utils.getDeadline(timeout);
-                
-        triggerStatusUpdate();
 
-        long leftover = deadline - System.currentTimeMillis();
-        
-        while (leftover > 0 && PENDING_STATE.equals(state)) {
-            try {
-                wait(leftover);
-            } catch (InterruptedException e) {
-                // We were interrupted
-                Thread.currentThread().interrupt();
-                break;
+        synchronized (this) {
+            long leftover = deadline - System.currentTimeMillis();
+
+            while (leftover > 0 && PENDING_STATE.equals(state)) {
+                try {
+                    wait(leftover);
+                } catch (InterruptedException e) {
+                    // We were interrupted
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+
+                leftover = deadline - System.currentTimeMillis();
             }
-            
-            leftover = deadline - System.currentTimeMillis();
         }
 
         return getStatus();
     }
 
-    public synchronized JobStatus waitUntilDone(long timeout) {
+    public JobStatus waitUntilDone(long timeout) {
 
         long deadline = Utils.getDeadline(timeout);
-        
-        triggerStatusUpdate();
-
-        long leftover = deadline - System.currentTimeMillis();
-        
-        while (leftover > 0 && !done) {
-            
-            try {
-                wait(leftover);
-            } catch (InterruptedException e) {
-                // We were interrupted
-                Thread.currentThread().interrupt();
-                break;
-            }
-            
-            leftover = deadline - System.currentTimeMillis();
 
-        }
-
-        return getStatus();
-    }
-
-    /**
-     * Signal the polling thread to produce a status update.
-     */
-    private synchronized void triggerStatusUpdate() {
-        if (done) {
-            return;
-        }
+        poll();
 
-        updateSignal = true;
-        notifyAll();
-    }
+        synchronized (this) {
+            long leftover = deadline - System.currentTimeMillis();
 
-    /**
-     * Wait for a certain amount of time for an update.
-     * 
-     * @param maxDelay
-     *            the maximum time to wait
-     */
-    private synchronized void waitForStatusUpdate(long maxDelay) {
+            while (leftover > 0 && !done) {
+                try {
+                    wait(leftover);
+                } catch (InterruptedException e) {
+                    // We were interrupted
+                    Thread.currentThread().interrupt();
+                    break;
+                }
 
-        if (done || !updateSignal) {
-            return;
-        }
-        
-        long deadline = Utils.getDeadline(maxDelay);
-        
-        long left = maxDelay > 0 ? maxDelay : POLLING_DELAY; 
-        
-        while (!done && updateSignal && left > 0) { 
-            try {
-                wait(left);
-            } catch (InterruptedException e) {
-                // We were interrupted
-                Thread.currentThread().interrupt();
-                break;
+                leftover = deadline - System.currentTimeMillis();
             }
-
-            if (maxDelay > 0) { 
-                left = deadline - System.currentTimeMillis();
-            } 
         }
-    }
-    
-    /**
-     * Clear the update signal and wake up any waiting threads
-     */
-    private synchronized void clearUpdateRequest() {
-        updateSignal = false;
-        notifyAll();
+
+        return getStatus();
     }
 
     /**
-     * Sleep for a certain amount of time, provide the job is not done, and no one requested an update.
-     * 
-     * @param maxDelay
-     *            the maximum amount of time to wait
+     * Start the process of the job. Returns once the process is running, or has failed to start.
      */
-    private synchronized void sleep(long maxDelay) {
-
-        if (done || updateSignal || maxDelay <= 0) {
-            return;
-        }
-        
-        long deadline = Utils.getDeadline(maxDelay);
-        
-        long left = deadline - System.currentTimeMillis();
-        
-        while (!done && !updateSignal && left > 0) { 
-            try {
-                wait(left);
-            } catch (InterruptedException e) {
-                // We were interrupted
-                Thread.currentThread().interrupt();
-                break;
-            }
-
-            left = deadline - System.currentTimeMillis();
-        }
-    }
-
     @Override
     public void run() {
-        Process process;
+        Process p;
 
         JobDescription description = job.getJobDescription();
 
@@ -301,53 +415,43 @@ public class JobExecutor implements Runnable {
             return;
         }
 
-        long endTime = 0;
-        int maxTime = description.getMaxTime();
-
-        if (maxTime > 0) {
-            endTime = System.currentTimeMillis() + maxTime * MILLISECONDS_IN_MINUTE;
-        }
-
         try {
             if (description.isInteractive()) {
-                InteractiveProcess p = factory.createInteractiveProcess(job);
-                setStreams(p.getStreams());
-                process = p; 
+                InteractiveProcess tmp = factory.createInteractiveProcess(job);
+                setStreams(tmp.getStreams());
+                p = tmp; 
             } else {
-                process = new BatchProcess(files, workingDirectory, job, factory);
+                BatchProcess tmp = new BatchProcess(files, workingDirectory, job, factory, exitFileName);
+
+                if (tmp.getHandle() != null) {
+                    setRecoveryInfo(tmp.getHandle(), tmp.getExitFile().getRelativePath().getAbsolutePath());
+                }
+
+                p = tmp;
             }
         } catch (IOException | XenonException e) {
             updateState(ERROR_STATE, -1, e);
             return;
         }
 
-        updateState(RUNNING_STATE, -1, null);
+        boolean kill;
 
-        while (true) {
+        synchronized (this) {
+            process = p;
 
-            if (process.isDone()) {
-                updateState(DONE_STATE, process.getExitStatus(), null);
-                return;
-            }
+            int maxTime = description.getMaxTime();
 
-            if (getKilled()) {
-                // Destroy first, update state last, otherwise we have a race condition!
-                process.destroy();
-                updateState(KILLED_STATE, -1, new JobCanceledException(adaptorName, "Process cancelled by user."));                
-                return;
+            if (maxTime > 0) {
+                endTime = System.currentTimeMillis() + maxTime * MILLISECONDS_IN_MINUTE;
             }
 
-            if (maxTime > 0 && System.currentTimeMillis() > endTime) {
-                // Destroy first, update state last, otherwise we have a race condition!
-                process.destroy();
-                updateState(KILLED_STATE, -1, new JobCanceledException(adaptorName, "Process timed out."));
-                return;
-            }
+            kill = killed;
+        }
 
-            clearUpdateRequest();
+        updateState(RUNNING_STATE, -1, null);
 
-            sleep(pollingDelay);
+        if (kill) {
+            terminate(p, "Process cancelled by user.");
         }
     }
-
 }
@@ -0,0 +1,532 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.engine.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.UUID;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.jobs.JobDescription;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * JobJournal is an append-only log of the jobs of a {@link JobQueues}, which allows the jobs to be recovered after a restart.
+ * 
+ * The journal records the submission of each job, the handle of its process once it is started, the final state of the job,
+ * and the removal of the job from the queues. Every record is forced to disk before the corresponding call returns. 
+ * 
+ * When a journal is opened, the records of jobs that have not been removed are read back, and the file is rewritten to 
+ * contain only those jobs. A truncated record at the end of the journal (for example caused by a crash while writing) is 
+ * ignored. A lock file next to the journal is locked while the journal is open, so it cannot be used twice at the same time.
+ * 
+ * @version 1.0
+ * @since 1.0
+ */
+public class JobJournal {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JobJournal.class);
+
+    /** Identifies a journal file. */
+    private static final int MAGIC = 0x584a4e4c;
+
+    private static final byte SUBMITTED = 1;
+    private static final byte STARTED = 2;
+    private static final byte FINISHED = 3;
+    private static final byte REMOVED = 4;
+
+    /**
+     * The journaled information on a single job.
+     */
+    public static class JobEntry {
+
+        private final String identifier;
+        private final JobDescription description;
+
+        private String handle;
+        private String exitFile;
+
+        private String state;
+        private Integer exitCode;
+        private String error;
+
+        JobEntry(String identifier, JobDescription description) {
+            this.identifier = identifier;
+            this.description = description;
+        }
+
+        public String getIdentifier() {
+            return identifier;
+        }
+
+        public JobDescription getDescription() {
+            return description;
+        }
+
+        /**
+         * Returns the handle of the process of the job, or <code>null</code> if the job was not started.
+         * 
+         * @return the handle of the process.
+         */
+        public String getHandle() {
+            return handle;
+        }
+
+        /**
+         * Returns the absolute path of the file to which the exit code of the process is written, or <code>null</code> if the 
+         * job was not started.
+         * 
+         * @return the path of the exit code file.
+         */
+        public String getExitFile() {
+            return exitFile;
+        }
+
+        /**
+         * Returns the final state of the job, or <code>null</code> if the job was not finished.
+         * 
+         * @return the final state of the job.
+         */
+        public String getState() {
+            return state;
+        }
+
+        public Integer getExitCode() {
+            return exitCode;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+
+    private final String adaptorName;
+
+    private final File file;
+
+    private final String instanceID;
+
+    private final List<JobEntry> recovered;
+
+    private final RandomAccessFile lockFile;
+
+    private final FileLock lock;
+
+    private final RandomAccessFile raf;
+
+    private final FileChannel channel;
+
+    /**
+     * Open a journal, creating it if it does not exist yet.
+     * 
+     * @param adaptorName
+     *          the name of the adaptor using the journal.
+     * @param file
+     *          the journal file.
+     * @throws XenonException
+     *          if the journal could not be read or written, or is already in use.
+     */
+    public JobJournal(String adaptorName, File file) throws XenonException {
+        this.adaptorName = adaptorName;
+        this.file = file;
+
+        // The journal itself is replaced when it is compacted, so a separate file is locked.
+        try {
+            lockFile = new RandomAccessFile(file.getPath() + ".lock", "rw");
+        } catch (IOException e) {
+            throw new XenonException(adaptorName, "Failed to open job journal " + file, e);
+        }
+
+        try {
+            lock = lockFile.getChannel().tryLock();
+        } catch (IOException | OverlappingFileLockException e) {
+            closeQuietly(lockFile);
+            throw new XenonException(adaptorName, "Job journal " + file + " is already in use", e);
+        }
+
+        if (lock == null) {
+            closeQuietly(lockFile);
+            throw new XenonException(adaptorName, "Job journal " + file + " is already in use");
+        }
+
+        try {
+            Map<String, JobEntry> entries = new LinkedHashMap<>();
+
+            String id = null;
+
+            if (file.exists()) {
+                id = read(file, entries);
+            }
+
+            instanceID = (id == null) ? UUID.randomUUID().toString() : id;
+            recovered = new ArrayList<>(entries.values());
+
+            compact();
+
+            raf = new RandomAccessFile(file, "rw");
+            channel = raf.getChannel();
+            channel.position(channel.size());
+        } catch (IOException e) {
+            closeQuietly(lockFile);
+            throw new XenonException(adaptorName, "Failed to open job journal " + file, e);
+        }
+
+        LOGGER.debug("Opened job journal {} with {} jobs", file, recovered.size());
+    }
+
+    /**
+     * Returns a unique identifier of this journal that remains the same when the journal is reopened.
+     * 
+     * @return the identifier of the journal.
+     */
+    public String getInstanceID() {
+        return instanceID;
+    }
+
+    /**
+     * Returns the jobs that had not been removed when the journal was opened, in order of submission. 
+     * 
+     * @return the recovered jobs.
+     */
+    public List<JobEntry> getRecoveredJobs() {
+        return recovered;
+    }
+
+    public void submitted(String identifier, JobDescription description) throws XenonException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        try (DataOutputStream out = new DataOutputStream(buffer)) {
+            writeSubmitted(out, identifier, description);
+        } catch (IOException e) {
+            throw new XenonException(adaptorName, "Failed to write job journal", e);
+        }
+
+        append(buffer.toByteArray());
+    }
+
+    public void started(String identifier, String handle, String exitFile) throws XenonException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        try (DataOutputStream out = new DataOutputStream(buffer)) {
+            writeStarted(out, identifier, handle, exitFile);
+        } catch (IOException e) {
+            throw new XenonException(adaptorName, "Failed to write job journal", e);
+        }
+
+        append(buffer.toByteArray());
+    }
+
+    public void finished(String identifier, String state, Integer exitCode, Exception error) throws XenonException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        try (DataOutputStream out = new DataOutputStream(buffer)) {
+            writeFinished(out, identifier, state, exitCode, error == null ? null : error.getMessage());
+        } catch (IOException e) {
+            throw new XenonException(adaptorName, "Failed to write job journal", e);
+        }
+
+        append(buffer.toByteArray());
+    }
+
+    public void removed(String identifier) throws XenonException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        try (DataOutputStream out = new DataOutputStream(buffer)) {
+            out.writeByte(REMOVED);
+            out.writeUTF(identifier);
+        } catch (IOException e) {
+            throw new XenonException(adaptorName, "Failed to write job journal", e);
+        }
+
+        append(buffer.toByteArray());
+    }
+
+    public synchronized void close() {
+        try {
+            raf.close();
+            lock.release();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to close job journal {}", file, e);
+        }
+
+        closeQuietly(lockFile);
+    }
+
+    private static void closeQuietly(RandomAccessFile file) {
+        try {
+            file.close();
+        } catch (IOException e) {
+            // ignored
+        }
+    }
+
+    // Each record is prefixed by its length, so a truncated record at the end of the journal can be detected.
+    private synchronized void append(byte[] record) throws XenonException {
+        ByteBuffer buffer = ByteBuffer.allocate(4 + record.length);
+        buffer.putInt(record.length);
+        buffer.put(record);
+        buffer.flip();
+
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+
+            channel.force(false);
+        } catch (IOException e) {
+            throw new XenonException(adaptorName, "Failed to write job journal " + file, e);
+        }
+    }
+
+    private static String read(File file, Map<String, JobEntry> entries) throws IOException {
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a job journal: " + file);
+            }
+
+            String id = in.readUTF();
+
+            while (true) {
+                byte[] record;
+
+                try {
+                    int length = in.readInt();
+                    record = new byte[length];
+                    in.readFully(record);
+                } catch (EOFException e) {
+                    // End of journal, or a truncated record.
+                    return id;
+                }
+
+                readRecord(new DataInputStream(new ByteArrayInputStream(record)), entries);
+            }
+        }
+    }
+
+    private static void readRecord(DataInputStream in, Map<String, JobEntry> entries) throws IOException {
+
+        byte type = in.readByte();
+        String identifier = in.readUTF();
+
+        if (type == SUBMITTED) {
+            entries.put(identifier, new JobEntry(identifier, readDescription(in)));
+            return;
+        }
+
+        JobEntry entry = entries.get(identifier);
+
+        if (entry == null) {
+            return;
+        }
+
+        switch (type) {
+        case STARTED:
+            entry.handle = in.readUTF();
+            entry.exitFile = in.readUTF();
+            break;
+        case FINISHED:
+            entry.state = in.readUTF();
+            entry.exitCode = in.readBoolean() ? in.readInt() : null;
+            entry.error = readString(in);
+            break;
+        case REMOVED:
+            entries.remove(identifier);
+            break;
+        default:
+            throw new IOException("Unknown journal record type " + type);
+        }
+    }
+
+    // Rewrite the journal, so it only contains the recovered jobs.
+    private void compact() throws IOException {
+
+        File tmp = new File(file.getPath() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+
+            out.writeInt(MAGIC);
+            out.writeUTF(instanceID);
+
+            for (JobEntry entry : recovered) {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                DataOutputStream record = new DataOutputStream(buffer);
+
+                writeSubmitted(record, entry.identifier, entry.description);
+                writeRecord(out, buffer);
+
+                if (entry.handle != null) {
+                    writeStarted(record, entry.identifier, entry.handle, entry.exitFile);
+                    writeRecord(out, buffer);
+                }
+
+                if (entry.state != null) {
+                    writeFinished(record, entry.identifier, entry.state, entry.exitCode, entry.error);
+                    writeRecord(out, buffer);
+                }
+            }
+        }
+
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, 
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeRecord(DataOutputStream out, ByteArrayOutputStream record) throws IOException {
+        out.writeInt(record.size());
+        record.writeTo(out);
+        record.reset();
+    }
+
+    private static void writeSubmitted(DataOutputStream out, String identifier, JobDescription description) 
+            throws IOException {
+        out.writeByte(SUBMITTED);
+        out.writeUTF(identifier);
+        writeDescription(out, description);
+    }
+
+    private static void writeStarted(DataOutputStream out, String identifier, String handle, String exitFile) 
+            throws IOException {
+        out.writeByte(STARTED);
+        out.writeUTF(identifier);
+        out.writeUTF(handle);
+        out.writeUTF(exitFile);
+    }
+
+    private static void writeFinished(DataOutputStream out, String identifier, String state, Integer exitCode, String error)
+            throws IOException {
+        out.writeByte(FINISHED);
+        out.writeUTF(identifier);
+        out.writeUTF(state);
+        out.writeBoolean(exitCode != null);
+
+        if (exitCode != null) {
+            out.writeInt(exitCode);
+        }
+
+        writeString(out, error);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        out.writeBoolean(s != null);
+
+        if (s != null) {
+            out.writeUTF(s);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeMap(DataOutputStream out, Map<String, String> map) throws IOException {
+        out.writeInt(map.size());
+
+        for (Entry<String, String> e : map.entrySet()) {
+            out.writeUTF(e.getKey());
+            writeString(out, e.getValue());
+        }
+    }
+
+    private static Map<String, String> readMap(DataInputStream in) throws IOException {
+        int size = in.readInt();
+
+        Map<String, String> result = new HashMap<>(size);
+
+        for (int i = 0; i < size; i++) {
+            result.put(in.readUTF(), readString(in));
+        }
+
+        return result;
+    }
+
+    private static void writeDescription(DataOutputStream out, JobDescription description) throws IOException {
+        writeString(out, description.getQueueName());
+        writeString(out, description.getExecutable());
+
+        List<String> arguments = description.getArguments();
+        out.writeInt(arguments.size());
+
+        for (String argument : arguments) {
+            out.writeUTF(argument);
+        }
+
+        writeString(out, description.getStdin());
+        writeString(out, description.getStdout());
+        writeString(out, description.getStderr());
+        writeString(out, description.getWorkingDirectory());
+        writeMap(out, description.getEnvironment());
+        writeMap(out, description.getJobOptions());
+        out.writeInt(description.getNodeCount());
+        out.writeInt(description.getProcessesPerNode());
+        out.writeBoolean(description.isStartSingleProcess());
+        out.writeInt(description.getMaxTime());
+        out.writeBoolean(description.isInteractive());
+    }
+
+    private static JobDescription readDescription(DataInputStream in) throws IOException {
+        JobDescription description = new JobDescription();
+
+        description.setQueueName(readString(in));
+        description.setExecutable(readString(in));
+
+        int count = in.readInt();
+        String[] arguments = new String[count];
+
+        for (int i = 0; i < count; i++) {
+            arguments[i] = in.readUTF();
+        }
+
+        description.setArguments(arguments);
+        description.setStdin(readString(in));
+        description.setStdout(readString(in));
+        description.setStderr(readString(in));
+        description.setWorkingDirectory(readString(in));
+        description.setEnvironment(readMap(in));
+        description.setJobOptions(readMap(in));
+        description.setNodeCount(in.readInt());
+        description.setProcessesPerNode(in.readInt());
+        description.setStartSingleProcess(in.readBoolean());
+        description.setMaxTime(in.readInt());
+        description.setInteractive(in.readBoolean());
+
+        return description;
+    }
+}
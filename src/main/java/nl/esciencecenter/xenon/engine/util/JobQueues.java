@@ -16,24 +16,31 @@
 package nl.esciencecenter.xenon.engine.util;
 
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicLong;
 
 import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.engine.files.PathImplementation;
 import nl.esciencecenter.xenon.engine.jobs.JobImplementation;
 import nl.esciencecenter.xenon.engine.jobs.JobStatusImplementation;
 import nl.esciencecenter.xenon.engine.jobs.QueueStatusImplementation;
 import nl.esciencecenter.xenon.files.Files;
 import nl.esciencecenter.xenon.files.Path;
+import nl.esciencecenter.xenon.files.RelativePath;
 import nl.esciencecenter.xenon.jobs.IncompleteJobDescriptionException;
 import nl.esciencecenter.xenon.jobs.InvalidJobDescriptionException;
 import nl.esciencecenter.xenon.jobs.Job;
+import nl.esciencecenter.xenon.jobs.JobCanceledException;
 import nl.esciencecenter.xenon.jobs.JobDescription;
 import nl.esciencecenter.xenon.jobs.JobStatus;
+import nl.esciencecenter.xenon.jobs.NoSuchJobException;
 import nl.esciencecenter.xenon.jobs.NoSuchQueueException;
 import nl.esciencecenter.xenon.jobs.QueueStatus;
 import nl.esciencecenter.xenon.jobs.Scheduler;
@@ -59,11 +66,87 @@ public class JobQueues {
         }
     }
 
+    /**
+     * Limits the number of jobs of a queue that run at the same time. Jobs that cannot run yet are kept in a waiting list 
+     * until a running job is done. Threads are only used while a process is being started.
+     */
+    private class Slots implements JobExecutor.Listener {
+
+        private final int maxRunning;
+
+        private int running = 0;
+
+        private final LinkedHashSet<JobExecutor> waiting = new LinkedHashSet<>();
+
+        Slots(int maxRunning) {
+            this.maxRunning = maxRunning;
+        }
+
+        synchronized void submit(JobExecutor executor) {
+            if (running < maxRunning) {
+                start(executor);
+            } else {
+                waiting.add(executor);
+            }
+        }
+
+        /**
+         * Add a recovered job, whose process is already running.
+         */
+        synchronized void reattach(JobExecutor executor) {
+            running++;
+            reaper.add(executor);
+        }
+
+        @Override
+        public void jobDone(JobExecutor executor) {
+
+            journalFinished(executor);
+
+            synchronized (this) {
+                // A job that is cancelled while waiting never used a slot.
+                if (waiting.remove(executor)) {
+                    return;
+                }
+
+                running--;
+
+                Iterator<JobExecutor> itt = waiting.iterator();
+
+                while (running < maxRunning && itt.hasNext()) {
+                    JobExecutor next = itt.next();
+                    itt.remove();
+                    start(next);
+                }
+            }
+        }
+
+        private void start(final JobExecutor executor) {
+            running++;
+
+            starter.execute(new Runnable() {
+                @Override
+                public void run() {
+                    executor.run();
+                    journalStarted(executor);
+
+                    if (!executor.isDone()) {
+                        reaper.add(executor);
+                    }
+                }
+            });
+        }
+    }
+
     private static final String SINGLE_QUEUE_NAME = "single";
     
     private static final String MULTI_QUEUE_NAME = "multi";
     
     private static final String UNLIMITED_QUEUE_NAME = "unlimited";
+
+    private static final String DONE_STATE = "DONE";
+    private static final String ERROR_STATE = "ERROR";
+    private static final String KILLED_STATE = "KILLED";
     
     private static final Logger LOGGER = LoggerFactory.getLogger(JobQueues.class);
 
@@ -81,26 +164,53 @@ public class JobQueues {
 
     private final Path workingDirectory;
 
-    private final List<JobExecutor> singleQ;
+    /** All jobs, indexed by their identifier. */
+    private final ConcurrentHashMap<String, JobExecutor> jobs = new ConcurrentHashMap<>();
+
+    /** The jobs of each queue, ordered by job number. */
+    private final ConcurrentSkipListMap<Long, JobExecutor> singleQ = new ConcurrentSkipListMap<>();
 
-    private final List<JobExecutor> multiQ;
+    private final ConcurrentSkipListMap<Long, JobExecutor> multiQ = new ConcurrentSkipListMap<>();
 
-    private final List<JobExecutor> unlimitedQ;
+    private final ConcurrentSkipListMap<Long, JobExecutor> unlimitedQ = new ConcurrentSkipListMap<>();
 
-    private final ExecutorService singleExecutor;
+    private final Slots singleSlots;
 
-    private final ExecutorService multiExecutor;
+    private final Slots multiSlots;
 
-    private final ExecutorService unlimitedExecutor;
+    private final Slots unlimitedSlots;
+
+    /** Used to start processes. */
+    private final ExecutorService starter;
+
+    /** Detects that running processes have finished. */
+    private final ProcessReaper reaper;
 
     private final long pollingDelay;
 
     private final InteractiveProcessFactory factory;
 
+    /** Records the batch jobs so they can be recovered after a restart, or <code>null</code> if not used. */
+    private final JobJournal journal;
+
+    /** Recovered jobs that were never started, or <code>null</code> if there are none. */
+    private List<JobExecutor> notStarted;
+
     private final AtomicLong jobID = new AtomicLong(0L);
 
     public JobQueues(String adaptorName, Files myFiles, Scheduler myScheduler, Path workingDirectory,
             InteractiveProcessFactory factory, int multiQThreads, long pollingDelay) throws BadParameterException {
+        this(adaptorName, myFiles, myScheduler, workingDirectory, factory, multiQThreads, pollingDelay, null);
+    }
+
+    /**
+     * Create the job queues. If a journal is provided, the jobs recorded in the journal are recovered. Jobs that were never 
+     * started are queued again, running processes are re-attached to if the factory is a {@link RecoverableProcessFactory}, 
+     * and jobs that are done (also while the JVM was down) report their final state.
+     */
+    public JobQueues(String adaptorName, Files myFiles, Scheduler myScheduler, Path workingDirectory,
+            InteractiveProcessFactory factory, int multiQThreads, long pollingDelay, JobJournal journal) 
+            throws BadParameterException {
 
         LOGGER.debug("Creating JobQueues for Adaptor {} with multiQThreads: {} and pollingDelay: {}", adaptorName, multiQThreads,
                 pollingDelay);
@@ -111,11 +221,7 @@ public class JobQueues {
         this.workingDirectory = workingDirectory;
         this.factory = factory;
         this.pollingDelay = pollingDelay;
-        
-
-        singleQ = new LinkedList<>();
-        multiQ = new LinkedList<>();
-        unlimitedQ = new LinkedList<>();
+        this.journal = journal;
 
         if (multiQThreads < 1) {
             throw new BadParameterException(adaptorName, "Number of slots for the multi queue cannot be smaller than one!");
@@ -128,9 +234,169 @@ public class JobQueues {
 
         ThreadFactory threadFactory = new DaemonThreadFactory();
 
-        unlimitedExecutor = Executors.newCachedThreadPool(threadFactory);
-        singleExecutor = Executors.newSingleThreadExecutor(threadFactory);
-        multiExecutor = Executors.newFixedThreadPool(multiQThreads, threadFactory);
+        starter = Executors.newCachedThreadPool(threadFactory);
+
+        singleSlots = new Slots(1);
+        multiSlots = new Slots(multiQThreads);
+        unlimitedSlots = new Slots(Integer.MAX_VALUE);
+
+        reaper = new ProcessReaper(adaptorName, pollingDelay);
+        reaper.start();
+
+        if (journal != null) {
+            recoverJobs();
+        }
+    }
+
+    private boolean isJournaled(JobExecutor executor) {
+        return journal != null && !executor.getJob().getJobDescription().isInteractive();
+    }
+
+    private String getExitFileName(String identifier) {
+        return ".xenon-" + journal.getInstanceID() + "-" + identifier + ".exit";
+    }
+
+    private void journalStarted(JobExecutor executor) {
+
+        if (!isJournaled(executor) || executor.getProcessHandle() == null) {
+            return;
+        }
+
+        try {
+            journal.started(executor.getJob().getIdentifier(), executor.getProcessHandle(), executor.getExitFile());
+        } catch (XenonException e) {
+            LOGGER.warn("{}: Failed to journal start of job {}", adaptorName, executor.getJob().getIdentifier(), e);
+        }
+    }
+
+    private void journalFinished(JobExecutor executor) {
+
+        if (!isJournaled(executor)) {
+            return;
+        }
+
+        JobStatus status = executor.getStatus();
+
+        try {
+            journal.finished(executor.getJob().getIdentifier(), status.getState(), status.getExitCode(), status.getException());
+        } catch (XenonException e) {
+            LOGGER.warn("{}: Failed to journal end of job {}", adaptorName, executor.getJob().getIdentifier(), e);
+        }
+    }
+
+    private void journalRemoved(JobExecutor executor) {
+
+        if (!isJournaled(executor)) {
+            return;
+        }
+
+        try {
+            journal.removed(executor.getJob().getIdentifier());
+        } catch (XenonException e) {
+            LOGGER.warn("{}: Failed to journal removal of job {}", adaptorName, executor.getJob().getIdentifier(), e);
+        }
+    }
+
+    private void recoverJobs() {
+
+        long maxID = -1;
+
+        for (JobJournal.JobEntry entry : journal.getRecoveredJobs()) {
+
+            String identifier = entry.getIdentifier();
+
+            try {
+                maxID = Math.max(maxID, getJobNumber(identifier));
+                recoverJob(entry);
+            } catch (NumberFormatException | XenonException e) {
+                LOGGER.warn("{}: Failed to recover job {}", adaptorName, identifier, e);
+            }
+        }
+
+        jobID.set(maxID + 1);
+    }
+
+    private void recoverJob(JobJournal.JobEntry entry) throws XenonException {
+
+        String identifier = entry.getIdentifier();
+        String queueName = entry.getDescription().getQueueName();
+
+        Slots slots = findSlots(queueName);
+
+        JobImplementation job = new JobImplementation(myScheduler, identifier, entry.getDescription(), false, true);
+
+        if (entry.getState() != null) {
+            LOGGER.debug("{}: Recovered job {} which is done", adaptorName, identifier);
+
+            JobExecutor executor = new JobExecutor(adaptorName, myFiles, workingDirectory, factory, job, null);
+            executor.restore(entry.getState(), entry.getExitCode(), getRecoveredError(entry));
+            addJob(executor);
+            return;
+        }
+
+        JobExecutor executor = new JobExecutor(adaptorName, myFiles, workingDirectory, factory, job, slots, 
+                getExitFileName(identifier));
+
+        addJob(executor);
+
+        if (entry.getHandle() == null) {
+            LOGGER.debug("{}: Recovered job {} which was not started yet", adaptorName, identifier);
+
+            if (notStarted == null) {
+                notStarted = new LinkedList<>();
+            }
+
+            notStarted.add(executor);
+            return;
+        }
+
+        try {
+            if (!(factory instanceof RecoverableProcessFactory)) {
+                throw new XenonException(adaptorName, "Cannot recover process of job " + identifier);
+            }
+
+            // Jobs are recovered while the adaptors are still being created, so the path is created directly.
+            Path exitFile = new PathImplementation(workingDirectory.getFileSystem(), new RelativePath(entry.getExitFile()));
+            
+            executor.recover(((RecoverableProcessFactory) factory).recoverProcess(entry.getHandle(), exitFile));
+            slots.reattach(executor);
+
+            LOGGER.debug("{}: Re-attached to process {} of job {}", adaptorName, entry.getHandle(), identifier);
+        } catch (XenonException e) {
+            executor.restore(ERROR_STATE, null, new XenonException(adaptorName, "Lost process of job " + identifier, e));
+            journalFinished(executor);
+        }
+    }
+
+    /**
+     * Submit the recovered jobs that were never started. This is deferred until the queues are first used, as starting a job 
+     * requires the adaptors, which are still being created when the jobs are recovered. 
+     */
+    private synchronized void startRecoveredJobs() {
+
+        if (notStarted == null) {
+            return;
+        }
+
+        for (JobExecutor executor : notStarted) {
+            findSlots(executor.getJob().getJobDescription().getQueueName()).submit(executor);
+        }
+
+        notStarted = null;
+    }
+
+    private Exception getRecoveredError(JobJournal.JobEntry entry) {
+
+        if (entry.getError() == null || DONE_STATE.equals(entry.getState())) {
+            return null;
+        }
+
+        // The journaled message already contains the adaptor name.
+        if (KILLED_STATE.equals(entry.getState())) {
+            return new JobCanceledException(null, entry.getError());
+        }
+
+        return new XenonException(null, entry.getError());
     }
 
     public long getCurrentJobID() {
@@ -149,8 +415,8 @@ public class JobQueues {
         }
     }
 
-    private void getJobs(List<JobExecutor> list, List<Job> out) {
-        for (JobExecutor e : list) {
+    private void getJobs(ConcurrentSkipListMap<Long, JobExecutor> queue, List<Job> out) {
+        for (JobExecutor e : queue.values()) {
             out.add(e.getJob());
         }
     }
@@ -163,6 +429,8 @@ public class JobQueues {
 
         LOGGER.debug("{}: getJobs for queues {}", adaptorName, queueNames);
 
+        startRecoveredJobs();
+
         LinkedList<Job> out = new LinkedList<>();
 
         if (queueNames == null || queueNames.length == 0) {
@@ -188,7 +456,7 @@ public class JobQueues {
         return out.toArray(new Job[out.size()]);
     }
 
-    private List<JobExecutor> findQueue(String queueName) throws XenonException {
+    private ConcurrentSkipListMap<Long, JobExecutor> findQueue(String queueName) throws XenonException {
 
         if (queueName == null || SINGLE_QUEUE_NAME.equals(queueName)) {
             return singleQ;
@@ -201,39 +469,59 @@ public class JobQueues {
         }
     }
 
-    private JobExecutor findJob(List<JobExecutor> queue, Job job) throws XenonException {
-        
-        LOGGER.debug("{}: findJob for job {}", adaptorName, job.getIdentifier());
-        
-        for (JobExecutor e : queue) {
-            if (e.getJob().equals(job)) {
-                return e;
-            }
+    private Slots findSlots(String queueName) {
+
+        if (UNLIMITED_QUEUE_NAME.equals(queueName)) {
+            return unlimitedSlots;
+        } else if (MULTI_QUEUE_NAME.equals(queueName)) {
+            return multiSlots;
+        } else {
+            return singleSlots;
         }
+    }
+
+    /**
+     * Returns the number of a job, which is the suffix of its identifier.
+     */
+    private static long getJobNumber(String identifier) {
+        return Long.parseLong(identifier.substring(identifier.lastIndexOf('-') + 1));
+    }
+
+    private void addJob(JobExecutor executor) throws XenonException {
+        Job job = executor.getJob();
 
-        throw new XenonException(adaptorName, "Job not found: " + job.getIdentifier());
+        findQueue(job.getJobDescription().getQueueName()).put(getJobNumber(job.getIdentifier()), executor);
+        jobs.put(job.getIdentifier(), executor);
     }
 
     private JobExecutor findJob(Job job) throws XenonException {
 
         LOGGER.debug("{}: findJob for job {}", adaptorName, job.getIdentifier());
 
-        return findJob(findQueue(job.getJobDescription().getQueueName()), job);
-    }
+        // Fails if the job does not belong to one of our queues.
+        findQueue(job.getJobDescription().getQueueName());
 
-    private void cleanupJob(List<JobExecutor> queue, Job job) {
+        String identifier = job.getIdentifier();
+        JobExecutor e = (identifier == null) ? null : jobs.get(identifier);
 
-        LOGGER.debug("{}: cleanupJob for job {}", adaptorName, job.getIdentifier());
+        // The job may also have been removed after it was done, which is final as well.
+        if (e == null || !e.getJob().equals(job)) {
+            throw new NoSuchJobException(adaptorName, "Job not found: " + job.getIdentifier());
+        }
 
-        Iterator<JobExecutor> itt = queue.iterator();
+        return e;
+    }
 
-        while (itt.hasNext()) {
-            JobExecutor e = itt.next();
+    private void cleanupJob(JobExecutor executor) throws XenonException {
 
-            if (e.getJob().equals(job)) {
-                itt.remove();
-                return;
-            }
+        Job job = executor.getJob();
+
+        LOGGER.debug("{}: cleanupJob for job {}", adaptorName, job.getIdentifier());
+
+        // Only one of the threads that see the job is done removes it.
+        if (jobs.remove(job.getIdentifier(), executor)) {
+            findQueue(job.getJobDescription().getQueueName()).remove(getJobNumber(job.getIdentifier()), executor);
+            journalRemoved(executor);
         }
     }
 
@@ -241,12 +529,13 @@ public class JobQueues {
         LOGGER.debug("{}: getJobStatus for job {}", adaptorName, job.getIdentifier());
 
         checkScheduler(job.getScheduler());
+        startRecoveredJobs();
 
-        List<JobExecutor> queue = findQueue(job.getJobDescription().getQueueName());
-        JobStatus status = findJob(queue, job).getStatus();
+        JobExecutor e = findJob(job);
+        JobStatus status = e.getStatus();
 
         if (status.isDone()) {
-            cleanupJob(queue, job);
+            cleanupJob(e);
         }
 
         return status;
@@ -277,13 +566,14 @@ public class JobQueues {
         LOGGER.debug("{}: Waiting for job {} for {} ms.", adaptorName, job.getIdentifier(), timeout);
 
         checkScheduler(job.getScheduler());
+        startRecoveredJobs();
 
-        List<JobExecutor> queue = findQueue(job.getJobDescription().getQueueName());
-        JobStatus status = findJob(queue, job).waitUntilDone(timeout);
+        JobExecutor e = findJob(job);
+        JobStatus status = e.waitUntilDone(timeout);
 
         if (status.isDone()) {
             LOGGER.debug("{}: Job {} is done after {} ms.", adaptorName, job.getIdentifier(), timeout);
-            cleanupJob(queue, job);
+            cleanupJob(e);
         } else {
             LOGGER.debug("{}: Job {} is NOT done after {} ms.", adaptorName, job.getIdentifier(), timeout);
         }
@@ -296,13 +586,14 @@ public class JobQueues {
         LOGGER.debug("{}: Waiting for job {} to start for {} ms.", adaptorName, job.getIdentifier(), timeout);
 
         checkScheduler(job.getScheduler());
+        startRecoveredJobs();
 
-        List<JobExecutor> queue = findQueue(job.getJobDescription().getQueueName());
-        JobStatus status = findJob(queue, job).waitUntilRunning(timeout);
+        JobExecutor e = findJob(job);
+        JobStatus status = e.waitUntilRunning(timeout);
 
         if (status.isDone()) {
             LOGGER.debug("{}: Job {} is done within {} ms.", adaptorName, job.getIdentifier(), timeout);
-            cleanupJob(queue, job);
+            cleanupJob(e);
         } else {
             LOGGER.debug("{}: Job {} is NOT done after {} ms.", adaptorName, job.getIdentifier(), timeout);
         }
@@ -369,6 +660,7 @@ public class JobQueues {
         LOGGER.debug("{}: Submitting job", adaptorName);
 
         verifyJobDescription(description);
+        startRecoveredJobs();
 
         // Copy the JobDescription to ensure that the user doesn't change it after we return. 
         JobDescription copyOfDescription = new JobDescription(description);
@@ -380,24 +672,26 @@ public class JobQueues {
 
         LOGGER.debug("{}: Created Job {}", adaptorName, result.getIdentifier());
 
-        JobExecutor executor = new JobExecutor(adaptorName, myFiles, workingDirectory, factory, result, pollingDelay);
-
         String queueName = copyOfDescription.getQueueName();
 
         LOGGER.debug("{}: Submitting job to queue {}", adaptorName, queueName);
 
         // NOTE: the verifyJobDescription ensures that the queueName has a valid value!
-        if (UNLIMITED_QUEUE_NAME.equals(queueName)) {
-            unlimitedQ.add(executor);
-            unlimitedExecutor.execute(executor);
-        } else if (MULTI_QUEUE_NAME.equals(queueName)) {
-            multiQ.add(executor);
-            multiExecutor.execute(executor);
-        } else { // queueName must be SINGLE_QUEUE_NAME
-            singleQ.add(executor);
-            singleExecutor.execute(executor);
+        Slots slots = findSlots(queueName);
+
+        JobExecutor executor;
+
+        if (journal != null && !copyOfDescription.isInteractive()) {
+            journal.submitted(result.getIdentifier(), copyOfDescription);
+            executor = new JobExecutor(adaptorName, myFiles, workingDirectory, factory, result, slots, 
+                    getExitFileName(result.getIdentifier()));
+        } else {
+            executor = new JobExecutor(adaptorName, myFiles, workingDirectory, factory, result, slots);
         }
 
+        addJob(executor);
+        slots.submit(executor);
+
         if (copyOfDescription.isInteractive()) {
         
             LOGGER.debug("{}: Waiting for interactive job in queue {} to start.", adaptorName, queueName);
@@ -405,7 +699,7 @@ public class JobQueues {
             executor.waitUntilRunning(0);
 
             if (executor.isDone() && !executor.hasRun()) {
-                cleanupJob(findQueue(queueName), result);
+                cleanupJob(executor);
                 throw new XenonException(adaptorName, "Job failed to start!", executor.getError());
             }
         }
@@ -413,14 +707,48 @@ public class JobQueues {
         return result;
     }
 
+    public long getPollingDelay() {
+        return pollingDelay;
+    }
+
+    public Job[] submitJobs(JobDescription... descriptions) throws XenonException {
+
+        LOGGER.debug("{}: Submitting {} jobs", adaptorName, descriptions.length);
+
+        for (JobDescription description : descriptions) {
+            verifyJobDescription(description);
+        }
+
+        Job[] result = new Job[descriptions.length];
+
+        try {
+            for (int i = 0; i < descriptions.length; i++) {
+                result[i] = submitJob(descriptions[i]);
+            }
+        } catch (XenonException e) {
+            // Do not leave a partially submitted set of jobs behind.
+            for (Job job : result) {
+                if (job != null) {
+                    try {
+                        cancelJob(job);
+                    } catch (XenonException e2) {
+                        LOGGER.debug("{}: Failed to cancel job {}", adaptorName, job, e2);
+                    }
+                }
+            }
+            throw e;
+        }
+
+        return result;
+    }
+
     public JobStatus cancelJob(Job job) throws XenonException {
         LOGGER.debug("{}: Cancel job {}", adaptorName, job);
 
         checkScheduler(job.getScheduler());
+        startRecoveredJobs();
 
-        List<JobExecutor> queue = findQueue(job.getJobDescription().getQueueName());
-
-        JobExecutor e = findJob(queue, job);
+        JobExecutor e = findJob(job);
 
         boolean killed = e.kill();
 
@@ -433,7 +761,7 @@ public class JobQueues {
         }
 
         if (status.isDone()) {
-            cleanupJob(queue, job);
+            cleanupJob(e);
         }
 
         return status;
@@ -493,8 +821,11 @@ public class JobQueues {
     }
 
     public void end() {
-        singleExecutor.shutdownNow();
-        multiExecutor.shutdownNow();
-        unlimitedExecutor.shutdownNow();
+        reaper.end();
+        starter.shutdownNow();
+
+        if (journal != null) {
+            journal.close();
+        }
     }
 }
@@ -0,0 +1,422 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.engine.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import nl.esciencecenter.xenon.jobs.Job;
+import nl.esciencecenter.xenon.jobs.JobStatus;
+import nl.esciencecenter.xenon.jobs.JobStatusListener;
+import nl.esciencecenter.xenon.jobs.Jobs;
+import nl.esciencecenter.xenon.jobs.NoSuchJobException;
+import nl.esciencecenter.xenon.jobs.Scheduler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * JobStatusMonitor notifies {@link JobStatusListener}s of changes in the status of jobs. 
+ * 
+ * For each Scheduler that has jobs with listeners, a single daemon thread periodically retrieves the status of all these jobs
+ * in one call to {@link Jobs#getJobStatuses(Job...)}, and notifies the listeners of the jobs whose state has changed. The 
+ * thread stops when no listeners are left.
+ * 
+ * @version 1.0
+ * @since 1.0
+ */
+public class JobStatusMonitor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JobStatusMonitor.class);
+
+    /**
+     * Polls the status of all jobs of a single scheduler.
+     */
+    private class Poller extends Thread {
+
+        private final Scheduler scheduler;
+
+        private final long pollDelay;
+
+        /** The listeners for each job, guarded by the monitor */
+        private final Map<Job, List<JobStatusListener>> listeners = new HashMap<>();
+
+        /** The listeners for each job that have not been notified yet, guarded by the monitor */
+        private final Map<Job, List<JobStatusListener>> newListeners = new HashMap<>();
+
+        /** The last status delivered for each job, guarded by the monitor */
+        private final Map<Job, JobStatus> lastStatus = new HashMap<>();
+
+        Poller(Scheduler scheduler, long pollDelay) {
+            super("JobStatusMonitor for " + scheduler);
+            this.scheduler = scheduler;
+            this.pollDelay = pollDelay;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Job[] toPoll;
+
+                synchronized (JobStatusMonitor.this) {
+                    if (ended || isIdle()) {
+                        pollers.remove(scheduler);
+                        return;
+                    }
+
+                    Set<Job> tmp = new HashSet<>(listeners.keySet());
+                    tmp.addAll(newListeners.keySet());
+                    toPoll = tmp.toArray(new Job[tmp.size()]);
+                }
+
+                try {
+                    JobStatus[] statuses = jobs.getJobStatuses(toPoll);
+
+                    for (int i = 0; i < toPoll.length; i++) {
+                        deliver(toPoll[i], statuses[i]);
+                    }
+                } catch (RuntimeException e) {
+                    LOGGER.warn("{}: Failed to retrieve status of jobs at {}", adaptorName, scheduler, e);
+                }
+
+                synchronized (JobStatusMonitor.this) {
+                    if (!ended && !isIdle()) {
+                        try {
+                            JobStatusMonitor.this.wait(pollDelay);
+                        } catch (InterruptedException e) {
+                            pollers.remove(scheduler);
+                            return;
+                        }
+                    }
+                }
+            }
+        }
+
+        private boolean isIdle() {
+            return listeners.isEmpty() && newListeners.isEmpty();
+        }
+
+        private void deliver(Job job, JobStatus status) {
+
+            if (status == null) {
+                return;
+            }
+
+            boolean last = status.isDone() || status.getException() instanceof NoSuchJobException;
+
+            if (!last && status.hasException()) {
+                // Probably a temporary problem in retrieving the status, so try again later.
+                LOGGER.debug("{}: Failed to retrieve status of job {}", adaptorName, job, status.getException());
+                return;
+            }
+
+            List<JobStatusListener> targets = new ArrayList<>();
+
+            synchronized (JobStatusMonitor.this) {
+                List<JobStatusListener> current = listeners.get(job);
+                List<JobStatusListener> added = newListeners.remove(job);
+
+                JobStatus previous = lastStatus.get(job);
+
+                // Existing listeners are only notified of changes, new listeners always get the current status.
+                if (current != null && (last || previous == null || !equalState(previous, status))) {
+                    targets.addAll(current);
+                }
+
+                if (added != null) {
+                    targets.addAll(added);
+                }
+
+                if (last) {
+                    listeners.remove(job);
+                    lastStatus.remove(job);
+                } else if (current != null || added != null) {
+                    lastStatus.put(job, status);
+
+                    if (current == null) {
+                        listeners.put(job, added);
+                    } else if (added != null) {
+                        current.addAll(added);
+                    }
+                }
+            }
+
+            for (JobStatusListener listener : targets) {
+                try {
+                    listener.statusChanged(status);
+                } catch (RuntimeException e) {
+                    LOGGER.warn("{}: JobStatusListener {} failed", adaptorName, listener, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * A Future that completes once a job reaches a certain status.
+     */
+    private class StatusFuture implements Future<JobStatus>, JobStatusListener {
+
+        private final Job job;
+
+        private final boolean untilDone;
+
+        private JobStatus result;
+
+        private boolean cancelled = false;
+
+        StatusFuture(Job job, boolean untilDone) {
+            this.job = job;
+            this.untilDone = untilDone;
+        }
+
+        @Override
+        public void statusChanged(JobStatus status) {
+
+            if (!status.isDone() && !status.hasException() && (untilDone || !status.isRunning())) {
+                return;
+            }
+
+            synchronized (this) {
+                if (result != null || cancelled) {
+                    return;
+                }
+
+                result = status;
+                notifyAll();
+            }
+
+            removeListener(job, this);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            synchronized (this) {
+                if (result != null || cancelled) {
+                    return false;
+                }
+
+                cancelled = true;
+                notifyAll();
+            }
+
+            removeListener(job, this);
+            return true;
+        }
+
+        @Override
+        public synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public synchronized boolean isDone() {
+            return result != null || cancelled;
+        }
+
+        @Override
+        public synchronized JobStatus get() throws InterruptedException, ExecutionException {
+
+            while (result == null && !cancelled) {
+                wait();
+            }
+
+            return getResult();
+        }
+
+        /*
+         * Waits at most the given time. A timeout of 0 or less only checks if the status is already available.
+         */
+        @Override
+        public synchronized JobStatus get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException,
+                TimeoutException {
+
+            long deadline = System.currentTimeMillis() + unit.toMillis(Math.max(timeout, 0));
+
+            while (result == null && !cancelled) {
+                long left = deadline - System.currentTimeMillis();
+
+                if (left <= 0) {
+                    throw new TimeoutException("Timeout while waiting for job " + job.getIdentifier());
+                }
+
+                wait(left);
+            }
+
+            return getResult();
+        }
+
+        private JobStatus getResult() {
+            if (cancelled) {
+                throw new CancellationException();
+            }
+
+            return result;
+        }
+    }
+
+    private final String adaptorName;
+
+    private final Jobs jobs;
+
+    private final Map<Scheduler, Poller> pollers = new HashMap<>();
+
+    private boolean ended = false;
+
+    /**
+     * Create a new JobStatusMonitor.
+     * 
+     * @param adaptorName
+     *          the name of the adaptor using this monitor (used for logging).
+     * @param jobs
+     *          the Jobs used to retrieve the status of the jobs.
+     */
+    public JobStatusMonitor(String adaptorName, Jobs jobs) {
+        this.adaptorName = adaptorName;
+        this.jobs = jobs;
+    }
+
+    private static boolean equalState(JobStatus a, JobStatus b) {
+        return a.isRunning() == b.isRunning() && a.isDone() == b.isDone() 
+                && (a.getState() == null ? b.getState() == null : a.getState().equals(b.getState()));
+    }
+
+    /**
+     * Add a listener for the given job.
+     * 
+     * @param job
+     *          the job to follow.
+     * @param listener
+     *          the listener to notify.
+     * @param pollDelay
+     *          the delay between polls of the status, used when this is the first job of its Scheduler.
+     */
+    public synchronized void addListener(Job job, JobStatusListener listener, long pollDelay) {
+
+        if (job == null || listener == null) {
+            throw new IllegalArgumentException("Adaptor " + adaptorName + ": job and listener may not be null");
+        }
+
+        if (ended) {
+            throw new IllegalStateException("Adaptor " + adaptorName + ": JobStatusMonitor has ended");
+        }
+
+        Poller poller = pollers.get(job.getScheduler());
+        boolean start = false;
+
+        if (poller == null) {
+            poller = new Poller(job.getScheduler(), pollDelay);
+            pollers.put(job.getScheduler(), poller);
+            start = true;
+        }
+
+        // The listener is notified of the status of the job in the next poll.
+        List<JobStatusListener> added = poller.newListeners.get(job);
+
+        if (added == null) {
+            added = new ArrayList<>(1);
+            poller.newListeners.put(job, added);
+        }
+
+        added.add(listener);
+
+        if (start) {
+            poller.start();
+        }
+    }
+
+    /**
+     * Remove a listener for the given job.
+     * 
+     * @param job
+     *          the job.
+     * @param listener
+     *          the listener to remove.
+     */
+    public synchronized void removeListener(Job job, JobStatusListener listener) {
+
+        if (job == null) {
+            return;
+        }
+
+        Poller poller = pollers.get(job.getScheduler());
+
+        if (poller == null) {
+            return;
+        }
+
+        List<JobStatusListener> current = poller.listeners.get(job);
+
+        if (current != null && current.remove(listener) && current.isEmpty()) {
+            poller.listeners.remove(job);
+            poller.lastStatus.remove(job);
+        }
+
+        List<JobStatusListener> added = poller.newListeners.get(job);
+
+        if (added != null && added.remove(listener) && added.isEmpty()) {
+            poller.newListeners.remove(job);
+        }
+    }
+
+    /**
+     * Returns a Future that completes once the given job is done.
+     * 
+     * @param job
+     *          the job.
+     * @param pollDelay
+     *          the delay between polls of the status, used when this is the first job of its Scheduler.
+     * @return a Future that completes once the job is done.
+     */
+    public Future<JobStatus> waitUntilDone(Job job, long pollDelay) {
+        StatusFuture result = new StatusFuture(job, true);
+        addListener(job, result, pollDelay);
+        return result;
+    }
+
+    /**
+     * Returns a Future that completes once the given job is running or done.
+     * 
+     * @param job
+     *          the job.
+     * @param pollDelay
+     *          the delay between polls of the status, used when this is the first job of its Scheduler.
+     * @return a Future that completes once the job is running or done.
+     */
+    public Future<JobStatus> waitUntilRunning(Job job, long pollDelay) {
+        StatusFuture result = new StatusFuture(job, false);
+        addListener(job, result, pollDelay);
+        return result;
+    }
+
+    /**
+     * Stop all polling threads. Listeners are not notified anymore.
+     */
+    public synchronized void end() {
+        ended = true;
+        pollers.clear();
+        notifyAll();
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.engine.util;
+
+/**
+ * ProcessIdentity identifies an operating system process by its process ID and its start time, so a recovered process is 
+ * never confused with an unrelated process that was given the same process ID after the original process finished.
+ * 
+ * The start time is the one printed by <code>ps -o lstart=</code>, with whitespace normalized. The identity is used as the 
+ * handle of a {@link RecoverableProcess}, in the form "<i>pid</i> <i>start time</i>", or just "<i>pid</i>" if the start 
+ * time could not be determined. A process with an unknown start time can never be verified, so it is treated as finished.
+ * 
+ * @version 1.0
+ * @since 1.0
+ */
+public final class ProcessIdentity {
+
+    private final int pid;
+
+    private final String startTime;
+
+    /**
+     * Create a process identity.
+     * 
+     * @param pid
+     *          the process ID.
+     * @param startTime
+     *          the start time of the process as printed by <code>ps -o lstart=</code>, or <code>null</code> if unknown.
+     */
+    public ProcessIdentity(int pid, String startTime) {
+        this.pid = pid;
+        this.startTime = normalize(startTime);
+    }
+
+    /**
+     * Parse a process identity from a process handle.
+     * 
+     * @param handle
+     *          the handle to parse.
+     * @return the process identity.
+     * @throws IllegalArgumentException
+     *          if the handle does not start with a process ID.
+     */
+    public static ProcessIdentity parse(String handle) {
+        String tmp = handle.trim();
+        int space = tmp.indexOf(' ');
+
+        if (space < 0) {
+            return new ProcessIdentity(Integer.parseInt(tmp), null);
+        }
+
+        return new ProcessIdentity(Integer.parseInt(tmp.substring(0, space)), tmp.substring(space + 1));
+    }
+
+    /**
+     * Normalize a start time, so start times printed by different invocations of <code>ps</code> can be compared.
+     * 
+     * @param startTime
+     *          the start time to normalize, or <code>null</code>.
+     * @return the normalized start time, or <code>null</code> if the start time is <code>null</code> or empty.
+     */
+    public static String normalize(String startTime) {
+        if (startTime == null) {
+            return null;
+        }
+
+        String tmp = startTime.trim().replaceAll("\\s+", " ");
+
+        return tmp.isEmpty() ? null : tmp;
+    }
+
+    public int getPid() {
+        return pid;
+    }
+
+    public String getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Check if a process with the given start time is this process.
+     * 
+     * @param currentStartTime
+     *          the start time of the process that currently has the process ID of this process, or <code>null</code> if 
+     *          there is no such process.
+     * @return if the process is this process.
+     */
+    public boolean matches(String currentStartTime) {
+        return startTime != null && startTime.equals(normalize(currentStartTime));
+    }
+
+    @Override
+    public String toString() {
+        if (startTime == null) {
+            return Integer.toString(pid);
+        }
+
+        return pid + " " + startTime;
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.engine.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * ProcessReaper uses a single thread to detect that the processes of running jobs have finished, instead of a thread per job.
+ * 
+ * Checking if a process has finished does not block, so all running jobs are checked in a single pass every polling delay. 
+ * The thread sleeps while there are no running jobs.
+ * 
+ * @version 1.0
+ * @since 1.0
+ */
+class ProcessReaper extends Thread {
+
+    private final long pollingDelay;
+
+    private final Set<JobExecutor> running = new LinkedHashSet<>();
+
+    private boolean ended = false;
+
+    ProcessReaper(String name, long pollingDelay) {
+        super("ProcessReaper-" + name);
+        setDaemon(true);
+        this.pollingDelay = pollingDelay;
+    }
+
+    /**
+     * Add the executor of a job whose process is running.
+     * 
+     * @param executor
+     *          the executor to add.
+     */
+    synchronized void add(JobExecutor executor) {
+        running.add(executor);
+        notifyAll();
+    }
+
+    synchronized void end() {
+        ended = true;
+        notifyAll();
+    }
+
+    private synchronized void remove(List<JobExecutor> done) {
+        running.removeAll(done);
+    }
+
+    /**
+     * Wait until there are running jobs and the polling delay has passed.
+     * 
+     * @return the running jobs, or <code>null</code> if the reaper has ended.
+     */
+    private synchronized List<JobExecutor> waitForWork() {
+
+        long deadline = System.currentTimeMillis() + pollingDelay;
+        long left = pollingDelay;
+
+        while (!ended && (running.isEmpty() || left > 0)) {
+            try {
+                wait(running.isEmpty() ? 0 : left);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+
+            left = deadline - System.currentTimeMillis();
+        }
+
+        if (ended) {
+            return null;
+        }
+
+        return new ArrayList<>(running);
+    }
+
+    @Override
+    public void run() {
+
+        List<JobExecutor> executors = waitForWork();
+
+        while (executors != null) {
+
+            List<JobExecutor> done = new ArrayList<>();
+
+            for (JobExecutor executor : executors) {
+                if (executor.poll()) {
+                    done.add(executor);
+                }
+            }
+
+            remove(done);
+
+            executors = waitForWork();
+        }
+    }
+}
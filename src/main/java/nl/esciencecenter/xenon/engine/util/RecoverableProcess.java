@@ -0,0 +1,33 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.engine.util;
+
+/**
+ * RecoverableProcess is a {@link Process} that can be found again after the JVM that started it has been restarted. 
+ * 
+ * @version 1.0
+ * @since 1.0
+ */
+public interface RecoverableProcess extends Process {
+
+    /**
+     * Returns the handle (typically the process ID) with which the process can be found again by 
+     * {@link RecoverableProcessFactory#recoverProcess(String, nl.esciencecenter.xenon.files.Path)}.
+     * 
+     * @return the handle of the process.
+     */
+    String getHandle();
+}
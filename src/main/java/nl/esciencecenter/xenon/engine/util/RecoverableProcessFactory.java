@@ -0,0 +1,69 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.engine.util;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.engine.jobs.JobImplementation;
+import nl.esciencecenter.xenon.files.Path;
+
+/**
+ * RecoverableProcessFactory can be implemented by a {@link BatchProcessFactory} that is able to start batch processes which 
+ * survive a restart of the JVM. This allows {@link JobQueues} with a {@link JobJournal} to re-attach to the processes of its 
+ * jobs after a restart.
+ * 
+ * A recoverable process writes its exit code to an exit file when it finishes, so the exit code of a process that finished 
+ * while the JVM was down can still be retrieved.
+ * 
+ * @version 1.0
+ * @since 1.0
+ */
+public interface RecoverableProcessFactory extends BatchProcessFactory {
+
+    /**
+     * Start a recoverable batch process.
+     * 
+     * @param job
+     *          the job to start a process for.
+     * @param workdir
+     *          the working directory of the process.
+     * @param stdin
+     *          the file to read standard input from, or <code>null</code> if the process has no input.
+     * @param stdout
+     *          the file to write standard output to, or <code>null</code> if the output should be discarded.
+     * @param stderr
+     *          the file to write standard error to, or <code>null</code> if the output should be discarded.
+     * @param exitFile
+     *          the file to write the exit code of the process to.
+     * @return the process.
+     * @throws XenonException
+     *          if the process could not be started.
+     */
+    RecoverableProcess createRecoverableProcess(JobImplementation job, Path workdir, Path stdin, Path stdout, Path stderr, 
+            Path exitFile) throws XenonException;
+
+    /**
+     * Re-attach to a process started by {@link #createRecoverableProcess}. The exit file is removed once the process is done. 
+     * 
+     * @param handle
+     *          the handle of the process, as returned by {@link RecoverableProcess#getHandle()}.
+     * @param exitFile
+     *          the file the process writes its exit code to.
+     * @return the process.
+     * @throws XenonException
+     *          if the process could not be recovered.
+     */
+    Process recoverProcess(String handle, Path exitFile) throws XenonException;
+}
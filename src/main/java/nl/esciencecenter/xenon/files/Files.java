@@ -201,6 +201,51 @@ public interface Files {
      */
     Copy copy(Path source, Path target, CopyOption... options) throws XenonException;
 
+    /**
+     * Copy an existing source file or directory tree to a target path.
+     * <p>
+     * If the source is a file, this method behaves like {@link #copy(Path, Path, CopyOption...)}. If the source is a directory, 
+     * the entire tree below it is copied to the target. Each directory is listed only once (together with the attributes of its 
+     * entries), target directories are created before the files they contain are copied, and the files themselves are copied 
+     * in parallel. 
+     * </p>
+     * <p>
+     * Symbolic links inside the tree are skipped: neither the link nor the file or directory it refers to is copied, and no 
+     * error is reported. Links can therefore not cause data outside the tree to be copied, or a cycle to be followed forever. 
+     * Callers that need the links must recreate them themselves, e.g. using {@link FileAttributes#isSymbolicLink()} and 
+     * {@link #readSymbolicLink(Path)} on the source tree.
+     * </p>
+     * <p>
+     * The following options are supported:
+     * </p>
+     * <ul>
+     * <li><code>CREATE</code> (default): Create new target files and directories. Fail if any of them already exist.</li>
+     * <li><code>REPLACE</code>: Replace existing target files. Existing target directories are reused.</li>
+     * <li><code>IGNORE</code>: Skip existing target files. Existing target directories are reused.</li>
+     * <li><code>ASYNCHRONOUS</code>: Perform an asynchronous copy. The returned {@link Copy} represents the entire tree, and 
+     * can be used to retrieve the aggregate status of the copy operation or to cancel it.</li>
+     * </ul>
+     * 
+     * @param source
+     *            the existing source file or directory.
+     * @param target
+     *            the target path.
+     * @param options
+     *            options for the copy operation.
+     * @return a {@link Copy} if the copy is asynchronous or <code>null</code> if it is blocking.
+     * 
+     * @throws NoSuchPathException
+     *             If the source does not exist or the target parent directory does not exist.
+     * @throws PathAlreadyExistsException
+     *             If a target file or directory already exists and neither <code>REPLACE</code> nor <code>IGNORE</code> is 
+     *             provided.
+     * @throws InvalidCopyOptionsException
+     *             If a conflicting or unsupported set of copy options is provided.
+     * @throws XenonException
+     *             If an I/O error occurred.
+     */
+    Copy copyTree(Path source, Path target, CopyOption... options) throws XenonException;
+
     /**
      * Move or rename an existing source path to a non-existing target path.
      * <p>
@@ -311,6 +356,37 @@ public interface Files {
      */
     void delete(Path path) throws XenonException;
 
+    /**
+     * Check if the tree at a path can be deleted in bulk by {@link #recursiveDelete(Path)}, for example using a single command 
+     * on the server. This is much faster than deleting the tree entry by entry.
+     * 
+     * @param path
+     *            the root of the tree to delete.
+     * @return <code>true</code> if {@link #recursiveDelete(Path)} is supported for this path.
+     * 
+     * @throws XenonException
+     *             If an I/O error occurred.
+     */
+    boolean supportsRecursiveDelete(Path path) throws XenonException;
+
+    /**
+     * Delete a path in bulk, including all its descendants if it is a directory. Symbolic links are deleted, not followed.
+     * <p>
+     * This is only supported if {@link #supportsRecursiveDelete(Path)} returns <code>true</code>. 
+     * {@link nl.esciencecenter.xenon.util.Utils#recursiveDelete(Files, Path)} uses this method when possible, and deletes the 
+     * tree entry by entry otherwise.
+     * </p>
+     * 
+     * @param path
+     *            the root of the tree to delete.
+     * 
+     * @throws NoSuchPathException
+     *             If the path does not exist.
+     * @throws XenonException
+     *             If an I/O error occurred, or if bulk deletion is not supported.
+     */
+    void recursiveDelete(Path path) throws XenonException;
+
     /**
      * Tests if a path exists.
      * 
@@ -0,0 +1,39 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.jobs;
+
+/**
+ * JobStatusListener is notified of changes in the status of a {@link Job}.
+ * 
+ * Listeners are registered using {@link Jobs#addJobStatusListener(Job, JobStatusListener)}. A listener is notified of the 
+ * status of the job when it is first retrieved, and each time the state of the job changes after that. Once the job is done, 
+ * or it turns out the job does not exist, the listener is notified one last time and removed automatically.
+ * 
+ * Listeners are notified from a thread owned by Xenon that is shared by many jobs, so they should return quickly.  
+ * 
+ * @version 1.0
+ * @since 1.0
+ */
+public interface JobStatusListener {
+
+    /**
+     * Called when the status of a job has changed.
+     * 
+     * @param status
+     *            the new status of the job.
+     */
+    void statusChanged(JobStatus status);
+}
@@ -16,6 +16,7 @@
 package nl.esciencecenter.xenon.jobs;
 
 import java.util.Map;
+import java.util.concurrent.Future;
 
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.UnknownPropertyException;
@@ -200,6 +201,32 @@ public interface Jobs {
      */
     Job submitJob(Scheduler scheduler, JobDescription description) throws XenonException;
 
+    /**
+     * Submit a number of jobs to a Scheduler.
+     * <p>
+     * The array of <code>Job</code> contains one entry for each of the <code>descriptions</code>, in the same order. Depending 
+     * on the Scheduler, the jobs may be submitted in a single operation (for example, as a job array). All descriptions are 
+     * checked before any job is submitted. If submitting one of the jobs fails, the jobs that were already submitted are 
+     * cancelled before an exception is thrown.
+     * </p>
+     * @param scheduler
+     *            the Scheduler.
+     * @param descriptions
+     *            the descriptions of the jobs to submit.
+     * 
+     * @return an array of Jobs representing the running jobs.
+     * 
+     * @throws IncompleteJobDescriptionException
+     *             If one of the descriptions did not contain the required information.
+     * @throws InvalidJobDescriptionException
+     *             If one of the descriptions contains illegal or conflicting values.
+     * @throws UnsupportedJobDescriptionException
+     *             If one of the descriptions is not legal for this scheduler.
+     * @throws XenonException
+     *             If the Scheduler failed to submit the jobs.
+     */
+    Job[] submitJobs(Scheduler scheduler, JobDescription... descriptions) throws XenonException;
+
     /**
      * Get the status of a Job.
      * 
@@ -324,4 +351,65 @@ public interface Jobs {
      *             If the status of the job could not be retrieved.
      */
     JobStatus waitUntilRunning(Job job, long timeout) throws XenonException;
+
+    /**
+     * Add a listener that is notified of changes in the status of a job.
+     * <p>
+     * The status of all jobs of a Scheduler that have listeners is retrieved periodically by a single thread, so many jobs can
+     * be followed without blocking a thread for each of them. The listener is removed automatically once the job is done. 
+     * </p>
+     * @param job
+     *            the job.
+     * @param listener
+     *            the listener to notify.
+     * 
+     * @throws XenonException
+     *             If the listener could not be added.
+     */
+    void addJobStatusListener(Job job, JobStatusListener listener) throws XenonException;
+
+    /**
+     * Remove a listener that was added using {@link #addJobStatusListener(Job, JobStatusListener)}.
+     * 
+     * @param job
+     *            the job.
+     * @param listener
+     *            the listener to remove.
+     * 
+     * @throws XenonException
+     *             If the listener could not be removed.
+     */
+    void removeJobStatusListener(Job job, JobStatusListener listener) throws XenonException;
+
+    /**
+     * Wait asynchronously until a job is done.
+     * <p>
+     * This is the non-blocking variant of {@link #waitUntilDone(Job, long)}. The returned Future completes with the status 
+     * of the job once it is done (either gracefully or by being killed or producing an error). Cancelling the Future stops 
+     * waiting, but does not cancel the job.  
+     * </p>
+     * @param job
+     *            the job.
+     * @return a Future that completes with the status of the job once it is done.
+     * 
+     * @throws XenonException
+     *             If the job could not be followed.
+     */
+    Future<JobStatus> waitUntilDoneAsync(Job job) throws XenonException;
+
+    /**
+     * Wait asynchronously while a job is waiting in a queue.
+     * <p>
+     * This is the non-blocking variant of {@link #waitUntilRunning(Job, long)}. The returned Future completes with the 
+     * status of the job once it is no longer waiting in the queue. Cancelling the Future stops waiting, but does not cancel the 
+     * job.  
+     * </p>
+     * @param job
+     *            the job.
+     * @return a Future that completes with the status of the job once it is running or done.
+     * 
+     * @throws XenonException
+     *             If the job could not be followed.
+     */
+    Future<JobStatus> waitUntilRunningAsync(Job job) throws XenonException;
 }
@@ -0,0 +1,479 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.files.DirectoryStream;
+import nl.esciencecenter.xenon.files.FileAttributes;
+import nl.esciencecenter.xenon.files.Files;
+import nl.esciencecenter.xenon.files.Path;
+import nl.esciencecenter.xenon.files.PathAttributesPair;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * ParallelFileTreeWalker walks a file tree while a bounded number of listing threads retrieve directory listings ahead of the
+ * visitor.
+ * 
+ * In ordered mode, the visitor is invoked in exactly the same (depth first) order as by
+ * {@link Utils#walkFileTree(Files, Path, boolean, int, FileVisitor)}. The listing threads prefetch the directories that the
+ * visitor is expected to need next, and listings of subtrees that are skipped by the visitor are discarded.
+ * 
+ * In unordered mode, the entries of a directory are forwarded to the visitor as soon as its listing is available, so
+ * directories are visited in the order in which their listings complete.
+ * 
+ * In both modes, all visitor callbacks are made by the thread that started the walk.
+ * 
+ * @version 1.0
+ * @since 1.0
+ */
+final class ParallelFileTreeWalker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelFileTreeWalker.class);
+
+    private static final String NAME = "FileTreeWalker";
+
+    /** The number of completed listings that may be buffered per listing thread before the threads wait for the visitor. */
+    private static final int BUFFERED_LISTINGS_PER_THREAD = 16;
+
+    /** The listing of a single directory. */
+    private static class Listing {
+
+        private final Path dir;
+
+        /** The maximum depth remaining for the entries of this directory. */
+        private final int depth;
+
+        /** The listings scheduled for the subdirectories of this directory (ordered mode only). */
+        private final List<Listing> children = new ArrayList<>();
+
+        private List<PathAttributesPair> entries;
+        private XenonException exception;
+
+        private boolean done = false;
+        private boolean discarded = false;
+
+        Listing(Path dir, int depth) {
+            this.dir = dir;
+            this.depth = depth;
+        }
+    }
+
+    /** A thread retrieving directory listings. */
+    private class Lister extends Thread {
+
+        Lister(int number) {
+            super("FileTreeWalker-" + number);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            Listing listing = nextPending();
+
+            while (listing != null) {
+                list(listing);
+                listing = nextPending();
+            }
+        }
+    }
+
+    private final Files files;
+    private final boolean followLinks;
+    private final int maxDepth;
+    private final boolean ordered;
+    private final FileVisitor visitor;
+
+    private final Lister[] listers;
+    private final int maxBuffered;
+
+    /** Listings waiting for a listing thread, in the order in which they should be retrieved. */
+    private final LinkedList<Listing> pending = new LinkedList<>();
+
+    /** The scheduled listings that have not been handed to the visitor yet, by directory (ordered mode only). */
+    private final Map<Path, Listing> scheduled = new HashMap<>();
+
+    /** The completed listings, in order of completion (unordered mode only). */
+    private final LinkedList<Listing> completed = new LinkedList<>();
+
+    /** A listing the visitor is waiting for, which is retrieved before any pending listing. */
+    private Listing demanded = null;
+
+    /** The number of listings currently being retrieved. */
+    private int active = 0;
+
+    /** The number of completed listings that have not been handed to the visitor yet. */
+    private int buffered = 0;
+
+    private boolean stopped = false;
+
+    ParallelFileTreeWalker(Files files, boolean followLinks, int maxDepth, int parallelism, boolean ordered,
+            FileVisitor visitor) {
+
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Illegal parallelism " + parallelism);
+        }
+
+        this.files = files;
+        this.followLinks = followLinks;
+        this.maxDepth = maxDepth;
+        this.ordered = ordered;
+        this.visitor = visitor;
+
+        listers = new Lister[parallelism];
+        maxBuffered = parallelism * BUFFERED_LISTINGS_PER_THREAD;
+    }
+
+    /**
+     * Walk the tree starting at <code>start</code>.
+     * 
+     * @param start
+     *            the path to start from.
+     * @throws XenonException
+     *             if an I/O error occurs during the walk.
+     */
+    void walk(Path start) throws XenonException {
+
+        FileAttributes attributes = files.getAttributes(start);
+
+        for (int i = 0; i < listers.length; i++) {
+            listers[i] = new Lister(i);
+            listers[i].start();
+        }
+
+        try {
+            if (ordered) {
+                walkOrdered(start, attributes, maxDepth);
+            } else {
+                walkUnordered(start, attributes);
+            }
+        } finally {
+            stop();
+        }
+    }
+
+    private synchronized void stop() {
+        stopped = true;
+        demanded = null;
+        pending.clear();
+        scheduled.clear();
+        completed.clear();
+        notifyAll();
+    }
+
+    private synchronized Listing nextPending() {
+
+        // A listing the visitor is waiting for is always retrieved, even if the buffer is full.
+        while (!stopped && demanded == null && (pending.isEmpty() || buffered >= maxBuffered)) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+
+        if (stopped) {
+            return null;
+        }
+
+        active++;
+
+        if (demanded != null) {
+            Listing result = demanded;
+            demanded = null;
+            return result;
+        }
+
+        return pending.removeFirst();
+    }
+
+    private void list(Listing listing) {
+
+        List<PathAttributesPair> entries = new ArrayList<>();
+        XenonException exception = null;
+
+        DirectoryStream<PathAttributesPair> stream = null;
+
+        try {
+            stream = files.newAttributesDirectoryStream(listing.dir);
+
+            for (PathAttributesPair entry : stream) {
+                entries.add(entry);
+            }
+        } catch (XenonException e) {
+            exception = e;
+        } catch (RuntimeException e) {
+            // Should not happen, but the visitor must not wait forever for this listing.
+            exception = new XenonException(listing.dir.getFileSystem().getAdaptorName(), "Failed to list " + listing.dir, e);
+        } finally {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException e) {
+                    LOGGER.debug("Failed to close directory stream of {}", listing.dir, e);
+                }
+            }
+        }
+
+        done(listing, entries, exception);
+    }
+
+    private synchronized void done(Listing listing, List<PathAttributesPair> entries, XenonException exception) {
+
+        active--;
+        notifyAll();
+
+        if (stopped || listing.discarded) {
+            return;
+        }
+
+        listing.entries = entries;
+        listing.exception = exception;
+        listing.done = true;
+        buffered++;
+
+        if (!ordered) {
+            completed.addLast(listing);
+            return;
+        }
+
+        // Prefetch the subdirectories in the order in which they will be visited, ahead of the siblings of this directory. 
+        int depth = listing.depth - 1;
+
+        if (depth <= 0) {
+            return;
+        }
+
+        int index = 0;
+
+        for (PathAttributesPair entry : entries) {
+            if (entry.attributes().isDirectory() && !scheduled.containsKey(entry.path())) {
+                Listing child = new Listing(entry.path(), depth);
+                listing.children.add(child);
+                scheduled.put(child.dir, child);
+                pending.add(index++, child);
+            }
+        }
+    }
+
+    // Retrieve the listing of a directory for the visitor, scheduling it first if needed.
+    private synchronized Listing take(Path dir, int depth) throws XenonException {
+
+        Listing listing = scheduled.remove(dir);
+
+        if (listing == null) {
+            // Not prefetched, for example because the directory is the target of a link.
+            listing = new Listing(dir, depth);
+            demanded = listing;
+            notifyAll();
+        } else if (!listing.done && pending.remove(listing)) {
+            demanded = listing;
+            notifyAll();
+        }
+
+        while (!listing.done) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new XenonException(NAME, "Interrupted while waiting for listing of " + dir, e);
+            }
+        }
+
+        buffered--;
+        return listing;
+    }
+
+    // Discard the listing of a directory that will not be visited, including the listings prefetched for its subtree.
+    private synchronized void skip(Path dir) {
+        Listing listing = scheduled.remove(dir);
+
+        if (listing != null) {
+            discard(listing);
+        }
+    }
+
+    // Discard the prefetched listings of the subdirectories of a listing that have not been handed to the visitor.
+    private synchronized void discardChildren(Listing listing) {
+        for (Listing child : listing.children) {
+            if (scheduled.get(child.dir) == child) {
+                scheduled.remove(child.dir);
+                discard(child);
+            }
+        }
+    }
+
+    private void discard(Listing listing) {
+
+        listing.discarded = true;
+
+        if (listing.done) {
+            buffered--;
+            notifyAll();
+        } else {
+            pending.remove(listing);
+        }
+
+        discardChildren(listing);
+    }
+
+    // Same as Utils.walk, but the entries of each directory are retrieved by the listing threads.
+    private FileVisitResult walkOrdered(Path path, FileAttributes attributes, int depth) throws XenonException {
+
+        try {
+            if (attributes.isDirectory() && depth > 0) {
+                FileVisitResult visitResult = visitor.preVisitDirectory(path, attributes, files);
+
+                if (visitResult == FileVisitResult.CONTINUE) {
+
+                    Listing listing = take(path, depth);
+
+                    try {
+                        for (PathAttributesPair entry : listing.entries) {
+                            FileVisitResult result = walkOrdered(entry.path(), entry.attributes(), depth - 1);
+
+                            if (result == FileVisitResult.SKIP_SIBLINGS) {
+                                // stop handling entries in this directory
+                                break;
+                            } else if (result == FileVisitResult.TERMINATE) {
+                                return FileVisitResult.TERMINATE;
+                            }
+                        }
+                    } finally {
+                        discardChildren(listing);
+                    }
+
+                    return visitor.postVisitDirectory(path, listing.exception, files);
+                }
+
+                skip(path);
+
+                if (visitResult == FileVisitResult.SKIP_SUBTREE) {
+                    visitor.postVisitDirectory(path, null, files);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                // SKIP_SIBLINGS or TERMINATE
+                return visitResult;
+            } else if (attributes.isSymbolicLink() && followLinks) {
+                Path target = files.readSymbolicLink(path);
+                return walkOrdered(target, files.getAttributes(target), depth - 1);
+            } else {
+                return visitor.visitFile(path, attributes, files);
+            }
+        } catch (XenonException e) {
+            skip(path);
+            return visitor.visitFileFailed(path, e, files);
+        }
+    }
+
+    private void walkUnordered(Path start, FileAttributes attributes) throws XenonException {
+
+        if (visitEntry(start, attributes, maxDepth) == FileVisitResult.TERMINATE) {
+            return;
+        }
+
+        Listing listing = nextCompleted();
+
+        while (listing != null) {
+
+            for (PathAttributesPair entry : listing.entries) {
+                FileVisitResult result = visitEntry(entry.path(), entry.attributes(), listing.depth - 1);
+
+                if (result == FileVisitResult.SKIP_SIBLINGS) {
+                    break;
+                } else if (result == FileVisitResult.TERMINATE) {
+                    return;
+                }
+            }
+
+            if (postVisitDirectory(listing.dir, listing.exception) == FileVisitResult.TERMINATE) {
+                return;
+            }
+
+            listing = nextCompleted();
+        }
+    }
+
+    private FileVisitResult postVisitDirectory(Path dir, XenonException exception) throws XenonException {
+        try {
+            return visitor.postVisitDirectory(dir, exception, files);
+        } catch (XenonException e) {
+            return visitor.visitFileFailed(dir, e, files);
+        }
+    }
+
+    // Visit a single entry without descending into it. Directories are scheduled to be listed instead.
+    private FileVisitResult visitEntry(Path path, FileAttributes attributes, int depth) throws XenonException {
+
+        try {
+            if (attributes.isDirectory() && depth > 0) {
+                FileVisitResult visitResult = visitor.preVisitDirectory(path, attributes, files);
+
+                if (visitResult == FileVisitResult.CONTINUE) {
+                    schedule(new Listing(path, depth));
+                } else if (visitResult == FileVisitResult.SKIP_SUBTREE) {
+                    visitor.postVisitDirectory(path, null, files);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                return visitResult;
+            } else if (attributes.isSymbolicLink() && followLinks) {
+                Path target = files.readSymbolicLink(path);
+                return visitEntry(target, files.getAttributes(target), depth - 1);
+            } else {
+                return visitor.visitFile(path, attributes, files);
+            }
+        } catch (XenonException e) {
+            return visitor.visitFileFailed(path, e, files);
+        }
+    }
+
+    private synchronized void schedule(Listing listing) {
+        pending.addLast(listing);
+        notifyAll();
+    }
+
+    // Wait for the next completed listing. Returns null if all listings have been handed to the visitor.
+    private synchronized Listing nextCompleted() throws XenonException {
+
+        while (completed.isEmpty() && (active > 0 || !pending.isEmpty())) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new XenonException(NAME, "Interrupted while waiting for directory listings", e);
+            }
+        }
+
+        if (completed.isEmpty()) {
+            return null;
+        }
+
+        buffered--;
+        notifyAll();
+        return completed.removeFirst();
+    }
+}
@@ -964,6 +964,89 @@ public final class Utils {
         walk(files, start, attributes, followLinks, maxDepth, visitor);
     }
 
+    /**
+     * Walks a file tree, while retrieving up to <code>parallelism</code> directory listings in parallel.
+     *
+     * <p>
+     * This method invokes the <code>visitor</code> in exactly the same order as
+     * {@link #walkFileTree(Files, Path, boolean, int, FileVisitor)}. However, while the visitor is handling the entries of a
+     * directory, the listings of the directories it is expected to visit next are already being retrieved. This hides most of
+     * the latency of listing directories on remote file systems. Listings of subtrees that are skipped by the visitor are
+     * discarded.
+     * </p>
+     *
+     * <p>
+     * All callbacks to the <code>visitor</code> are made by the calling thread.
+     * </p>
+     *
+     * @param files
+     *            the files interface to use for file access.
+     * @param start
+     *            the path to start from.
+     * @param followLinks
+     *            should links be followed ?
+     * @param maxDepth
+     *            the maximum distance from the start to walk to.
+     * @param parallelism
+     *            the maximum number of directory listings to retrieve in parallel. Must be &gt;= 1 or an
+     *            IllegalArgumentException will be thrown.
+     * @param visitor
+     *            a {@link FileVisitor} that will be invoked for every {@link Path} encountered during the walk.
+     *
+     * @throws XenonException
+     *             if an I/O error occurs during the walk.
+     */
+    public static void walkFileTree(Files files, Path start, boolean followLinks, int maxDepth, int parallelism,
+            FileVisitor visitor) throws XenonException {
+        new ParallelFileTreeWalker(files, followLinks, maxDepth, parallelism, true, visitor).walk(start);
+    }
+
+    /**
+     * Walks a file tree in no particular order, while retrieving up to <code>parallelism</code> directory listings in parallel.
+     *
+     * <p>
+     * This method is intended for walks where the order of the callbacks does not matter, such as indexing a tree or computing
+     * its size. The entries of a directory are forwarded to the <code>visitor</code> as soon as the listing of the directory is
+     * available. The following differences with {@link #walkFileTree(Files, Path, boolean, int, FileVisitor)} apply:
+     * </p>
+     * <ul>
+     * <li>
+     * Directories are visited in the order in which their listings complete.</li>
+     * <li>
+     * {@link FileVisitor#postVisitDirectory(Path, XenonException, Files) visitor.postVisitDirectory} is invoked once all entries
+     * of a directory have been visited, but possibly before their descendants have been visited.</li>
+     * <li>
+     * {@link FileVisitResult#SKIP_SIBLINGS} only skips the remaining entries of the directory listing being handled, and is
+     * ignored when returned by {@link FileVisitor#postVisitDirectory(Path, XenonException, Files) visitor.postVisitDirectory}.
+     * </li>
+     * </ul>
+     *
+     * <p>
+     * All callbacks to the <code>visitor</code> are made by the calling thread.
+     * </p>
+     *
+     * @param files
+     *            the files interface to use for file access.
+     * @param start
+     *            the path to start from.
+     * @param followLinks
+     *            should links be followed ?
+     * @param maxDepth
+     *            the maximum distance from the start to walk to.
+     * @param parallelism
+     *            the maximum number of directory listings to retrieve in parallel. Must be &gt;= 1 or an
+     *            IllegalArgumentException will be thrown.
+     * @param visitor
+     *            a {@link FileVisitor} that will be invoked for every {@link Path} encountered during the walk.
+     *
+     * @throws XenonException
+     *             if an I/O error occurs during the walk.
+     */
+    public static void walkFileTreeUnordered(Files files, Path start, boolean followLinks, int maxDepth, int parallelism,
+            FileVisitor visitor) throws XenonException {
+        new ParallelFileTreeWalker(files, followLinks, maxDepth, parallelism, false, visitor).walk(start);
+    }
+
     // Walk a file tree.
     private static FileVisitResult walk(Files files, Path path, FileAttributes attributes, boolean followLinks, int maxDepth,
             FileVisitor visitor) throws XenonException {
@@ -1033,6 +1116,10 @@ public final class Utils {
 
     /**
      * Recursively copies directories, files and symbolic links from source to target.
+     * 
+     * This method copies one file at a time, and checks each source and target separately. For large trees, 
+     * {@link Files#copyTree(Path, Path, CopyOption...)} is much faster, as it lists each directory only once and copies 
+     * multiple files in parallel.
      *
      * @param files
      *            the files interface to use for file access.
@@ -1116,6 +1203,9 @@ public final class Utils {
     /**
      * Recursively removes all directories, files and symbolic links in path.
      *
+     * If the adaptor supports it, the entire tree is deleted in bulk (for example, using a single command on the server). 
+     * Otherwise, the tree is deleted entry by entry.
+     *
      * @param files
      *            the files interface to use for file access.
      * @param path
@@ -1125,6 +1215,12 @@ public final class Utils {
      *             if an I/O error occurs during the copying
      */
     public static void recursiveDelete(Files files, Path path) throws XenonException {
+
+        if (files.supportsRecursiveDelete(path)) {
+            files.recursiveDelete(path);
+            return;
+        }
+
         FileAttributes att = files.getAttributes(path);
 
         if (att.isDirectory()) {
@@ -0,0 +1,128 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.ftp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+
+import nl.esciencecenter.xenon.XenonException;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.junit.After;
+import org.junit.Test;
+
+public class FtpConnectionPoolTest {
+
+    /** A pool that creates mock connections instead of connecting to a server. */
+    static class MockPool extends FtpConnectionPool {
+
+        private int created = 0;
+
+        MockPool(int maxConnections, long keepAlive, long maxWait) {
+            super("test", new FtpLocation(null, "host", 21), null, maxConnections, 60000, keepAlive, maxWait);
+        }
+
+        @Override
+        FTPClient connect() throws XenonException {
+            created++;
+            FTPClient client = mock(FTPClient.class);
+            when(client.isConnected()).thenReturn(true);
+            return client;
+        }
+    }
+
+    private MockPool pool;
+
+    @After
+    public void cleanup() throws XenonException {
+        if (pool != null && pool.isOpen()) {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void acquire_afterRelease_connectionReused() throws Exception {
+        pool = new MockPool(2, 60000, 1000);
+
+        FTPClient first = pool.acquire();
+        pool.release(first);
+
+        assertSame(first, pool.acquire());
+        assertEquals(1, pool.created);
+    }
+
+    @Test
+    public void acquire_connectionInUse_newConnection() throws Exception {
+        pool = new MockPool(2, 60000, 1000);
+
+        FTPClient first = pool.acquire();
+        FTPClient second = pool.acquire();
+
+        assertNotSame(first, second);
+        assertEquals(2, pool.created);
+    }
+
+    @Test(expected = XenonException.class)
+    public void acquire_allConnectionsInUse_timeout() throws Exception {
+        pool = new MockPool(1, 60000, 50);
+
+        pool.acquire();
+        pool.acquire();
+    }
+
+    @Test
+    public void acquire_brokenIdleConnection_replaced() throws Exception {
+        // Idle connections are always checked with a NOOP, as the keep alive interval is very short.
+        pool = new MockPool(1, 1, 1000);
+
+        FTPClient first = pool.acquire();
+        when(first.sendNoOp()).thenThrow(new IOException("Connection reset"));
+        pool.release(first);
+
+        Thread.sleep(10);
+
+        FTPClient second = pool.acquire();
+
+        assertNotSame(first, second);
+        verify(first).disconnect();
+    }
+
+    @Test(expected = XenonException.class)
+    public void acquire_closed_throws() throws Exception {
+        pool = new MockPool(1, 60000, 1000);
+        pool.close();
+        pool.acquire();
+    }
+
+    @Test
+    public void release_afterClose_disconnects() throws Exception {
+        pool = new MockPool(1, 60000, 1000);
+
+        FTPClient client = pool.acquire();
+        pool.close();
+        pool.release(client);
+
+        assertFalse(pool.isOpen());
+        verify(client).disconnect();
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.ftp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.net.ftp.FTPFile;
+import org.apache.commons.net.ftp.FTPListParseEngine;
+import org.apache.commons.net.ftp.parser.UnixFTPEntryParser;
+import org.junit.Test;
+
+public class FtpDirectoryReaderTest {
+
+    private FtpDirectoryReader createReader(String listing) throws Exception {
+        FTPListParseEngine engine = new FTPListParseEngine(new UnixFTPEntryParser());
+        engine.readServerList(new ByteArrayInputStream(listing.getBytes(StandardCharsets.UTF_8)), "UTF-8");
+        return new FtpDirectoryReader(engine);
+    }
+
+    @Test
+    public void next_manyEntries_allReturnedInOrder() throws Exception {
+        StringBuilder listing = new StringBuilder();
+
+        for (int i = 0; i < 200; i++) {
+            listing.append("-rw-r--r--    1 1000     1000           12 Jan 01 12:00 file" + i + "\r\n");
+        }
+
+        FtpDirectoryReader reader = createReader(listing.toString());
+
+        for (int i = 0; i < 200; i++) {
+            assertEquals("file" + i, reader.next().getName());
+        }
+
+        assertFalse(reader.hasNext());
+    }
+
+    @Test
+    public void next_unparsableLines_skipped() throws Exception {
+        FtpDirectoryReader reader = createReader("total 8\r\n"
+                + "drwxr-xr-x    2 1000     1000         4096 Jan 01 12:00 dir\r\n"
+                + "garbage\r\n"
+                + "-rw-r--r--    1 1000     1000           12 Jan 01 12:00 file\r\n");
+
+        List<String> names = new ArrayList<>();
+
+        while (reader.hasNext()) {
+            FTPFile entry = reader.next();
+            names.add(entry.getName());
+        }
+
+        assertEquals(2, names.size());
+        assertEquals("dir", names.get(0));
+        assertEquals("file", names.get(1));
+    }
+}
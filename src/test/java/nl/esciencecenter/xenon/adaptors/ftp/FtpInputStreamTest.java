@@ -17,14 +17,12 @@ package nl.esciencecenter.xenon.adaptors.ftp;
 
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
-import nl.esciencecenter.xenon.XenonException;
-import nl.esciencecenter.xenon.files.Path;
-
 import org.apache.commons.net.ftp.FTPClient;
 import org.junit.Test;
 
@@ -34,7 +32,7 @@ public class FtpInputStreamTest {
         // Arrange
         InputStream stream = new ByteArrayInputStream(new byte[4]);
         FTPClient ftpClient = mock(FTPClient.class);
-        FtpInputStream ftpInputStream = new FtpInputStream(stream, ftpClient, mock(Path.class), mock(FtpFiles.class));
+        FtpInputStream ftpInputStream = new FtpInputStream(stream, ftpClient, mock(FtpConnectionPool.class));
 
         // Act
         ftpInputStream.close();
@@ -45,16 +43,34 @@ public class FtpInputStreamTest {
     }
 
     @Test
-    public void close_callOnce_fileSystemIsClosed() throws IOException, XenonException {
+    public void close_commandCompleted_connectionReleased() throws IOException {
         // Arrange
         InputStream stream = new ByteArrayInputStream(new byte[4]);
-        FtpFiles ftpFiles = mock(FtpFiles.class);
-        FtpInputStream ftpInputStream = new FtpInputStream(stream, mock(FTPClient.class), mock(Path.class), ftpFiles);
+        FTPClient ftpClient = mock(FTPClient.class);
+        when(ftpClient.completePendingCommand()).thenReturn(true);
+        FtpConnectionPool pool = mock(FtpConnectionPool.class);
+        FtpInputStream ftpInputStream = new FtpInputStream(stream, ftpClient, pool);
+
+        // Act
+        ftpInputStream.close();
+
+        // Assert
+        verify(pool).release(ftpClient);
+    }
+
+    @Test
+    public void close_commandNotCompleted_connectionDiscarded() throws IOException {
+        // Arrange
+        InputStream stream = new ByteArrayInputStream(new byte[4]);
+        FTPClient ftpClient = mock(FTPClient.class);
+        when(ftpClient.completePendingCommand()).thenReturn(false);
+        FtpConnectionPool pool = mock(FtpConnectionPool.class);
+        FtpInputStream ftpInputStream = new FtpInputStream(stream, ftpClient, pool);
 
         // Act
         ftpInputStream.close();
 
         // Assert
-        verify(ftpFiles).close(null);
+        verify(pool).discard(ftpClient);
     }
 }
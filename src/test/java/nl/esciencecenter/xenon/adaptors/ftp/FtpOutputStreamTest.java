@@ -17,14 +17,12 @@ package nl.esciencecenter.xenon.adaptors.ftp;
 
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 
-import nl.esciencecenter.xenon.XenonException;
-import nl.esciencecenter.xenon.files.Path;
-
 import org.apache.commons.net.ftp.FTPClient;
 import org.junit.Test;
 
@@ -34,7 +32,7 @@ public class FtpOutputStreamTest {
         // Arrange
         OutputStream stream = new ByteArrayOutputStream();
         FTPClient ftpClient = mock(FTPClient.class);
-        FtpOutputStream ftpOutputStream = new FtpOutputStream(stream, ftpClient, mock(Path.class), mock(FtpFiles.class));
+        FtpOutputStream ftpOutputStream = new FtpOutputStream(stream, ftpClient, mock(FtpConnectionPool.class));
 
         // Act
         ftpOutputStream.close();
@@ -45,16 +43,34 @@ public class FtpOutputStreamTest {
     }
 
     @Test
-    public void close_callOnce_fileSystemIsClosed() throws IOException, XenonException {
+    public void close_commandCompleted_connectionReleased() throws IOException {
+        // Arrange
+        OutputStream stream = new ByteArrayOutputStream();
+        FTPClient ftpClient = mock(FTPClient.class);
+        when(ftpClient.completePendingCommand()).thenReturn(true);
+        FtpConnectionPool pool = mock(FtpConnectionPool.class);
+        FtpOutputStream ftpOutputStream = new FtpOutputStream(stream, ftpClient, pool);
+
+        // Act
+        ftpOutputStream.close();
+
+        // Assert
+        verify(pool).release(ftpClient);
+    }
+
+    @Test
+    public void close_commandNotCompleted_connectionDiscarded() throws IOException {
         // Arrange
         OutputStream stream = new ByteArrayOutputStream();
-        FtpFiles ftpFiles = mock(FtpFiles.class);
-        FtpOutputStream ftpInputStream = new FtpOutputStream(stream, mock(FTPClient.class), mock(Path.class), ftpFiles);
+        FTPClient ftpClient = mock(FTPClient.class);
+        when(ftpClient.completePendingCommand()).thenReturn(false);
+        FtpConnectionPool pool = mock(FtpConnectionPool.class);
+        FtpOutputStream ftpOutputStream = new FtpOutputStream(stream, ftpClient, pool);
 
         // Act
-        ftpInputStream.close();
+        ftpOutputStream.close();
 
         // Assert
-        verify(ftpFiles).close(null);
+        verify(pool).discard(ftpClient);
     }
 }
@@ -0,0 +1,151 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.ftp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPFile;
+import org.apache.commons.net.ftp.FTPReply;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the number of round trips {@link FtpStat} needs to retrieve the attributes of a path.
+ */
+public class FtpStatTest {
+
+    private FTPClient client;
+    private FtpStat stat;
+
+    @Before
+    public void setUp() {
+        client = mock(FTPClient.class);
+        stat = new FtpStat();
+    }
+
+    private static FTPFile entry(String name, int type) {
+        FTPFile result = new FTPFile();
+        result.setName(name);
+        result.setType(type);
+        return result;
+    }
+
+    private void withoutMlst() throws Exception {
+        when(client.mlistFile(anyString())).thenReturn(null);
+        when(client.getReplyCode()).thenReturn(FTPReply.UNRECOGNIZED_COMMAND);
+    }
+
+    @Test
+    public void stat_mlst_singleRoundTrip() throws Exception {
+        FTPFile file = entry("/home/user/file", FTPFile.FILE_TYPE);
+        when(client.mlistFile("/home/user/file")).thenReturn(file);
+
+        assertSame(file, stat.stat(client, "/home/user/file"));
+
+        verify(client, times(1)).mlistFile(anyString());
+        verify(client, never()).listFiles(anyString());
+    }
+
+    @Test
+    public void stat_mlstNotFound_null() throws Exception {
+        when(client.mlistFile(anyString())).thenReturn(null);
+        when(client.getReplyCode()).thenReturn(FTPReply.FILE_UNAVAILABLE);
+
+        assertNull(stat.stat(client, "/home/user/missing"));
+
+        assertTrue(stat.isMlstSupported());
+        verify(client, never()).listFiles(anyString());
+    }
+
+    @Test
+    public void stat_mlstUnsupported_remembered() throws Exception {
+        withoutMlst();
+        when(client.listFiles("/home/user/file")).thenReturn(new FTPFile[] { entry("file", FTPFile.FILE_TYPE) });
+
+        stat.stat(client, "/home/user/file");
+        stat.stat(client, "/home/user/file");
+
+        assertFalse(stat.isMlstSupported());
+        verify(client, times(1)).mlistFile(anyString());
+        verify(client, times(2)).listFiles(anyString());
+    }
+
+    @Test
+    public void stat_listFile_singleRoundTrip() throws Exception {
+        withoutMlst();
+
+        FTPFile file = entry("file", FTPFile.FILE_TYPE);
+        when(client.listFiles("/home/user/file")).thenReturn(new FTPFile[] { file });
+
+        assertSame(file, stat.stat(client, "/home/user/file"));
+        verify(client, times(1)).listFiles("/home/user/file");
+        verify(client, never()).listFiles("/home/user");
+    }
+
+    @Test
+    public void stat_listDirectory_usesDotEntry() throws Exception {
+        withoutMlst();
+
+        FTPFile dot = entry(".", FTPFile.DIRECTORY_TYPE);
+        when(client.listFiles("/home/user/dir/")).thenReturn(new FTPFile[] { dot, entry("..", FTPFile.DIRECTORY_TYPE),
+                entry("dir", FTPFile.FILE_TYPE) });
+
+        assertSame(dot, stat.stat(client, "/home/user/dir/"));
+        verify(client, never()).listFiles("/home/user");
+    }
+
+    @Test
+    public void stat_listWithoutDotEntry_usesParent() throws Exception {
+        withoutMlst();
+
+        FTPFile dir = entry("dir", FTPFile.DIRECTORY_TYPE);
+        when(client.listFiles("/home/user/dir")).thenReturn(new FTPFile[0]);
+        when(client.listFiles("/home/user")).thenReturn(new FTPFile[] { entry("file", FTPFile.FILE_TYPE), dir });
+
+        assertSame(dir, stat.stat(client, "/home/user/dir"));
+    }
+
+    @Test
+    public void stat_listMissing_null() throws Exception {
+        withoutMlst();
+        when(client.listFiles(anyString())).thenReturn(new FTPFile[0]);
+
+        assertNull(stat.stat(client, "/home/user/missing"));
+        verify(client, times(2)).listFiles(anyString());
+    }
+
+    @Test
+    public void stat_listRoot_directory() throws Exception {
+        withoutMlst();
+        when(client.listFiles(anyString())).thenReturn(new FTPFile[0]);
+
+        FTPFile result = stat.stat(client, "/");
+
+        assertTrue(result.isDirectory());
+        assertEquals(0, result.getTimestamp().getTimeInMillis());
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.generic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.engine.files.FileSystemImplementation;
+import nl.esciencecenter.xenon.engine.files.FilesEngine;
+import nl.esciencecenter.xenon.engine.files.PathImplementation;
+import nl.esciencecenter.xenon.files.DirectoryStream;
+import nl.esciencecenter.xenon.files.FileSystem;
+import nl.esciencecenter.xenon.files.Path;
+import nl.esciencecenter.xenon.files.RelativePath;
+
+import org.junit.Test;
+
+public class DirectoryStreamBaseTest {
+
+    static class NameStream extends DirectoryStreamBase<String, String> {
+
+        final List<String> converted = new ArrayList<>();
+
+        NameStream(Path dir, DirectoryStream.Filter filter, Iterator<String> entries) throws XenonException {
+            super(dir, filter, entries);
+        }
+
+        @Override
+        protected String getStreamElementFromEntry(String entry, Path entryPath) {
+            converted.add(entry);
+            return entryPath.getRelativePath().getAbsolutePath();
+        }
+
+        @Override
+        protected String getFileNameFromEntry(String entry, Path parentPath) {
+            return entry;
+        }
+    }
+
+    static class ClosableIterator implements Iterator<String>, Closeable {
+
+        final Iterator<String> entries;
+        boolean closed = false;
+
+        ClosableIterator(String... entries) {
+            this.entries = Arrays.asList(entries).iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return entries.hasNext();
+        }
+
+        @Override
+        public String next() {
+            return entries.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private final FileSystem fs = new FileSystemImplementation("test", "fs", "file", "/", new RelativePath("/"), null, null);
+
+    private final Path dir = new PathImplementation(fs, new RelativePath("/dir"));
+
+    private Iterator<String> entries(String... names) {
+        return Arrays.asList(names).iterator();
+    }
+
+    @Test
+    public void iterate_skipsDotEntries() throws Exception {
+        NameStream stream = new NameStream(dir, FilesEngine.ACCEPT_ALL_FILTER, entries(".", "a", "..", "b"));
+
+        List<String> result = new ArrayList<>();
+
+        for (String s : stream) {
+            result.add(s);
+        }
+
+        assertEquals(Arrays.asList("/dir/a", "/dir/b"), result);
+    }
+
+    @Test
+    public void constructor_convertsNothing() throws Exception {
+        NameStream stream = new NameStream(dir, FilesEngine.ACCEPT_ALL_FILTER, entries("a", "b", "c"));
+
+        assertTrue(stream.converted.isEmpty());
+
+        stream.next();
+
+        assertEquals(Arrays.asList("a"), stream.converted);
+    }
+
+    @Test
+    public void iterate_rejectedEntriesNotConverted() throws Exception {
+        DirectoryStream.Filter filter = new DirectoryStream.Filter() {
+            @Override
+            public boolean accept(Path path) {
+                return path.getRelativePath().getFileNameAsString().startsWith("keep");
+            }
+        };
+
+        NameStream stream = new NameStream(dir, filter, entries("skip1", "keep1", "skip2", "keep2"));
+
+        assertEquals("/dir/keep1", stream.next());
+        assertEquals("/dir/keep2", stream.next());
+        assertFalse(stream.hasNext());
+        assertEquals(Arrays.asList("keep1", "keep2"), stream.converted);
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void next_onlyDotEntries_throws() throws Exception {
+        new NameStream(dir, FilesEngine.ACCEPT_ALL_FILTER, entries(".", "..")).next();
+    }
+
+    @Test
+    public void close_closesEntries() throws Exception {
+        ClosableIterator source = new ClosableIterator("a", "b");
+        NameStream stream = new NameStream(dir, FilesEngine.ACCEPT_ALL_FILTER, source);
+
+        assertTrue(stream.hasNext());
+
+        stream.close();
+
+        assertTrue(source.closed);
+        assertFalse(stream.hasNext());
+    }
+}
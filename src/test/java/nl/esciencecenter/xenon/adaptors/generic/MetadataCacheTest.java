@@ -0,0 +1,252 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.generic;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.engine.files.FileSystemImplementation;
+import nl.esciencecenter.xenon.engine.files.PathImplementation;
+import nl.esciencecenter.xenon.files.FileSystem;
+import nl.esciencecenter.xenon.files.Path;
+import nl.esciencecenter.xenon.files.RelativePath;
+
+import org.junit.Test;
+
+public class MetadataCacheTest {
+
+    /** A cache with a controllable clock. */
+    static class TestCache extends MetadataCache<String, List<String>> {
+
+        long time = 1000;
+
+        TestCache(int maxEntries, long timeToLive) {
+            super("test", maxEntries, timeToLive);
+        }
+
+        @Override
+        protected long currentTimeMillis() {
+            return time;
+        }
+    }
+
+    /** A loader that counts how often it is used. */
+    static class CountingLoader<V> implements MetadataCache.Loader<V> {
+
+        private final V value;
+        int loads = 0;
+
+        CountingLoader(V value) {
+            this.value = value;
+        }
+
+        @Override
+        public V load() throws XenonException {
+            loads++;
+            return value;
+        }
+    }
+
+    private final FileSystem fs = new FileSystemImplementation("ssh", "fs-A", "sftp", "host", new RelativePath("/"), null, null);
+
+    private Path path(String name) {
+        return new PathImplementation(fs, new RelativePath(name));
+    }
+
+    @Test
+    public void getAttributes_disabled_alwaysLoads() throws Exception {
+        TestCache cache = new TestCache(10, 0);
+        CountingLoader<String> loader = new CountingLoader<>("attributes");
+
+        assertFalse(cache.isEnabled());
+        assertEquals("attributes", cache.getAttributes(path("/a"), loader));
+        assertEquals("attributes", cache.getAttributes(path("/a"), loader));
+
+        assertEquals(2, loader.loads);
+        assertEquals(0, cache.getHits());
+        assertEquals(0, cache.getMisses());
+    }
+
+    @Test
+    public void getAttributes_secondRequest_hit() throws Exception {
+        TestCache cache = new TestCache(10, 1000);
+        CountingLoader<String> loader = new CountingLoader<>("attributes");
+
+        cache.getAttributes(path("/a/b"), loader);
+        assertEquals("attributes", cache.getAttributes(path("/a/./b"), loader));
+
+        assertEquals(1, loader.loads);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void getAttributes_missingPath_cached() throws Exception {
+        TestCache cache = new TestCache(10, 1000);
+        CountingLoader<String> loader = new CountingLoader<>(null);
+
+        assertNull(cache.getAttributes(path("/missing"), loader));
+        assertNull(cache.getAttributes(path("/missing"), loader));
+
+        assertEquals(1, loader.loads);
+    }
+
+    @Test
+    public void getAttributes_expired_loadsAgain() throws Exception {
+        TestCache cache = new TestCache(10, 1000);
+        CountingLoader<String> loader = new CountingLoader<>("attributes");
+
+        cache.getAttributes(path("/a"), loader);
+        cache.time += 999;
+        cache.getAttributes(path("/a"), loader);
+        assertEquals(1, loader.loads);
+
+        cache.time += 1;
+        cache.getAttributes(path("/a"), loader);
+        assertEquals(2, loader.loads);
+    }
+
+    @Test
+    public void getAttributes_full_evictsLeastRecentlyUsed() throws Exception {
+        TestCache cache = new TestCache(2, 1000);
+        CountingLoader<String> loader = new CountingLoader<>("attributes");
+
+        cache.getAttributes(path("/a"), loader);
+        cache.getAttributes(path("/b"), loader);
+        cache.getAttributes(path("/a"), loader);
+        cache.getAttributes(path("/c"), loader);
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+
+        cache.getAttributes(path("/a"), loader);
+        assertEquals(3, loader.loads);
+
+        cache.getAttributes(path("/b"), loader);
+        assertEquals(4, loader.loads);
+    }
+
+    @Test
+    public void getListing_separateFromAttributes() throws Exception {
+        TestCache cache = new TestCache(10, 1000);
+        List<String> listing = Arrays.asList("x", "y");
+
+        cache.getAttributes(path("/a"), new CountingLoader<>("attributes"));
+
+        assertSame(listing, cache.getListing(path("/a"), new CountingLoader<>(listing)));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void invalidate_removesPathAndParentListing() throws Exception {
+        TestCache cache = new TestCache(10, 1000);
+        CountingLoader<String> attributes = new CountingLoader<>("attributes");
+        CountingLoader<List<String>> listing = new CountingLoader<>(Arrays.asList("b"));
+
+        cache.getAttributes(path("/a"), attributes);
+        cache.getListing(path("/a"), listing);
+        cache.getAttributes(path("/a/b"), attributes);
+
+        cache.invalidate(path("/a/b"));
+
+        cache.getAttributes(path("/a"), attributes);
+        cache.getListing(path("/a"), listing);
+        cache.getAttributes(path("/a/b"), attributes);
+
+        assertEquals(3, attributes.loads);
+        assertEquals(2, listing.loads);
+    }
+
+    @Test
+    public void invalidateTree_removesDescendantsOnly() throws Exception {
+        TestCache cache = new TestCache(10, 1000);
+        CountingLoader<String> loader = new CountingLoader<>("attributes");
+
+        cache.getAttributes(path("/a/b"), loader);
+        cache.getAttributes(path("/a/b/c/d"), loader);
+        cache.getAttributes(path("/a/bc"), loader);
+
+        cache.invalidateTree(path("/a/b"));
+
+        assertEquals(1, cache.size());
+
+        cache.getAttributes(path("/a/bc"), loader);
+        assertEquals(3, loader.loads);
+    }
+
+    @Test
+    public void getAttributes_invalidatedWhileLoading_notCached() throws Exception {
+        final TestCache cache = new TestCache(10, 1000);
+
+        MetadataCache.Loader<String> loader = new MetadataCache.Loader<String>() {
+            @Override
+            public String load() throws XenonException {
+                cache.invalidate(path("/a"));
+                return "stale";
+            }
+        };
+
+        assertEquals("stale", cache.getAttributes(path("/a"), loader));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void invalidateOnClose_closed_invalidates() throws Exception {
+        TestCache cache = new TestCache(10, 1000);
+        CountingLoader<String> loader = new CountingLoader<>("attributes");
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+
+        cache.getAttributes(path("/a"), loader);
+
+        OutputStream out = cache.invalidateOnClose(path("/a"), target);
+        out.write(new byte[] { 1, 2, 3 }, 1, 2);
+
+        cache.getAttributes(path("/a"), loader);
+        assertEquals(1, loader.loads);
+
+        out.close();
+
+        cache.getAttributes(path("/a"), loader);
+        assertEquals(2, loader.loads);
+        assertArrayEquals(new byte[] { 2, 3 }, target.toByteArray());
+    }
+
+    @Test
+    public void invalidateOnClose_disabled_sameStream() throws Exception {
+        TestCache cache = new TestCache(10, 0);
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+
+        assertSame(target, cache.invalidateOnClose(path("/a"), target));
+    }
+
+    @Test
+    public void toString_containsStatistics() throws Exception {
+        TestCache cache = new TestCache(10, 1000);
+        cache.getAttributes(path("/a"), new CountingLoader<>("attributes"));
+
+        assertTrue(cache.toString().contains("misses=1"));
+    }
+}
@@ -206,4 +206,36 @@ public class GridEngineJobScriptGeneratorTest {
         assertEquals("parallel script content incorrect", expected, output.out().toString());
     }
 
+    @Test
+    public void test05a_generateArray_DifferentArguments_CaseOnTaskID() throws XenonException {
+        JobDescription first = new JobDescription();
+        first.setExecutable("/bin/executable");
+        first.setArguments("1");
+
+        JobDescription second = new JobDescription(first);
+        second.setArguments("2");
+
+        String result = GridEngineJobScriptGenerator.generateArray(new JobDescription[] { first, second }, null, null);
+
+        String expected = "#!/bin/sh\n" + "#$ -S /bin/sh\n" + "#$ -N xenon\n" + "#$ -l h_rt=00:15:00\n" + "#$ -o /dev/null\n"
+                + "#$ -e /dev/null\n" + "#$ -t 1-2\n" + "\n" + "case \"$SGE_TASK_ID\" in\n" + "1)\n"
+                + "    /bin/executable '1'\n" + "    ;;\n" + "2)\n" + "    /bin/executable '2'\n" + "    ;;\n" + "esac\n";
+
+        assertEquals(expected, result);
+    }
+
+    @Test
+    public void test05b_generateArray_SameCommand_SingleCommand() throws XenonException {
+        JobDescription description = new JobDescription();
+        description.setExecutable("/bin/executable");
+
+        String result = GridEngineJobScriptGenerator.generateArray(new JobDescription[] { description, description, description },
+                null, null);
+
+        String expected = "#!/bin/sh\n" + "#$ -S /bin/sh\n" + "#$ -N xenon\n" + "#$ -l h_rt=00:15:00\n" + "#$ -o /dev/null\n"
+                + "#$ -e /dev/null\n" + "#$ -t 1-3\n" + "\n" + "/bin/executable\n";
+
+        assertEquals(expected, result);
+    }
+
 }
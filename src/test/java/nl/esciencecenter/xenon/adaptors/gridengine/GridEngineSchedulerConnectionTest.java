@@ -418,4 +418,16 @@ public class GridEngineSchedulerConnectionTest {
 
         GridEngineSchedulerConnection.getJobStatusFromQstatInfo(input, job);
     }
+
+    @Test
+    public void test05a_getJobNumber_Task_JobNumber() {
+        assertEquals("555", GridEngineSchedulerConnection.getJobNumber("555.4"));
+        assertEquals("4", GridEngineSchedulerConnection.getTaskNumber("555.4"));
+    }
+
+    @Test
+    public void test05b_getJobNumber_Job_JobNumber() {
+        assertEquals("555", GridEngineSchedulerConnection.getJobNumber("555"));
+        assertNull(GridEngineSchedulerConnection.getTaskNumber("555"));
+    }
 }
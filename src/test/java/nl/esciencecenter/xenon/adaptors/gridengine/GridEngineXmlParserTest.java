@@ -16,6 +16,7 @@
 package nl.esciencecenter.xenon.adaptors.gridengine;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
 import java.io.IOException;
@@ -24,6 +25,7 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Scanner;
 
@@ -196,4 +198,81 @@ public class GridEngineXmlParserTest {
 
         parser.parseJobInfos(input);
     }
+
+    @Test
+    public void test03d_parseJobInfo_SomeJobs_Values() throws Throwable {
+        String input = readFile("/fixtures/gridengine/jobs.xml");
+
+        Map<String, String> job = new GridEngineXmlParser(false).parseJobInfos(input).get("583111");
+
+        assertEquals("583111", job.get("JB_job_number"));
+        assertEquals("prun-job", job.get("JB_name"));
+        assertEquals("r", job.get("state"));
+        assertEquals("running", job.get("long_state"));
+        assertEquals("all.q@node042.cm.cluster", job.get("queue_name"));
+    }
+
+    @Test
+    public void test03e_parseJobInfo_RequestedJobs_OnlyRequestedResult() throws Throwable {
+        String input = readFile("/fixtures/gridengine/jobs.xml");
+
+        GridEngineXmlParser parser = new GridEngineXmlParser(false);
+
+        Map<String, Map<String, String>> all = parser.parseJobInfos(input);
+        Map<String, Map<String, String>> result = parser.parseJobInfos(input, new HashSet<>(Arrays.asList("583238", "583302",
+                "1")));
+
+        assertEquals(2, result.size());
+        assertEquals(all.get("583238"), result.get("583238"));
+        assertEquals(all.get("583302"), result.get("583302"));
+    }
+
+    @Test(expected = IncompatibleVersionException.class)
+    public void test03f_parseJobInfo_WrongSchema_ExceptionThrown() throws Throwable {
+        String input = readFile("/fixtures/gridengine/jobs-wrong-schema.xml");
+
+        new GridEngineXmlParser(false).parseJobInfos(input);
+    }
+
+    @Test(expected = XenonException.class)
+    public void test03g_parseJobInfo_EmptyFile_ExceptionThrown() throws Throwable {
+        new GridEngineXmlParser(false).parseJobInfos("");
+    }
+
+    @Test
+    public void test03h_parseJobInfo_JobArray_TaskPerEntry() throws Throwable {
+        String input = readFile("/fixtures/gridengine/jobs-array.xml");
+
+        Map<String, Map<String, String>> result = new GridEngineXmlParser(false).parseJobInfos(input);
+
+        assertEquals(new HashSet<>(Arrays.asList("583111", "583400.1", "583400.2", "583400.3", "583400.5", "583400.7",
+                "583400.8")), result.keySet());
+        assertEquals("583400.2", result.get("583400.2").get("JB_job_number"));
+        assertEquals("running", result.get("583400.2").get("long_state"));
+        assertEquals("all.q@node022.cm.cluster", result.get("583400.2").get("queue_name"));
+        assertEquals("583400.5", result.get("583400.5").get("JB_job_number"));
+        assertEquals("pending", result.get("583400.5").get("long_state"));
+    }
+
+    @Test
+    public void test03i_parseJobInfo_RequestedTasks_OnlyRequestedResult() throws Throwable {
+        String input = readFile("/fixtures/gridengine/jobs-array.xml");
+
+        GridEngineXmlParser parser = new GridEngineXmlParser(false);
+
+        Map<String, Map<String, String>> all = parser.parseJobInfos(input);
+        Map<String, Map<String, String>> result = parser.parseJobInfos(input, new HashSet<>(Arrays.asList("583400.1",
+                "583400.7", "583400.4")));
+
+        assertEquals(2, result.size());
+        assertEquals(all.get("583400.1"), result.get("583400.1"));
+        assertEquals(all.get("583400.7"), result.get("583400.7"));
+    }
+
+    @Test(expected = XenonException.class)
+    public void test03j_parseJobInfo_InvalidTaskRange_ExceptionThrown() throws Throwable {
+        String input = readFile("/fixtures/gridengine/jobs-array.xml").replace("3-7:2,8", "3-x");
+
+        new GridEngineXmlParser(false).parseJobInfos(input);
+    }
 }
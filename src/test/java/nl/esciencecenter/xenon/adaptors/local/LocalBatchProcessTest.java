@@ -0,0 +1,147 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.local;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Mockito.mock;
+
+import nl.esciencecenter.xenon.Xenon;
+import nl.esciencecenter.xenon.XenonFactory;
+import nl.esciencecenter.xenon.engine.jobs.JobImplementation;
+import nl.esciencecenter.xenon.engine.util.ProcessIdentity;
+import nl.esciencecenter.xenon.files.Files;
+import nl.esciencecenter.xenon.files.Path;
+import nl.esciencecenter.xenon.jobs.JobDescription;
+import nl.esciencecenter.xenon.jobs.Scheduler;
+import nl.esciencecenter.xenon.util.Utils;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class LocalBatchProcessTest {
+
+    private static Xenon xenon;
+    private static Files files;
+    private static Path testDir;
+
+    @BeforeClass
+    public static void prepare() throws Exception {
+        assumeTrue(!Utils.isWindows());
+
+        xenon = XenonFactory.newXenon(null);
+        files = xenon.files();
+
+        Path cwd = Utils.getLocalCWD(files);
+        testDir = Utils.resolveWithRoot(files, cwd, "xenon_LocalBatchProcessTest_" + System.currentTimeMillis());
+        files.createDirectory(testDir);
+    }
+
+    @AfterClass
+    public static void cleanup() throws Exception {
+        if (xenon != null) {
+            Utils.recursiveDelete(files, testDir);
+            XenonFactory.endXenon(xenon);
+        }
+    }
+
+    private static JobImplementation createJob(String script) {
+        JobDescription description = new JobDescription();
+        description.setExecutable("/bin/sh");
+        description.setArguments("-c", script);
+        return new JobImplementation(mock(Scheduler.class), "test", description, false, false);
+    }
+
+    private static int waitUntilDone(LocalBatchProcess process) throws Exception {
+        long deadline = System.currentTimeMillis() + 10000;
+
+        while (!process.isDone() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertTrue(process.isDone());
+        return process.getExitStatus();
+    }
+
+    @Test
+    public void test_redirectsStreamsToFiles() throws Exception {
+        Path stdin = Utils.resolveWithRoot(files, testDir, "stdin");
+        Path stdout = Utils.resolveWithRoot(files, testDir, "stdout");
+        Path stderr = Utils.resolveWithRoot(files, testDir, "stderr");
+
+        Utils.write(files, stdin, "Hello World!".getBytes(), true);
+
+        LocalBatchProcess process = new LocalBatchProcess(createJob("cat; echo oops >&2; exit 3"), testDir, stdin, stdout, 
+                stderr);
+
+        assertEquals(3, waitUntilDone(process));
+        assertEquals("Hello World!", new String(Utils.readAllBytes(files, stdout)));
+        assertEquals("oops\n", new String(Utils.readAllBytes(files, stderr)));
+    }
+
+    @Test
+    public void test_noRedirects_runsInWorkdir() throws Exception {
+        LocalBatchProcess process = new LocalBatchProcess(createJob("cat; touch marker"), testDir, null, null, null);
+
+        assertEquals(0, waitUntilDone(process));
+        assertTrue(files.exists(Utils.resolveWithRoot(files, testDir, "marker")));
+    }
+
+    @Test
+    public void test_recoveredProcess_sameStartTime_isRunning() throws Exception {
+        Path exitFile = Utils.resolveWithRoot(files, testDir, "exit1");
+
+        LocalBatchProcess process = new LocalBatchProcess(createJob("sleep 30"), testDir, null, null, null, exitFile);
+
+        try {
+            ProcessIdentity identity = ProcessIdentity.parse(process.getHandle());
+            assertNotNull(identity.getStartTime());
+
+            LocalRecoveredProcess recovered = new LocalRecoveredProcess(identity, LocalUtils.javaPath(exitFile));
+            assertFalse(recovered.isDone());
+
+            recovered.destroy();
+            waitUntilDone(process);
+        } finally {
+            process.destroy();
+        }
+    }
+
+    @Test
+    public void test_recoveredProcess_reusedPid_isDoneAndNotKilled() throws Exception {
+        Path exitFile = Utils.resolveWithRoot(files, testDir, "exit2");
+
+        LocalBatchProcess process = new LocalBatchProcess(createJob("sleep 30"), testDir, null, null, null, exitFile);
+
+        try {
+            // Simulate a process ID that was given to another process after the original process finished.
+            ProcessIdentity other = new ProcessIdentity(ProcessIdentity.parse(process.getHandle()).getPid(), 
+                    "Thu Jan  1 00:00:00 1970");
+
+            LocalRecoveredProcess recovered = new LocalRecoveredProcess(other, LocalUtils.javaPath(exitFile));
+            assertTrue(recovered.isDone());
+
+            recovered.destroy();
+            assertFalse(process.isDone());
+        } finally {
+            process.destroy();
+        }
+    }
+}
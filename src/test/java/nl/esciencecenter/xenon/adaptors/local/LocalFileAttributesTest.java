@@ -15,6 +15,7 @@
  */
 package nl.esciencecenter.xenon.adaptors.local;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -96,6 +97,70 @@ public class LocalFileAttributesTest {
         XenonFactory.endXenon(o);
     }
 
+    @org.junit.Test
+    public void testAttributesMatchFileSystem() throws Exception {
+
+        if (Utils.isWindows()) { 
+            return;
+        }
+
+        Xenon o = XenonFactory.newXenon(null);
+        Files files = o.files();
+        Path path = resolve(files, Utils.getLocalCWD(files), "mies" + System.currentTimeMillis() + ".txt");
+
+        files.createFile(path);
+
+        String[] modes = new String[] { "rwxr-x---", "r--r--r--", "-w-------", "------rwx" };
+
+        try {
+            for (String mode : modes) {
+                files.setPosixFilePermissions(path, LocalUtils.xenonPermissions(PosixFilePermissions.fromString(mode)));
+
+                FileAttributes att = new LocalFileAttributes(path);
+                java.nio.file.Path javaPath = LocalUtils.javaPath(path);
+
+                assertEquals(LocalUtils.xenonPermissions(PosixFilePermissions.fromString(mode)), att.permissions());
+                assertEquals(java.nio.file.Files.isReadable(javaPath), att.isReadable());
+                assertEquals(java.nio.file.Files.isWritable(javaPath), att.isWritable());
+                assertEquals(java.nio.file.Files.isExecutable(javaPath), att.isExecutable());
+                assertEquals(java.nio.file.Files.getOwner(javaPath).getName(), att.owner());
+            }
+        } finally {
+            files.delete(path);
+            XenonFactory.endXenon(o);
+        }
+    }
+
+    @org.junit.Test
+    public void testWritableCheckedByFileSystem() throws Exception {
+
+        if (Utils.isWindows()) { 
+            return;
+        }
+
+        Xenon o = XenonFactory.newXenon(null);
+        Files files = o.files();
+        Path path = resolve(files, Utils.getLocalCWD(files), "writable" + System.currentTimeMillis() + ".txt");
+
+        files.createFile(path);
+
+        try {
+            files.setPosixFilePermissions(path, LocalUtils.xenonPermissions(PosixFilePermissions.fromString("rw-------")));
+
+            FileAttributes att = new LocalFileAttributes(path);
+
+            // The mode allows writing, but the file system no longer does.
+            files.delete(path);
+
+            assertFalse(att.isWritable());
+        } finally {
+            if (files.exists(path)) {
+                files.delete(path);
+            }
+            XenonFactory.endXenon(o);
+        }
+    }
+
     @org.junit.Test
     public void testEquals() throws Exception {
         
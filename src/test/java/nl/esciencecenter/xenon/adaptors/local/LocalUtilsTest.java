@@ -16,6 +16,7 @@
 package nl.esciencecenter.xenon.adaptors.local;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 
@@ -26,6 +27,7 @@ import nl.esciencecenter.xenon.Xenon;
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.XenonFactory;
 import nl.esciencecenter.xenon.files.Files;
+import nl.esciencecenter.xenon.files.NoSuchPathException;
 import nl.esciencecenter.xenon.files.Path;
 import nl.esciencecenter.xenon.files.PosixFilePermission;
 import nl.esciencecenter.xenon.files.RelativePath;
@@ -44,6 +46,13 @@ public class LocalUtilsTest {
         constructor.newInstance();
     }
 
+    @org.junit.Test
+    public void test_xenonPermissions_mode() throws Exception {
+        Set<PosixFilePermission> result = LocalUtils.xenonPermissions(0100754);
+
+        assertEquals(LocalUtils.xenonPermissions(java.nio.file.attribute.PosixFilePermissions.fromString("rwxr-xr--")), result);
+    }
+
     @org.junit.Test(expected = NullPointerException.class)
     public void test_delete_null() throws Exception {
         LocalUtils.delete(null);
@@ -150,4 +159,66 @@ public class LocalUtilsTest {
 
         assertEquals(System.getProperty("user.home"), tmp);
     }
+
+    @org.junit.Test
+    public void test_checksum_range() throws Exception {
+
+        Xenon xenon = XenonFactory.newXenon(null);
+        Files files = xenon.files();
+
+        Path cwd = Utils.getLocalCWD(files);
+        Path file = Utils.resolveWithRoot(files, cwd, "xenon_LocalUtilsTest_checksum_" + System.currentTimeMillis());
+
+        Utils.write(files, file, "xxHello World!xx".getBytes(), true);
+
+        String all = LocalUtils.checksum(file, 0, 16);
+        String part = LocalUtils.checksum(file, 2, 12);
+
+        files.delete(file);
+        XenonFactory.endXenon(xenon);
+
+        assertEquals("ed076287532e86365e841e92bfc50d8c", part);
+        assertNotNull(all);
+    }
+
+    @org.junit.Test
+    public void test_recursiveDelete() throws Exception {
+
+        Xenon xenon = XenonFactory.newXenon(null);
+        Files files = xenon.files();
+
+        Path cwd = Utils.getLocalCWD(files);
+        Path root = Utils.resolveWithRoot(files, cwd, "xenon_LocalUtilsTest_recursiveDelete_" + System.currentTimeMillis());
+
+        for (int i = 0; i < 6; i++) {
+            Path dir = Utils.resolveWithRoot(files, root, "dir" + i, "sub");
+            files.createDirectories(dir);
+            Utils.write(files, Utils.resolveWithRoot(files, dir, "file"), "Hello World!".getBytes(), true);
+        }
+
+        files.createFile(Utils.resolveWithRoot(files, root, "file"));
+
+        LocalUtils.recursiveDelete(root);
+
+        boolean exists = files.exists(root);
+
+        XenonFactory.endXenon(xenon);
+
+        assertFalse(exists);
+    }
+
+    @org.junit.Test(expected = NoSuchPathException.class)
+    public void test_recursiveDelete_nonExisting_throws() throws Exception {
+
+        Xenon xenon = XenonFactory.newXenon(null);
+        Files files = xenon.files();
+
+        Path cwd = Utils.getLocalCWD(files);
+
+        try {
+            LocalUtils.recursiveDelete(Utils.resolveWithRoot(files, cwd, "xenon_LocalUtilsTest_noSuchPath"));
+        } finally {
+            XenonFactory.endXenon(xenon);
+        }
+    }
 }
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.scripting;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class CompactRecordTest {
+
+    @Test
+    public void test_get() {
+        CompactRecord record = new CompactRecord(new String[] { "a", "b" }, new String[] { "1", "2" });
+
+        assertEquals("1", record.get("a"));
+        assertEquals("2", record.get("b"));
+        assertNull(record.get("c"));
+        assertTrue(record.containsKey("a"));
+        assertFalse(record.containsKey("c"));
+    }
+
+    @Test
+    public void test_equalsHashMap() {
+        Map<String, String> expected = new HashMap<>();
+        expected.put("a", "1");
+        expected.put("b", "2");
+
+        CompactRecord record = new CompactRecord(new String[] { "a", "b" }, new String[] { "1", "2" });
+
+        assertEquals(expected, record);
+        assertEquals(record, expected);
+        assertEquals(expected.hashCode(), record.hashCode());
+    }
+
+    @Test
+    public void test_duplicateField_lastValueUsed() {
+        Map<String, String> expected = new HashMap<>();
+        expected.put("a", "3");
+        expected.put("b", "2");
+
+        CompactRecord record = new CompactRecord(new String[] { "a", "b", "a" }, new String[] { "1", "2", "3" });
+
+        assertEquals(2, record.size());
+        assertEquals("3", record.get("a"));
+        assertEquals(expected, record);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void test_put_throws() {
+        new CompactRecord(new String[] { "a" }, new String[] { "1" }).put("a", "2");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_lengthMismatch_throws() {
+        new CompactRecord(new String[] { "a", "b" }, new String[] { "1" });
+    }
+
+    @Test
+    public void test_builder() {
+        CompactRecord.Builder builder = new CompactRecord.Builder();
+
+        builder.put("a", "1");
+        builder.put("b", "2");
+        assertEquals("2", builder.get("b"));
+        CompactRecord first = builder.build();
+
+        builder.put("a", "3");
+        builder.put("b", "4");
+        CompactRecord second = builder.build();
+
+        assertNull(builder.get("a"));
+        assertEquals("3", second.get("a"));
+        assertEquals("1", first.get("a"));
+    }
+}
@@ -0,0 +1,201 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.scripting;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class JobStateTableTest {
+
+    /** A table with a clock that only moves when told to. */
+    static class TestTable extends JobStateTable<String> {
+
+        private long time = 1000;
+
+        TestTable(int maxSize, long lifetime) {
+            super("test", maxSize, lifetime);
+        }
+
+        void advance(long millis) {
+            time += millis;
+        }
+
+        @Override
+        protected long currentTimeMillis() {
+            return time;
+        }
+    }
+
+    @Test
+    public void test_putGet() {
+        TestTable table = new TestTable(10, 1000);
+
+        table.put("42", "numeric");
+        table.put("42.server.org", "other");
+        table.put("042", "leading zero");
+
+        assertEquals("numeric", table.get("42"));
+        assertEquals("other", table.get("42.server.org"));
+        assertEquals("leading zero", table.get("042"));
+        assertNull(table.get("43"));
+        assertEquals(3, table.size());
+    }
+
+    @Test
+    public void test_remove() {
+        TestTable table = new TestTable(10, 1000);
+
+        table.put("1", "a");
+        table.put("1_2", "b");
+
+        assertEquals("a", table.remove("1"));
+        assertEquals("b", table.remove("1_2"));
+        assertNull(table.remove("1"));
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    public void test_get_expired_removed() {
+        TestTable table = new TestTable(10, 1000);
+
+        table.put("1", "a");
+        table.put("x", "b");
+        table.advance(500);
+        table.put("2", "c");
+        table.advance(501);
+
+        assertFalse(table.contains("1"));
+        assertNull(table.get("x"));
+        assertTrue(table.contains("2"));
+        assertEquals(1, table.size());
+        assertEquals(2, table.getExpirationCount());
+    }
+
+    @Test
+    public void test_put_renewsEntry() {
+        TestTable table = new TestTable(10, 1000);
+
+        table.put("1", "a");
+        table.advance(800);
+        table.put("1", "b");
+        table.advance(800);
+
+        assertEquals("b", table.get("1"));
+    }
+
+    @Test
+    public void test_put_sweepsExpiredEntries() {
+        TestTable table = new TestTable(1000, 1000);
+
+        for (int i = 0; i < 100; i++) {
+            table.put(Integer.toString(i), "a");
+            table.put("job" + i, "a");
+        }
+
+        table.advance(1001);
+        table.put("100", "b");
+
+        assertEquals(1, table.size());
+        assertEquals(200, table.getExpirationCount());
+    }
+
+    @Test
+    public void test_put_full_oldestEvicted() {
+        TestTable table = new TestTable(100, 1000000);
+
+        for (int i = 0; i < 101; i++) {
+            table.put(i % 2 == 0 ? Integer.toString(i) : "job" + i, "a");
+            table.advance(1);
+        }
+
+        assertEquals(75, table.size());
+        assertEquals(26, table.getEvictionCount());
+        assertFalse(table.contains("0"));
+        assertFalse(table.contains("job25"));
+        assertTrue(table.contains("26"));
+        assertTrue(table.contains("100"));
+    }
+
+    @Test
+    public void test_put_fullSameTime_bounded() {
+        TestTable table = new TestTable(100, 1000000);
+
+        table.putAll(Arrays.asList(new String[] { "1", "2" }), "a");
+
+        for (int i = 0; i < 1000; i++) {
+            table.put(Integer.toString(i), "a");
+        }
+
+        assertTrue(table.size() <= 100);
+    }
+
+    @Test
+    public void test_putAll_map() {
+        TestTable table = new TestTable(10, 1000);
+
+        Map<String, String> states = new HashMap<>();
+        states.put("1", "a");
+        states.put("b", "b");
+
+        table.putAll(states);
+
+        assertEquals("a", table.get("1"));
+        assertEquals("b", table.get("b"));
+    }
+
+    @Test
+    public void test_randomOperations_sameAsHashMap() {
+        TestTable table = new TestTable(Integer.MAX_VALUE, Long.MAX_VALUE / 2);
+        Map<String, String> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 100000; i++) {
+            String key = Integer.toString(random.nextInt(5000));
+
+            if (random.nextBoolean()) {
+                table.put(key, "v" + i);
+                expected.put(key, "v" + i);
+            } else {
+                assertEquals(expected.remove(key), table.remove(key));
+            }
+        }
+
+        assertEquals(expected.size(), table.size());
+
+        for (Map.Entry<String, String> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), table.get(entry.getKey()));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_put_null_throws() {
+        new TestTable(10, 1000).put("1", null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_constructor_invalidSize_throws() {
+        new TestTable(0, 1000);
+    }
+}
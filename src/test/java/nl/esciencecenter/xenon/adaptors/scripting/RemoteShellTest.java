@@ -0,0 +1,221 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.scripting;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import nl.esciencecenter.xenon.Xenon;
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.XenonFactory;
+import nl.esciencecenter.xenon.jobs.Scheduler;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests the remote shell using the local adaptor.
+ */
+public class RemoteShellTest {
+
+    private static Xenon xenon;
+
+    private static Scheduler scheduler;
+
+    private RemoteShell shell;
+
+    @BeforeClass
+    public static void prepare() throws Exception {
+        xenon = XenonFactory.newXenon(null);
+        scheduler = xenon.jobs().newScheduler("local", null, null, null);
+    }
+
+    @AfterClass
+    public static void cleanup() throws Exception {
+        XenonFactory.endXenon(xenon);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        shell = new RemoteShell(xenon, scheduler, "test");
+    }
+
+    @After
+    public void tearDown() {
+        shell.close();
+    }
+
+    @Test
+    public void test_buildScript_noStdin() {
+        assertEquals("ls '-l' 'a b' < /dev/null; printf '%s %d\\n' M $?; printf '%s\\n' M >&2\n",
+                RemoteShell.buildScript("M", null, "ls", "-l", "a b"));
+    }
+
+    @Test
+    public void test_buildScript_stdin() {
+        assertEquals("cat <<'M'; printf '%s %d\\n' M $?; printf '%s\\n' M >&2\nhello\nM\n",
+                RemoteShell.buildScript("M", "hello", "cat"));
+    }
+
+    @Test
+    public void test_run_output() throws Exception {
+        RemoteCommandRunner runner = shell.run(null, "echo", "hello", "it's me");
+
+        assertTrue(runner.success());
+        assertEquals("hello it's me\n", runner.getStdout());
+    }
+
+    @Test
+    public void test_run_outputWithoutNewline() throws Exception {
+        RemoteCommandRunner runner = shell.run(null, "printf", "%s", "no newline");
+
+        assertEquals("no newline", runner.getStdout());
+    }
+
+    @Test
+    public void test_run_stdin() throws Exception {
+        RemoteCommandRunner runner = shell.run("line 1\n$HOME `ls`\n", "cat");
+
+        assertEquals("line 1\n$HOME `ls`\n", runner.getStdout());
+    }
+
+    @Test
+    public void test_run_errorAndExitCode() throws Exception {
+        RemoteCommandRunner runner = shell.run(null, "sh", "-c", "echo out; echo err >&2; exit 3");
+
+        assertEquals(3, runner.getExitCode());
+        assertEquals("out\n", runner.getStdout());
+        assertEquals("err\n", runner.getStderr());
+    }
+
+    @Test
+    public void test_run_largeOutput() throws Exception {
+        // Around 1.9 MB, which arrives in many reads, followed by a second command using the same buffer.
+        RemoteCommandRunner runner = shell.run(null, "sh", "-c", "seq 1 250000");
+
+        String[] lines = runner.getStdout().split("\n");
+
+        assertEquals(250000, lines.length);
+        assertEquals("1", lines[0]);
+        assertEquals("250000", lines[lines.length - 1]);
+        assertEquals("next\n", shell.run(null, "echo", "next").getStdout());
+    }
+
+    @Test
+    public void test_run_multipleCommands() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            RemoteCommandRunner runner = shell.run(null, "echo", "" + i);
+            assertEquals(i + "\n", runner.getStdout());
+            assertEquals("", runner.getStderr());
+        }
+    }
+
+    @Test(expected = XenonException.class)
+    public void test_run_closed_throws() throws Exception {
+        shell.close();
+        shell.run(null, "echo", "hello");
+    }
+
+    @Test
+    public void test_run_shellExits_closed() throws Exception {
+        try {
+            shell.run(null, "exit");
+        } catch (XenonException e) {
+            // expected
+        }
+
+        assertTrue(shell.isClosed());
+    }
+
+    @Test
+    public void test_run_timeout_throwsAndCloses() throws Exception {
+        RemoteShell slow = new RemoteShell(xenon, scheduler, "test", 500);
+
+        long start = System.currentTimeMillis();
+
+        try {
+            slow.run(null, "sleep", "30");
+            fail("Expected timeout");
+        } catch (XenonException e) {
+            // expected
+        } finally {
+            slow.close();
+        }
+
+        assertTrue(System.currentTimeMillis() - start < 10000);
+        assertTrue(slow.isClosed());
+    }
+
+    @Test
+    public void test_close_commandRunning_doesNotBlock() throws Exception {
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+
+        Thread runner = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    shell.run(null, "sleep", "30");
+                } catch (XenonException e) {
+                    failure.set(e);
+                }
+            }
+        };
+
+        runner.start();
+
+        // Give the command time to start.
+        Thread.sleep(500);
+
+        long start = System.currentTimeMillis();
+        shell.close();
+        runner.join(10000);
+
+        assertTrue(System.currentTimeMillis() - start < 10000);
+        assertFalse(runner.isAlive());
+        assertNotNull(failure.get());
+    }
+
+    @Test
+    public void test_splitOutput_multipleCommands() throws Exception {
+        String marker = "MARKER";
+
+        String script = RemoteShell.buildScript(marker, null, "echo", "first") 
+                + RemoteShell.buildScript(marker, "input", "cat") 
+                + RemoteShell.buildScript(marker, null, "sh", "-c", "echo error >&2; exit 2");
+
+        RemoteCommandRunner[] result = SchedulerConnection.splitOutput(marker, 3, shell.run(script, "/bin/sh"));
+
+        assertEquals("first\n", result[0].getStdout());
+        assertEquals(0, result[0].getExitCode());
+        assertEquals("input\n", result[1].getStdout());
+        assertEquals("", result[2].getStdout());
+        assertEquals("error\n", result[2].getStderr());
+        assertEquals(2, result[2].getExitCode());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_splitOutput_missingCommand_throws() throws Exception {
+        SchedulerConnection.splitOutput("MARKER", 2, new RemoteCommandRunner(0, "out\nMARKER 0\n", "MARKER\n"));
+    }
+}
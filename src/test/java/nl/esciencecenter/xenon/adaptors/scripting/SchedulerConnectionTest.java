@@ -16,8 +16,12 @@
 package nl.esciencecenter.xenon.adaptors.scripting;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import nl.esciencecenter.xenon.XenonException;
@@ -319,4 +323,76 @@ public class SchedulerConnectionTest {
         assertEquals(result, expected);
     }
 
+    @Test
+    public void test06a_getShellRetryDelay_Failures_Doubles() {
+        assertEquals(1000L, SchedulerConnection.getShellRetryDelay(1));
+        assertEquals(2000L, SchedulerConnection.getShellRetryDelay(2));
+        assertEquals(4000L, SchedulerConnection.getShellRetryDelay(3));
+    }
+
+    @Test
+    public void test06b_getShellRetryDelay_ManyFailures_Bounded() {
+        assertEquals(5 * 60 * 1000L, SchedulerConnection.getShellRetryDelay(10));
+        assertEquals(5 * 60 * 1000L, SchedulerConnection.getShellRetryDelay(100));
+    }
+
+    @Test
+    public void test07a_isJobArray_DifferentArguments_True() {
+        JobDescription first = new JobDescription();
+        first.setExecutable("/bin/executable");
+        first.setArguments("1");
+
+        JobDescription second = new JobDescription(first);
+        second.setArguments("2");
+
+        assertTrue(SchedulerConnection.isJobArray(first, second));
+    }
+
+    @Test
+    public void test07b_isJobArray_DifferentQueue_False() {
+        JobDescription first = new JobDescription();
+        first.setExecutable("/bin/executable");
+
+        JobDescription second = new JobDescription(first);
+        second.setQueueName("other");
+
+        assertFalse(SchedulerConnection.isJobArray(first, second));
+    }
+
+    @Test
+    public void test07c_isJobArray_CustomJobScript_False() {
+        JobDescription first = new JobDescription();
+        first.addJobOption(SchedulerConnection.JOB_OPTION_JOB_SCRIPT, "script.sh");
+
+        assertFalse(SchedulerConnection.isJobArray(first, new JobDescription(first)));
+    }
+
+    @Test
+    public void test07d_splitJobArray_LargerThanMaxArraySize_Split() {
+        JobDescription[] descriptions = new JobDescription[2503];
+
+        for (int i = 0; i < descriptions.length; i++) {
+            descriptions[i] = new JobDescription();
+        }
+
+        List<JobDescription[]> result = SchedulerConnection.splitJobArray(descriptions, 1001);
+
+        assertEquals(3, result.size());
+        assertEquals(1001, result.get(0).length);
+        assertEquals(1001, result.get(1).length);
+        assertEquals(501, result.get(2).length);
+        assertSame(descriptions[1001], result.get(1)[0]);
+        assertSame(descriptions[2502], result.get(2)[500]);
+    }
+
+    @Test
+    public void test07e_splitJobArray_FitsInMaxArraySize_Single() {
+        JobDescription[] descriptions = new JobDescription[] { new JobDescription(), new JobDescription() };
+
+        List<JobDescription[]> result = SchedulerConnection.splitJobArray(descriptions, 1001);
+
+        assertEquals(1, result.size());
+        assertEquals(2, result.get(0).length);
+    }
+
 }
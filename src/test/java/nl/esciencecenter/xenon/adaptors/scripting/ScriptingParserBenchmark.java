@@ -0,0 +1,281 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.scripting;
+
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares the regular expression and the char-scanning variants of {@link ScriptingParser#parseTable} on squeue and sacct
+ * output, and measures the streaming (StAX) qstat parsers of the GridEngine and Torque adaptors. The input is built by
+ * repeating the rows of the test fixtures (fixtures/slurm/squeue.txt, fixtures/slurm/sacct.txt, fixtures/gridengine/jobs.xml
+ * and fixtures/torque/jobs.xml) with unique job ids, as for a busy cluster. Reports the time and (if the JVM supports it) the
+ * allocated bytes per parse. Run with the test resources on the class path:
+ * 
+ * <pre>
+ * java -cp ... nl.esciencecenter.xenon.adaptors.scripting.ScriptingParserBenchmark [rows] [rounds]
+ * </pre>
+ */
+public class ScriptingParserBenchmark {
+
+    private static final String ADAPTOR = "bench";
+
+    private static final int SELECTED_JOBS = 100;
+
+    /** A parse operation that is measured. */
+    interface Parse {
+        Map<String, Map<String, String>> run() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        List<String> squeueIDs = new ArrayList<>();
+        List<String> sacctIDs = new ArrayList<>();
+        List<String> gridEngineIDs = new ArrayList<>();
+        List<String> torqueIDs = new ArrayList<>();
+
+        final String squeue = repeatTable(readFixture("/fixtures/slurm/squeue.txt"), rows, squeueIDs);
+        final String sacct = repeatTable(readFixture("/fixtures/slurm/sacct.txt"), rows, sacctIDs);
+        final String gridEngine = repeatXml(readFixture("/fixtures/gridengine/jobs.xml"), "job_list", "JB_job_number",
+                "  </queue_info>\n</job_info>\n", rows, gridEngineIDs);
+        final String torque = repeatXml(readFixture("/fixtures/torque/jobs.xml"), "Job", "Job_Id", "</Data>\n", rows, torqueIDs);
+
+        final Set<String> squeueSelected = select(squeueIDs);
+        final Set<String> sacctSelected = select(sacctIDs);
+        final Set<String> gridEngineSelected = select(gridEngineIDs);
+        final Set<String> torqueSelected = select(torqueIDs);
+
+        System.out.printf("squeue: %d chars; sacct: %d chars; GridEngine qstat: %d chars; Torque qstat: %d chars%n",
+                squeue.length(), sacct.length(), gridEngine.length(), torque.length());
+
+        measure("squeue regex", rounds, new Parse() {
+            @Override
+            public Map<String, Map<String, String>> run() throws Exception {
+                return ScriptingParser.parseTable(squeue, "JOBID", ScriptingParser.WHITESPACE_REGEX, ADAPTOR, "*", "~");
+            }
+        });
+
+        measure("squeue scanning", rounds, new Parse() {
+            @Override
+            public Map<String, Map<String, String>> run() throws Exception {
+                return ScriptingParser.parseTable(squeue, "JOBID", ScriptingParser.WHITESPACE_SEPARATOR, null, ADAPTOR, "*", "~");
+            }
+        });
+
+        measure("squeue scanning, 100 jobs", rounds, new Parse() {
+            @Override
+            public Map<String, Map<String, String>> run() throws Exception {
+                return ScriptingParser.parseTable(squeue, "JOBID", ScriptingParser.WHITESPACE_SEPARATOR, squeueSelected, ADAPTOR,
+                        "*", "~");
+            }
+        });
+
+        measure("sacct regex", rounds, new Parse() {
+            @Override
+            public Map<String, Map<String, String>> run() throws Exception {
+                return ScriptingParser.parseTable(sacct, "JobID", ScriptingParser.BAR_REGEX, ADAPTOR, "*", "~");
+            }
+        });
+
+        measure("sacct scanning", rounds, new Parse() {
+            @Override
+            public Map<String, Map<String, String>> run() throws Exception {
+                return ScriptingParser.parseTable(sacct, "JobID", ScriptingParser.BAR_SEPARATOR, null, ADAPTOR, "*", "~");
+            }
+        });
+
+        measure("sacct scanning, 100 jobs", rounds, new Parse() {
+            @Override
+            public Map<String, Map<String, String>> run() throws Exception {
+                return ScriptingParser.parseTable(sacct, "JobID", ScriptingParser.BAR_SEPARATOR, sacctSelected, ADAPTOR, "*",
+                        "~");
+            }
+        });
+
+        measureXml("GridEngine qstat", rounds, newParser("nl.esciencecenter.xenon.adaptors.gridengine.GridEngineXmlParser", 
+                false), gridEngine, gridEngineSelected);
+
+        measureXml("Torque qstat", rounds, newParser("nl.esciencecenter.xenon.adaptors.torque.TorqueXmlParser"), torque, 
+                torqueSelected);
+    }
+
+    private static String readFixture(String name) {
+        InputStream is = ScriptingParserBenchmark.class.getResourceAsStream(name);
+
+        if (is == null) {
+            throw new IllegalArgumentException("Fixture " + name + " not found, are the test resources on the class path?");
+        }
+
+        // we read until end of file, delimited by \\A
+        Scanner s = new Scanner(is, "UTF-8").useDelimiter("\\A");
+        return s.hasNext() ? s.next() : "";
+    }
+
+    /*
+     * Returns a table with the header of the given table, followed by copies of its rows until there are at least the given
+     * number of rows. The job id in the first column of each copy is prefixed by the number of the copy, which keeps the ids
+     * unique as long as all ids in the fixture start with a number of the same length.
+     */
+    private static String repeatTable(String table, int rows, List<String> ids) {
+        String[] lines = table.split("\n");
+        StringBuilder b = new StringBuilder(rows * table.length() / (lines.length - 1));
+        b.append(lines[0]).append('\n');
+
+        for (int copy = 1; ids.size() < rows; copy++) {
+            for (int i = 1; i < lines.length && ids.size() < rows; i++) {
+                String id = copy + lines[i].split("[ |]", 2)[0];
+                ids.add(id);
+                b.append(copy).append(lines[i]).append('\n');
+            }
+        }
+
+        return b.toString();
+    }
+
+    /*
+     * Returns a document with the start of the given document, followed by copies of its job elements until there are at least
+     * the given number of jobs, and the given end. The job ids are made unique in the same way as in repeatTable.
+     */
+    private static String repeatXml(String document, String jobTag, String idTag, String end, int rows, List<String> ids) {
+        Matcher jobs = Pattern.compile("<" + jobTag + "[ >].*?</" + jobTag + ">", Pattern.DOTALL).matcher(document);
+        Pattern idPattern = Pattern.compile("<" + idTag + ">([^<]*)</" + idTag + ">");
+
+        List<String> elements = new ArrayList<>();
+        int start = -1;
+
+        while (jobs.find()) {
+            if (start < 0) {
+                start = jobs.start();
+            }
+            elements.add(jobs.group());
+        }
+
+        StringBuilder b = new StringBuilder(rows * document.length() / elements.size());
+        b.append(document, 0, start);
+
+        for (int copy = 1; ids.size() < rows; copy++) {
+            for (int i = 0; i < elements.size() && ids.size() < rows; i++) {
+                Matcher id = idPattern.matcher(elements.get(i));
+
+                if (!id.find()) {
+                    throw new IllegalArgumentException("Job without " + idTag + " in fixture");
+                }
+
+                ids.add(copy + id.group(1));
+                b.append(elements.get(i), 0, id.start(1)).append(copy).append(elements.get(i), id.start(1), 
+                        elements.get(i).length()).append('\n');
+            }
+        }
+
+        return b.append(end).toString();
+    }
+
+    private static Set<String> select(List<String> ids) {
+        Set<String> result = new HashSet<>();
+
+        for (int i = 0; i < SELECTED_JOBS; i++) {
+            result.add(ids.get(i * (ids.size() / SELECTED_JOBS)));
+        }
+
+        return result;
+    }
+
+    /*
+     * The xml parsers are package private in their adaptors, so they are created and called by reflection.
+     */
+    private static Object newParser(String className, Object... args) throws Exception {
+        for (Constructor<?> constructor : Class.forName(className).getDeclaredConstructors()) {
+            if (constructor.getParameterTypes().length == args.length) {
+                constructor.setAccessible(true);
+                return constructor.newInstance(args);
+            }
+        }
+
+        throw new IllegalArgumentException("No constructor found for " + className);
+    }
+
+    private static void measureXml(String name, int rounds, final Object parser, final String data, final Set<String> selected)
+            throws Exception {
+        final Method parse = parser.getClass().getDeclaredMethod("parseJobInfos", String.class, Set.class);
+        parse.setAccessible(true);
+
+        measure(name + " streaming", rounds, new Parse() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public Map<String, Map<String, String>> run() throws Exception {
+                return (Map<String, Map<String, String>>) parse.invoke(parser, data, null);
+            }
+        });
+
+        measure(name + " streaming, 100 jobs", rounds, new Parse() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public Map<String, Map<String, String>> run() throws Exception {
+                return (Map<String, Map<String, String>>) parse.invoke(parser, data, selected);
+            }
+        });
+    }
+
+    private static void measure(String name, int rounds, Parse parse) throws Exception {
+
+        // warm up
+        for (int i = 0; i < 3; i++) {
+            parse.run();
+        }
+
+        long bytes = allocatedBytes();
+        long start = System.nanoTime();
+        int size = 0;
+
+        for (int i = 0; i < rounds; i++) {
+            size = parse.run().size();
+        }
+
+        long nanos = System.nanoTime() - start;
+        bytes = allocatedBytes() - bytes;
+
+        System.out.printf("%-36s %7d records %8.1f ms/parse %8.1f MB allocated/parse%n", name, size, nanos / 1e6 / rounds,
+                bytes < 0 ? Double.NaN : bytes / 1e6 / rounds);
+    }
+
+    /*
+     * Returns the number of bytes allocated by the current thread, or a negative value if the JVM does not report this. The
+     * method is only available on some JVMs, so it is called by reflection.
+     */
+    private static long allocatedBytes() {
+        try {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            Method method = Class.forName("com.sun.management.ThreadMXBean").getMethod("getThreadAllocatedBytes", long.class);
+            return (Long) method.invoke(bean, Thread.currentThread().getId());
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return -1;
+        }
+    }
+}
@@ -19,11 +19,17 @@ import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.InputStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Modifier;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Scanner;
+import java.util.regex.Pattern;
 
 import nl.esciencecenter.xenon.XenonException;
 
@@ -735,10 +741,105 @@ public class ScriptingParserTest {
         ScriptingParser.parseKeyValueRecords(input, "key0", ScriptingParser.EQUALS_REGEX, "fake");
     }
 
+    private static String readFile(String pathName) {
+        InputStream is = ScriptingParserTest.class.getResourceAsStream(pathName);
+        // we read until end of file, delimited by \\A
+        Scanner s = new Scanner(is, "UTF-8").useDelimiter("\\A");
+        return s.hasNext() ? s.next() : "";
+    }
 
-    
-    
-    
-    
-    
+    //checks that the streaming parser gives the same result, or error, as the regular expression based parser
+    private static void assertSameTable(String input, String keyField, Pattern regex, char separator) {
+        Map<String, Map<String, String>> expected;
+
+        try {
+            expected = ScriptingParser.parseTable(input, keyField, regex, "fake", "*", "~");
+        } catch (XenonException e) {
+            try {
+                ScriptingParser.parseTable(input, keyField, separator, null, "fake", "*", "~");
+                fail("Expected exception \"" + e.getMessage() + "\" for input \"" + input + "\"");
+            } catch (XenonException e2) {
+                // expected
+            }
+            return;
+        }
+
+        try {
+            assertEquals("parsing \"" + input + "\"", expected,
+                    ScriptingParser.parseTable(input, keyField, separator, null, "fake", "*", "~"));
+        } catch (XenonException e) {
+            fail("Unexpected exception \"" + e.getMessage() + "\" for input \"" + input + "\"");
+        }
+    }
+
+    @Test
+    public void test10a_parseTableStreaming_WhitespaceInputs_SameAsRegex() {
+        String[] inputs = new String[] { "key1 key2\nvalue1 value2\n", "key1 key2\r\nvalue1 value2\r\n\r\n",
+                "key1\tkey2  \n  value1 value2\n", "key1 key2\nvalue1 value2", "key1 key2\n\nvalue1 value2\n",
+                "key1 key2\n----- ---\nvalue1 value2\n", "=====\nkey1 key2\n== ==\n", "key1 key2\n   \n", "",
+                "\n\n", "\nkey1 key2\n", "key1 key2\nvalue1 (a, b)\n", "key1 key2\n(a, b) value2\n",
+                "key1 key2 key3\nvalue1 (a, b\n", "key1 key2\nvalue1* value2~\n", "key2 key3\nvalue2 value3\n",
+                "key1 key1\nvalue1 value2\n", "key1\nvalue1\nvalue2\n", "key1 key2\r\nvalue1 value2\r",
+                "key1 key2\nvalue1 value2 value3\n" };
+
+        for (String input : inputs) {
+            assertSameTable(input, "key1", ScriptingParser.WHITESPACE_REGEX, ScriptingParser.WHITESPACE_SEPARATOR);
+        }
+    }
+
+    @Test
+    public void test10b_parseTableStreaming_BarInputs_SameAsRegex() {
+        String[] inputs = new String[] { "key1|key2|\nvalue1|value2|\n", "key1 | key2\nvalue1 | value2\n",
+                "key1|key2|key3|\nvalue1||value3|\n", "key1|key2|key3|\nvalue1|value2||\n", "key1|key2\n|value2\n",
+                "key1|key2\n  |value2\n", "key1|key2\nvalue 1|value 2\n", "key1||key2\n", "key1|key2\nvalue1\n",
+                "key1|key2\n| |\n", "key1|key2\n---|---\n" };
+
+        for (String input : inputs) {
+            assertSameTable(input, "key1", ScriptingParser.BAR_REGEX, ScriptingParser.BAR_SEPARATOR);
+        }
+    }
+
+    @Test
+    public void test10c_parseTableStreaming_RecordedOutput_SameAsRegex() throws XenonException {
+        assertEquals(8, ScriptingParser.parseTable(readFile("/fixtures/slurm/squeue.txt"), "JOBID", 
+                ScriptingParser.WHITESPACE_SEPARATOR, null, "fake", "*", "~").size());
+        assertEquals(8, ScriptingParser.parseTable(readFile("/fixtures/slurm/sacct.txt"), "JobID", 
+                ScriptingParser.BAR_SEPARATOR, null, "fake", "*", "~").size());
+
+        assertSameTable(readFile("/fixtures/slurm/squeue.txt"), "JOBID", ScriptingParser.WHITESPACE_REGEX,
+                ScriptingParser.WHITESPACE_SEPARATOR);
+        assertSameTable(readFile("/fixtures/slurm/sacct.txt"), "JobID", ScriptingParser.BAR_REGEX, 
+                ScriptingParser.BAR_SEPARATOR);
+    }
+
+    @Test
+    public void test10d_parseTableStreaming_Keys_OnlyRequestedRecords() throws XenonException {
+        String input = readFile("/fixtures/slurm/squeue.txt");
+
+        Map<String, Map<String, String>> all = ScriptingParser.parseTable(input, "JOBID", ScriptingParser.WHITESPACE_SEPARATOR,
+                null, "fake", "*", "~");
+
+        Map<String, Map<String, String>> result = ScriptingParser.parseTable(input, "JOBID",
+                ScriptingParser.WHITESPACE_SEPARATOR, new HashSet<>(Arrays.asList("1502", "1503_2", "1504", "9999")), "fake", 
+                "*", "~");
+
+        Map<String, Map<String, String>> expected = new HashMap<>();
+        expected.put("1502", all.get("1502"));
+        expected.put("1503_2", all.get("1503_2"));
+        expected.put("1504", all.get("1504"));
+
+        assertEquals(expected, result);
+        assertEquals("(ReqNodeNotAvail, UnavailableNodes:node[020-023])", result.get("1504").get("NODELIST(REASON)"));
+    }
+
+    @Test(expected = XenonException.class)
+    public void test10e_parseTableStreaming_KeyFieldMissing_ThrowsException() throws XenonException {
+        ScriptingParser.parseTable("key1 key2\nvalue1 value2\n", "key3", ScriptingParser.WHITESPACE_SEPARATOR,
+                new HashSet<>(Arrays.asList("value1")), "fake");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test10f_parseTableStreaming_UnsupportedSeparator_ThrowsException() throws XenonException {
+        ScriptingParser.parseTable("key1,key2\nvalue1,value2\n", "key1", ',', null, "fake");
+    }
 }
@@ -0,0 +1,252 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.scripting;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nl.esciencecenter.xenon.XenonException;
+
+import org.junit.Test;
+
+public class StatusCacheTest {
+
+    /** A fetcher that counts its invocations, and blocks each fetch until released. */
+    static class CountingFetcher implements StatusCache.Fetcher {
+
+        final AtomicInteger count = new AtomicInteger();
+
+        final CountDownLatch release;
+
+        volatile XenonException error;
+
+        CountingFetcher(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public Map<String, Map<String, String>> fetch() throws XenonException {
+            count.incrementAndGet();
+
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new XenonException("test", "Interrupted", e);
+            }
+
+            if (error != null) {
+                throw error;
+            }
+
+            return new HashMap<>();
+        }
+    }
+
+    @Test
+    public void test_get_concurrent_singleFetch() throws Exception {
+
+        CountDownLatch release = new CountDownLatch(1);
+        CountingFetcher fetcher = new CountingFetcher(release);
+        final StatusCache cache = new StatusCache("test", fetcher, 60000);
+
+        final AtomicInteger done = new AtomicInteger();
+
+        Thread[] threads = new Thread[10];
+
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        cache.get();
+                        done.incrementAndGet();
+                    } catch (XenonException e) {
+                        // ignored, checked below
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        Thread.sleep(100);
+        release.countDown();
+
+        for (Thread t : threads) {
+            t.join(5000);
+        }
+
+        assertEquals(threads.length, done.get());
+        assertEquals(1, fetcher.count.get());
+
+        cache.close();
+    }
+
+    @Test
+    public void test_get_cached() throws Exception {
+
+        CountingFetcher fetcher = new CountingFetcher(new CountDownLatch(0));
+        StatusCache cache = new StatusCache("test", fetcher, 60000);
+
+        Map<String, Map<String, String>> first = cache.get();
+
+        assertSame(first, cache.get());
+        assertEquals(1, fetcher.count.get());
+
+        cache.close();
+    }
+
+    @Test
+    public void test_get_afterInvalidate_fetchesAgain() throws Exception {
+
+        CountingFetcher fetcher = new CountingFetcher(new CountDownLatch(0));
+        StatusCache cache = new StatusCache("test", fetcher, 60000);
+
+        cache.get();
+        cache.invalidate();
+        cache.get();
+
+        assertEquals(2, fetcher.count.get());
+
+        cache.close();
+    }
+
+    @Test
+    public void test_get_noInterval_fetchesEveryTime() throws Exception {
+
+        CountingFetcher fetcher = new CountingFetcher(new CountDownLatch(0));
+        StatusCache cache = new StatusCache("test", fetcher, 0);
+
+        cache.get();
+        cache.get();
+        cache.get();
+
+        assertEquals(3, fetcher.count.get());
+    }
+
+    @Test
+    public void test_get_expired_refreshedInBackground() throws Exception {
+
+        CountingFetcher fetcher = new CountingFetcher(new CountDownLatch(0));
+        StatusCache cache = new StatusCache("test", fetcher, 50);
+
+        cache.get();
+
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while (fetcher.count.get() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        cache.close();
+
+        if (fetcher.count.get() < 3) {
+            fail("Status was not refreshed in the background");
+        }
+    }
+
+    @Test
+    public void test_get_concurrentWithRefresher_neverFetchesInParallel() throws Exception {
+
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger maxActive = new AtomicInteger();
+        final AtomicInteger count = new AtomicInteger();
+
+        StatusCache.Fetcher fetcher = new StatusCache.Fetcher() {
+            @Override
+            public Map<String, Map<String, String>> fetch() throws XenonException {
+                int now = active.incrementAndGet();
+                count.incrementAndGet();
+
+                synchronized (maxActive) {
+                    maxActive.set(Math.max(maxActive.get(), now));
+                }
+
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    throw new XenonException("test", "Interrupted", e);
+                } finally {
+                    active.decrementAndGet();
+                }
+
+                return new HashMap<>();
+            }
+        };
+
+        final StatusCache cache = new StatusCache("test", fetcher, 5);
+        final long deadline = System.currentTimeMillis() + 500;
+
+        Thread[] threads = new Thread[4];
+
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        while (System.currentTimeMillis() < deadline) {
+                            cache.get();
+                            cache.invalidate();
+                        }
+                    } catch (XenonException e) {
+                        // ignored, fetches do not fail
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        for (Thread t : threads) {
+            t.join(5000);
+        }
+
+        cache.close();
+
+        assertTrue(count.get() > 1);
+        assertEquals(1, maxActive.get());
+    }
+
+    @Test
+    public void test_get_failingFetch_throws() throws Exception {
+
+        CountingFetcher fetcher = new CountingFetcher(new CountDownLatch(0));
+        fetcher.error = new XenonException("test", "Failed");
+
+        StatusCache cache = new StatusCache("test", fetcher, 60000);
+
+        try {
+            cache.get();
+            fail("Expected exception");
+        } catch (XenonException e) {
+            assertSame(fetcher.error, e);
+        }
+
+        // A failed fetch is not cached.
+        fetcher.error = null;
+        cache.get();
+
+        assertEquals(2, fetcher.count.get());
+
+        cache.close();
+    }
+}
@@ -134,4 +134,43 @@ public class SlurmJobScriptGeneratorTest {
 
         assertArrayEquals(expected, result);
     }
+
+    @Test
+    public void testArrayIdenticalCommands() throws XenonException {
+        JobDescription description = new JobDescription();
+        description.setExecutable("/bin/executable");
+        description.setArguments("some", "arguments");
+
+        String result = SlurmJobScriptGenerator.generateArray(new JobDescription[] { description, description, description },
+                null);
+
+        String expected = "#!/bin/sh\n" + "#SBATCH --job-name xenon\n" + "#SBATCH --nodes=1\n" + "#SBATCH --ntasks-per-node=1\n"
+                + "#SBATCH --time=15\n" + "#SBATCH --output=/dev/null\n" + "#SBATCH --error=/dev/null\n"
+                + "#SBATCH --array=0-2\n\n" + "srun /bin/executable 'some' 'arguments'\n";
+
+        assertEquals(expected, result);
+    }
+
+    @Test
+    public void testArrayDifferentArguments() throws XenonException {
+        JobDescription first = new JobDescription();
+        first.setExecutable("/bin/executable");
+        first.setArguments("1");
+        first.addEnvironment("some", "value");
+
+        JobDescription second = new JobDescription(first);
+        second.setArguments("2");
+
+        String result = SlurmJobScriptGenerator.generateArray(new JobDescription[] { first, second }, null);
+
+        String expected = "#!/bin/sh\n" + "#SBATCH --job-name xenon\n" + "#SBATCH --nodes=1\n" + "#SBATCH --ntasks-per-node=1\n"
+                + "#SBATCH --time=15\n" + "#SBATCH --output=/dev/null\n" + "#SBATCH --error=/dev/null\n"
+                + "#SBATCH --array=0-1\n" + "export some=\"value\"\n\n" 
+                + "case \"$SLURM_ARRAY_TASK_ID\" in\n" 
+                + "0)\n    srun /bin/executable '1'\n    ;;\n" 
+                + "1)\n    srun /bin/executable '2'\n    ;;\n" 
+                + "esac\n";
+
+        assertEquals(expected, result);
+    }
 }
@@ -580,4 +580,18 @@ public class SlurmSchedulerConnectionTest {
         SlurmSchedulerConnection.verifyJobDescription(description);
     }
 
+    @Test
+    public void test10a_getAccountingWindowStart_OverlapsPreviousWindow() throws XenonException {
+        assertEquals("2015-01-01T09:59:30", SlurmSchedulerConnection.getAccountingWindowStart("2015-01-01T10:00:30\n"));
+    }
+
+    @Test
+    public void test10b_getAccountingWindowStart_CrossesDay() throws XenonException {
+        assertEquals("2014-12-31T23:59:30", SlurmSchedulerConnection.getAccountingWindowStart("2015-01-01T00:00:30"));
+    }
+
+    @Test(expected = XenonException.class)
+    public void test10c_getAccountingWindowStart_InvalidTime_ExceptionThrown() throws XenonException {
+        SlurmSchedulerConnection.getAccountingWindowStart("yesterday");
+    }
 }
@@ -15,6 +15,7 @@
  */
 package nl.esciencecenter.xenon.adaptors.slurm;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -133,4 +134,40 @@ public class SlurmSetupTest {
         new SlurmSetup(configInfo, false, false);
     }
 
+
+    @Test
+    public void test_maxArraySize_default() throws XenonException {
+        Map<String, String> configInfo = new HashMap<>();
+        configInfo.put("SLURM_VERSION", "15.08.6");
+        configInfo.put("AccountingStorageType", "accounting_storage/none");
+
+        SlurmSetup config = new SlurmSetup(configInfo, false, false);
+
+        assertTrue(config.jobArraysAvailable());
+        assertEquals(SlurmSetup.DEFAULT_MAX_ARRAY_SIZE, config.getMaxArraySize());
+    }
+
+    @Test
+    public void test_maxArraySize_configured() throws XenonException {
+        Map<String, String> configInfo = new HashMap<>();
+        configInfo.put("SLURM_VERSION", "15.08.6");
+        configInfo.put("AccountingStorageType", "accounting_storage/none");
+        configInfo.put("MaxArraySize", "100");
+
+        SlurmSetup config = new SlurmSetup(configInfo, false, false);
+
+        assertEquals(100, config.getMaxArraySize());
+    }
+
+    @Test
+    public void test_maxArraySize_zero_jobArraysUnavailable() throws XenonException {
+        Map<String, String> configInfo = new HashMap<>();
+        configInfo.put("SLURM_VERSION", "15.08.6");
+        configInfo.put("AccountingStorageType", "accounting_storage/none");
+        configInfo.put("MaxArraySize", "0");
+
+        SlurmSetup config = new SlurmSetup(configInfo, false, false);
+
+        assertFalse(config.jobArraysAvailable());
+    }
 }
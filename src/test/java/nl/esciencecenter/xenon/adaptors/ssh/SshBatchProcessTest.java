@@ -0,0 +1,106 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.ssh;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeSet;
+
+import nl.esciencecenter.xenon.XenonException;
+
+import nl.esciencecenter.xenon.engine.files.FileSystemImplementation;
+import nl.esciencecenter.xenon.engine.files.PathImplementation;
+import nl.esciencecenter.xenon.engine.util.ProcessIdentity;
+import nl.esciencecenter.xenon.files.FileSystem;
+import nl.esciencecenter.xenon.files.Path;
+import nl.esciencecenter.xenon.files.RelativePath;
+import nl.esciencecenter.xenon.jobs.JobDescription;
+
+import org.junit.Test;
+
+public class SshBatchProcessTest {
+
+    private static final FileSystem FS = new FileSystemImplementation("ssh", "fs", "sftp", "host", new RelativePath("/"), null,
+            null);
+
+    private static Path path(String path) {
+        return new PathImplementation(FS, new RelativePath(path));
+    }
+
+    @Test
+    public void test_buildCommand_redirectsStreams() {
+        JobDescription description = new JobDescription();
+        description.setExecutable("/bin/echo");
+        description.setArguments("a b", "it's");
+
+        String command = SshBatchProcess.buildCommand(description, path("/home/user/work dir"), path("/home/user/in"), 
+                path("/home/user/work dir/stdout.txt"), path("/home/user/work dir/stderr.txt"));
+
+        assertEquals("cd '/home/user/work dir' && /bin/echo 'a b' 'it'\\''s' < '/home/user/in'" 
+                + " > '/home/user/work dir/stdout.txt' 2> '/home/user/work dir/stderr.txt'", command);
+    }
+
+    @Test
+    public void test_buildCommand_noRedirects_usesDevNull() {
+        JobDescription description = new JobDescription();
+        description.setExecutable("/bin/true");
+
+        String command = SshBatchProcess.buildCommand(description, path("/tmp"), null, null, null);
+
+        assertEquals("cd '/tmp' && /bin/true < /dev/null > /dev/null 2> /dev/null", command);
+    }
+
+    @Test
+    public void test_buildRecoverableCommand_printsPidAndWritesExitFile() {
+        String command = SshBatchProcess.buildRecoverableCommand("cd '/tmp' && /bin/true", "/tmp/.exit");
+
+        assertEquals("echo $$ `ps -o lstart= -p $$`; cd '/tmp' && /bin/true; e=$?; echo $e > '/tmp/.exit.tmp'" 
+                + " && mv '/tmp/.exit.tmp' '/tmp/.exit'; exit $e", command);
+    }
+
+    @Test
+    public void test_buildExitFileCommand_readsAndRemovesExitFile() {
+        assertEquals("if [ -f '/tmp/.exit' ]; then cat '/tmp/.exit'; rm -f '/tmp/.exit'; fi", 
+                SshRecoveredProcess.buildExitFileCommand("/tmp/.exit"));
+    }
+
+    @Test
+    public void test_buildKillCommand_checksStartTime() {
+        assertEquals("if [ \"$(echo $(ps -o lstart= -p 42))\" = 'Sun Oct 18 17:08:31 2026' ]; then pkill -9 -P 42;" 
+                + " kill -9 42; fi", SshRecoveredProcess.buildKillCommand(ProcessIdentity.parse("42 Sun Oct 18 17:08:31 2026")));
+    }
+
+    @Test
+    public void test_processTable_buildCommand_singleCommandForAllProcesses() {
+        assertEquals("ps -o pid=,lstart= -p 1,42", SshProcessTable.buildCommand(new TreeSet<>(Arrays.asList(42, 1))));
+    }
+
+    @Test
+    public void test_processTable_parse() throws Exception {
+        Map<Integer, String> result = SshProcessTable.parse("    1 Sun Oct 18 15:51:51 2026\n12164 Sun Oct  4 17:57:34 2026\n");
+
+        assertEquals(2, result.size());
+        assertEquals("Sun Oct 18 15:51:51 2026", result.get(1));
+        assertEquals("Sun Oct 4 17:57:34 2026", result.get(12164));
+    }
+
+    @Test(expected = XenonException.class)
+    public void test_processTable_parse_garbage_throws() throws Exception {
+        SshProcessTable.parse("error: unsupported option\n");
+    }
+}
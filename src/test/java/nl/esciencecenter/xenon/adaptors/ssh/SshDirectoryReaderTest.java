@@ -0,0 +1,301 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.ssh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.XenonRuntimeException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.ChannelSftp.LsEntry;
+import com.jcraft.jsch.ChannelSftp.LsEntrySelector;
+import com.jcraft.jsch.SftpException;
+
+public class SshDirectoryReaderTest {
+
+    private SshMultiplexedSession session;
+    private ChannelSftp channel;
+
+    private final LsEntry first = mock(LsEntry.class);
+    private final LsEntry second = mock(LsEntry.class);
+
+    @Before
+    public void setUp() throws Exception {
+        session = mock(SshMultiplexedSession.class);
+        channel = mock(ChannelSftp.class);
+        when(session.getSftpChannel()).thenReturn(channel);
+    }
+
+    /** Hands the given entries to the selector, waiting for the latch before handing over the second entry. */
+    private void listing(final CountDownLatch latch, final LsEntry... entries) throws Exception {
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Exception {
+                LsEntrySelector selector = (LsEntrySelector) invocation.getArguments()[1];
+
+                for (int i = 0; i < entries.length; i++) {
+                    if (i == 1) {
+                        latch.await();
+                    }
+
+                    if (selector.select(entries[i]) == LsEntrySelector.BREAK) {
+                        break;
+                    }
+                }
+                return null;
+            }
+        }).when(channel).ls(eq("/dir"), any(LsEntrySelector.class));
+    }
+
+    @Test
+    public void next_returnsEntriesInOrder_releasesChannel() throws Exception {
+        listing(new CountDownLatch(0), first, second);
+
+        SshDirectoryReader reader = new SshDirectoryReader(session, "/dir");
+
+        assertSame(first, reader.next());
+        assertSame(second, reader.next());
+        assertFalse(reader.hasNext());
+
+        reader.join(5000);
+        verify(session).releaseSftpChannel(channel);
+    }
+
+    @Test
+    public void next_firstEntryAvailableBeforeListingCompletes() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        listing(latch, first, second);
+
+        SshDirectoryReader reader = new SshDirectoryReader(session, "/dir");
+
+        assertSame(first, reader.next());
+        assertTrue(reader.isAlive());
+
+        latch.countDown();
+
+        assertSame(second, reader.next());
+        assertFalse(reader.hasNext());
+    }
+
+    /** Hands the given number of entries to the selector, and returns a counter of the entries that were selected. */
+    private AtomicInteger largeListing(final int count) throws Exception {
+        final AtomicInteger selected = new AtomicInteger();
+
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Exception {
+                LsEntrySelector selector = (LsEntrySelector) invocation.getArguments()[1];
+
+                for (int i = 0; i < count; i++) {
+                    selected.incrementAndGet();
+
+                    if (selector.select(first) == LsEntrySelector.BREAK) {
+                        break;
+                    }
+                }
+                return null;
+            }
+        }).when(channel).ls(eq("/dir"), any(LsEntrySelector.class));
+
+        return selected;
+    }
+
+    @Test
+    public void listing_consumerFallsBehind_bufferIsBounded() throws Exception {
+        AtomicInteger selected = largeListing(10 * SshDirectoryReader.QUEUE_SIZE);
+
+        SshDirectoryReader reader = new SshDirectoryReader(session, "/dir");
+
+        Thread.sleep(200);
+
+        assertTrue(selected.get() <= SshDirectoryReader.QUEUE_SIZE + 2);
+        assertTrue(reader.isAlive());
+
+        int count = 0;
+
+        while (reader.hasNext()) {
+            reader.next();
+            count++;
+        }
+
+        assertEquals(10 * SshDirectoryReader.QUEUE_SIZE, count);
+        reader.close();
+    }
+
+    @Test
+    public void listing_nestedListingWaitsForChannel_channelReleased() throws Exception {
+        final ChannelSftp nestedChannel = mock(ChannelSftp.class);
+        final Semaphore channels = new Semaphore(1);
+        final AtomicInteger waiters = new AtomicInteger();
+        final AtomicInteger created = new AtomicInteger();
+
+        largeListing(10 * SshDirectoryReader.QUEUE_SIZE);
+
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Exception {
+                LsEntrySelector selector = (LsEntrySelector) invocation.getArguments()[1];
+
+                for (int i = 0; i < 2 * SshDirectoryReader.QUEUE_SIZE; i++) {
+                    selector.select(second);
+                }
+                return null;
+            }
+        }).when(nestedChannel).ls(eq("/dir/sub"), any(LsEntrySelector.class));
+
+        // A session with a single channel.
+        when(session.getSftpChannel()).thenAnswer(new Answer<ChannelSftp>() {
+            @Override
+            public ChannelSftp answer(InvocationOnMock invocation) throws Exception {
+                if (!channels.tryAcquire()) {
+                    waiters.incrementAndGet();
+
+                    try {
+                        if (!channels.tryAcquire(5, TimeUnit.SECONDS)) {
+                            throw new XenonException("test", "Timeout while waiting for a channel");
+                        }
+                    } finally {
+                        waiters.decrementAndGet();
+                    }
+                }
+
+                return created.getAndIncrement() == 0 ? channel : nestedChannel;
+            }
+        });
+
+        Answer<Void> release = new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                channels.release();
+                return null;
+            }
+        };
+
+        doAnswer(release).when(session).releaseSftpChannel(any(ChannelSftp.class));
+
+        when(session.hasChannelWaiters()).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) {
+                return waiters.get() > 0;
+            }
+        });
+
+        SshDirectoryReader reader = new SshDirectoryReader(session, "/dir");
+        assertSame(first, reader.next());
+
+        // The outer listing still holds the only channel, but releases it once the nested listing needs it.
+        SshDirectoryReader nested = new SshDirectoryReader(session, "/dir/sub");
+
+        int count = 0;
+
+        while (nested.hasNext()) {
+            assertSame(second, nested.next());
+            count++;
+        }
+
+        nested.close();
+        assertEquals(2 * SshDirectoryReader.QUEUE_SIZE, count);
+
+        count = 1;
+
+        while (reader.hasNext()) {
+            assertSame(first, reader.next());
+            count++;
+        }
+
+        reader.close();
+        assertEquals(10 * SshDirectoryReader.QUEUE_SIZE, count);
+        verify(session).releaseSftpChannel(channel);
+        verify(session).releaseSftpChannel(nestedChannel);
+    }
+
+    @Test
+    public void close_stopsListing_releasesChannel() throws Exception {
+        AtomicInteger selected = largeListing(10 * SshDirectoryReader.QUEUE_SIZE);
+
+        SshDirectoryReader reader = new SshDirectoryReader(session, "/dir");
+        reader.next();
+        reader.close();
+
+        assertFalse(reader.isAlive());
+        assertFalse(reader.hasNext());
+        assertTrue(selected.get() < 10 * SshDirectoryReader.QUEUE_SIZE);
+        verify(session).releaseSftpChannel(channel);
+    }
+
+    @Test
+    public void constructor_listingFails_throws() throws Exception {
+        doThrow(new SftpException(ChannelSftp.SSH_FX_PERMISSION_DENIED, "Permission denied")).when(channel).ls(eq("/dir"),
+                any(LsEntrySelector.class));
+
+        try {
+            new SshDirectoryReader(session, "/dir");
+            fail("Expected XenonException");
+        } catch (XenonException e) {
+            assertEquals(PermissionDeniedException.class, e.getClass());
+        }
+
+        verify(session).failedSftpChannel(channel);
+    }
+
+    @Test
+    public void hasNext_listingFailsLater_throws() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Exception {
+                ((LsEntrySelector) invocation.getArguments()[1]).select(first);
+                latch.await(5, TimeUnit.SECONDS);
+                throw new SftpException(ChannelSftp.SSH_FX_FAILURE, "Connection lost");
+            }
+        }).when(channel).ls(eq("/dir"), any(LsEntrySelector.class));
+
+        SshDirectoryReader reader = new SshDirectoryReader(session, "/dir");
+        assertSame(first, reader.next());
+
+        latch.countDown();
+
+        try {
+            reader.hasNext();
+            fail("Expected XenonRuntimeException");
+        } catch (XenonRuntimeException e) {
+            // expected
+        }
+    }
+}
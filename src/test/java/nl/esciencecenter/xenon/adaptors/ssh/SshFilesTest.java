@@ -0,0 +1,75 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.ssh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.lang.reflect.Method;
+
+import org.junit.Test;
+
+import com.jcraft.jsch.Buffer;
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.SftpATTRS;
+import com.jcraft.jsch.SftpException;
+
+public class SshFilesTest {
+
+    private SftpATTRS createEmptySftpATTRS() throws Exception {
+        Method method = SftpATTRS.class.getDeclaredMethod("getATTR", Buffer.class);
+        method.setAccessible(true);
+        return (SftpATTRS) method.invoke(null, new Buffer(new byte[4]));
+    }
+
+    @Test
+    public void lstat_existingPath_singleRoundTrip() throws Exception {
+        ChannelSftp channel = mock(ChannelSftp.class);
+        SftpATTRS attributes = createEmptySftpATTRS();
+        when(channel.lstat("/home/user/file")).thenReturn(attributes);
+
+        assertSame(attributes, SshFiles.lstat(channel, "/home/user/file"));
+        verify(channel, times(1)).lstat("/home/user/file");
+    }
+
+    @Test
+    public void lstat_missingPath_null() throws Exception {
+        ChannelSftp channel = mock(ChannelSftp.class);
+        when(channel.lstat("/home/user/missing")).thenThrow(new SftpException(ChannelSftp.SSH_FX_NO_SUCH_FILE, "No such file"));
+
+        assertNull(SshFiles.lstat(channel, "/home/user/missing"));
+        verify(channel, times(1)).lstat("/home/user/missing");
+    }
+
+    @Test
+    public void lstat_permissionDenied_throws() throws Exception {
+        ChannelSftp channel = mock(ChannelSftp.class);
+        when(channel.lstat("/root/file")).thenThrow(new SftpException(ChannelSftp.SSH_FX_PERMISSION_DENIED, "Permission denied"));
+
+        try {
+            SshFiles.lstat(channel, "/root/file");
+            fail("Expected SftpException");
+        } catch (SftpException e) {
+            assertEquals(ChannelSftp.SSH_FX_PERMISSION_DENIED, e.id);
+        }
+    }
+}
@@ -0,0 +1,324 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.ssh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import nl.esciencecenter.xenon.XenonException;
+
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+
+public class SshMultiplexedSessionTest {
+
+    /** A multiplexed session that creates mock sessions instead of connecting to a server. */
+    static class MockMultiplexedSession extends SshMultiplexedSession {
+
+        private final int maxChannels;
+        private final int maxCachedSftpChannels;
+
+        final List<Session> created = new ArrayList<>();
+
+        MockMultiplexedSession(int maxSessions, int maxChannels, int maxCachedSftpChannels, long idleTimeout, long maxWait) {
+            this(maxSessions, maxChannels, maxCachedSftpChannels, 0, idleTimeout, maxWait);
+        }
+
+        MockMultiplexedSession(int maxSessions, int maxChannels, int maxCachedSftpChannels, int reservedSftpChannels, 
+                long idleTimeout, long maxWait) {
+            super(maxSessions, maxChannels, maxCachedSftpChannels, reservedSftpChannels, idleTimeout, 0, maxWait);
+            this.maxChannels = maxChannels;
+            this.maxCachedSftpChannels = maxCachedSftpChannels;
+        }
+
+        @Override
+        SshSession connectSession(int sessionID) throws XenonException {
+            Session session = createMockSession();
+
+            synchronized (this) {
+                created.add(session);
+            }
+
+            return new SshSession(session, -1, sessionID, maxChannels, maxCachedSftpChannels);
+        }
+    }
+
+    private static Session createMockSession() throws XenonException {
+        final Session session = mock(Session.class);
+
+        when(session.isConnected()).thenReturn(true);
+
+        try {
+            when(session.openChannel("exec")).thenAnswer(new Answer<ChannelExec>() {
+                @Override
+                public ChannelExec answer(InvocationOnMock invocation) throws Throwable {
+                    ChannelExec channel = mock(ChannelExec.class);
+                    when(channel.getSession()).thenReturn(session);
+                    return channel;
+                }
+            });
+
+            when(session.openChannel("sftp")).thenAnswer(new Answer<ChannelSftp>() {
+                @Override
+                public ChannelSftp answer(InvocationOnMock invocation) throws Throwable {
+                    ChannelSftp channel = mock(ChannelSftp.class);
+                    when(channel.getSession()).thenReturn(session);
+                    when(channel.isConnected()).thenReturn(true);
+                    return channel;
+                }
+            });
+        } catch (JSchException e) {
+            throw new XenonException("test", "Failed to create mock session", e);
+        }
+
+        return session;
+    }
+
+    @Test
+    public void test_getExecChannel_spreadOverSessions() throws Exception {
+        MockMultiplexedSession s = new MockMultiplexedSession(2, 2, 1, 60000, 0);
+
+        for (int i = 0; i < 4; i++) {
+            s.getExecChannel();
+        }
+
+        assertEquals(2, s.getSessionCount());
+        assertEquals(2, s.created.size());
+    }
+
+    @Test(expected = XenonException.class)
+    public void test_getExecChannel_allChannelsInUse_timesOut() throws Exception {
+        MockMultiplexedSession s = new MockMultiplexedSession(1, 2, 1, 60000, 100);
+
+        s.getExecChannel();
+        s.getExecChannel();
+        s.getExecChannel();
+    }
+
+    @Test
+    public void test_getExecChannel_waitsForRelease() throws Exception {
+        final MockMultiplexedSession s = new MockMultiplexedSession(1, 1, 1, 60000, 10000);
+
+        final ChannelExec first = s.getExecChannel();
+
+        Thread releaser = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                    s.releaseExecChannel(first);
+                } catch (Exception e) {
+                    // ignored, the test will time out.
+                }
+            }
+        };
+
+        releaser.start();
+
+        s.getExecChannel();
+        releaser.join();
+
+        verify(first).disconnect();
+        assertEquals(1, s.created.size());
+    }
+
+    @Test
+    public void test_getSftpChannel_waitsForRelease_hasChannelWaiters() throws Exception {
+        final MockMultiplexedSession s = new MockMultiplexedSession(1, 1, 1, 60000, 10000);
+
+        ChannelSftp first = s.getSftpChannel();
+
+        assertFalse(s.hasChannelWaiters());
+
+        Thread waiter = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    s.getSftpChannel();
+                } catch (Exception e) {
+                    // ignored, the test will fail.
+                }
+            }
+        };
+
+        waiter.start();
+
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while (!s.hasChannelWaiters() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertTrue(s.hasChannelWaiters());
+
+        s.releaseSftpChannel(first);
+        waiter.join(5000);
+
+        assertFalse(waiter.isAlive());
+        assertFalse(s.hasChannelWaiters());
+    }
+
+    @Test
+    public void test_getExecChannel_reservedSftpChannels_sftpStillAvailable() throws Exception {
+        MockMultiplexedSession s = new MockMultiplexedSession(2, 2, 0, 1, 60000, 100);
+
+        s.getExecChannel();
+        s.getExecChannel();
+        s.getExecChannel();
+
+        try {
+            s.getExecChannel();
+            fail("Expected timeout");
+        } catch (XenonException e) {
+            // expected, the last channel is reserved for sftp.
+        }
+
+        s.getSftpChannel();
+    }
+
+    @Test
+    public void test_releaseExecChannel_freesReservedExecChannel() throws Exception {
+        MockMultiplexedSession s = new MockMultiplexedSession(1, 2, 0, 1, 60000, 100);
+
+        ChannelExec channel = s.getExecChannel();
+        s.releaseExecChannel(channel);
+
+        s.failedExecChannel(s.getExecChannel());
+        s.getExecChannel();
+    }
+
+    @Test
+    public void test_getSftpChannel_reusesCachedChannels() throws Exception {
+        MockMultiplexedSession s = new MockMultiplexedSession(1, 4, 2, 60000, 0);
+
+        ChannelSftp a = s.getSftpChannel();
+        ChannelSftp b = s.getSftpChannel();
+        ChannelSftp c = s.getSftpChannel();
+
+        s.releaseSftpChannel(a);
+        s.releaseSftpChannel(b);
+        s.releaseSftpChannel(c);
+
+        // Only two channels are cached, the third one is closed.
+        verify(c).disconnect();
+
+        assertSame(b, s.getSftpChannel());
+        assertSame(a, s.getSftpChannel());
+        verify(s.created.get(0), times(3)).openChannel("sftp");
+    }
+
+    @Test
+    public void test_getExecChannel_evictsCachedSftpChannel() throws Exception {
+        MockMultiplexedSession s = new MockMultiplexedSession(1, 1, 1, 60000, 0);
+
+        ChannelSftp sftp = s.getSftpChannel();
+        s.releaseSftpChannel(sftp);
+
+        s.getExecChannel();
+
+        verify(sftp).disconnect();
+    }
+
+    @Test
+    public void test_failedChannel_brokenSessionReplaced() throws Exception {
+        MockMultiplexedSession s = new MockMultiplexedSession(1, 1, 1, 60000, 0);
+
+        ChannelExec channel = s.getExecChannel();
+
+        Session broken = s.created.get(0);
+        when(broken.isConnected()).thenReturn(false);
+
+        s.failedExecChannel(channel);
+
+        assertEquals(0, s.getSessionCount());
+
+        s.getExecChannel();
+
+        assertEquals(2, s.created.size());
+        assertEquals(1, s.getSessionCount());
+        verify(broken).disconnect();
+    }
+
+    @Test
+    public void test_getSftpChannel_brokenSessionReplacedTransparently() throws Exception {
+        MockMultiplexedSession s = new MockMultiplexedSession(1, 2, 1, 60000, 0);
+
+        s.releaseExecChannel(s.getExecChannel());
+
+        Session broken = s.created.get(0);
+        doThrow(new JSchException("session is down")).when(broken).openChannel("sftp");
+
+        // The connection drops while the channel is being opened. 
+        when(broken.isConnected()).thenReturn(true, false);
+
+        ChannelSftp channel = s.getSftpChannel();
+
+        assertNotSame(broken, channel.getSession());
+        assertEquals(2, s.created.size());
+        assertEquals(1, s.getSessionCount());
+    }
+
+    @Test
+    public void test_reap_removesIdleSessionsButOldest() throws Exception {
+        MockMultiplexedSession s = new MockMultiplexedSession(3, 1, 1, 1, 0);
+
+        ChannelExec a = s.getExecChannel();
+        ChannelExec b = s.getExecChannel();
+        ChannelExec c = s.getExecChannel();
+
+        s.releaseExecChannel(a);
+        s.releaseExecChannel(b);
+
+        Thread.sleep(10);
+
+        s.reap();
+
+        assertEquals(2, s.getSessionCount());
+        verify(s.created.get(1)).disconnect();
+
+        s.releaseExecChannel(c);
+    }
+
+    @Test(expected = XenonException.class)
+    public void test_getExecChannel_afterDisconnect_throws() throws Exception {
+        MockMultiplexedSession s = new MockMultiplexedSession(1, 1, 1, 60000, 0);
+
+        s.getExecChannel();
+        s.disconnect();
+
+        verify(s.created.get(0)).disconnect();
+
+        s.getExecChannel();
+    }
+}
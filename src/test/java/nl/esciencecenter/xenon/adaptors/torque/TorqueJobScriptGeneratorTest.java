@@ -158,4 +158,51 @@ public class TorqueJobScriptGeneratorTest {
 
         assertEquals("serial script content incorrect", expected, output.out().toString());
     }
+
+    @Test
+    public void test04a_generateArray_DifferentArguments_CaseOnArrayID() throws XenonException {
+        JobDescription first = new JobDescription();
+        first.setExecutable("/bin/executable");
+        first.setArguments("1");
+
+        JobDescription second = new JobDescription(first);
+        second.setArguments("2");
+
+        String result = TorqueJobScriptGenerator.generateArray(new JobDescription[] { first, second }, null);
+
+        String expected =
+                  "#!/bin/sh\n"
+                + "#PBS -S /bin/sh\n"
+                + "#PBS -N xenon\n"
+                + "#PBS -l nodes=1:ppn=1\n"
+                + "#PBS -l walltime=00:15:00\n"
+                + "#PBS -t 0-1\n"
+                + "\n"
+                + "case \"$PBS_ARRAYID\" in\n"
+                + "0)\n    /bin/executable '1'\n    ;;\n"
+                + "1)\n    /bin/executable '2'\n    ;;\n"
+                + "esac\n";
+
+        assertEquals(expected, result);
+    }
+
+    @Test
+    public void test04b_generateArray_SameCommand_SingleCommand() throws XenonException {
+        JobDescription description = new JobDescription();
+        description.setExecutable("/bin/executable");
+
+        String result = TorqueJobScriptGenerator.generateArray(new JobDescription[] { description, description }, null);
+
+        String expected =
+                  "#!/bin/sh\n"
+                + "#PBS -S /bin/sh\n"
+                + "#PBS -N xenon\n"
+                + "#PBS -l nodes=1:ppn=1\n"
+                + "#PBS -l walltime=00:15:00\n"
+                + "#PBS -t 0-1\n"
+                + "\n"
+                + "/bin/executable\n";
+
+        assertEquals(expected, result);
+    }
 }
@@ -233,4 +233,14 @@ public class TorqueSchedulerConnectionTest {
 
         TorqueSchedulerConnection.getJobStatusFromQstatInfo(input, job);
     }
+
+    @Test
+    public void test05a_getTaskIdentifier_JobArray_TaskIdentifier() throws XenonException {
+        assertEquals("555[3].localhost", TorqueSchedulerConnection.getTaskIdentifier("555[].localhost", 3));
+    }
+
+    @Test(expected = XenonException.class)
+    public void test05b_getTaskIdentifier_NoJobArray_ExceptionThrown() throws XenonException {
+        TorqueSchedulerConnection.getTaskIdentifier("555.localhost", 3);
+    }
 }
@@ -20,6 +20,7 @@ import static org.junit.Assert.*;
 import java.io.InputStream;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Scanner;
 
@@ -29,6 +30,8 @@ import org.junit.FixMethodOrder;
 import org.junit.Test;
 import org.junit.runners.MethodSorters;
 import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
 
 @FixMethodOrder(MethodSorters.NAME_ASCENDING)
 public class TorqueXmlParserTest {
@@ -145,4 +148,47 @@ public class TorqueXmlParserTest {
         expectedResult.put("c", "4");
         assertEquals(expectedResult, result);
     }
+
+    @Test
+    public void test05a_parseJobInfo_SameAsRecursiveMap() throws Throwable {
+        String input = readFile("/fixtures/torque/jobs.xml");
+        TorqueXmlParser parser = new TorqueXmlParser();
+
+        Map<String, Map<String, String>> expected = new HashMap<>();
+        NodeList nodes = parser.parseDocument(input).getDocumentElement().getChildNodes();
+
+        for (int i = 0; i < nodes.getLength(); i++) {
+            if (nodes.item(i).getNodeType() == Node.ELEMENT_NODE) {
+                Map<String, String> job = new HashMap<>();
+                parser.recursiveMapFromElement(nodes.item(i), job);
+                expected.put(job.get("Job_Id"), job);
+            }
+        }
+
+        assertEquals(expected, parser.parseJobInfos(input));
+    }
+
+    @Test
+    public void test05b_parseJobInfo_RequestedJobs_OnlyRequestedResult() throws Throwable {
+        String input = readFile("/fixtures/torque/jobs.xml");
+        TorqueXmlParser parser = new TorqueXmlParser();
+
+        Map<String, Map<String, String>> all = parser.parseJobInfos(input);
+        Map<String, Map<String, String>> result = parser.parseJobInfos(input, new HashSet<>(Arrays.asList(
+                "8938236.batch1.lisa.surfsara.nl", "1.batch1.lisa.surfsara.nl")));
+
+        assertEquals(1, result.size());
+        assertEquals(all.get("8938236.batch1.lisa.surfsara.nl"), result.get("8938236.batch1.lisa.surfsara.nl"));
+        assertEquals("2:ppn=12:cores12", all.get("8921165.batch1.lisa.surfsara.nl").get("nodes"));
+    }
+
+    @Test
+    public void test05c_parseJobInfo_Empty_EmptyResult() throws Throwable {
+        assertTrue(new TorqueXmlParser().parseJobInfos(" \n").isEmpty());
+    }
+
+    @Test(expected = XenonException.class)
+    public void test05d_parseJobInfo_Malformed_ExceptionThrown() throws Throwable {
+        new TorqueXmlParser().parseJobInfos("<Data><Job><Job_Id>1</Job_Id></Job>");
+    }
 }
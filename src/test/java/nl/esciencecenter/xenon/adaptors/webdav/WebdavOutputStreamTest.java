@@ -15,61 +15,118 @@
  */
 package nl.esciencecenter.xenon.adaptors.webdav;
 
-import static org.mockito.Mockito.atLeastOnce;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.methods.EntityEnclosingMethod;
 import org.junit.Before;
 import org.junit.Test;
-import org.mockito.Mockito;
-
-import nl.esciencecenter.xenon.XenonException;
-import nl.esciencecenter.xenon.files.FileSystem;
-import nl.esciencecenter.xenon.files.Path;
-import nl.esciencecenter.xenon.files.RelativePath;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 public class WebdavOutputStreamTest {
-    private Path path;
-    private WebdavFiles files;
-    private WebdavOutputStream webdavOutputStream;
+
+    /** Collects the request body, and counts the number of writes. */
+    static class Sink extends ByteArrayOutputStream {
+
+        private int writes = 0;
+
+        @Override
+        public synchronized void write(int b) {
+            writes++;
+            super.write(b);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            writes++;
+            super.write(b, off, len);
+        }
+    }
+
+    /** Writes the request body into the sink and returns the given status. */
+    static class PutAnswer implements Answer<Integer> {
+
+        private final Sink sink;
+        private final int status;
+
+        PutAnswer(Sink sink, int status) {
+            this.sink = sink;
+            this.status = status;
+        }
+
+        @Override
+        public Integer answer(InvocationOnMock invocation) throws Throwable {
+            EntityEnclosingMethod method = (EntityEnclosingMethod) invocation.getArguments()[0];
+            method.getRequestEntity().writeRequest(sink);
+            return status;
+        }
+    }
+
+    private HttpClient client;
+    private Sink sink;
 
     @Before
     public void setUp() {
-        path = getPathMock();
-        files = mock(WebdavFiles.class);
-        webdavOutputStream = new WebdavOutputStream(path, files);
+        client = mock(HttpClient.class);
+        sink = new Sink();
     }
 
     @Test
-    public void close_deleteExistingFile() throws IOException, XenonException {
-        when(files.exists(Mockito.isA(Path.class))).thenReturn(true);
-        webdavOutputStream.close();
-        verify(files, atLeastOnce()).delete(Mockito.isA(Path.class));
+    public void write_bulk_streamedInSingleRequest() throws IOException {
+        when(client.executeMethod(any(HttpMethod.class))).thenAnswer(new PutAnswer(sink, HttpStatus.SC_CREATED));
+
+        byte[] data = new byte[1024 * 1024];
+        data[42] = 42;
+
+        WebdavOutputStream out = new WebdavOutputStream(client, "/file");
+        out.write(data, 0, data.length);
+        out.write(7);
+        out.close();
+
+        byte[] expected = new byte[data.length + 1];
+        System.arraycopy(data, 0, expected, 0, data.length);
+        expected[data.length] = 7;
+
+        assertArrayEquals(expected, sink.toByteArray());
+        assertEquals(2, sink.writes);
+        verify(client, times(1)).executeMethod(any(HttpMethod.class));
     }
 
     @Test
-    public void close_dontDeleteNonexistingFile() throws IOException, XenonException {
-        when(files.exists(Mockito.isA(Path.class))).thenReturn(false);
-        webdavOutputStream.close();
-        verify(files, never()).delete(Mockito.isA(Path.class));
+    public void close_noData_emptyFile() throws IOException {
+        when(client.executeMethod(any(HttpMethod.class))).thenAnswer(new PutAnswer(sink, HttpStatus.SC_NO_CONTENT));
+
+        new WebdavOutputStream(client, "/file").close();
+
+        assertEquals(0, sink.size());
     }
 
-    private Path getPathMock() {
-        return new Path() {
+    @Test(expected = IOException.class)
+    public void close_requestRejected_throws() throws IOException {
+        when(client.executeMethod(any(HttpMethod.class))).thenAnswer(new PutAnswer(sink, HttpStatus.SC_METHOD_NOT_ALLOWED));
+
+        WebdavOutputStream out = new WebdavOutputStream(client, "/file");
+        out.write(new byte[10]);
+        out.close();
+    }
 
-            @Override
-            public RelativePath getRelativePath() {
-                return null;
-            }
+    @Test(expected = IOException.class)
+    public void write_requestFailed_throws() throws IOException {
+        when(client.executeMethod(any(HttpMethod.class))).thenThrow(new IOException("Connection refused"));
 
-            @Override
-            public FileSystem getFileSystem() {
-                return null;
-            }
-        };
+        WebdavOutputStream out = new WebdavOutputStream(client, "/file");
+        out.write(new byte[10]);
     }
 }
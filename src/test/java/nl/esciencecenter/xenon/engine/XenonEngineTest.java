@@ -75,6 +75,21 @@ public class XenonEngineTest {
         XenonEngine.newXenon(properties);
     }
 
+    @Test
+    public void newEngine_CopyEngineProperties_Success() throws Exception {
+        Map<String, String> properties = new HashMap<>();
+        properties.put("xenon.copy.threads", "2");
+        properties.put("xenon.adaptors.local.queue.pollingDelay", "1500");
+        XenonEngine.newXenon(properties);
+    }
+
+    @Test(expected = UnknownPropertyException.class)
+    public void newEngine_UnknownCopyEngineProperty_ThrowsException() throws Exception {
+        Map<String, String> properties = new HashMap<>();
+        properties.put("xenon.copy.hupsefluts", "2");
+        XenonEngine.newXenon(properties);
+    }
+
     @Test(expected = UnknownPropertyException.class)
     public void newEngine_CorrectAndIncorrectProperties_ThrowsException() throws Exception {
         Map<String, String> properties = new HashMap<>();
@@ -0,0 +1,239 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.engine.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import nl.esciencecenter.xenon.InvalidPropertyException;
+import nl.esciencecenter.xenon.UnknownPropertyException;
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.engine.files.FileSystemImplementation;
+import nl.esciencecenter.xenon.engine.files.PathImplementation;
+import nl.esciencecenter.xenon.files.CopyOption;
+import nl.esciencecenter.xenon.files.CopyStatus;
+import nl.esciencecenter.xenon.files.FileAttributes;
+import nl.esciencecenter.xenon.files.FileSystem;
+import nl.esciencecenter.xenon.files.Files;
+import nl.esciencecenter.xenon.files.OpenOption;
+import nl.esciencecenter.xenon.files.Path;
+import nl.esciencecenter.xenon.files.RelativePath;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class CopyEngineTest {
+
+    /** An input stream that produces a single byte once it is released. */
+    static class BlockingInputStream extends InputStream {
+
+        private final CountDownLatch release;
+        private boolean read = false;
+
+        BlockingInputStream(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IOException("Interrupted", e);
+            }
+
+            if (read) {
+                return -1;
+            }
+
+            read = true;
+            return 42;
+        }
+    }
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private Files files;
+    private FileSystem fsA;
+    private FileSystem fsB;
+
+    @Before
+    public void setUp() throws Exception {
+        fsA = new FileSystemImplementation("ssh", "fs-A", "sftp", "hostA", new RelativePath("/"), null, null);
+        fsB = new FileSystemImplementation("local", "fs-B", "file", "/", new RelativePath("/"), null, null);
+
+        files = mock(Files.class);
+
+        FileAttributes att = mock(FileAttributes.class);
+        when(att.size()).thenReturn(1L);
+
+        when(files.getAttributes(any(Path.class))).thenReturn(att);
+
+        // Everything exists, except the targets of the copies.
+        when(files.exists(any(Path.class))).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) {
+                String name = ((Path) invocation.getArguments()[0]).getRelativePath().getFileNameAsString();
+                return name == null || !name.startsWith("target");
+            }
+        });
+
+        when(files.newPath(any(FileSystem.class), any(RelativePath.class))).thenAnswer(new Answer<Path>() {
+            @Override
+            public Path answer(InvocationOnMock invocation) {
+                Object[] args = invocation.getArguments();
+                return new PathImplementation((FileSystem) args[0], (RelativePath) args[1]);
+            }
+        });
+
+        when(files.newInputStream(any(Path.class))).thenAnswer(new Answer<InputStream>() {
+            @Override
+            public InputStream answer(InvocationOnMock invocation) {
+                return new BlockingInputStream(release);
+            }
+        });
+
+        when(files.newOutputStream(any(Path.class), any(OpenOption.class), any(OpenOption.class))).thenReturn(
+                new ByteArrayOutputStream());
+    }
+
+    private CopyEngine createEngine(String threads, String perAdaptor, String perFileSystem) throws XenonException {
+        Map<String, String> p = new HashMap<>();
+        p.put(CopyEngine.THREADS, threads);
+        p.put(CopyEngine.MAX_CONCURRENT_PER_ADAPTOR, perAdaptor);
+        p.put(CopyEngine.MAX_CONCURRENT_PER_FILESYSTEM, perFileSystem);
+        return new CopyEngine(files, p);
+    }
+
+    private CopyInfo submit(CopyEngine engine, FileSystem fs, String target) throws XenonException {
+        Path source = new PathImplementation(fs, new RelativePath("/source"));
+        Path dest = new PathImplementation(fs, new RelativePath("/" + target));
+
+        CopyInfo info = CopyInfo.createCopyInfo("test", engine.getNextID("TEST_COPY_"), source, dest,
+                CopyOption.ASYNCHRONOUS);
+
+        engine.copy(info);
+        return info;
+    }
+
+    private CopyStatus waitForState(CopyEngine engine, CopyInfo info, String state) throws Exception {
+
+        long deadline = System.currentTimeMillis() + 5000;
+
+        CopyStatus status = engine.getStatus(info.getCopy());
+
+        while (!state.equals(status.getState()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            status = engine.getStatus(info.getCopy());
+        }
+
+        assertEquals(state, status.getState());
+        return status;
+    }
+
+    @Test(expected = InvalidPropertyException.class)
+    public void test_constructor_noThreads_throws() throws Exception {
+        createEngine("0", "1", "1");
+    }
+
+    @Test(expected = UnknownPropertyException.class)
+    public void test_constructor_unknownProperty_throws() throws Exception {
+        Map<String, String> p = new HashMap<>();
+        p.put(CopyEngine.PREFIX + "aap", "noot");
+        new CopyEngine(files, p);
+    }
+
+    @Test
+    public void test_copy_fileSystemLimit_otherFileSystemNotBlocked() throws Exception {
+
+        CopyEngine engine = createEngine("4", "4", "1");
+
+        CopyInfo first = submit(engine, fsA, "target1");
+        waitForState(engine, first, "RUNNING");
+
+        CopyInfo second = submit(engine, fsA, "target2");
+        CopyInfo third = submit(engine, fsB, "target3");
+
+        // The third copy uses a different filesystem and adaptor, so it may overtake the second.
+        waitForState(engine, third, "RUNNING");
+        assertEquals("PENDING", engine.getStatus(second.getCopy()).getState());
+
+        release.countDown();
+
+        assertNull(waitForState(engine, first, "DONE").getException());
+        assertNull(waitForState(engine, second, "DONE").getException());
+        assertNull(waitForState(engine, third, "DONE").getException());
+
+        engine.done();
+    }
+
+    @Test
+    public void test_copy_adaptorLimit_blocksSameAdaptor() throws Exception {
+
+        FileSystem fsC = new FileSystemImplementation("ssh", "fs-C", "sftp", "hostC", new RelativePath("/"), null, null);
+
+        CopyEngine engine = createEngine("4", "1", "4");
+
+        CopyInfo first = submit(engine, fsA, "target1");
+        waitForState(engine, first, "RUNNING");
+
+        CopyInfo second = submit(engine, fsC, "target2");
+
+        Thread.sleep(100);
+        assertEquals("PENDING", engine.getStatus(second.getCopy()).getState());
+
+        release.countDown();
+
+        waitForState(engine, first, "DONE");
+        waitForState(engine, second, "DONE");
+
+        engine.done();
+    }
+
+    @Test
+    public void test_cancel_pendingCopy() throws Exception {
+
+        CopyEngine engine = createEngine("1", "4", "4");
+
+        CopyInfo first = submit(engine, fsA, "target1");
+        waitForState(engine, first, "RUNNING");
+
+        CopyInfo second = submit(engine, fsB, "target2");
+
+        CopyStatus status = engine.cancel(second.getCopy());
+
+        assertEquals("KILLED", status.getState());
+        assertTrue(status.hasException());
+
+        release.countDown();
+        waitForState(engine, first, "DONE");
+
+        engine.done();
+    }
+}
@@ -0,0 +1,197 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.engine.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.engine.util.JobJournal.JobEntry;
+import nl.esciencecenter.xenon.jobs.JobDescription;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JobJournalTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = new File("xenon_JobJournalTest_" + System.currentTimeMillis() + ".journal");
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        file.delete();
+        new File(file.getPath() + ".lock").delete();
+    }
+
+    private JobDescription createDescription() {
+        JobDescription description = new JobDescription();
+        description.setExecutable("/bin/echo");
+        description.setArguments("a", "b c");
+        description.setStdout("stdout.txt");
+        description.setQueueName("multi");
+        description.addEnvironment("KEY", "value");
+        description.setMaxTime(5);
+        return description;
+    }
+
+    @Test
+    public void test_reopen_recoversJobs() throws Exception {
+
+        JobJournal journal = new JobJournal("test", file);
+        String id = journal.getInstanceID();
+
+        journal.submitted("test-0", createDescription());
+        journal.submitted("test-1", createDescription());
+        journal.submitted("test-2", createDescription());
+        journal.started("test-1", "42", "/tmp/exit-1");
+        journal.started("test-2", "43", "/tmp/exit-2");
+        journal.finished("test-2", "KILLED", null, new XenonException("test", "Process cancelled by user."));
+        journal.submitted("test-3", createDescription());
+        journal.removed("test-3");
+        journal.close();
+
+        journal = new JobJournal("test", file);
+
+        assertEquals(id, journal.getInstanceID());
+
+        List<JobEntry> jobs = journal.getRecoveredJobs();
+        assertEquals(3, jobs.size());
+
+        JobEntry notStarted = jobs.get(0);
+        assertEquals("test-0", notStarted.getIdentifier());
+        assertNull(notStarted.getHandle());
+        assertNull(notStarted.getState());
+
+        JobDescription description = notStarted.getDescription();
+        assertEquals("/bin/echo", description.getExecutable());
+        assertEquals(Arrays.asList("a", "b c"), description.getArguments());
+        assertEquals("stdout.txt", description.getStdout());
+        assertNull(description.getStderr());
+        assertEquals("multi", description.getQueueName());
+        assertEquals("value", description.getEnvironment().get("KEY"));
+        assertEquals(5, description.getMaxTime());
+
+        JobEntry running = jobs.get(1);
+        assertEquals("42", running.getHandle());
+        assertEquals("/tmp/exit-1", running.getExitFile());
+        assertNull(running.getState());
+
+        JobEntry killed = jobs.get(2);
+        assertEquals("KILLED", killed.getState());
+        assertNull(killed.getExitCode());
+        assertEquals("test adaptor: Process cancelled by user.", killed.getError());
+
+        journal.close();
+    }
+
+    @Test
+    public void test_reopen_compactsJournal() throws Exception {
+
+        JobJournal journal = new JobJournal("test", file);
+
+        for (int i = 0; i < 100; i++) {
+            journal.submitted("test-" + i, createDescription());
+            journal.finished("test-" + i, "DONE", 0, null);
+            journal.removed("test-" + i);
+        }
+
+        long before = file.length();
+        journal.close();
+
+        journal = new JobJournal("test", file);
+        assertTrue(journal.getRecoveredJobs().isEmpty());
+        assertTrue(file.length() < before);
+        journal.close();
+    }
+
+    @Test
+    public void test_reopen_truncatedRecordIgnored() throws Exception {
+
+        JobJournal journal = new JobJournal("test", file);
+        journal.submitted("test-0", createDescription());
+        journal.finished("test-0", "DONE", 3, null);
+        journal.close();
+
+        // Simulate a crash while writing a record.
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(new byte[] { 0, 0, 1, 0, 1, 2 });
+        }
+
+        journal = new JobJournal("test", file);
+
+        List<JobEntry> jobs = journal.getRecoveredJobs();
+        assertEquals(1, jobs.size());
+        assertEquals("DONE", jobs.get(0).getState());
+        assertEquals(Integer.valueOf(3), jobs.get(0).getExitCode());
+
+        // New records are appended after the last complete record.
+        journal.submitted("test-1", createDescription());
+        journal.close();
+
+        journal = new JobJournal("test", file);
+        assertEquals(2, journal.getRecoveredJobs().size());
+        journal.close();
+    }
+
+    @Test(expected = XenonException.class)
+    public void test_open_notAJournal_throws() throws Exception {
+
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+        }
+
+        new JobJournal("test", file);
+    }
+
+    @Test(expected = XenonException.class)
+    public void test_open_alreadyInUse_throws() throws Exception {
+
+        JobJournal journal = new JobJournal("test", file);
+
+        try {
+            new JobJournal("test", file);
+        } finally {
+            journal.close();
+        }
+    }
+
+    @Test
+    public void test_open_emptyArguments() throws Exception {
+
+        JobJournal journal = new JobJournal("test", file);
+
+        JobDescription description = new JobDescription();
+        description.setExecutable("/bin/true");
+        journal.submitted("test-0", description);
+        journal.close();
+
+        journal = new JobJournal("test", file);
+        assertArrayEquals(new String[0], journal.getRecoveredJobs().get(0).getDescription().getArguments().toArray());
+        journal.close();
+    }
+}
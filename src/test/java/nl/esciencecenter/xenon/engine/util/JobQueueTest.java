@@ -15,14 +15,20 @@
  */
 package nl.esciencecenter.xenon.engine.util;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyVararg;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 
 import nl.esciencecenter.xenon.Xenon;
 import nl.esciencecenter.xenon.XenonException;
@@ -38,6 +44,8 @@ import nl.esciencecenter.xenon.jobs.InvalidJobDescriptionException;
 import nl.esciencecenter.xenon.jobs.Job;
 import nl.esciencecenter.xenon.jobs.JobDescription;
 import nl.esciencecenter.xenon.jobs.JobStatus;
+import nl.esciencecenter.xenon.jobs.Jobs;
+import nl.esciencecenter.xenon.jobs.NoSuchJobException;
 import nl.esciencecenter.xenon.jobs.Scheduler;
 import nl.esciencecenter.xenon.jobs.Streams;
 import nl.esciencecenter.xenon.util.Utils;
@@ -46,6 +54,8 @@ import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 /**
  * 
@@ -531,4 +541,287 @@ public class JobQueueTest {
         jobQueue.cancelJob(job);
     }
 
+    private static JobStatus waitForState(Job job, String state) throws Exception {
+        return waitForState(jobQueue, job, state);
+    }
+
+    private static JobStatus waitForState(JobQueues queues, Job job, String state) throws Exception {
+
+        long deadline = System.currentTimeMillis() + 5000;
+
+        JobStatus status = queues.getJobStatus(job);
+
+        while (!state.equals(status.getState()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            status = queues.getJobStatus(job);
+        }
+
+        return status;
+    }
+
+    @Test
+    public void test_getJobStatus_reportsDoneImmediately() throws Exception {
+
+        JobDescription d = new JobDescription();
+        d.setExecutable("exec_getJobStatusImmediately");
+        d.setQueueName("unlimited");
+
+        Job job = jobQueue.submitJob(d);
+
+        assertTrue(waitForState(job, "RUNNING").isRunning());
+
+        currentWrapper.setExitStatus(42);
+        currentWrapper.setDone();
+
+        // The process is checked by the status request itself, so there is no need to wait for the polling delay.
+        JobStatus status = jobQueue.getJobStatus(job);
+
+        assertTrue(status.isDone());
+        assertTrue(status.getExitCode() == 42);
+    }
+
+    @Test
+    public void test_singleQueue_startsNextJobWhenDone() throws Exception {
+
+        JobDescription d = new JobDescription();
+        d.setExecutable("exec_singleQueue");
+        d.setQueueName("single");
+
+        Job first = jobQueue.submitJob(d);
+        Job second = jobQueue.submitJob(d);
+
+        assertTrue(waitForState(first, "RUNNING").isRunning());
+
+        MyProcessWrapper firstWrapper = currentWrapper;
+
+        Thread.sleep(TEST_POLLING_DELAY);
+
+        assertTrue("PENDING".equals(jobQueue.getJobStatus(second).getState()));
+
+        firstWrapper.setExitStatus(0);
+        firstWrapper.setDone();
+
+        assertTrue(waitForState(first, "DONE").isDone());
+        assertTrue(waitForState(second, "RUNNING").isRunning());
+
+        JobStatus status = jobQueue.cancelJob(second);
+
+        assertTrue(status.isDone());
+        assertTrue(currentWrapper.isDestroyed());
+    }
+
+    @Test
+    public void test_cancelJob_waitingJob() throws Exception {
+
+        JobDescription d = new JobDescription();
+        d.setExecutable("exec_cancelWaitingJob");
+        d.setQueueName("single");
+
+        Job first = jobQueue.submitJob(d);
+        Job second = jobQueue.submitJob(d);
+
+        assertTrue(waitForState(first, "RUNNING").isRunning());
+
+        JobStatus status = jobQueue.cancelJob(second);
+
+        assertTrue(status.isDone());
+        assertTrue(status.hasException());
+
+        status = jobQueue.cancelJob(first);
+
+        assertTrue(status.isDone());
+    }
+
+    @Test
+    public void test_journal_recoversJobs() throws Exception {
+
+        File file = new File("xenon_JobQueueTest_" + System.currentTimeMillis() + ".journal");
+
+        JobDescription d = new JobDescription();
+        d.setExecutable("exec_journal");
+        d.setQueueName("multi");
+
+        JobJournal journal = new JobJournal("test", file);
+        journal.submitted("test-3", d);
+        journal.finished("test-3", "DONE", 5, null);
+        journal.submitted("test-4", d);
+        journal.submitted("test-7", d);
+        journal.started("test-7", "12345", "/nonexistent/exit");
+        journal.close();
+
+        JobQueues queues = new JobQueues("test", files, scheduler, cwd, myFactory, 2, POLLING_DELAY, 
+                new JobJournal("test", file));
+
+        try {
+            Job[] jobs = queues.getJobs("multi");
+            assertEquals(3, jobs.length);
+
+            // The job that was done before the restart reports its exit code.
+            JobStatus status = queues.getJobStatus(jobs[0]);
+            assertTrue(status.isDone());
+            assertEquals(Integer.valueOf(5), status.getExitCode());
+
+            // The job that was not started yet is started again.
+            assertEquals("test-4", jobs[1].getIdentifier());
+            assertTrue(waitForState(queues, jobs[1], "RUNNING").isRunning());
+
+            // This factory cannot recover processes, so the running job is lost.
+            status = queues.getJobStatus(jobs[2]);
+            assertEquals("ERROR", status.getState());
+            assertTrue(status.hasException());
+
+            Job job = queues.submitJob(d);
+            assertEquals("test-8", job.getIdentifier());
+
+            assertTrue(queues.cancelJob(job).isDone());
+            assertTrue(queues.cancelJob(jobs[1]).isDone());
+        } finally {
+            queues.end();
+        }
+
+        journal = new JobJournal("test", file);
+        assertTrue(journal.getRecoveredJobs().isEmpty());
+        journal.close();
+
+        file.delete();
+        new File(file.getPath() + ".lock").delete();
+    }
+
+    @Test
+    public void test_submitJob_concurrent() throws Exception {
+
+        final JobDescription d = new JobDescription();
+        d.setExecutable("exec_concurrent");
+        d.setQueueName("unlimited");
+        d.setStdout(null);
+        d.setStderr(null);
+
+        final int perThread = 50;
+        final Job[][] submitted = new Job[4][perThread];
+        final Exception[] errors = new Exception[submitted.length];
+
+        Thread[] threads = new Thread[submitted.length];
+
+        for (int t = 0; t < threads.length; t++) {
+            final int index = t;
+
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < perThread; i++) {
+                            submitted[index][i] = jobQueue.submitJob(d);
+                        }
+                    } catch (Exception e) {
+                        errors[index] = e;
+                    }
+                }
+            };
+
+            threads[t].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (Exception e : errors) {
+            assertTrue(e == null);
+        }
+
+        assertEquals(threads.length * perThread, jobQueue.getJobs("unlimited").length);
+
+        for (Job[] jobs : submitted) {
+            for (Job job : jobs) {
+                assertTrue(jobQueue.cancelJob(job).isDone());
+            }
+        }
+
+        assertEquals(0, jobQueue.getJobs("unlimited").length);
+    }
+
+    @Test
+    public void test_submitJobs() throws Exception {
+
+        JobDescription[] descriptions = new JobDescription[3];
+
+        for (int i = 0; i < descriptions.length; i++) {
+            descriptions[i] = new JobDescription();
+            descriptions[i].setExecutable("exec_submitJobs");
+            descriptions[i].setArguments("" + i);
+            descriptions[i].setQueueName("unlimited");
+            descriptions[i].setStdout(null);
+            descriptions[i].setStderr(null);
+        }
+
+        Job[] jobs = jobQueue.submitJobs(descriptions);
+
+        assertEquals(descriptions.length, jobs.length);
+        assertEquals(descriptions.length, jobQueue.getJobs("unlimited").length);
+
+        for (int i = 0; i < jobs.length; i++) {
+            assertEquals(descriptions[i], jobs[i].getJobDescription());
+            assertTrue(jobQueue.cancelJob(jobs[i]).isDone());
+        }
+    }
+
+    @Test
+    public void test_submitJobs_invalidDescription_nothingSubmitted() throws Exception {
+
+        JobDescription valid = new JobDescription();
+        valid.setExecutable("exec_submitJobs_invalid");
+        valid.setQueueName("unlimited");
+        valid.setStdout(null);
+        valid.setStderr(null);
+
+        JobDescription invalid = new JobDescription(valid);
+        invalid.setNodeCount(-1);
+
+        try {
+            jobQueue.submitJobs(valid, invalid);
+            fail("Expected exception");
+        } catch (InvalidJobDescriptionException e) {
+            // expected
+        }
+
+        assertEquals(0, jobQueue.getJobs("unlimited").length);
+    }
+
+    @Test
+    public void test_monitor_jobCleanedUpBeforeFirstPoll_noSuchJob() throws Exception {
+
+        JobDescription d = new JobDescription();
+        d.setExecutable("exec_monitorCleanedUp");
+        d.setQueueName("unlimited");
+
+        Job job = jobQueue.submitJob(d);
+
+        assertTrue(waitForState(job, "RUNNING").isRunning());
+
+        currentWrapper.setExitStatus(0);
+        currentWrapper.setDone();
+
+        // Reporting the final status removes the job from the queue.
+        assertTrue(jobQueue.getJobStatus(job).isDone());
+
+        Jobs jobs = mock(Jobs.class);
+
+        when(jobs.getJobStatuses((Job[]) anyVararg())).thenAnswer(new Answer<JobStatus[]>() {
+            @Override
+            public JobStatus[] answer(InvocationOnMock invocation) {
+                Object[] args = invocation.getArguments();
+                return jobQueue.getJobStatuses(Arrays.copyOf(args, args.length, Job[].class));
+            }
+        });
+
+        JobStatusMonitor monitor = new JobStatusMonitor("test", jobs);
+
+        try {
+            JobStatus status = monitor.waitUntilDone(job, POLLING_DELAY).get(5, TimeUnit.SECONDS);
+
+            assertTrue(status.getException() instanceof NoSuchJobException);
+        } finally {
+            monitor.end();
+        }
+    }
 }
@@ -0,0 +1,161 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.engine.util;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.engine.jobs.JobImplementation;
+import nl.esciencecenter.xenon.engine.jobs.StreamsImplementation;
+import nl.esciencecenter.xenon.files.Files;
+import nl.esciencecenter.xenon.files.Path;
+import nl.esciencecenter.xenon.jobs.Job;
+import nl.esciencecenter.xenon.jobs.JobDescription;
+import nl.esciencecenter.xenon.jobs.Scheduler;
+import nl.esciencecenter.xenon.jobs.Streams;
+
+/**
+ * Measures the status throughput of {@link JobQueues} with a large number of tracked jobs. 
+ * 
+ * All jobs are submitted to the single queue, and the process of the first job never finishes, so all jobs remain tracked 
+ * during the measurement. Run with: 
+ * 
+ * <pre>
+ * java -cp ... nl.esciencecenter.xenon.engine.util.JobQueuesBenchmark [jobs] [threads]
+ * </pre>
+ */
+public class JobQueuesBenchmark {
+
+    /** A process that never finishes. */
+    static class EndlessProcess implements InteractiveProcess {
+
+        private final JobImplementation job;
+
+        EndlessProcess(JobImplementation job) {
+            this.job = job;
+        }
+
+        @Override
+        public Streams getStreams() {
+            return new StreamsImplementation(job, new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream(),
+                    new ByteArrayInputStream(new byte[0]));
+        }
+
+        @Override
+        public boolean isDone() {
+            return false;
+        }
+
+        @Override
+        public int getExitStatus() {
+            return -1;
+        }
+
+        @Override
+        public void destroy() {
+            // nothing to destroy
+        }
+    }
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+
+        int jobCount = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+
+        Files files = mock(Files.class);
+        when(files.exists(any(Path.class))).thenReturn(true);
+
+        InteractiveProcessFactory factory = new InteractiveProcessFactory() {
+            @Override
+            public InteractiveProcess createInteractiveProcess(JobImplementation job) throws XenonException {
+                return new EndlessProcess(job);
+            }
+        };
+
+        final JobQueues queues = new JobQueues("bench", files, mock(Scheduler.class), mock(Path.class), factory, 1, 
+                JobQueues.MAX_POLLING_DELAY);
+
+        JobDescription description = new JobDescription();
+        description.setExecutable("/bin/true");
+
+        long start = System.nanoTime();
+
+        final Job[] jobs = new Job[jobCount];
+
+        for (int i = 0; i < jobCount; i++) {
+            jobs[i] = queues.submitJob(description);
+        }
+
+        report("submitJob", jobCount, System.nanoTime() - start);
+
+        for (int round = 0; round < ROUNDS; round++) {
+            start = System.nanoTime();
+            queues.getJobStatuses(jobs);
+            report("getJobStatuses", jobCount, System.nanoTime() - start);
+        }
+
+        final AtomicLong count = new AtomicLong();
+        final int perThread = jobCount;
+
+        Thread[] workers = new Thread[threads];
+
+        for (int t = 0; t < threads; t++) {
+            final Random random = new Random(t);
+
+            workers[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < perThread; i++) {
+                            queues.getJobStatus(jobs[random.nextInt(jobs.length)]);
+                            count.incrementAndGet();
+                        }
+                    } catch (XenonException e) {
+                        e.printStackTrace();
+                    }
+                }
+            };
+        }
+
+        start = System.nanoTime();
+
+        for (Thread worker : workers) {
+            worker.start();
+        }
+
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        report("getJobStatus (" + threads + " threads)", count.get(), System.nanoTime() - start);
+
+        queues.end();
+    }
+
+    private static void report(String operation, long count, long nanos) {
+        System.out.printf("%-30s %8d calls in %8.1f ms. (%.0f calls/s)%n", operation, count, nanos / 1e6, 
+                count / (nanos / 1e9));
+    }
+}
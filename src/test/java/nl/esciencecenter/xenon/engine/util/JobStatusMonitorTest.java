@@ -0,0 +1,277 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.engine.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyVararg;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import nl.esciencecenter.xenon.engine.jobs.JobImplementation;
+import nl.esciencecenter.xenon.engine.jobs.JobStatusImplementation;
+import nl.esciencecenter.xenon.jobs.Job;
+import nl.esciencecenter.xenon.jobs.JobStatus;
+import nl.esciencecenter.xenon.jobs.JobStatusListener;
+import nl.esciencecenter.xenon.jobs.Jobs;
+import nl.esciencecenter.xenon.jobs.NoSuchJobException;
+import nl.esciencecenter.xenon.jobs.Scheduler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class JobStatusMonitorTest {
+
+    /** Records all states it is notified of. */
+    static class RecordingListener implements JobStatusListener {
+
+        final List<String> states = new ArrayList<>();
+
+        @Override
+        public synchronized void statusChanged(JobStatus status) {
+            states.add(status.getState());
+            notifyAll();
+        }
+
+        synchronized void waitFor(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+
+            while (states.size() < count && System.currentTimeMillis() < deadline) {
+                wait(100);
+            }
+        }
+    }
+
+    private final Map<Job, JobStatus> statuses = new ConcurrentHashMap<>();
+
+    private Scheduler scheduler;
+
+    private JobStatusMonitor monitor;
+
+    private volatile int polls = 0;
+
+    @Before
+    public void setUp() {
+        scheduler = mock(Scheduler.class);
+
+        Jobs jobs = mock(Jobs.class);
+
+        when(jobs.getJobStatuses((Job[]) anyVararg())).thenAnswer(new Answer<JobStatus[]>() {
+            @Override
+            public JobStatus[] answer(InvocationOnMock invocation) {
+                polls++;
+
+                Object[] args = invocation.getArguments();
+                JobStatus[] result = new JobStatus[args.length];
+
+                for (int i = 0; i < args.length; i++) {
+                    result[i] = statuses.get(args[i]);
+                }
+
+                return result;
+            }
+        });
+
+        monitor = new JobStatusMonitor("test", jobs);
+    }
+
+    @After
+    public void tearDown() {
+        monitor.end();
+    }
+
+    private Job createJob(String id, String state, boolean running, boolean done) {
+        Job job = new JobImplementation(scheduler, id, false, false);
+        setState(job, state, running, done);
+        return job;
+    }
+
+    private void setState(Job job, String state, boolean running, boolean done) {
+        statuses.put(job, new JobStatusImplementation(job, state, done ? 0 : null, null, running, done, null));
+    }
+
+    private int countPollerThreads() {
+        int count = 0;
+
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (t.isAlive() && t.getName().equals("JobStatusMonitor for " + scheduler)) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    @Test
+    public void test_listener_notifiedOfChangesUntilDone() throws Exception {
+
+        Job job = createJob("job-0", "PENDING", false, false);
+
+        RecordingListener listener = new RecordingListener();
+        monitor.addListener(job, listener, 10);
+
+        listener.waitFor(1);
+
+        // Unchanged states are not reported again.
+        int before = polls;
+        while (polls < before + 3) {
+            Thread.sleep(10);
+        }
+
+        setState(job, "RUNNING", true, false);
+        listener.waitFor(2);
+
+        setState(job, "DONE", false, true);
+        listener.waitFor(3);
+
+        Thread.sleep(100);
+
+        List<String> expected = new ArrayList<>();
+        expected.add("PENDING");
+        expected.add("RUNNING");
+        expected.add("DONE");
+
+        synchronized (listener) {
+            assertEquals(expected, listener.states);
+        }
+    }
+
+    @Test
+    public void test_listener_unknownJob_notifiedAndRemoved() throws Exception {
+
+        Job job = new JobImplementation(scheduler, "job-unknown", false, false);
+        statuses.put(job, new JobStatusImplementation(job, null, null, new NoSuchJobException("test", "Unknown job"), false, 
+                false, null));
+
+        RecordingListener listener = new RecordingListener();
+        monitor.addListener(job, listener, 10);
+
+        listener.waitFor(1);
+        Thread.sleep(100);
+
+        synchronized (listener) {
+            assertEquals(1, listener.states.size());
+        }
+    }
+
+    @Test
+    public void test_waitUntilDone_manyJobs_singleThread() throws Exception {
+
+        int count = 1000;
+
+        Job[] jobs = new Job[count];
+        List<Future<JobStatus>> futures = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) {
+            jobs[i] = createJob("job-" + i, "RUNNING", true, false);
+            futures.add(monitor.waitUntilDone(jobs[i], 10));
+        }
+
+        assertEquals(1, countPollerThreads());
+
+        for (Future<JobStatus> future : futures) {
+            assertFalse(future.isDone());
+        }
+
+        for (Job job : jobs) {
+            setState(job, "DONE", false, true);
+        }
+
+        for (Future<JobStatus> future : futures) {
+            assertTrue(future.get(5, TimeUnit.SECONDS).isDone());
+        }
+
+        // The poller stops once no listeners are left.
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while (countPollerThreads() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(0, countPollerThreads());
+    }
+
+    @Test
+    public void test_waitUntilRunning_completesWhenRunning() throws Exception {
+
+        Job job = createJob("job-0", "PENDING", false, false);
+
+        Future<JobStatus> future = monitor.waitUntilRunning(job, 10);
+
+        Thread.sleep(50);
+        assertFalse(future.isDone());
+
+        setState(job, "RUNNING", true, false);
+
+        assertEquals("RUNNING", future.get(5, TimeUnit.SECONDS).getState());
+    }
+
+    @Test
+    public void test_get_zeroTimeout_doesNotBlock() throws Exception {
+
+        Job job = createJob("job-0", "PENDING", false, false);
+
+        Future<JobStatus> future = monitor.waitUntilDone(job, 10);
+
+        long start = System.currentTimeMillis();
+
+        try {
+            future.get(0, TimeUnit.MILLISECONDS);
+            fail("Expected TimeoutException");
+        } catch (TimeoutException e) {
+            // expected
+        }
+
+        try {
+            future.get(-1, TimeUnit.SECONDS);
+            fail("Expected TimeoutException");
+        } catch (TimeoutException e) {
+            // expected
+        }
+
+        assertTrue(System.currentTimeMillis() - start < 1000);
+
+        setState(job, "DONE", false, true);
+
+        assertEquals("DONE", future.get().getState());
+        assertEquals("DONE", future.get(0, TimeUnit.MILLISECONDS).getState());
+    }
+
+    @Test
+    public void test_waitUntilDone_cancel() throws Exception {
+
+        Job job = createJob("job-0", "RUNNING", true, false);
+
+        Future<JobStatus> future = monitor.waitUntilDone(job, 10);
+
+        assertTrue(future.cancel(false));
+        assertTrue(future.isCancelled());
+        assertTrue(future.isDone());
+    }
+}
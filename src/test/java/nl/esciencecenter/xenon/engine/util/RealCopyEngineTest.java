@@ -0,0 +1,435 @@
+/**
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.engine.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import nl.esciencecenter.xenon.Xenon;
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.XenonFactory;
+import nl.esciencecenter.xenon.engine.files.FilesEngine;
+import nl.esciencecenter.xenon.files.Copy;
+import nl.esciencecenter.xenon.files.CopyOption;
+import nl.esciencecenter.xenon.files.CopyStatus;
+import nl.esciencecenter.xenon.files.FileSystem;
+import nl.esciencecenter.xenon.files.Files;
+import nl.esciencecenter.xenon.files.Path;
+import nl.esciencecenter.xenon.files.PathAlreadyExistsException;
+import nl.esciencecenter.xenon.util.Utils;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Tests the copy engine using the local adaptor, which allows the copy engine to transfer data between file channels.
+ */
+public class RealCopyEngineTest {
+
+    public static final String ROOT = "xenon_RealCopyEngineTest_" + System.currentTimeMillis();
+
+    public static Xenon xenon;
+    public static Files files;
+    public static FileSystem fileSystem;
+
+    public static Path testDir;
+
+    private static byte[] data;
+
+    @BeforeClass
+    public static void prepare() throws Exception {
+
+        // Use small blocks, so verification of a resumed copy compares multiple blocks.
+        Map<String, String> properties = new HashMap<>();
+        properties.put(CopyEngine.VERIFY_BLOCK_SIZE, "1M");
+
+        xenon = XenonFactory.newXenon(properties);
+
+        files = xenon.files();
+
+        Path cwd = Utils.getLocalCWD(files);
+
+        fileSystem = cwd.getFileSystem();
+
+        testDir = files.newPath(fileSystem, cwd.getRelativePath().resolve(ROOT));
+        files.createDirectory(testDir);
+
+        data = new byte[3 * 1024 * 1024 + 17];
+        new Random(42).nextBytes(data);
+    }
+
+    @AfterClass
+    public static void cleanup() throws Exception {
+        Utils.recursiveDelete(files, testDir);
+        XenonFactory.endXenon(xenon);
+    }
+
+    private Path createSource(String name) throws Exception {
+        Path source = Utils.resolveWithRoot(files, testDir, name);
+        Utils.write(files, source, data, true);
+        return source;
+    }
+
+    @Test
+    public void test_copy_local() throws Exception {
+
+        Path source = createSource("test_copy_local_source");
+        Path target = Utils.resolveWithRoot(files, testDir, "test_copy_local_target");
+
+        files.copy(source, target);
+
+        assertArrayEquals(data, Utils.readAllBytes(files, target));
+    }
+
+    @Test
+    public void test_copy_localAsync_reportsBytesCopied() throws Exception {
+
+        Path source = createSource("test_copy_localAsync_source");
+        Path target = Utils.resolveWithRoot(files, testDir, "test_copy_localAsync_target");
+
+        Copy copy = files.copy(source, target, CopyOption.ASYNCHRONOUS);
+
+        CopyStatus status = files.getCopyStatus(copy);
+
+        while (!status.isDone()) {
+            Thread.sleep(10);
+            status = files.getCopyStatus(copy);
+        }
+
+        assertNull(status.getException());
+        assertEquals(data.length, status.bytesToCopy());
+        assertEquals(data.length, status.bytesCopied());
+        assertArrayEquals(data, Utils.readAllBytes(files, target));
+    }
+
+    @Test
+    public void test_copy_localResume() throws Exception {
+
+        Path source = createSource("test_copy_localResume_source");
+        Path target = Utils.resolveWithRoot(files, testDir, "test_copy_localResume_target");
+
+        Utils.write(files, target, Arrays.copyOf(data, 1000), true);
+
+        files.copy(source, target, CopyOption.RESUME);
+
+        assertArrayEquals(data, Utils.readAllBytes(files, target));
+    }
+
+    @Test
+    public void test_copy_localResumeVerify() throws Exception {
+
+        Path source = createSource("test_copy_localResumeVerify_source");
+        Path target = Utils.resolveWithRoot(files, testDir, "test_copy_localResumeVerify_target");
+
+        Utils.write(files, target, Arrays.copyOf(data, 2500 * 1024), true);
+
+        files.copy(source, target, CopyOption.RESUME, CopyOption.VERIFY);
+
+        assertArrayEquals(data, Utils.readAllBytes(files, target));
+    }
+
+    @Test
+    public void test_copy_localResumeVerifyCorruptTarget_resumesFromMismatchingBlock() throws Exception {
+
+        Path source = createSource("test_copy_localResumeVerifyCorrupt_source");
+        Path target = Utils.resolveWithRoot(files, testDir, "test_copy_localResumeVerifyCorrupt_target");
+
+        byte[] corrupt = Arrays.copyOf(data, 2500 * 1024);
+        corrupt[1536 * 1024] ^= 0xFF;
+
+        Utils.write(files, target, corrupt, true);
+
+        Copy copy = files.copy(source, target, CopyOption.RESUME, CopyOption.VERIFY, CopyOption.ASYNCHRONOUS);
+
+        CopyStatus status = files.getCopyStatus(copy);
+
+        while (!status.isDone()) {
+            Thread.sleep(10);
+            status = files.getCopyStatus(copy);
+        }
+
+        assertNull(status.getException());
+
+        // The second block contains the corrupted byte, so the copy is resumed from the start of that block.
+        assertEquals(data.length - 1024 * 1024, status.bytesToCopy());
+        assertArrayEquals(data, Utils.readAllBytes(files, target));
+    }
+
+    @Test
+    public void test_copy_resumeVerifyWithoutRangeChecksums_comparesData() throws Exception {
+
+        FilesEngine owner = spy((FilesEngine) files);
+
+        // Only whole files can be checksummed, so the mismatching block must be found by comparing the data.
+        doReturn(null).when(owner).checksum(any(Path.class), anyLong(), eq(1024L * 1024));
+
+        Map<String, String> properties = new HashMap<>();
+        properties.put(CopyEngine.VERIFY_BLOCK_SIZE, "1M");
+        CopyEngine engine = new CopyEngine(owner, properties);
+
+        Path source = createSource("test_copy_resumeVerifyNoRanges_source");
+        Path target = Utils.resolveWithRoot(files, testDir, "test_copy_resumeVerifyNoRanges_target");
+
+        byte[] corrupt = Arrays.copyOf(data, 2500 * 1024);
+        corrupt[1536 * 1024] ^= 0xFF;
+
+        Utils.write(files, target, corrupt, true);
+
+        CopyInfo info = CopyInfo.createCopyInfo("test", engine.getNextID("TEST_COPY_"), source, target, CopyOption.RESUME, 
+                CopyOption.VERIFY);
+        engine.copy(info);
+        engine.done();
+
+        assertNull(info.getException());
+        assertEquals(data.length - 1024 * 1024, info.getBytesToCopy());
+        assertArrayEquals(data, Utils.readAllBytes(files, target));
+    }
+
+    private CopyEngine createStripingEngine(FilesEngine owner) throws Exception {
+        Map<String, String> properties = new HashMap<>();
+        properties.put(CopyEngine.MIN_STRIPE_SIZE, "256K");
+
+        // Pretend the local adaptor benefits from parallel transfers.
+        doReturn(4).when(owner).getMaxStripes(any(Path.class));
+
+        return new CopyEngine(owner, properties);
+    }
+
+    @Test
+    public void test_copy_striped() throws Exception {
+
+        FilesEngine owner = spy((FilesEngine) files);
+        CopyEngine engine = createStripingEngine(owner);
+
+        Path source = createSource("test_copy_striped_source");
+        Path target = Utils.resolveWithRoot(files, testDir, "test_copy_striped_target");
+
+        CopyInfo info = CopyInfo.createCopyInfo("test", engine.getNextID("TEST_COPY_"), source, target, CopyOption.CREATE);
+        engine.copy(info);
+        engine.done();
+
+        assertNull(info.getException());
+        assertEquals(data.length, info.getBytesCopied());
+        assertArrayEquals(data, Utils.readAllBytes(files, target));
+
+        // The last byte is copied first, followed by 4 stripes.
+        verify(owner, times(5)).newInputStream(any(Path.class), anyLong());
+    }
+
+    @Test
+    public void test_copy_stripedAsyncAtFileSystemLimit_stripesCopiedByCopyThread() throws Exception {
+
+        FilesEngine owner = spy((FilesEngine) files);
+        doReturn(4).when(owner).getMaxStripes(any(Path.class));
+
+        final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                threads.add(Thread.currentThread());
+                return invocation.callRealMethod();
+            }
+        }).when(owner).newInputStream(any(Path.class), anyLong());
+
+        Map<String, String> properties = new HashMap<>();
+        properties.put(CopyEngine.MIN_STRIPE_SIZE, "256K");
+        properties.put(CopyEngine.MAX_CONCURRENT_PER_FILESYSTEM, "1");
+        CopyEngine engine = new CopyEngine(owner, properties);
+
+        Path source = createSource("test_copy_stripedAsyncLimit_source");
+        Path target = Utils.resolveWithRoot(files, testDir, "test_copy_stripedAsyncLimit_target");
+
+        CopyInfo info = CopyInfo.createCopyInfo("test", engine.getNextID("TEST_COPY_"), source, target, CopyOption.CREATE, 
+                CopyOption.ASYNCHRONOUS);
+        engine.copy(info);
+
+        CopyStatus status = engine.getStatus(info.getCopy());
+
+        while (!status.isDone()) {
+            Thread.sleep(10);
+            status = engine.getStatus(info.getCopy());
+        }
+
+        engine.done();
+
+        assertNull(status.getException());
+        assertArrayEquals(data, Utils.readAllBytes(files, target));
+
+        // The copy itself uses the only slot of the file system, so no other copy thread may help with the stripes.
+        assertEquals(1, threads.size());
+        verify(owner, times(5)).newInputStream(any(Path.class), anyLong());
+    }
+
+    @Test
+    public void test_copy_stripedResume_failedStripeIsRetried() throws Exception {
+
+        FilesEngine owner = spy((FilesEngine) files);
+        CopyEngine engine = createStripingEngine(owner);
+
+        Path source = createSource("test_copy_stripedResume_source");
+        Path target = Utils.resolveWithRoot(files, testDir, "test_copy_stripedResume_target");
+
+        Utils.write(files, target, Arrays.copyOf(data, 1000), true);
+
+        doThrow(new XenonException("test", "Connection lost")).doCallRealMethod().when(owner).newOutputStream(
+                any(Path.class), anyLong());
+
+        CopyInfo info = CopyInfo.createCopyInfo("test", engine.getNextID("TEST_COPY_"), source, target, CopyOption.RESUME);
+        engine.copy(info);
+        engine.done();
+
+        assertNull(info.getException());
+        assertEquals(data.length - 1000, info.getBytesCopied());
+        assertArrayEquals(data, Utils.readAllBytes(files, target));
+    }
+
+    private Path createTree(String name) throws Exception {
+        Path root = Utils.resolveWithRoot(files, testDir, name);
+        files.createDirectory(root);
+
+        for (int i = 0; i < 3; i++) {
+            Path dir = Utils.resolveWithRoot(files, root, "dir" + i);
+            files.createDirectory(dir);
+            files.createDirectory(Utils.resolveWithRoot(files, dir, "empty"));
+
+            for (int j = 0; j < 5; j++) {
+                Utils.write(files, Utils.resolveWithRoot(files, dir, "file" + j), Arrays.copyOf(data, 1000 * j), true);
+            }
+        }
+
+        Utils.write(files, Utils.resolveWithRoot(files, root, "top"), data, true);
+        return root;
+    }
+
+    private void assertTreeCopied(Path target) throws Exception {
+        for (int i = 0; i < 3; i++) {
+            Path dir = Utils.resolveWithRoot(files, target, "dir" + i);
+
+            assertTrue(files.getAttributes(Utils.resolveWithRoot(files, dir, "empty")).isDirectory());
+
+            for (int j = 0; j < 5; j++) {
+                assertArrayEquals(Arrays.copyOf(data, 1000 * j), Utils.readAllBytes(files, Utils.resolveWithRoot(files, dir, 
+                        "file" + j)));
+            }
+        }
+
+        assertArrayEquals(data, Utils.readAllBytes(files, Utils.resolveWithRoot(files, target, "top")));
+    }
+
+    @Test
+    public void test_copyTree() throws Exception {
+
+        Path source = createTree("test_copyTree_source");
+        Path target = Utils.resolveWithRoot(files, testDir, "test_copyTree_target");
+
+        files.copyTree(source, target);
+
+        assertTreeCopied(target);
+    }
+
+    @Test
+    public void test_copyTree_symbolicLinks_skipped() throws Exception {
+
+        Path source = createTree("test_copyTreeLinks_source");
+        Path target = Utils.resolveWithRoot(files, testDir, "test_copyTreeLinks_target");
+
+        java.nio.file.Path dir = Paths.get(System.getProperty("user.dir"), ROOT, "test_copyTreeLinks_source");
+        java.nio.file.Files.createSymbolicLink(dir.resolve("linkToTop"), dir.resolve("top"));
+        java.nio.file.Files.createSymbolicLink(dir.resolve("dir0").resolve("linkToRoot"), dir);
+
+        files.copyTree(source, target);
+
+        assertTreeCopied(target);
+        assertFalse(files.exists(Utils.resolveWithRoot(files, target, "linkToTop")));
+        assertFalse(files.exists(Utils.resolveWithRoot(files, target, "dir0/linkToRoot")));
+    }
+
+    @Test
+    public void test_copyTreeAsync_reportsAggregateProgress() throws Exception {
+
+        Path source = createTree("test_copyTreeAsync_source");
+        Path target = Utils.resolveWithRoot(files, testDir, "test_copyTreeAsync_target");
+
+        Copy copy = files.copyTree(source, target, CopyOption.ASYNCHRONOUS);
+
+        CopyStatus status = files.getCopyStatus(copy);
+
+        while (!status.isDone()) {
+            Thread.sleep(10);
+            status = files.getCopyStatus(copy);
+        }
+
+        long expected = data.length + 3 * 1000 * (0 + 1 + 2 + 3 + 4);
+
+        assertNull(status.getException());
+        assertEquals(expected, status.bytesToCopy());
+        assertEquals(expected, status.bytesCopied());
+        assertTreeCopied(target);
+    }
+
+    @Test
+    public void test_copyTreeIgnore_existingFileKept() throws Exception {
+
+        Path source = createTree("test_copyTreeIgnore_source");
+        Path target = Utils.resolveWithRoot(files, testDir, "test_copyTreeIgnore_target");
+
+        files.createDirectories(Utils.resolveWithRoot(files, target, "dir1"));
+
+        byte[] existing = "Hello World!".getBytes();
+        Utils.write(files, Utils.resolveWithRoot(files, target, "dir1", "file3"), existing, true);
+
+        files.copyTree(source, target, CopyOption.IGNORE);
+
+        assertArrayEquals(existing, Utils.readAllBytes(files, Utils.resolveWithRoot(files, target, "dir1", "file3")));
+        assertArrayEquals(data, Utils.readAllBytes(files, Utils.resolveWithRoot(files, target, "top")));
+    }
+
+    @Test(expected = PathAlreadyExistsException.class)
+    public void test_copyTree_existingTarget_throws() throws Exception {
+
+        Path source = createTree("test_copyTreeExisting_source");
+        Path target = Utils.resolveWithRoot(files, testDir, "test_copyTreeExisting_target");
+
+        files.createDirectory(target);
+
+        files.copyTree(source, target);
+    }
+}
@@ -15,6 +15,7 @@
  */
 package nl.esciencecenter.xenon.util;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -23,6 +24,7 @@ import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.nio.charset.Charset;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -717,4 +719,125 @@ public class RealFileUtilsTest {
 
         files.delete(dir);
     }
+
+    /** Records all callbacks, and skips the subtree of directories named "skip". */
+    class RecordingFileVisitor implements FileVisitor {
+
+        private final List<String> visits = new LinkedList<>();
+        private final Thread caller = Thread.currentThread();
+
+        private long size = 0;
+
+        private void record(String type, Path path) throws XenonException {
+            if (Thread.currentThread() != caller) {
+                throw new XenonException("", "Callback from unexpected thread: " + Thread.currentThread());
+            }
+
+            visits.add(type + " " + path.getRelativePath().getRelativePath());
+        }
+
+        @Override
+        public FileVisitResult postVisitDirectory(Path dir, XenonException exception, Files files) throws XenonException {
+            record("post", dir);
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, FileAttributes attributes, Files files) throws XenonException {
+            record("pre", dir);
+
+            if ("skip".equals(dir.getRelativePath().getFileNameAsString())) {
+                return FileVisitResult.SKIP_SUBTREE;
+            }
+
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, FileAttributes attributes, Files files) throws XenonException {
+            record("file", file);
+            size += attributes.size();
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, XenonException exception, Files files) throws XenonException {
+            throw new XenonException("", "Visit failed of path: " + file, exception);
+        }
+    }
+
+    private Path createWalkTree(String name) throws Exception {
+        Path root = Utils.resolveWithRoot(files, testDir, name);
+
+        for (int i = 0; i < 4; i++) {
+            for (String sub : new String[] { "a", "b", "skip" }) {
+                Path dir = Utils.resolveWithRoot(files, root, "dir" + i, sub);
+                files.createDirectories(dir);
+
+                for (int j = 0; j < 3; j++) {
+                    Utils.write(files, Utils.resolveWithRoot(files, dir, "file" + j), new byte[j], true);
+                }
+            }
+        }
+
+        return root;
+    }
+
+    @Test
+    public void test_walkFileTreeParallel_sameOrderAsSequential() throws Exception {
+
+        Path root = createWalkTree("test_walkFileTreeParallel");
+
+        RecordingFileVisitor sequential = new RecordingFileVisitor();
+        Utils.walkFileTree(files, root, sequential);
+
+        RecordingFileVisitor parallel = new RecordingFileVisitor();
+        Utils.walkFileTree(files, root, false, Integer.MAX_VALUE, 3, parallel);
+
+        assertEquals(sequential.visits, parallel.visits);
+
+        Utils.recursiveDelete(files, root);
+    }
+
+    @Test
+    public void test_walkFileTreeParallel_maxDepth() throws Exception {
+
+        Path root = createWalkTree("test_walkFileTreeParallelDepth");
+
+        RecordingFileVisitor sequential = new RecordingFileVisitor();
+        Utils.walkFileTree(files, root, false, 2, sequential);
+
+        RecordingFileVisitor parallel = new RecordingFileVisitor();
+        Utils.walkFileTree(files, root, false, 2, 1, parallel);
+
+        assertEquals(sequential.visits, parallel.visits);
+
+        Utils.recursiveDelete(files, root);
+    }
+
+    @Test
+    public void test_walkFileTreeUnordered_visitsAll() throws Exception {
+
+        Path root = createWalkTree("test_walkFileTreeUnordered");
+
+        RecordingFileVisitor sequential = new RecordingFileVisitor();
+        Utils.walkFileTree(files, root, sequential);
+
+        RecordingFileVisitor unordered = new RecordingFileVisitor();
+        Utils.walkFileTreeUnordered(files, root, false, Integer.MAX_VALUE, 3, unordered);
+
+        assertEquals(new HashSet<>(sequential.visits), new HashSet<>(unordered.visits));
+        assertEquals(sequential.visits.size(), unordered.visits.size());
+        assertEquals(4 * 2 * (0 + 1 + 2), unordered.size);
+
+        // Each directory is pre-visited before its entries are visited.
+        for (String visit : unordered.visits) {
+            if (!visit.startsWith("pre ") && !visit.equals("post " + root.getRelativePath().getRelativePath())) {
+                String parent = visit.substring(visit.indexOf(' ') + 1, visit.lastIndexOf('/'));
+                assertTrue(unordered.visits.indexOf("pre " + parent) < unordered.visits.indexOf(visit));
+            }
+        }
+
+        Utils.recursiveDelete(files, root);
+    }
 }